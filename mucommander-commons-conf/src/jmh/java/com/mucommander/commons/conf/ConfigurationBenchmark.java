@@ -0,0 +1,130 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.conf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link Configuration} lookups from concurrent reader threads, with and without a thread
+ * modifying the configuration at the same time. Lookups are served by a {@link ConfigurationSnapshot} without
+ * locking, so the readers' throughput should scale with the number of processors and barely drop while the writer
+ * publishes new snapshots.
+ *
+ * <p>Each lookup mirrors the way the application reads its preferences: an integer variable, and a boolean variable
+ * with a default value. Run with <code>gradle :mucommander-commons-conf:jmh</code>.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationBenchmark {
+
+    /** Number of distinct variables that are looked up, must be a power of 2 */
+    private final static int NB_VARIABLES = 256;
+
+    /** Number of sections the variables are spread across */
+    private final static int NB_SECTIONS = 16;
+
+    @State(Scope.Benchmark)
+    public static class Variables {
+        Configuration conf;
+        String[] intNames;
+        String[] booleanNames;
+
+        @Setup
+        public void setUp() {
+            conf = new Configuration();
+            intNames = new String[NB_VARIABLES];
+            booleanNames = new String[NB_VARIABLES];
+
+            for(int i=0; i<NB_VARIABLES; i++) {
+                String section = "section"+(i%NB_SECTIONS)+".subsection"+(i%3)+".";
+                intNames[i] = section+"int"+i;
+                booleanNames[i] = section+"boolean"+i;
+
+                conf.setVariable(intNames[i], i);
+                conf.setVariable(booleanNames[i], i%2==0);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        int next() {
+            index = (index+1) & (NB_VARIABLES-1);
+            return index;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        int value;
+    }
+
+    private static int lookup(Variables variables, Cursor cursor) {
+        int index = cursor.next();
+        int value = variables.conf.getIntegerVariable(variables.intNames[index]);
+
+        return variables.conf.getVariable(variables.booleanNames[index], false) ? value : -value;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int readSingleThread(Variables variables, Cursor cursor) {
+        return lookup(variables, cursor);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int readAllThreads(Variables variables, Cursor cursor) {
+        return lookup(variables, cursor);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public int readWhileWriting(Variables variables, Cursor cursor) {
+        return lookup(variables, cursor);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public boolean write(Variables variables, Cursor cursor, Writer writer) {
+        // Each write changes the variable's value, so that a new snapshot is published
+        return variables.conf.setVariable(variables.intNames[cursor.next()], ++writer.value);
+    }
+}
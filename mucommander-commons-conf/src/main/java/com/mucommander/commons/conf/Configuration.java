@@ -83,6 +83,13 @@ import java.util.*;
  * direct references to the listener instances they register if they do not want them to be garbaged collected
  * out of existence randomly.
  * </p>
+ * <p>
+ * <h3>Thread safety</h3>
+ * Modifications of the configuration are serialised. Variable lookups, on the other hand, never lock: they are
+ * served by an immutable snapshot of the configuration's variables which is replaced whenever a variable is modified,
+ * and which caches the result of casting values to primitive types. Listeners are notified of a modification once
+ * the new snapshot has been published, so that they can look up the new values right away.
+ * </p>
  * @author Nicolas Rinaudo
  */
 public class Configuration {
@@ -96,6 +103,8 @@ public class Configuration {
     private ConfigurationWriterFactory                         writerFactory;
     /** Holds the content of the configuration file. */
     private final ConfigurationSection                         root = new ConfigurationSection();
+    /** Read-optimised copy of the configuration's variables, replaced whenever a variable is modified. */
+    private volatile ConfigurationSnapshot                     snapshot = ConfigurationSnapshot.EMPTY;
     /** Contains all registered configuration LISTENERS, stored as weak references. */
     private final WeakHashMap<ConfigurationListener, ?> LISTENERS = new WeakHashMap<ConfigurationListener, Object>();
 
@@ -274,7 +283,15 @@ public class Configuration {
      * @see                                    #read()
      */
     synchronized void read(Reader in, ConfigurationReader reader) throws IOException, ConfigurationException {
-        reader.read(in, new ConfigurationLoader(root));
+        ConfigurationLoader loader; // Loads the configuration and keeps track of the variables it modified.
+
+        loader = new ConfigurationLoader(root);
+        try {reader.read(in, loader);}
+        finally {
+            // Publishes the new values before notifying listeners of the ones that were modified.
+            snapshot = ConfigurationSnapshot.create(root);
+            loader.triggerEvents();
+        }
     }
 
     /**
@@ -536,6 +553,7 @@ public class Configuration {
 
         // If the variable's value was actually modified, triggers an event.
         if(explorer.getSection().setVariable(buffer, value)) {
+            updateSnapshot(name, value);
             triggerEvent(new ConfigurationEvent(this, name, value));
             return true;
         }
@@ -682,7 +700,21 @@ public class Configuration {
      * @see         #setVariable(String,String)
      * @see         #getVariable(String,String)
      */
-    public synchronized String getVariable(String name) {
+    public String getVariable(String name) {
+        ConfigurationSnapshot.Value value; // Value of the variable in the current snapshot.
+
+        // Non-canonical names can only be resolved by exploring the configuration tree.
+        if(!ConfigurationSnapshot.isCanonical(name))
+            return lookupVariable(name);
+        return (value = snapshot.get(name)) == null ? null : value.getString();
+    }
+
+    /**
+     * Returns the value of the specified variable as stored in the configuration tree.
+     * @param  name fully qualified name of the variable whose value should be retrieved.
+     * @return      the variable's value if set, <code>null</code> otherwise.
+     */
+    private synchronized String lookupVariable(String name) {
         ConfigurationExplorer explorer; // Used to navigate to the variable's parent section.
 
         // If the variable's 'path' doesn't exist, return null.
@@ -712,7 +744,9 @@ public class Configuration {
      * @see                          #getVariable(String,int)
      */
     public int getIntegerVariable(String name) {
-        return ConfigurationSection.getIntegerValue(getVariable(name));
+        ConfigurationSnapshot.Value value; // Value of the variable.
+
+        return (value = getValue(name)) == null ? 0 : value.getInteger();
     }
 
     /**
@@ -724,7 +758,9 @@ public class Configuration {
      * @see                          #getVariable(String,long)
      */
     public long getLongVariable(String name) {
-        return ConfigurationSection.getLongValue(getVariable(name));
+        ConfigurationSnapshot.Value value; // Value of the variable.
+
+        return (value = getValue(name)) == null ? 0 : value.getLong();
     }
 
     /**
@@ -736,7 +772,9 @@ public class Configuration {
      * @see                          #getVariable(String,float)
      */
     public float getFloatVariable(String name) {
-        return ConfigurationSection.getFloatValue(getVariable(name));
+        ConfigurationSnapshot.Value value; // Value of the variable.
+
+        return (value = getValue(name)) == null ? 0 : value.getFloat();
     }
 
     /**
@@ -748,7 +786,9 @@ public class Configuration {
      * @see                          #getVariable(String,double)
      */
     public double getDoubleVariable(String name) {
-        return ConfigurationSection.getDoubleValue(getVariable(name));
+        ConfigurationSnapshot.Value value; // Value of the variable.
+
+        return (value = getValue(name)) == null ? 0 : value.getDouble();
     }
 
     /**
@@ -759,7 +799,9 @@ public class Configuration {
      * @see                          #getVariable(String,boolean)
      */
     public boolean getBooleanVariable(String name) {
-        return ConfigurationSection.getBooleanValue(getVariable(name));
+        ConfigurationSnapshot.Value value; // Value of the variable.
+
+        return (value = getValue(name)) == null ? false : value.getBoolean();
     }
 
     /**
@@ -771,6 +813,19 @@ public class Configuration {
         return getVariable(name) != null;
     }
 
+    /**
+     * Returns the value of the specified variable, from the current snapshot when possible.
+     * @param  name fully qualified name of the variable whose value should be retrieved.
+     * @return      the variable's value if set, <code>null</code> otherwise.
+     */
+    private ConfigurationSnapshot.Value getValue(String name) {
+        String value; // Value of the variable in the configuration tree.
+
+        if(ConfigurationSnapshot.isCanonical(name))
+            return snapshot.get(name);
+        return (value = lookupVariable(name)) == null ? null : new ConfigurationSnapshot.Value(value);
+    }
+
 
 
     // - Variable removal ----------------------------------------------------------------------------------------------
@@ -819,6 +874,7 @@ public class Configuration {
         // If the variable was actually set, triggers an event.
         if((buffer = explorer.getSection().removeVariable(buffer)) != null) {
             prune(explorer);
+            updateSnapshot(name, null);
             triggerEvent(new ConfigurationEvent(this, name, null));
         }
 
@@ -907,9 +963,10 @@ public class Configuration {
     /**
      * Remove all variables & sub-sections under the root section 
      */
-    public void clear() {
-		root.clear();
-	}
+    public synchronized void clear() {
+        root.clear();
+        snapshot = ConfigurationSnapshot.EMPTY;
+    }
 
 
     // - Advanced variable retrieval -----------------------------------------------------------------------------------
@@ -927,7 +984,23 @@ public class Configuration {
      * @see                 #setVariable(String,String)
      * @see                 #getVariable(String)
      */
-    public synchronized String getVariable(String name, String defaultValue) {
+    public String getVariable(String name, String defaultValue) {
+        ConfigurationSnapshot.Value value; // Value of the variable in the current snapshot.
+
+        // Only locks if the variable needs to be set.
+        if(ConfigurationSnapshot.isCanonical(name) && (value = snapshot.get(name)) != null)
+            return value.getString();
+        return getOrSetVariable(name, defaultValue);
+    }
+
+    /**
+     * Retrieves the value of the specified variable from the configuration tree, setting it to
+     * <code>defaultValue</code> if it isn't set.
+     * @param  name         name of the variable to retrieve.
+     * @param  defaultValue value to use if <code>name</code> is not set.
+     * @return              the specified variable's value.
+     */
+    private synchronized String getOrSetVariable(String name, String defaultValue) {
         ConfigurationExplorer explorer; // Used to navigate to the variable's parent section.
         String                value;    // Buffer for the variable's value.
         String                buffer;   // Buffer for the variable's name trimmed of section information.
@@ -938,7 +1011,8 @@ public class Configuration {
 
         // If the variable isn't set, set it to defaultValue and triggers an event.
         if((value = explorer.getSection().getVariable(buffer)) == null) {
-            explorer.getSection().setVariable(buffer, defaultValue);
+            if(explorer.getSection().setVariable(buffer, defaultValue))
+                updateSnapshot(name, defaultValue);
             triggerEvent(new ConfigurationEvent(this, name, defaultValue));
             return defaultValue;
         }
@@ -980,6 +1054,10 @@ public class Configuration {
      * @see                          #getIntegerVariable(String)
      */
     public int getVariable(String name, int defaultValue) {
+        ConfigurationSnapshot.Value value; // Value of the variable in the current snapshot.
+
+        if(ConfigurationSnapshot.isCanonical(name) && (value = snapshot.get(name)) != null)
+            return value.getInteger();
         return ConfigurationSection.getIntegerValue(getVariable(name, ConfigurationSection.getValue(defaultValue)));
     }
 
@@ -998,6 +1076,10 @@ public class Configuration {
      * @see                          #getLongVariable(String)
      */
     public long getVariable(String name, long defaultValue) {
+        ConfigurationSnapshot.Value value; // Value of the variable in the current snapshot.
+
+        if(ConfigurationSnapshot.isCanonical(name) && (value = snapshot.get(name)) != null)
+            return value.getLong();
         return ConfigurationSection.getLongValue(getVariable(name, ConfigurationSection.getValue(defaultValue)));
     }
 
@@ -1016,6 +1098,10 @@ public class Configuration {
      * @see                          #getFloatVariable(String)
      */
     public float getVariable(String name, float defaultValue) {
+        ConfigurationSnapshot.Value value; // Value of the variable in the current snapshot.
+
+        if(ConfigurationSnapshot.isCanonical(name) && (value = snapshot.get(name)) != null)
+            return value.getFloat();
         return ConfigurationSection.getFloatValue(getVariable(name, ConfigurationSection.getValue(defaultValue)));
     }
 
@@ -1033,6 +1119,10 @@ public class Configuration {
      * @see                          #getBooleanVariable(String)
      */
     public boolean getVariable(String name, boolean defaultValue) {
+        ConfigurationSnapshot.Value value; // Value of the variable in the current snapshot.
+
+        if(ConfigurationSnapshot.isCanonical(name) && (value = snapshot.get(name)) != null)
+            return value.getBoolean();
         return ConfigurationSection.getBooleanValue(getVariable(name, ConfigurationSection.getValue(defaultValue)));
     }
 
@@ -1051,6 +1141,10 @@ public class Configuration {
      * @see                          #getDoubleVariable(String)
      */
     public double getVariable(String name, double defaultValue) {
+        ConfigurationSnapshot.Value value; // Value of the variable in the current snapshot.
+
+        if(ConfigurationSnapshot.isCanonical(name) && (value = snapshot.get(name)) != null)
+            return value.getDouble();
         return ConfigurationSection.getDoubleValue(getVariable(name, ConfigurationSection.getValue(defaultValue)));
     }
 
@@ -1085,6 +1179,28 @@ public class Configuration {
 
 
 
+    /**
+     * Publishes a new snapshot in which the specified variable is set to the specified value.
+     * <p>
+     * This method must be called while holding the configuration's lock, after the configuration tree has been
+     * modified.
+     * </p>
+     * @param name  fully qualified name of the variable that was modified.
+     * @param value new value of the variable, <code>null</code> if it was removed.
+     */
+    private void updateSnapshot(String name, String value) {
+        // Empty values are not stored, see ConfigurationSection#setVariable(String,String).
+        if(value != null && value.trim().equals(""))
+            value = null;
+
+        if(ConfigurationSnapshot.isCanonical(name))
+            snapshot = snapshot.with(name, value);
+        else
+            snapshot = ConfigurationSnapshot.create(root);
+    }
+
+
+
     // - Configuration listening ---------------------------------------------------------------------------------------
     // -----------------------------------------------------------------------------------------------------------------
     /**
@@ -1139,6 +1255,8 @@ public class Configuration {
         private Stack<String>               sectionNames;
         /** Section that we're currently building. */
         private ConfigurationSection        currentSection;
+        /** Events describing the variables that were modified, triggered once loading is over. */
+        private List<ConfigurationEvent>    events = new ArrayList<ConfigurationEvent>();
 
 
 
@@ -1217,13 +1335,21 @@ public class Configuration {
          * @param value value of the variable.
          */
         public void addVariable(String name, String value) {
-            // If the variable's value was modified, trigger an event.
+            // If the variable's value was modified, records an event.
             if(currentSection.setVariable(name, value)) {
                 if(sectionNames.empty())
-                    triggerEvent(new ConfigurationEvent(Configuration.this, name, value));
+                    events.add(new ConfigurationEvent(Configuration.this, name, value));
                 else
-                    triggerEvent(new ConfigurationEvent(Configuration.this, sectionNames.peek() + name, value));
+                    events.add(new ConfigurationEvent(Configuration.this, sectionNames.peek() + name, value));
             }
         }
+
+        /**
+         * Passes the events describing the variables that were modified to all registered configuration LISTENERS.
+         */
+        public void triggerEvents() {
+            for(ConfigurationEvent event : events)
+                triggerEvent(event);
+        }
     }
 }
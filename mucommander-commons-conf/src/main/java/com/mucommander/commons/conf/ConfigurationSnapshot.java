@@ -0,0 +1,245 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.conf;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Immutable, flat view of the variables of a configuration tree.
+ * <p>
+ * A snapshot maps the fully qualified name of each variable to its value, which allows variables to be looked up
+ * without walking the configuration tree. Values are parsed into primitive types the first time they are requested
+ * as such, and the result is kept for subsequent lookups.
+ * </p>
+ * <p>
+ * Snapshots are never modified once created: {@link #with(String, String)} returns a modified copy. This allows
+ * {@link Configuration} to publish them to readers that do not need to lock.
+ * </p>
+ */
+class ConfigurationSnapshot {
+    // - Class variables -----------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /** Snapshot of an empty configuration. */
+    static final ConfigurationSnapshot EMPTY = new ConfigurationSnapshot(Collections.<String, Value>emptyMap());
+
+
+
+    // - Instance variables --------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /** Values of the variables, mapped to their fully qualified names. Never modified once the snapshot is created. */
+    private final Map<String, Value> values;
+
+
+
+    // - Initialisation ------------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /**
+     * Creates a new snapshot with the specified values.
+     * @param values values of the variables, mapped to their fully qualified names.
+     */
+    private ConfigurationSnapshot(Map<String, Value> values) {
+        this.values = values;
+    }
+
+    /**
+     * Creates a snapshot of the variables contained by the specified section and its subsections.
+     * @param  root section to take a snapshot of.
+     * @return      a snapshot of the specified section.
+     */
+    static ConfigurationSnapshot create(ConfigurationSection root) {
+        Map<String, Value> values;
+
+        values = new HashMap<String, Value>();
+        addVariables(values, root, "");
+        return new ConfigurationSnapshot(values);
+    }
+
+    /**
+     * Recursively adds the variables of the specified section to the specified map.
+     * @param values  where to add the variables.
+     * @param section section whose variables should be added.
+     * @param prefix  fully qualified name of the section, followed by a period (empty for the root section).
+     */
+    private static void addVariables(Map<String, Value> values, ConfigurationSection section, String prefix) {
+        Iterator<String> names;
+        String           name;
+
+        names = section.variableNames();
+        while(names.hasNext()) {
+            name = names.next();
+            // Variables whose names contain a period cannot be reached through their fully qualified name.
+            if(name.indexOf('.') == -1)
+                values.put(prefix + name, new Value(section.getVariable(name)));
+        }
+
+        names = section.sectionNames();
+        while(names.hasNext()) {
+            name = names.next();
+            if(name.indexOf('.') == -1)
+                addVariables(values, section.getSection(name), prefix + name + '.');
+        }
+    }
+
+    /**
+     * Returns a copy of this snapshot in which the specified variable is set to the specified value.
+     * @param  name  fully qualified name of the variable, which must be {@link #isCanonical(String) canonical}.
+     * @param  value value of the variable, <code>null</code> to remove it.
+     * @return       a copy of this snapshot in which the variable is set to the value.
+     */
+    ConfigurationSnapshot with(String name, String value) {
+        Map<String, Value> buffer;
+
+        buffer = new HashMap<String, Value>(values);
+        if(value == null)
+            buffer.remove(name);
+        else
+            buffer.put(name, new Value(value));
+        return new ConfigurationSnapshot(buffer);
+    }
+
+    /**
+     * Returns <code>true</code> if the specified variable name is canonical, i.e. if it is the name under which the
+     * variable is stored in snapshots.
+     * <p>
+     * {@link Configuration} ignores empty elements in variable names, meaning that <code>a..b</code>
+     * and <code>.a.b</code> both designate <code>a.b</code>. Such names cannot be looked up in snapshots.
+     * </p>
+     * @param  name name to check.
+     * @return      <code>true</code> if the name is canonical.
+     */
+    static boolean isCanonical(String name) {
+        return name.length() != 0 && name.charAt(0) != '.' && name.charAt(name.length() - 1) != '.' && !name.contains("..");
+    }
+
+
+
+    // - Variables access ----------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /**
+     * Returns the value of the specified variable.
+     * @param  name fully qualified name of the variable.
+     * @return      the value of the variable, <code>null</code> if it isn't set.
+     */
+    Value get(String name) {
+        return values.get(name);
+    }
+
+
+
+    // - Value class ---------------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /**
+     * Value of a variable, along with its parsed representations.
+     * <p>
+     * Parsed representations are computed lazily. Concurrent threads may end up parsing the same value more than once,
+     * which is harmless: the results are immutable objects, so that publishing them through non-volatile fields is
+     * safe.
+     * </p>
+     */
+    static class Value {
+        /** Raw value. */
+        private final String  string;
+        /** Value as a boolean. */
+        private final boolean booleanValue;
+        /** Value as an integer, <code>null</code> if not parsed yet. */
+        private Integer       integerValue;
+        /** Value as a long, <code>null</code> if not parsed yet. */
+        private Long          longValue;
+        /** Value as a float, <code>null</code> if not parsed yet. */
+        private Float         floatValue;
+        /** Value as a double, <code>null</code> if not parsed yet. */
+        private Double        doubleValue;
+
+        /**
+         * Creates a new value.
+         * @param string raw value.
+         */
+        Value(String string) {
+            this.string  = string;
+            booleanValue = ConfigurationSection.getBooleanValue(string);
+        }
+
+        /**
+         * Returns the raw value.
+         * @return the raw value.
+         */
+        String getString() {return string;}
+
+        /**
+         * Returns the value as a boolean.
+         * @return the value as a boolean.
+         */
+        boolean getBoolean() {return booleanValue;}
+
+        /**
+         * Returns the value as an integer.
+         * @return                       the value as an integer.
+         * @throws NumberFormatException if the value cannot be cast to an integer.
+         */
+        int getInteger() {
+            Integer buffer;
+
+            if((buffer = integerValue) == null)
+                integerValue = buffer = ConfigurationSection.getIntegerValue(string);
+            return buffer;
+        }
+
+        /**
+         * Returns the value as a long.
+         * @return                       the value as a long.
+         * @throws NumberFormatException if the value cannot be cast to a long.
+         */
+        long getLong() {
+            Long buffer;
+
+            if((buffer = longValue) == null)
+                longValue = buffer = ConfigurationSection.getLongValue(string);
+            return buffer;
+        }
+
+        /**
+         * Returns the value as a float.
+         * @return                       the value as a float.
+         * @throws NumberFormatException if the value cannot be cast to a float.
+         */
+        float getFloat() {
+            Float buffer;
+
+            if((buffer = floatValue) == null)
+                floatValue = buffer = ConfigurationSection.getFloatValue(string);
+            return buffer;
+        }
+
+        /**
+         * Returns the value as a double.
+         * @return                       the value as a double.
+         * @throws NumberFormatException if the value cannot be cast to a double.
+         */
+        double getDouble() {
+            Double buffer;
+
+            if((buffer = doubleValue) == null)
+                doubleValue = buffer = ConfigurationSection.getDoubleValue(string);
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.conf;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A test case for the lock-free variable lookups of {@link Configuration}, served by {@link ConfigurationSnapshot}.
+ */
+public class ConfigurationSnapshotTest {
+    // - Instance fields -----------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /** Configuration instance to test. */
+    private Configuration conf;
+
+
+
+    // - Initialisation ------------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /**
+     * Initialises the test case.
+     */
+    @BeforeMethod
+    public void setUp() {
+        conf = new Configuration();
+    }
+
+
+
+    // - Tests ---------------------------------------------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------------------------------------
+    /**
+     * Makes sure that lookups reflect modifications of the configuration.
+     */
+    @Test
+    public void testModifications() {
+        conf.setVariable("section.subsection.int", 42);
+        conf.setVariable("section.bool", true);
+        conf.setVariable("double", 1.5);
+
+        assert "42".equals(conf.getVariable("section.subsection.int"));
+        assert 42 == conf.getIntegerVariable("section.subsection.int");
+        assert 42 == conf.getLongVariable("section.subsection.int");
+        assert conf.getBooleanVariable("section.bool");
+        assert 1.5 == conf.getDoubleVariable("double");
+
+        conf.setVariable("section.subsection.int", 43);
+        assert 43 == conf.getIntegerVariable("section.subsection.int");
+
+        conf.removeVariable("section.bool");
+        assert !conf.isVariableSet("section.bool");
+        assert !conf.getBooleanVariable("section.bool");
+
+        // Empty values remove variables.
+        conf.setVariable("double", "  ");
+        assert null == conf.getVariable("double");
+
+        // Default values are stored.
+        assert 7 == conf.getVariable("section.default", 7);
+        assert 7 == conf.getIntegerVariable("section.default");
+        assert 7 == conf.getVariable("section.default", 8);
+
+        conf.clear();
+        assert null == conf.getVariable("section.subsection.int");
+    }
+
+    /**
+     * Makes sure that names with empty elements are resolved like their canonical counterpart.
+     */
+    @Test
+    public void testNonCanonicalNames() {
+        conf.setVariable("a..b", "value");
+        assert "value".equals(conf.getVariable("a.b"));
+        assert "value".equals(conf.getVariable(".a.b"));
+
+        conf.setVariable("a.c", 5);
+        assert 5 == conf.getIntegerVariable("a..c");
+
+        conf.removeVariable("a...b");
+        assert null == conf.getVariable("a.b");
+    }
+
+    /**
+     * Makes sure that listeners notified of a configuration being read can look up the new values.
+     * @throws Exception should not happen.
+     */
+    @Test
+    public void testReadEvents() throws Exception {
+        final List<String> values = new ArrayList<String>();
+
+        conf.addConfigurationListener(new ConfigurationListener() {
+            public void configurationChanged(ConfigurationEvent event) {
+                values.add(event.getVariable() + '=' + conf.getVariable(event.getVariable()));
+            }
+        });
+
+        conf.read(new StringReader("<?xml version=\"1.0\" encoding=\"UTF-8\"?><prefs><section><variable>value</variable></section></prefs>"));
+
+        assert values.size() == 1;
+        assert "section.variable=value".equals(values.get(0));
+    }
+
+    /**
+     * Makes sure that readers always see a value that was set, while variables are being modified concurrently.
+     * @throws Exception should not happen.
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final int        iterations = 10000;
+        final boolean[]  failed     = new boolean[1];
+        List<Thread>     readers    = new ArrayList<Thread>();
+
+        conf.setVariable("section.counter", 0);
+        for(int i = 0; i < 4; i++) {
+            Thread reader = new Thread() {
+                @Override
+                public void run() {
+                    int last = 0;
+                    while(last < iterations - 1) {
+                        int value = conf.getIntegerVariable("section.counter");
+                        // Values are set in increasing order and the variable is never unset.
+                        if(value < last) {
+                            failed[0] = true;
+                            return;
+                        }
+                        last = value;
+                    }
+                }
+            };
+            readers.add(reader);
+            reader.start();
+        }
+
+        for(int i = 1; i < iterations; i++) {
+            conf.setVariable("section.counter", i);
+            conf.setVariable("section.other" + (i % 10), i);
+        }
+
+        for(Thread reader : readers)
+            reader.join();
+
+        assert !failed[0];
+    }
+}
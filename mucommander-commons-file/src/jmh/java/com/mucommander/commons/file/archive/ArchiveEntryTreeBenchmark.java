@@ -0,0 +1,129 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time it takes to build the {@link ArchiveEntryTree} of an archive containing a million entries and to
+ * look up its last entry, and the heap retained by the tree, against the former implementation kept in
+ * {@link LegacyArchiveEntryTree}.
+ *
+ * <p>Two archive layouts are measured: a flat one, where all entries are files of a single folder, and a nested one,
+ * where entries are spread over 3 levels of 100 folders. The heap retained by the tree built by the last measured
+ * iteration, excluding the entries it was built from, is printed at the end of each iteration. It includes the index
+ * of the looked up folder, which the lookup creates. The serial collector is used as it accounts for the used heap
+ * more precisely than the default one.
+ * Run with <code>gradle :mucommander-commons-file:jmh</code>.</p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-XX:+UseSerialGC"})
+public class ArchiveEntryTreeBenchmark {
+
+    /** Number of folders at each level of the nested layout, which contains as many files per folder */
+    private final static int NB_NESTED_FOLDERS = 100;
+
+    /** Number of entries in an archive */
+    private final static int NB_ENTRIES = NB_NESTED_FOLDERS*NB_NESTED_FOLDERS*NB_NESTED_FOLDERS;
+
+    @State(Scope.Benchmark)
+    public static class Entries {
+        @Param({"flat", "nested"})
+        String layout;
+
+        ArchiveEntry[] entries;
+        // The last built tree, kept hard-referenced until its retained heap is measured
+        Object tree;
+        // Heap used before any tree is built
+        long usedHeap;
+
+        @Setup
+        public void setUp() {
+            entries = new ArchiveEntry[NB_ENTRIES];
+            for(int i=0; i<NB_ENTRIES; i++) {
+                String path;
+                if("flat".equals(layout))
+                    path = "folder/file"+i;
+                else
+                    path = "folder"+(i/(NB_NESTED_FOLDERS*NB_NESTED_FOLDERS))+"/folder"+(i/NB_NESTED_FOLDERS%NB_NESTED_FOLDERS)+"/file"+(i%NB_NESTED_FOLDERS);
+
+                entries[i] = new ArchiveEntry(path, false, 0, i, true);
+            }
+
+            usedHeap = getUsedHeap();
+        }
+
+        @TearDown(Level.Iteration)
+        public void printRetainedHeap() {
+            System.out.println();
+            System.out.println("Heap retained by the tree: "+((getUsedHeap()-usedHeap)/1024)+" KB");
+
+            tree = null;
+        }
+
+        private static long getUsedHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            for(int i=0; i<3; i++)
+                System.gc();
+
+            return runtime.totalMemory()-runtime.freeMemory();
+        }
+    }
+
+    @Benchmark
+    public void buildTree(Entries entries) {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        for(ArchiveEntry entry : entries.entries)
+            tree.addArchiveEntry(entry);
+
+        if(tree.findEntryNode(entries.entries[NB_ENTRIES-1].getPath())==null)
+            throw new IllegalStateException();
+
+        entries.tree = tree;
+    }
+
+    @Benchmark
+    public void buildLegacyTree(Entries entries) {
+        LegacyArchiveEntryTree tree = new LegacyArchiveEntryTree();
+        for(ArchiveEntry entry : entries.entries)
+            tree.addArchiveEntry(entry);
+
+        if(tree.findEntryNode(entries.entries[NB_ENTRIES-1].getPath())==null)
+            throw new IllegalStateException();
+
+        entries.tree = tree;
+    }
+}
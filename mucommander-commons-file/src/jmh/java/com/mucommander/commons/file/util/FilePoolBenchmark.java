@@ -0,0 +1,124 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileURL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link FileFactory#getFile(String)} and {@link FilePool} lookups from a single thread
+ * and from as many threads as there are processors. Without lock contention in the file pool, the throughput of the
+ * multi-threaded benchmarks should scale with the number of processors.
+ *
+ * <p>The resolved paths are deep and half of them have an archive extension, which makes {@link FileFactory} look up
+ * intermediate archive files in the pool. Run with <code>gradle :mucommander-commons-file:jmh</code>.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilePoolBenchmark {
+
+    /** Number of distinct paths that are resolved */
+    private final static int NB_PATHS = 4096;
+
+    /** Depth of the resolved paths */
+    private final static int PATH_DEPTH = 12;
+
+    @State(Scope.Benchmark)
+    public static class Paths {
+        String[] paths;
+        FileURL[] urls;
+        FilePool pool;
+        // Keep the pooled files hard-referenced so they are not garbage collected
+        AbstractFile[] files;
+
+        @Setup
+        public void setUp() throws IOException {
+            String root = FileFactory.getTemporaryFolder().getAbsolutePath(true);
+
+            paths = new String[NB_PATHS];
+            urls = new FileURL[NB_PATHS];
+            files = new AbstractFile[NB_PATHS];
+            pool = new FilePool();
+
+            for(int i=0; i<NB_PATHS; i++) {
+                StringBuilder sb = new StringBuilder(root);
+                for(int depth=0; depth<PATH_DEPTH; depth++)
+                    sb.append("folder").append(depth).append('/');
+                sb.append("file").append(i).append(i%2==0?".zip":".txt");
+
+                paths[i] = sb.toString();
+                files[i] = FileFactory.getFile(paths[i]);
+                urls[i] = files[i].getURL();
+                pool.put(urls[i], files[i]);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        int next() {
+            index = (index+1) & (NB_PATHS-1);
+            return index;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AbstractFile getFileSingleThread(Paths paths, Cursor cursor) throws IOException {
+        return FileFactory.getFile(paths.paths[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public AbstractFile getFileAllThreads(Paths paths, Cursor cursor) throws IOException {
+        return FileFactory.getFile(paths.paths[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AbstractFile poolGetSingleThread(Paths paths, Cursor cursor) {
+        return paths.pool.get(paths.urls[cursor.next()]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public AbstractFile poolGetAllThreads(Paths paths, Cursor cursor) {
+        return paths.pool.get(paths.urls[cursor.next()]);
+    }
+}
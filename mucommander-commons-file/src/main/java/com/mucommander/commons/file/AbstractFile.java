@@ -37,6 +37,9 @@ import com.mucommander.commons.file.archive.AbstractRWArchiveFile;
 import com.mucommander.commons.file.compat.CompatURLStreamHandler;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
+import com.mucommander.commons.file.util.ArrayDirectoryIterator;
+import com.mucommander.commons.file.util.FilteredDirectoryIterator;
+import com.mucommander.commons.io.BoundedInputStream;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.FileTransferError;
@@ -344,6 +347,25 @@ public abstract class AbstractFile implements FileAttributes {
 
         return in;
     }
+
+    /**
+     * Returns an <code>InputStream</code> to read <code>length</code> bytes of this file's contents, starting at the
+     * specified offset (in bytes). The returned stream ends after <code>length</code> bytes have been read, or sooner
+     * if the end of the file is reached. A <code>java.io.IOException</code> is thrown if the file doesn't exist.
+     *
+     * <p>This implementation bounds the stream returned by {@link #getInputStream(long)}. File implementations that can
+     * request a range of bytes, so that the bytes past the range are not transferred, should override this method.</p>
+     *
+     * @param offset the offset in bytes from the beginning of the file, must be >=0
+     * @param length the number of bytes to read
+     * @throws IOException if this file cannot be read or is a folder.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     * @return an <code>InputStream</code> to read the specified range of this file's contents
+     */
+    public InputStream getInputStream(long offset, long length) throws IOException, UnsupportedFileOperationException {
+        return new BoundedInputStream(getInputStream(offset), length, false);
+    }
 	
 
     /**
@@ -557,6 +579,40 @@ public abstract class AbstractFile implements FileAttributes {
         return filter==null?ls():filter.filter(ls());
     }
 
+    /**
+     * Returns a {@link DirectoryIterator} over the children files that this file contains. Unlike {@link #ls()}, the
+     * returned iterator may retrieve the children as it goes, allowing the first files to be processed before the
+     * whole folder has been listed, in constant memory. The iterator must be closed after use.
+     * For this operation to be successful, this file must be 'browsable', i.e. {@link #isBrowsable()} must return
+     * <code>true</code>.
+     *
+     * <p>This default implementation iterates over the array returned by {@link #ls()}. This method should be
+     * overridden by filesystems that are able to list folders incrementally.</p>
+     *
+     * @return an iterator over the children files that this file contains
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public DirectoryIterator iterateChildren() throws IOException, UnsupportedFileOperationException {
+        return new ArrayDirectoryIterator(ls());
+    }
+
+    /**
+     * Returns a {@link DirectoryIterator} over the children files that this file contains, filtering out files that
+     * do not match the specified FileFilter. See {@link #iterateChildren()} for more information.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @return an iterator over the children files that this file contains
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public DirectoryIterator iterateChildren(FileFilter filter) throws IOException, UnsupportedFileOperationException {
+        DirectoryIterator iterator = iterateChildren();
+        return filter==null?iterator:new FilteredDirectoryIterator(iterator, filter);
+    }
+
 
     /**
      * Changes this file's permissions to the specified permissions int.
@@ -1224,24 +1280,44 @@ public abstract class AbstractFile implements FileAttributes {
                 throw new FileTransferException(FileTransferError.WRITING_DESTINATION);
             }
 
-            AbstractFile children[];
+            DirectoryIterator children;
             try {
-                children = sourceFile.ls();
+                children = sourceFile.iterateChildren();
             }
             catch(IOException e) {
                 throw new FileTransferException(FileTransferError.READING_SOURCE);
             }
 
-            AbstractFile destChild;
-            for (AbstractFile child : children) {
+            try {
+                AbstractFile child;
+                AbstractFile destChild;
+                while(true) {
+                    try {
+                        if(!children.hasNext())
+                            break;
+                        child = children.next();
+                    }
+                    catch(IOException e) {
+                        throw new FileTransferException(FileTransferError.READING_SOURCE);
+                    }
+
+                    try {
+                        destChild = destFile.getDirectChild(child.getName());
+                    }
+                    catch (IOException e) {
+                        throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
+                    }
+
+                    copyRecursively(child, destChild);
+                }
+            }
+            finally {
                 try {
-                    destChild = destFile.getDirectChild(child.getName());
+                    children.close();
                 }
-                catch (IOException e) {
-                    throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
+                catch(IOException e) {
+                    // Not much we can do about it
                 }
-
-                copyRecursively(child, destChild);
             }
         }
         else {
@@ -1280,9 +1356,14 @@ public abstract class AbstractFile implements FileAttributes {
      */
     protected final void deleteRecursively(AbstractFile file) throws IOException, UnsupportedFileOperationException {
         if(file.isDirectory() && !file.isSymlink()) {
-            AbstractFile children[] = file.ls();
-            for (AbstractFile child : children)
-                deleteRecursively(child);
+            DirectoryIterator children = file.iterateChildren();
+            try {
+                while(children.hasNext())
+                    deleteRecursively(children.next());
+            }
+            finally {
+                children.close();
+            }
         }
 
         file.delete();
@@ -31,6 +31,7 @@ import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.local.LocalFile;
+import com.mucommander.commons.file.util.ArrayDirectoryIterator;
 
 /**
  * CachedFile is a ProxyFile that caches the return values of most {@link AbstractFile} getter methods. This allows
@@ -510,4 +511,22 @@ public class CachedFile extends ProxyFile {
 
         return files;
     }
+
+    @Override
+    public DirectoryIterator iterateChildren() throws IOException, UnsupportedFileOperationException {
+        // Files need to be wrapped into CachedFile instances if recursion is enabled, go through ls() in that case
+        if(recurseInstances)
+            return new ArrayDirectoryIterator(ls());
+
+        return file.iterateChildren();
+    }
+
+    @Override
+    public DirectoryIterator iterateChildren(FileFilter filter) throws IOException, UnsupportedFileOperationException {
+        // Files need to be wrapped into CachedFile instances if recursion is enabled, go through ls() in that case
+        if(recurseInstances)
+            return new ArrayDirectoryIterator(ls(filter));
+
+        return file.iterateChildren(filter);
+    }
 }
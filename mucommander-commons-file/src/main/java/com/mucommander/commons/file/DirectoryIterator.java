@@ -0,0 +1,55 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Iterates over the children of a folder, one at a time, as they are retrieved from the underlying filesystem.
+ * Unlike {@link AbstractFile#ls()} which returns only once the whole folder has been listed, a
+ * <code>DirectoryIterator</code> allows the first files to be processed right away, and folders with a very large
+ * number of files to be traversed without holding all of them in memory.
+ *
+ * <p>A <code>DirectoryIterator</code> may hold resources such as a native directory handle or a network connection:
+ * it must always be closed once it is no longer needed, even if it hasn't been iterated through completely.
+ * The order in which files are returned is unspecified.</p>
+ *
+ * @see AbstractFile#iterateChildren()
+ */
+public interface DirectoryIterator extends Closeable {
+
+    /**
+     * Returns <code>true</code> if there are more files to be returned by {@link #next()}. This method may block
+     * while the next files are being retrieved.
+     *
+     * @return <code>true</code> if there are more files to be returned by {@link #next()}
+     * @throws IOException if an error occurred while retrieving the next files
+     */
+    boolean hasNext() throws IOException;
+
+    /**
+     * Returns the next file.
+     *
+     * @return the next file
+     * @throws IOException if an error occurred while retrieving the next file
+     * @throws java.util.NoSuchElementException if there are no more files
+     */
+    AbstractFile next() throws IOException;
+}
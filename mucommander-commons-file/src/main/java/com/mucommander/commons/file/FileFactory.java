@@ -20,11 +20,12 @@
 package com.mucommander.commons.file;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -104,7 +105,7 @@ public class FileFactory {
     private static ArchiveFormatProvider[] archiveFormatProviders;
 
     /** Contains a FilePool instance for each registered scheme */
-    private static final HashMap<String, FilePool> FILE_POOL_MAP = new HashMap<String, FilePool>();
+    private static final Map<String, FilePool> FILE_POOL_MAP = new ConcurrentHashMap<String, FilePool>();
 
     /** System temp directory */
     private static final AbstractFile TEMP_DIRECTORY;
@@ -237,6 +238,17 @@ public class FileFactory {
         return getProtocolProvider(protocol)!=null;
     }
 
+    /**
+     * Returns the pool of file instances of the given protocol, <code>null</code> if the protocol is not registered.
+     * The returned pool is mostly of interest for its diagnostic counters (hits, misses, evictions).
+     *
+     * @param protocol identifier of the protocol whose file pool should be retrieved.
+     * @return the pool of file instances of the given protocol, <code>null</code> if the protocol is not registered.
+     */
+    public static FilePool getFilePool(String protocol) {
+        return FILE_POOL_MAP.get(protocol.toLowerCase());
+    }
+
     /**
      * Returns an iterator on all known protocol names.
      *
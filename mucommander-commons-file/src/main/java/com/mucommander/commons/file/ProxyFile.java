@@ -340,6 +340,11 @@ public abstract class ProxyFile extends AbstractFile {
         return file.getInputStream(offset);
     }
 
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException, UnsupportedFileOperationException {
+        return file.getInputStream(offset, length);
+    }
+
     @Override
     public void copyStream(InputStream in, boolean append, long length) throws FileTransferException {
         file.copyStream(in, append, length);
@@ -355,6 +360,16 @@ public abstract class ProxyFile extends AbstractFile {
         return file.ls(filter);
     }
 
+    @Override
+    public DirectoryIterator iterateChildren() throws IOException, UnsupportedFileOperationException {
+        return file.iterateChildren();
+    }
+
+    @Override
+    public DirectoryIterator iterateChildren(FileFilter filter) throws IOException, UnsupportedFileOperationException {
+        return file.iterateChildren(filter);
+    }
+
     @Override
     public void mkfile() throws IOException, UnsupportedFileOperationException {
         file.mkfile();
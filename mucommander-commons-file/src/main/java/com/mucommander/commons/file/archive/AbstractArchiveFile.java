@@ -20,6 +20,7 @@
 package com.mucommander.commons.file.archive;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FileURL;
@@ -27,11 +28,11 @@ import com.mucommander.commons.file.ProxyFile;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
+import com.mucommander.commons.file.util.ArrayDirectoryIterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Vector;
@@ -187,12 +188,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     protected void removeFromEntriesTree(ArchiveEntry entry) throws IOException, UnsupportedFileOperationException {
         checkEntriesTree();
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
+        ArchiveEntryNode entryNode = entryTreeRoot.findEntryNode(entry.getPath());
 
-        if(entryNode!=null) {
-            DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
-            parentNode.remove(entryNode);
-        }
+        if(entryNode!=null)
+            entryNode.getParent().remove(entryNode);
     }
 
     /**
@@ -218,7 +217,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         if(!entryFile.isBrowsable())
             throw new IOException();
 
-        DefaultMutableTreeNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
+        ArchiveEntryNode matchNode = entryTreeRoot.findEntryNode(entryFile.getEntry().getPath());
         if(matchNode==null)
             throw new IOException();
 
@@ -231,7 +230,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
      * underlying file protocol.
      */
-    private AbstractFile[] ls(DefaultMutableTreeNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException, UnsupportedFileOperationException {
+    private AbstractFile[] ls(ArchiveEntryNode treeNode, AbstractFile parentFile, FilenameFilter filenameFilter, FileFilter fileFilter) throws IOException, UnsupportedFileOperationException {
         AbstractFile files[];
         int nbChildren = treeNode.getChildCount();
 
@@ -240,14 +239,14 @@ public abstract class AbstractArchiveFile extends ProxyFile {
             files = new AbstractFile[nbChildren];
 
             for(int c=0; c<nbChildren; c++) {
-                files[c] = getArchiveEntryFile((ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject()), parentFile);
+                files[c] = getArchiveEntryFile(treeNode.getChildAt(c).getEntry(), parentFile);
             }
         }
         // Use provided FilenameFilter and temporarily store created entry files that match the filter in a Vector
         else {
             Vector<AbstractFile> filesV = new Vector<AbstractFile>();
             for(int c=0; c<nbChildren; c++) {
-                ArchiveEntry entry = (ArchiveEntry)(((DefaultMutableTreeNode)treeNode.getChildAt(c)).getUserObject());
+                ArchiveEntry entry = treeNode.getChildAt(c).getEntry();
                 if(!filenameFilter.accept(entry.getName()))
                     continue;
 
@@ -345,7 +344,7 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         entryPath = entryPath.replace('\\', '/');
 
         // Find the entry node corresponding to the given path
-        DefaultMutableTreeNode entryNode = entryTreeRoot.findEntryNode(entryPath);
+        ArchiveEntryNode entryNode = entryTreeRoot.findEntryNode(entryPath);
 
         if(entryNode==null) {
             int depth = ArchiveEntry.getDepth(entryPath);
@@ -378,10 +377,10 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * @param entryNode tree node corresponding to the entry for which to return a file
      * @return an {@link AbstractFile} instance corresponding to the given entry node
      */
-    protected AbstractFile getArchiveEntryFile(DefaultMutableTreeNode entryNode) throws IOException {
-        DefaultMutableTreeNode parentNode = (DefaultMutableTreeNode)entryNode.getParent();
+    protected AbstractFile getArchiveEntryFile(ArchiveEntryNode entryNode) throws IOException {
+        ArchiveEntryNode parentNode = entryNode.getParent();
         return getArchiveEntryFile(
-                (ArchiveEntry)entryNode.getUserObject(),
+                entryNode.getEntry(),
                 parentNode==entryTreeRoot
                     ?this
                     :getArchiveEntryFile(parentNode)
@@ -527,6 +526,44 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         return ls(entryTreeRoot, this, null, filter);
     }
 
+    /**
+     * This method is overridden to iterate over the topmost entries contained by this archive. The entries tree is
+     * held in memory, so there is nothing to be gained from listing entries incrementally: this method simply
+     * iterates over the array returned by {@link #ls()}.
+     *
+     * @return an iterator over the topmost entries contained by this archive
+     * @throws IOException if the archive entries could not be listed
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    @Override
+    public DirectoryIterator iterateChildren() throws IOException, UnsupportedFileOperationException {
+        // Delegate to the ancestor if this file isn't actually an archive
+        if(!isArchive())
+            return super.iterateChildren();
+
+        return new ArrayDirectoryIterator(ls());
+    }
+
+    /**
+     * This method is overridden to iterate over the topmost entries contained by this archive, filtering out
+     * the ones that do not match the specified {@link FileFilter}. See {@link #iterateChildren()} for more information.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @return an iterator over the topmost entries contained by this archive
+     * @throws IOException if the archive entries could not be listed
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    @Override
+    public DirectoryIterator iterateChildren(FileFilter filter) throws IOException, UnsupportedFileOperationException {
+        // Delegate to the ancestor if this file isn't actually an archive
+        if(!isArchive())
+            return super.iterateChildren(filter);
+
+        return new ArrayDirectoryIterator(ls(filter));
+    }
+
     // Note: do not override #isDirectory() to always return true, as AbstractArchiveFile instances may be created when
     // the file does not exist yet, and then be mkdir(): in that case, the file will be a directory and not an archive.
 }
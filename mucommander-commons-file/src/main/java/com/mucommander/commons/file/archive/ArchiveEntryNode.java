@@ -0,0 +1,379 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.file.archive;
+
+/**
+ * A node of an {@link ArchiveEntryTree}, holding an {@link ArchiveEntry}, a pointer to its parent node and, for
+ * directories, its children.
+ *
+ * <p>To keep the tree compact, only entries that have children are held by a node object: the other entries, which
+ * are most of them, are stored as is in their parent's array of children. The node of such an entry is created when
+ * it is requested, e.g. by {@link #getChildAt(int)}, so two nodes of the same leaf entry may not be the same instance;
+ * compare their {@link #getEntry() entries} instead. A leaf entry is turned into a node object once a child is added
+ * to it.</p>
+ *
+ * <p>Children are kept in the order in which they were added. They can be looked up by name in constant time:
+ * once a node has more than {@link #INDEX_THRESHOLD} children, their positions are indexed in an open-addressing
+ * hash table. Nodes with fewer children are simply scanned. The table is brought up to date with the children when
+ * a child is looked up rather than when it is added, so that files, which are added without being looked up, are
+ * indexed in bulk. Names are not stored: the name of an entry is the last segment of its path, which is compared in
+ * place against the looked up path.</p>
+ *
+ * @see ArchiveEntryTree
+ */
+public class ArchiveEntryNode {
+
+    /** Number of children above which children are indexed by name */
+    final static int INDEX_THRESHOLD = 8;
+
+    /** The entry this node holds, null for the root node */
+    private ArchiveEntry entry;
+    /** Parent node, null for the root node */
+    private ArchiveEntryNode parent;
+
+    /** Children in the order they were added: ArchiveEntryNode instances for entries that have children, ArchiveEntry
+     * instances for the others. null if this node has never had any. */
+    private Object children[];
+    /** Number of children */
+    private int nbChildren;
+    /** Hash table of the positions of the children plus one, 0 for empty slots. Its length is a power of 2.
+     * null if children are not indexed. */
+    private volatile int index[];
+    /** Number of children that are indexed, the first ones */
+    private volatile int nbIndexedChildren;
+
+    /**
+     * Creates a new node holding the given entry.
+     *
+     * @param entry the entry to hold, null for the root node
+     */
+    ArchiveEntryNode(ArchiveEntry entry) {
+        this.entry = entry;
+    }
+
+    /**
+     * Creates a new child node of the given parent, holding the given entry.
+     */
+    private ArchiveEntryNode(ArchiveEntry entry, ArchiveEntryNode parent) {
+        this.entry = entry;
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the entry this node holds, <code>null</code> for the root node.
+     *
+     * @return the entry this node holds
+     */
+    public ArchiveEntry getEntry() {
+        return entry;
+    }
+
+    /**
+     * Returns the name of the entry this node holds: the last segment of its path, without any trailing slash.
+     *
+     * @return the name of the entry this node holds
+     */
+    public String getName() {
+        if(entry==null)
+            return "";
+
+        String path = entry.getPath();
+        int end = getNameEnd(path);
+        return path.substring(getNameStart(path, end), end);
+    }
+
+    /**
+     * Returns this node's parent, <code>null</code> for the root node.
+     *
+     * @return this node's parent
+     */
+    public ArchiveEntryNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the number of direct children of this node.
+     *
+     * @return the number of direct children of this node
+     */
+    public int getChildCount() {
+        return nbChildren;
+    }
+
+    /**
+     * Returns the child node at the specified index.
+     *
+     * @param index index of the child, between 0 and {@link #getChildCount()} (exclusive)
+     * @return the child node at the specified index
+     * @throws ArrayIndexOutOfBoundsException if the index is out of range
+     */
+    public ArchiveEntryNode getChildAt(int index) {
+        if(index>=nbChildren)
+            throw new ArrayIndexOutOfBoundsException(index);
+
+        Object child = children[index];
+        return child instanceof ArchiveEntryNode ? (ArchiveEntryNode)child : new ArchiveEntryNode((ArchiveEntry)child, this);
+    }
+
+    /**
+     * Returns the direct child with the given name, <code>null</code> if there is none. If several children have the
+     * same name, the first one that was added is returned.
+     *
+     * @param name name of the child to look up, without any trailing slash
+     * @return the direct child with the given name, null if there is none
+     */
+    public ArchiveEntryNode getChild(String name) {
+        int position = findChild(name, 0, name.length());
+        return position==-1 ? null : getChildAt(position);
+    }
+
+    /**
+     * Returns the position of the direct child whose name is the given segment of a path, <code>-1</code> if there
+     * is none. If several children have the same name, the position of the first one that was added is returned.
+     *
+     * @param path a path containing the name to look up
+     * @param start offset of the name in the path
+     * @param end offset of the end of the name in the path (exclusive)
+     * @return the position of the direct child with the given name, -1 if there is none
+     */
+    int findChild(String path, int start, int end) {
+        if(nbChildren>INDEX_THRESHOLD) {
+            int index[] = nbIndexedChildren==nbChildren ? this.index : updateIndex();
+            int mask = index.length-1;
+            int position;
+            for(int i=spread(hash(path, start, end))&mask; (position=index[i])!=0; i=(i+1)&mask) {
+                if(nameEquals(getChildEntry(position-1).getPath(), path, start, end))
+                    return position-1;
+            }
+
+            return -1;
+        }
+
+        for(int i=0; i<nbChildren; i++) {
+            if(nameEquals(getChildEntry(i).getPath(), path, start, end))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the entry of the child at the given position.
+     */
+    private ArchiveEntry getChildEntry(int position) {
+        Object child = children[position];
+        return child instanceof ArchiveEntryNode ? ((ArchiveEntryNode)child).entry : (ArchiveEntry)child;
+    }
+
+    /**
+     * Returns the node object of the child at the given position, creating it if the child's entry is stored as is,
+     * so that children can be added to it.
+     *
+     * @param position position of the child
+     * @return the node object of the child at the given position
+     */
+    ArchiveEntryNode getChildNode(int position) {
+        Object child = children[position];
+        if(child instanceof ArchiveEntryNode)
+            return (ArchiveEntryNode)child;
+
+        ArchiveEntryNode node = new ArchiveEntryNode((ArchiveEntry)child, this);
+        children[position] = node;
+
+        return node;
+    }
+
+    /**
+     * Replaces the entry of the child at the given position. The new entry must have the same name.
+     *
+     * @param position position of the child
+     * @param entry the new entry
+     */
+    void setChildEntry(int position, ArchiveEntry entry) {
+        Object child = children[position];
+        if(child instanceof ArchiveEntryNode)
+            ((ArchiveEntryNode)child).entry = entry;
+        else
+            children[position] = entry;
+    }
+
+    /**
+     * Adds the given entry as the last child of this node.
+     *
+     * @param entry the entry to add
+     */
+    void addChild(ArchiveEntry entry) {
+        add(entry);
+    }
+
+    /**
+     * Adds a node holding the given entry as the last child of this node, and returns it.
+     *
+     * @param entry the entry to add
+     * @return the node that was added
+     */
+    ArchiveEntryNode addChildNode(ArchiveEntry entry) {
+        ArchiveEntryNode node = new ArchiveEntryNode(entry, this);
+        add(node);
+
+        return node;
+    }
+
+    /**
+     * Adds the given node or entry as the last child of this node.
+     */
+    private void add(Object child) {
+        if(children==null)
+            children = new Object[2];
+        else if(nbChildren==children.length) {
+            Object newChildren[] = new Object[nbChildren*2];
+            System.arraycopy(children, 0, newChildren, 0, nbChildren);
+            children = newChildren;
+        }
+
+        children[nbChildren++] = child;
+    }
+
+    /**
+     * Removes the given direct child from this node. This method has no effect if the given node is not a child
+     * of this node.
+     *
+     * @param child the node to remove
+     */
+    void remove(ArchiveEntryNode child) {
+        for(int i=0; i<nbChildren; i++) {
+            if(children[i]==child || children[i]==child.entry) {
+                System.arraycopy(children, i+1, children, i, nbChildren-i-1);
+                children[--nbChildren] = null;
+                child.parent = null;
+
+                // Positions have changed, the index will be recreated on the next lookup
+                index = null;
+                nbIndexedChildren = 0;
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Indexes the children that were added since the last lookup, recreating the index if it would become more than
+     * half full. This method is synchronized as it may be called by concurrent lookups.
+     *
+     * @return the updated index
+     */
+    private synchronized int[] updateIndex() {
+        int index[] = this.index;
+        int from = nbIndexedChildren;
+        if(index==null || nbChildren*2>index.length) {
+            index = new int[Integer.highestOneBit(nbChildren*4-1)];
+            from = 0;
+        }
+
+        for(int i=from; i<nbChildren; i++)
+            addToIndex(index, i);
+
+        this.index = index;
+        nbIndexedChildren = nbChildren;
+
+        return index;
+    }
+
+    /**
+     * Adds the child at the given position to the given index, unless a child with the same name is already indexed.
+     */
+    private void addToIndex(int index[], int position) {
+        String path = getChildEntry(position).getPath();
+        int end = getNameEnd(path);
+        int start = getNameStart(path, end);
+
+        int mask = index.length-1;
+        int indexed;
+        int i;
+        for(i=spread(hash(path, start, end))&mask; (indexed=index[i])!=0; i=(i+1)&mask) {
+            if(nameEquals(getChildEntry(indexed-1).getPath(), path, start, end))
+                return;
+        }
+
+        index[i] = position+1;
+    }
+
+    /**
+     * Returns <code>true</code> if the name in the given entry path is equal to the given segment of a path.
+     */
+    private static boolean nameEquals(String entryPath, String path, int start, int end) {
+        int nameEnd = getNameEnd(entryPath);
+        int nameStart = getNameStart(entryPath, nameEnd);
+
+        return nameEnd-nameStart==end-start && entryPath.regionMatches(nameStart, path, start, end-start);
+    }
+
+    /**
+     * Returns the offset of the end of the name in the given entry path, i.e. excluding any trailing slash.
+     *
+     * @param path an entry path
+     * @return the offset of the end of the name in the given entry path
+     */
+    static int getNameEnd(String path) {
+        int end = path.length();
+        if(end>0 && path.charAt(end-1)=='/')
+            end--;
+
+        return end;
+    }
+
+    /**
+     * Returns the offset of the name in the given entry path, i.e. the offset that follows the last slash preceding
+     * the end of the name.
+     *
+     * @param path an entry path
+     * @param end the offset of the end of the name, as returned by {@link #getNameEnd(String)}
+     * @return the offset of the name in the given entry path
+     */
+    static int getNameStart(String path, int end) {
+        return end==0 ? 0 : path.lastIndexOf('/', end-1)+1;
+    }
+
+    /**
+     * Returns the hash code of the given segment of a path, equal to the hash code of the corresponding substring.
+     */
+    private static int hash(String path, int start, int end) {
+        int hash = 0;
+        for(int i=start; i<end; i++)
+            hash = 31*hash + path.charAt(i);
+
+        return hash;
+    }
+
+    /**
+     * Spreads the higher bits of a hash code to the lower ones, which are the ones used by the index.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash>>>16);
+    }
+
+    /**
+     * Returns a string representation of this node, the path of the entry it holds.
+     */
+    @Override
+    public String toString() {
+        return entry==null?"":entry.getPath();
+    }
+}
@@ -19,26 +19,27 @@
 
 package com.mucommander.commons.file.archive;
 
-import com.mucommander.commons.file.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.tree.DefaultMutableTreeNode;
-
 /**
  * Stores archive entries and organizes them in a tree structure that maps entries in the way they are organized
  * inside the archive. An instance of <code>ArchiveEntryTree</code> also acts as the root node: all entry nodes
  * are children of it (direct or indirect).
  *
+ * <p>Nodes are looked up one path segment at a time, each directory node indexing its children by name, so that
+ * adding or finding an entry does not depend on the number of entries its folder contains.</p>
+ *
  * @author Maxence Bernard
  */
-public class ArchiveEntryTree extends DefaultMutableTreeNode {
+public class ArchiveEntryTree extends ArchiveEntryNode {
     private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveEntryTree.class);
 
     /**
      * Creates a new empty tree.
      */
     public ArchiveEntryTree() {
+        super(null);
     }
 
     /**
@@ -50,52 +51,43 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
         String entryPath = entry.getPath();
         int entryDepth = entry.getDepth();
         int slashPos = 0;
-        DefaultMutableTreeNode node = this;
+        ArchiveEntryNode node = this;
         for(int d=1; d<=entryDepth; d++) {
-            if(d==entryDepth && !entry.isDirectory()) {
-                // Create a leaf node for the entry
-                entry.setExists(true);      // the entry has to exist
-                node.add(new DefaultMutableTreeNode(entry, true));
-                break;
-            }
-
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = node.getChildCount();
-            DefaultMutableTreeNode childNode = null;
-            boolean matchFound = false;
-            for(int c=0; c<nbChildren; c++) {
-                childNode = (DefaultMutableTreeNode)node.getChildAt(c);
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found a match
-                    matchFound = true;
+            if(d==entryDepth) {
+                if(!entry.isDirectory()) {
+                    // Add the entry as a leaf
+                    entry.setExists(true);      // the entry has to exist
+                    node.addChild(entry);
                     break;
                 }
-            }
 
-            if(matchFound) {
-                if(d==entryDepth) {
-                    LOGGER.trace("Replacing entry for node "+childNode);
+                // Name comparison is 'trailing slash insensitive'
+                int segmentEnd = getNameEnd(entryPath);
+                int position = node.findChild(entryPath, getNameStart(entryPath, segmentEnd), segmentEnd);
+                if(position!=-1) {
+                    LOGGER.trace("Replacing entry for node "+entryPath);
                     // Replace existing entry
-                    childNode.setUserObject(entry);
+                    node.setChildEntry(position, entry);
                 }
                 else {
-                    node = childNode;
+                    // Add the entry as a leaf
+                    entry.setExists(true);      // the entry has to exist
+                    node.addChild(entry);
                 }
+                break;
+            }
+
+            int segmentStart = slashPos;
+            slashPos = entryPath.indexOf('/', slashPos)+1;
+
+            int position = node.findChild(entryPath, segmentStart, slashPos-1);
+            if(position!=-1) {
+                node = node.getChildNode(position);
             }
             else {
-                if(d==entryDepth) {
-                    // Create a leaf node for the entry
-                    entry.setExists(true);      // the entry has to exist
-                    node.add(new DefaultMutableTreeNode(entry, true));
-                }
-                else {
-                    LOGGER.trace("Creating node for "+subPath);
-                    childNode = new DefaultMutableTreeNode(new ArchiveEntry(subPath, true, entry.getDate(), 0, true), true);
-                    node.add(childNode);
-                    node = childNode;
-                }
+                String subPath = entryPath.substring(0, slashPos);
+                LOGGER.trace("Creating node for "+subPath);
+                node = node.addChildNode(new ArchiveEntry(subPath, true, entry.getDate(), 0, true));
             }
         }
     }
@@ -109,35 +101,33 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
      * archive's root, i.e. not start with a leading '/', otherwise the entry will not be found. Trailing separators
      * are ignored when paths are compared, for example the path 'temp' will match the entry 'temp/'.
      *
+     * <p>Nodes of entries that have no children are created by this method, so two calls with the same path may not
+     * return the same instance, see {@link ArchiveEntryNode}.</p>
+     *
      * @param entryPath the path to the entry to look up in this tree
      * @return the node that corresponds to the specified entry path
      */
-    public DefaultMutableTreeNode findEntryNode(String entryPath) {
+    public ArchiveEntryNode findEntryNode(String entryPath) {
         int entryDepth = ArchiveEntry.getDepth(entryPath);
-        int slashPos = 0;
-        DefaultMutableTreeNode currentNode = this;
-        for(int d=1; d<=entryDepth; d++) {
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
+        if(entryDepth==0)
+            return this;
 
-            int nbChildren = currentNode.getChildCount();
-            DefaultMutableTreeNode matchNode = null;
-            for(int c=0; c<nbChildren; c++) {
-                DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currentNode.getChildAt(c);
-
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found the node, let's return it
-                    matchNode = childNode;
-                    break;
-                }
-            }
+        int slashPos = 0;
+        ArchiveEntryNode currentNode = this;
+        for(int d=1; d<entryDepth; d++) {
+            int segmentStart = slashPos;
+            slashPos = entryPath.indexOf('/', slashPos)+1;
 
-            if(matchNode==null)
+            int position = currentNode.findChild(entryPath, segmentStart, slashPos-1);
+            if(position==-1)
                 return null;    // No node maching the provided path, return null
 
-            currentNode = matchNode;
+            currentNode = currentNode.getChildAt(position);
         }
 
-        return currentNode;
+        int segmentEnd = getNameEnd(entryPath);
+        int position = currentNode.findChild(entryPath, getNameStart(entryPath, segmentEnd), segmentEnd);
+
+        return position==-1 ? null : currentNode.getChildAt(position);
     }
 }
@@ -28,7 +28,6 @@ import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.CounterOutputStream;
 
-import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -123,7 +122,7 @@ public class RWArchiveEntryFile extends AbstractArchiveEntryFile {
         if(isDirectory()) {
             ArchiveEntryTree tree = rwArchiveFile.getArchiveEntryTree();
             if(tree!=null) {
-                DefaultMutableTreeNode node = tree.findEntryNode(entry.getPath());
+                ArchiveEntryNode node = tree.findEntryNode(entry.getPath());
                 if(node!=null && node.getChildCount()>0)
                     throw new IOException();
             }
@@ -24,7 +24,8 @@ import java.util.Collection;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
-import com.mucommander.commons.util.CircularByteBuffer;
+import com.mucommander.commons.io.RingBufferPipe;
+import com.mucommander.commons.util.IOScheduler;
 
 import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
@@ -72,29 +73,25 @@ public class RarFile {
         if (header.isSplitAfter())
     		throw new RarException(RarExceptionType.notImplementedYet);
     	
-        final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
+        // The pipe is bounded: the extraction blocks while the reader is behind, and fails if the reader gives up
+        final RingBufferPipe pipe = new RingBufferPipe();
         
-        new Thread(
+        IOScheduler.execute(IOScheduler.Pool.SUBTASK, "RarFile extractor",
     		    new Runnable(){
     		      public void run(){
     		    	try {
-						archive.extractFile(header, cbb.getOutputStream());
+						archive.extractFile(header, pipe.getOutputStream());
 					} catch (RarException e) {
+						// Reading the entry fails with the cause of the error
 						if (e.getType() != RarExceptionType.crcError)
-							e.printStackTrace();
+							pipe.cancel(new IOException(e));
 					}
     		    	finally {
-    		    		try {
-							cbb.getOutputStream().close();
-						} catch (IOException e1) {
-							// TODO Auto-generated catch block
-							e1.printStackTrace();
-						}
+    		    		pipe.closeWrite();
     		    	}
     		      }
-    		    }
-    		  ).start();
+    		    });
         
-        return cbb.getInputStream();
+        return pipe.getInputStream();
     }
 }
@@ -20,6 +20,9 @@ package com.mucommander.commons.file.archive.sevenzip;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
 import org.slf4j.Logger;
@@ -30,38 +33,141 @@ import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.archive.AbstractROArchiveFile;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
-import com.mucommander.commons.file.archive.WrapperArchiveEntryIterator;
 import com.mucommander.commons.file.archive.sevenzip.provider.SevenZip.Archive.IInArchive;
 import com.mucommander.commons.file.archive.sevenzip.provider.SevenZip.Archive.SevenZipEntry;
 import com.mucommander.commons.file.archive.sevenzip.provider.SevenZip.Archive.SevenZip.Handler;
-import com.mucommander.commons.util.CircularByteBuffer;
 
 
 /**
  * SevenZipArchiveFile provides read access to archives in the 7zip format.
  *
+ * <p>The archive is opened once and kept open for as long as the archive file does not change, along with a map of
+ * the entries' path to their index in the archive. Entries are extracted by a {@link SevenZipExtractor}: when the
+ * archive's entries are read in the iterator's order (unpack operation), all of them are extracted in a single pass
+ * instead of each entry's solid block being decompressed again for every entry.</p>
+ *
  * @author Arik Hadas, Maxence Bernard
  */
 public class SevenZipArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(SevenZipArchiveFile.class);
 
+    /** The opened archive, shared by extractions that do not run concurrently */
     private IInArchive sevenZipFile;
-	
-	public SevenZipArchiveFile(AbstractFile file) throws IOException {		
+
+    /** The date of the archive file when the current IInArchive was opened */
+    private long lastSevenZipFileDate;
+
+    /** True while the current IInArchive is used by an extraction */
+    private boolean sevenZipFileInUse;
+
+    /** Maps the path of the archive's entries to their index in the archive */
+    private Map<String, Integer> entryIndices;
+
+
+	public SevenZipArchiveFile(AbstractFile file) throws IOException {
 		super(file);
 	}
-	
+
+    /**
+     * Opens the archive file and reads its database of entries.
+     *
+     * @return the opened archive
+     * @throws IOException if the archive could not be opened
+     */
 	private IInArchive openSevenZipFile() throws IOException {
-		if (sevenZipFile == null) {
-			MuRandomAccessFile in = new MuRandomAccessFile(file);
-//			MyRandomAccessFile in = new MyRandomAccessFile(file.getAbsolutePath(), "rw");
-			sevenZipFile = new Handler();
-			if (sevenZipFile.Open(in) != 0)
-				throw new IOException("Error while opening 7zip archive " + file.getAbsolutePath());
-		}
+        MuRandomAccessFile in = new MuRandomAccessFile(file);
+        IInArchive sevenZipFile = new Handler();
+        if (sevenZipFile.Open(in) != 0) {
+            closeSevenZipFile(sevenZipFile);
+            throw new IOException("Error while opening 7zip archive " + file.getAbsolutePath());
+        }
+
         return sevenZipFile;
     }
-    
+
+    /**
+     * Closes the given archive, swallowing any error.
+     *
+     * @param sevenZipFile the archive to close
+     */
+    private void closeSevenZipFile(IInArchive sevenZipFile) {
+        try {
+            sevenZipFile.close();
+        }
+        catch(Exception e) {
+            LOGGER.debug("Error while closing 7zip archive "+file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Checks if the opened archive is up-to-date, i.e. has been opened and the archive file has not changed since.
+     * If one of those 2 conditions are not met, (re)opens the archive and maps the path of its entries to their index.
+     *
+     * @return the opened archive
+     * @throws IOException if an error occurred while opening the archive
+     */
+    private synchronized IInArchive checkSevenZipFile() throws IOException {
+        long currentDate = file.getDate();
+
+        if(sevenZipFile==null || currentDate!=lastSevenZipFileDate) {
+            IInArchive newSevenZipFile = openSevenZipFile();
+
+            // An archive that is in use is closed when released
+            if(sevenZipFile!=null && !sevenZipFileInUse)
+                closeSevenZipFile(sevenZipFile);
+
+            sevenZipFile = newSevenZipFile;
+            sevenZipFileInUse = false;
+            lastSevenZipFileDate = currentDate;
+
+            int nbEntries = sevenZipFile.size();
+            entryIndices = new HashMap<String, Integer>(Math.max(16, nbEntries*4/3+1));
+            for(int i=0; i<nbEntries; i++)
+                entryIndices.put(sevenZipFile.getEntry(i).getName(), i);
+        }
+
+        return sevenZipFile;
+    }
+
+    /**
+     * Returns an opened archive for the exclusive use of an extraction, until it is given back with
+     * {@link #releaseSevenZipFile(IInArchive)}. The shared archive is returned if it is not being used by another
+     * extraction, otherwise another one is opened.
+     *
+     * @return an opened archive
+     * @throws IOException if an error occurred while opening the archive
+     */
+    IInArchive acquireSevenZipFile() throws IOException {
+        synchronized(this) {
+            checkSevenZipFile();
+
+            if(!sevenZipFileInUse) {
+                sevenZipFileInUse = true;
+                return sevenZipFile;
+            }
+        }
+
+        // Opened archives cannot be used by concurrent extractions
+        return openSevenZipFile();
+    }
+
+    /**
+     * Gives back an archive that was returned by {@link #acquireSevenZipFile()}. The archive is closed unless it is
+     * the shared one.
+     *
+     * @param sevenZipFile the archive to give back
+     */
+    void releaseSevenZipFile(IInArchive sevenZipFile) {
+        synchronized(this) {
+            if(sevenZipFile==this.sevenZipFile) {
+                sevenZipFileInUse = false;
+                return;
+            }
+        }
+
+        closeSevenZipFile(sevenZipFile);
+    }
+
     /**
      * Creates and return an {@link ArchiveEntry()} whose attributes are fetched from the given {@link SevenZipEntry}
      *
@@ -72,130 +178,54 @@ public class SevenZipArchiveFile extends AbstractROArchiveFile {
 		return new ArchiveEntry(entry.getName(), entry.isDirectory(), entry.getTime(), entry.getSize(), true);
 	}
 
-    
+
     //////////////////////////////////////////
     // AbstractROArchiveFile implementation //
     //////////////////////////////////////////
 
     @Override
-    public InputStream getEntryInputStream(final ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
-		final IInArchive sevenZipFile = openSevenZipFile();
-		
-/*		ByteArrayOutputStream os = new ByteArrayOutputStream(1024);
-
-//		threadPool.execute(new Runnable() {
-//			public void run() {
-//		        BufferedOutputStream bufferedOut = new BufferedOutputStream(out);
-		        try {
-		        	int arrays []  = new int[1];
-		            for(int i = 0 ; i < sevenZipFile.size() ; i++) {
-//		                	System.out.println("check " + sevenZipFile.getEntry(i).getName());
-		                if (entry.getPath().equals(sevenZipFile.getEntry(i).getName())) {
-		                	System.out.println("entry.getPath = " + entry.getPath() + ", sevenZipFile.getEntry(i).getName() " + sevenZipFile.getEntry(i).getName());
-		                    arrays[0] = i;
-		                    break;
-		                }
-		            }
-		        	
-					MuArchiveExtractCallback extractCallbackSpec = new MuArchiveExtractCallback(os);//, entry.getPath());
-			        extractCallbackSpec.Init(sevenZipFile);
-			        try {
-			        	sevenZipFile.Extract(arrays, 1, IInArchive.NExtract_NAskMode_kExtract , extractCallbackSpec);
-			        }
-			        catch (Exception e) {
-			        	e.printStackTrace();
-//			        	return;
-			        }
-//			        sevenZipFile.Extract(null, -1, IInArchive.NExtract_NAskMode_kExtract , extractCallbackSpec);
-			        try
-			        {
-			        Thread.sleep(1000); // do nothing for 1000 miliseconds (1 second)
-			        }
-			        catch(InterruptedException e)
-			        {
-			        e.printStackTrace();
-			        }
-			        
-			        System.out.println("stopped");
-					
-//			        bufferedOut.flush();
-				}
-                catch (Exception e) {
-                    LOGGER.info("Error while retrieving 7zip entry {}", e);
-                    System.out.println("Error while retrieving 7zip entry {}");
-				}
-                finally {
-//                    try { bufferedOut.close(); }
-//                    catch(IOException e) {
-//                        // Not much we can do about it
-//                    	e.printStackTrace();
-//                    }
-
-                    try { in.close(); }
-                    catch(IOException e) {
-                        // Not much we can do about it
-                    	e.printStackTrace();
-                    }
-
-                    try { sevenZipFile.close(); }
-                    catch(IOException e) {
-                        // Not much we can do about it
-                    	e.printStackTrace();
-                    }
-                }
-//			}
-//		});
-		
-		return new ByteArrayInputStream(os.toByteArray()); */
-		
-		final int arrays []  = new int[1];
-        for(int i = 0 ; i < sevenZipFile.size() ; i++) {
-//            	System.out.println("check " + sevenZipFile.getEntry(i).getName());
-            if (entry.getPath().equals(sevenZipFile.getEntry(i).getName())) {
-            	System.out.println("entry.getPath = " + entry.getPath() + ", sevenZipFile.getEntry(i).getName() " + sevenZipFile.getEntry(i).getName());
-                arrays[0] = i;
-                break;
-            }
+    public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
+        if(entry.isDirectory())
+            throw new IOException();
+
+        Integer index;
+        synchronized(this) {
+            checkSevenZipFile();
+            index = entryIndices.get(entry.getPath());
         }
-    	
-		final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
-		  new Thread(
-		    new Runnable(){
-		      public void run(){
-		        
-		        MuArchiveExtractCallback extractCallbackSpec = new MuArchiveExtractCallback(cbb.getOutputStream(), entry.getPath());
-		        extractCallbackSpec.Init(sevenZipFile);
-		        try {
-		        	sevenZipFile.Extract(arrays, 1, IInArchive.NExtract_NAskMode_kExtract , extractCallbackSpec);
-		        }
-		        catch (Exception e) {
-		        	e.printStackTrace();
-//		        	return;
-		        }
-		      }
-		    }
-		  ).start();
-		  
-		  return cbb.getInputStream();
+
+        if(index==null)
+            throw new IOException("Unknown 7zip entry: "+entry.getName());
+
+        // Optimization: if the entries are being read in the iterator's order (unpack operation), have them extracted
+        // in a single pass by the iterator
+        if(entryIterator instanceof SevenZipEntryIterator) {
+            InputStream in = ((SevenZipEntryIterator)entryIterator).getEntryInputStream(index);
+            if(in!=null)
+                return in;
+
+            // The iterator's extraction has gone past the entry, extract it on its own
+        }
+
+        return new SevenZipExtractor(this, new int[]{index}).getEntryInputStream(index);
 	}
 
 	@Override
-    public ArchiveEntryIterator getEntryIterator() throws IOException {
-		final IInArchive sevenZipFile = openSevenZipFile();
+    public synchronized ArchiveEntryIterator getEntryIterator() throws IOException {
+		IInArchive sevenZipFile = checkSevenZipFile();
 
-        try {
-            int nbEntries = sevenZipFile.size();
-            Vector<ArchiveEntry> entries = new Vector<ArchiveEntry>();
-            for(int i = 0; i <nbEntries ; i++)
-                entries.add(createArchiveEntry(sevenZipFile.getEntry(i)));
+        int nbEntries = sevenZipFile.size();
+        Vector<ArchiveEntry> entries = new Vector<ArchiveEntry>(nbEntries);
+        int[] fileIndices = new int[nbEntries];
+        int nbFiles = 0;
+        for(int i = 0; i <nbEntries ; i++) {
+            SevenZipEntry sevenZipEntry = sevenZipFile.getEntry(i);
+            entries.add(createArchiveEntry(sevenZipEntry));
 
-            return new WrapperArchiveEntryIterator(entries.iterator());
-        }
-        finally {
-            /*try { sevenZipFile.close(); }
-            catch(IOException e) {
-                // Not much we can do about it
-            }*/
+            if(!sevenZipEntry.isDirectory())
+                fileIndices[nbFiles++] = i;
         }
+
+        return new SevenZipEntryIterator(this, entries, Arrays.copyOf(fileIndices, nbFiles));
 	}
 }
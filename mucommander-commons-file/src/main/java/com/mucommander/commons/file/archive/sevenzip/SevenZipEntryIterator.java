@@ -0,0 +1,88 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.sevenzip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.archive.WrapperArchiveEntryIterator;
+
+/**
+ * An <code>ArchiveEntryIterator</code> that iterates through the entries of a 7zip archive, in the order of their
+ * index in the archive.
+ *
+ * <p>The content of the entries that are iterated can be retrieved with {@link #getEntryInputStream(int)}: all the
+ * entries are extracted in a single pass by a {@link SevenZipExtractor}, which is started the first time an entry
+ * is requested and stopped when this iterator is closed.</p>
+ */
+class SevenZipEntryIterator extends WrapperArchiveEntryIterator {
+
+    /** The archive file whose entries are iterated */
+    private final SevenZipArchiveFile archiveFile;
+
+    /** Indices of the regular file entries in the archive */
+    private final int[] fileIndices;
+
+    /** Extracts the entries' content, created when the first entry is requested */
+    private SevenZipExtractor extractor;
+
+    /**
+     * Creates a new SevenZipEntryIterator that iterates through the given entries.
+     *
+     * @param archiveFile the archive file whose entries are iterated
+     * @param entries the archive's entries, in the order of their index in the archive
+     * @param fileIndices indices of the regular file entries in the archive
+     */
+    SevenZipEntryIterator(SevenZipArchiveFile archiveFile, List<ArchiveEntry> entries, int[] fileIndices) {
+        super(entries.iterator());
+
+        this.archiveFile = archiveFile;
+        this.fileIndices = fileIndices;
+    }
+
+    /**
+     * Returns an <code>InputStream</code> to the content of the entry with the given index, <code>null</code> if the
+     * entry cannot be provided by the single-pass extraction, typically because the entry has already been passed.
+     *
+     * @param index index of the entry in the archive
+     * @return an InputStream to the content of the entry, <code>null</code> if it cannot be provided
+     */
+    synchronized InputStream getEntryInputStream(int index) {
+        if(extractor==null)
+            extractor = new SevenZipExtractor(archiveFile, fileIndices);
+
+        return extractor.getEntryInputStream(index);
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    /**
+     * Stops the extraction of the entries, if it was started.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(extractor!=null)
+            extractor.close();
+    }
+}
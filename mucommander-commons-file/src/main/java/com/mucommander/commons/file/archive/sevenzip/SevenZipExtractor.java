@@ -0,0 +1,302 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.sevenzip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.archive.sevenzip.provider.SevenZip.HRESULT;
+import com.mucommander.commons.file.archive.sevenzip.provider.SevenZip.Archive.IArchiveExtractCallback;
+import com.mucommander.commons.file.archive.sevenzip.provider.SevenZip.Archive.IInArchive;
+import com.mucommander.commons.io.RingBufferPipe;
+import com.mucommander.commons.util.IOScheduler;
+
+/**
+ * SevenZipExtractor extracts a set of entries of a 7zip archive in a single pass, and makes the content of each of
+ * these entries available as an <code>InputStream</code>.
+ *
+ * <p>Entries are extracted in a separate thread, in the order of their index in the archive. This allows all the
+ * entries of a solid block to be decompressed in one go, instead of the block being decompressed from its start
+ * over and over again for each of its entries. The extraction thread waits for an entry (or a subsequent one) to be
+ * requested with {@link #getEntryInputStream(int)} before extracting it: entries that have not been requested are
+ * decompressed and discarded. The requested entry is streamed through a bounded pipe, so that the extraction thread
+ * never gets more than {@link #PIPE_SIZE} bytes ahead of the reader.</p>
+ *
+ * <p>The extraction stops when all entries have been extracted or when {@link #close()} is called, whichever comes
+ * first.</p>
+ */
+class SevenZipExtractor implements IArchiveExtractCallback, Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SevenZipExtractor.class);
+
+    /** Size of the pipe the content of entries is streamed through */
+    private final static int PIPE_SIZE = AbstractFile.IO_BUFFER_SIZE;
+
+    /** The archive file whose entries are extracted */
+    private final SevenZipArchiveFile archiveFile;
+
+    /** Sorted indices of the entries to extract */
+    private final int[] indices;
+
+    /** Index of the last entry that has been requested, -1 if none has been requested yet */
+    private int requestedIndex = -1;
+
+    /** Pipe the last requested entry is to be written to */
+    private EntryPipe requestedPipe;
+
+    /** Index of the last entry that the extraction has reached, -1 if none has been reached yet */
+    private int currentIndex = -1;
+
+    /** Pipe the entry being extracted is written to, <code>null</code> if the entry is discarded */
+    private EntryPipe currentPipe;
+
+    /** True once the extraction thread has been started */
+    private boolean started;
+
+    /** True when the extraction has been stopped or has finished */
+    private boolean closed;
+
+    /**
+     * Creates a new SevenZipExtractor that extracts the given entries. The extraction thread is started only when the
+     * first entry is requested.
+     *
+     * @param archiveFile the archive file whose entries are to be extracted
+     * @param indices indices of the entries to be extracted, must not contain directory entries
+     */
+    SevenZipExtractor(SevenZipArchiveFile archiveFile, int[] indices) {
+        this.archiveFile = archiveFile;
+        this.indices = indices.clone();
+
+        Arrays.sort(this.indices);
+    }
+
+    /**
+     * Returns an <code>InputStream</code> to the content of the entry with the given index, <code>null</code> if the
+     * entry cannot be provided by this extractor, because it is not one of the entries to extract, because the
+     * extraction has already gone past it, or because the extraction is over.
+     *
+     * <p>Any entry that was previously requested and that has not been reached yet by the extraction is given up:
+     * reading its stream will throw an <code>IOException</code>.</p>
+     *
+     * @param index index of the entry in the archive
+     * @return an InputStream to the content of the entry, <code>null</code> if this extractor cannot provide it
+     */
+    synchronized InputStream getEntryInputStream(int index) {
+        if(closed || index<=currentIndex || Arrays.binarySearch(indices, index)<0)
+            return null;
+
+        if(requestedIndex>currentIndex)
+            requestedPipe.finish(new IOException("7zip entry #"+requestedIndex+" was not extracted"));
+
+        requestedIndex = index;
+        requestedPipe = new EntryPipe();
+
+        // Wake up the extraction thread if it is waiting for this entry
+        notifyAll();
+
+        if(!started) {
+            started = true;
+
+            IOScheduler.execute(IOScheduler.Pool.SUBTASK, getClass().getName(), this);
+        }
+
+        return requestedPipe.in;
+    }
+
+    /**
+     * Stops the extraction: the entry being extracted (if any) is extracted in full, then the extraction thread
+     * stops. Entries that have been requested but not reached yet are given up.
+     */
+    synchronized void close() {
+        if(closed)
+            return;
+
+        closed = true;
+
+        if(requestedIndex>currentIndex)
+            requestedPipe.finish(new IOException("7zip entry #"+requestedIndex+" was not extracted"));
+
+        notifyAll();
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    public void run() {
+        IInArchive sevenZipFile = null;
+        IOException failure = null;
+
+        try {
+            sevenZipFile = archiveFile.acquireSevenZipFile();
+            int result = sevenZipFile.Extract(indices, indices.length, IInArchive.NExtract_NAskMode_kExtract, this);
+
+            // The extraction is expected to return an error when it has been stopped
+            if(result!=HRESULT.S_OK && !isClosed())
+                failure = new IOException("Error while extracting 7zip archive "+archiveFile.getAbsolutePath()+": "+result);
+        }
+        catch(IOException e) {
+            LOGGER.info("Caught exception while extracting 7zip archive "+archiveFile.getAbsolutePath(), e);
+            failure = e;
+        }
+        finally {
+            if(sevenZipFile!=null)
+                archiveFile.releaseSevenZipFile(sevenZipFile);
+
+            synchronized(this) {
+                closed = true;
+
+                if(currentPipe!=null)
+                    currentPipe.finish(failure==null?new IOException("7zip entry #"+currentIndex+" is truncated"):failure);
+
+                if(requestedIndex>currentIndex)
+                    requestedPipe.finish(failure==null?new IOException("7zip entry #"+requestedIndex+" was not extracted"):failure);
+
+                currentPipe = null;
+            }
+        }
+    }
+
+
+    ////////////////////////////////////////////
+    // IArchiveExtractCallback implementation //
+    ////////////////////////////////////////////
+
+    public int GetStream(int index, OutputStream[] outStream, int askExtractMode) {
+        outStream[0] = null;
+
+        if(askExtractMode!=IInArchive.NExtract_NAskMode_kExtract)
+            return HRESULT.S_OK;
+
+        synchronized(this) {
+            // Wait until this entry or a subsequent one is requested
+            while(!closed && requestedIndex<index) {
+                try {
+                    wait();
+                }
+                catch(InterruptedException e) {
+                    // Loop one more time
+                }
+            }
+
+            // Returning an error makes the extraction stop
+            if(closed)
+                return HRESULT.E_FAIL;
+
+            currentIndex = index;
+
+            // Entries that have been passed over are discarded
+            if(requestedIndex==index) {
+                currentPipe = requestedPipe;
+                outStream[0] = currentPipe.out;
+            }
+        }
+
+        return HRESULT.S_OK;
+    }
+
+    public int PrepareOperation(int askExtractMode) {
+        return HRESULT.S_OK;
+    }
+
+    public int SetOperationResult(int operationResult) {
+        EntryPipe pipe;
+        synchronized(this) {
+            pipe = currentPipe;
+            currentPipe = null;
+        }
+
+        if(pipe!=null)
+            pipe.finish(operationResult==IInArchive.NExtract_NOperationResult_kOK
+                    ?null
+                    :new IOException("Error while extracting 7zip entry #"+currentIndex+": "+operationResult));
+
+        return HRESULT.S_OK;
+    }
+
+    public int SetTotal(long total) {
+        return HRESULT.S_OK;
+    }
+
+    public int SetCompleted(long completeValue) {
+        // Stop the extraction before the next solid block if it has been closed
+        return isClosed()?HRESULT.E_FAIL:HRESULT.S_OK;
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A bounded pipe the content of an entry is written to. Data that is written after the reading end has been
+     * closed is discarded, allowing the extraction to carry on with the next entries.
+     */
+    private static class EntryPipe {
+
+        private final RingBufferPipe pipe = new RingBufferPipe(PIPE_SIZE);
+
+        private final InputStream in = pipe.getInputStream();
+
+        private final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if(pipe.isReadClosed())
+                    return;
+
+                try {
+                    pipe.write(b, off, len);
+                }
+                catch(IOException e) {
+                    // The reader may have closed the stream in the meantime
+                    if(!pipe.isReadClosed())
+                        throw e;
+                }
+            }
+        };
+
+        /**
+         * Signals the end of the entry to the reading end of the pipe.
+         *
+         * @param failure the IOException to be thrown when reading the entry, <code>null</code> if the entry has been
+         * extracted successfully
+         */
+        private void finish(IOException failure) {
+            if(failure!=null)
+                pipe.cancel(failure);
+            else
+                pipe.closeWrite();
+        }
+    }
+}
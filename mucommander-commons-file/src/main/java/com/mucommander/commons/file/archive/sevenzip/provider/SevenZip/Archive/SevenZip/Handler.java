@@ -272,8 +272,6 @@ public class Handler implements com.mucommander.commons.file.archive.sevenzip.pr
                     continue;
                 }
             } catch(Exception e) {
-                System.out.println("IOException : " + e);
-                e.printStackTrace();
                 result = folderOutStream.FlushCorrupted(IInArchive.NExtract_NOperationResult_kDataError);
                 if (result != HRESULT.S_OK) return result;
                 continue;
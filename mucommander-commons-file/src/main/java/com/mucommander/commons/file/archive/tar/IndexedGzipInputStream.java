@@ -0,0 +1,794 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * IndexedGzipInputStream decompresses a GZIP stream and can record, while doing so, {@link Checkpoint checkpoints}
+ * from which decompression can later be resumed without having to decompress the stream from its beginning.
+ *
+ * <p>A checkpoint is taken at the boundary of a DEFLATE block and holds the position in both the uncompressed and
+ * compressed streams, along with the last 32KB of uncompressed data which the following blocks may refer to. This is
+ * the technique used by zlib's <code>zran</code> example ; <code>java.util.zip.Inflater</code> can neither report
+ * block boundaries nor be primed with a bit offset, hence this class implementing DEFLATE decompression by itself.</p>
+ *
+ * <p>Concatenated GZIP members are decompressed as a single stream. The CRC of a member is verified only if the member
+ * has been decompressed from its beginning.</p>
+ */
+class IndexedGzipInputStream extends InputStream {
+
+    /** Size of the DEFLATE sliding window */
+    private final static int WINDOW_SIZE = 32768;
+    private final static int WINDOW_MASK = WINDOW_SIZE - 1;
+
+    /** Size of the buffer holding the compressed data */
+    private final static int INPUT_BUFFER_SIZE = 65536;
+
+    /** GZIP header flags */
+    private final static int FHCRC = 2;
+    private final static int FEXTRA = 4;
+    private final static int FNAME = 8;
+    private final static int FCOMMENT = 16;
+
+    /** Decompression states */
+    private final static int STATE_MEMBER_HEADER = 0;
+    private final static int STATE_BLOCK_HEADER = 1;
+    private final static int STATE_STORED_BLOCK = 2;
+    private final static int STATE_HUFFMAN_BLOCK = 3;
+    private final static int STATE_EOF = 4;
+
+    private final static int[] LENGTH_BASE = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+    };
+    private final static int[] LENGTH_EXTRA_BITS = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+    };
+    private final static int[] DISTANCE_BASE = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097,
+        6145, 8193, 12289, 16385, 24577
+    };
+    private final static int[] DISTANCE_EXTRA_BITS = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+    };
+    private final static int[] CODE_LENGTH_ORDER = {
+        16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+    };
+
+    /** Huffman tables of blocks compressed with fixed codes */
+    private final static HuffmanTable FIXED_LITERAL_TABLE;
+    private final static HuffmanTable FIXED_DISTANCE_TABLE;
+
+    static {
+        int[] lengths = new int[288];
+        for(int i=0; i<288; i++)
+            lengths[i] = i<144 ? 8 : i<256 ? 9 : i<280 ? 7 : 8;
+
+        int[] distanceLengths = new int[30];
+        for(int i=0; i<30; i++)
+            distanceLengths[i] = 5;
+
+        try {
+            FIXED_LITERAL_TABLE = new HuffmanTable(lengths, 0, lengths.length);
+            FIXED_DISTANCE_TABLE = new HuffmanTable(distanceLengths, 0, distanceLengths.length);
+        }
+        catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** The compressed stream */
+    private final InputStream in;
+
+    /** Buffers the compressed stream */
+    private final byte[] inBuffer = new byte[INPUT_BUFFER_SIZE];
+    private int inBufferPos;
+    private int inBufferLength;
+    private boolean inEOF;
+
+    /** Offset of the first byte that was read from the compressed stream */
+    private final long inStartOffset;
+    /** Number of bytes that have been moved from the input buffer to the bit buffer */
+    private long inBytes;
+
+    /** Bits that have been read from the compressed stream but not consumed yet, LSB first */
+    private long bitBuffer;
+    private int bitCount;
+
+    /** The last 32KB of uncompressed data */
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private int windowPos;
+    /** Number of bytes of the window that can be referred to, up to WINDOW_SIZE */
+    private int historyLength;
+
+    /** Offset of the next uncompressed byte */
+    private long outOffset;
+
+    private int state;
+    private boolean lastBlock;
+    private boolean firstMember;
+    private int storedRemaining;
+    private HuffmanTable literalTable;
+    private HuffmanTable distanceTable;
+    private int copyLength;
+    private int copyDistance;
+
+    /** CRC of the current member, null if the member has not been decompressed from its beginning */
+    private CRC32 crc;
+    private long memberSize;
+
+    /** Receives the checkpoints, null if checkpoints are not recorded */
+    private final List<Checkpoint> checkpoints;
+    /** Minimum number of uncompressed bytes between two checkpoints */
+    private final long checkpointSpan;
+    private long lastCheckpointOffset;
+
+    private byte[] singleByte;
+    private byte[] skipBuffer;
+
+
+    /**
+     * Creates a new IndexedGzipInputStream that decompresses the given GZIP stream from its beginning and adds a
+     * checkpoint to the given list every <code>checkpointSpan</code> uncompressed bytes or so.
+     *
+     * @param in the GZIP stream, positioned at its beginning
+     * @param checkpoints the list that receives the checkpoints, <code>null</code> not to record checkpoints
+     * @param checkpointSpan minimum number of uncompressed bytes between two checkpoints
+     */
+    IndexedGzipInputStream(InputStream in, List<Checkpoint> checkpoints, long checkpointSpan) {
+        this.in = in;
+        this.inStartOffset = 0;
+        this.checkpoints = checkpoints;
+        this.checkpointSpan = checkpointSpan;
+        this.state = STATE_MEMBER_HEADER;
+        this.firstMember = true;
+    }
+
+    /**
+     * Creates a new IndexedGzipInputStream that resumes decompression at the given checkpoint. The given stream must
+     * be positioned at the byte that contains the checkpoint's {@link Checkpoint#getInputBitOffset() input bit offset}.
+     *
+     * @param in the GZIP stream, positioned at the checkpoint's byte
+     * @param checkpoint the checkpoint to resume decompression at
+     * @throws IOException if an error occurred while reading the stream or the checkpoint's window
+     */
+    IndexedGzipInputStream(InputStream in, Checkpoint checkpoint) throws IOException {
+        this(in, checkpoint, null, 0);
+    }
+
+    /**
+     * Creates a new IndexedGzipInputStream that resumes decompression at the given checkpoint and adds a checkpoint
+     * to the given list every <code>checkpointSpan</code> uncompressed bytes or so, counting from the given one.
+     * The given stream must be positioned at the byte that contains the checkpoint's
+     * {@link Checkpoint#getInputBitOffset() input bit offset}.
+     *
+     * @param in the GZIP stream, positioned at the checkpoint's byte
+     * @param checkpoint the checkpoint to resume decompression at
+     * @param checkpoints the list that receives the checkpoints, <code>null</code> not to record checkpoints
+     * @param checkpointSpan minimum number of uncompressed bytes between two checkpoints
+     * @throws IOException if an error occurred while reading the stream or the checkpoint's window
+     */
+    IndexedGzipInputStream(InputStream in, Checkpoint checkpoint, List<Checkpoint> checkpoints, long checkpointSpan) throws IOException {
+        this.in = in;
+        this.inStartOffset = checkpoint.getInputBitOffset() >>> 3;
+        this.checkpoints = checkpoints;
+        this.checkpointSpan = checkpointSpan;
+        this.state = STATE_BLOCK_HEADER;
+        this.outOffset = checkpoint.getOutputOffset();
+        this.lastCheckpointOffset = outOffset;
+
+        byte[] history = checkpoint.getWindow();
+        System.arraycopy(history, 0, window, 0, history.length);
+        windowPos = history.length & WINDOW_MASK;
+        historyLength = history.length;
+
+        int bits = (int)(checkpoint.getInputBitOffset() & 7);
+        if(bits>0)
+            getBits(bits);
+    }
+
+    /**
+     * Returns the offset of the next uncompressed byte, i.e. the number of bytes that have been decompressed if
+     * decompression was started at the beginning of the stream.
+     *
+     * @return the offset of the next uncompressed byte
+     */
+    long getOutputOffset() {
+        return outOffset;
+    }
+
+    /**
+     * Returns the offset of the next bit to be consumed in the compressed stream.
+     *
+     * @return the offset of the next bit to be consumed in the compressed stream
+     */
+    private long getInputBitOffset() {
+        return (inStartOffset + inBytes)*8 - bitCount;
+    }
+
+    /**
+     * Moves as many bytes as possible to the bit buffer, reading the compressed stream as needed.
+     *
+     * @throws IOException if an error occurred while reading the compressed stream
+     */
+    private void fillBits() throws IOException {
+        while(bitCount<=56) {
+            if(inBufferPos==inBufferLength) {
+                if(inEOF)
+                    return;
+
+                int nbRead = in.read(inBuffer);
+                if(nbRead<0) {
+                    inEOF = true;
+                    return;
+                }
+
+                inBufferPos = 0;
+                inBufferLength = nbRead;
+                continue;
+            }
+
+            bitBuffer |= (long)(inBuffer[inBufferPos++]&0xFF) << bitCount;
+            bitCount += 8;
+            inBytes++;
+        }
+    }
+
+    private int getBits(int n) throws IOException {
+        if(bitCount<n) {
+            fillBits();
+            if(bitCount<n)
+                throw new EOFException("Unexpected end of GZIP stream");
+        }
+
+        int value = (int)(bitBuffer & ((1L<<n)-1));
+        bitBuffer >>>= n;
+        bitCount -= n;
+
+        return value;
+    }
+
+    private void alignToByte() {
+        int bits = bitCount & 7;
+        bitBuffer >>>= bits;
+        bitCount -= bits;
+    }
+
+    private int decodeSymbol(HuffmanTable table) throws IOException {
+        if(bitCount<table.bits)
+            fillBits();
+
+        int entry = table.entries[(int)bitBuffer & table.mask];
+        int length = entry & 15;
+        if(length==0)
+            throw new ZipException("Invalid Huffman code");
+        if(length>bitCount)
+            throw new EOFException("Unexpected end of GZIP stream");
+
+        bitBuffer >>>= length;
+        bitCount -= length;
+
+        return entry >>> 4;
+    }
+
+    /**
+     * Reads the header of a GZIP member.
+     *
+     * @return <code>false</code> if the end of the stream has been reached
+     * @throws IOException if the header is invalid or an error occurred while reading it
+     */
+    private boolean readMemberHeader() throws IOException {
+        alignToByte();
+        fillBits();
+
+        // Anything that does not look like a GZIP member after the first one is ignored, like GZIPInputStream does
+        if(bitCount<16 || (bitBuffer & 0xFFFF)!=0x8B1F) {
+            if(firstMember)
+                throw new ZipException("Not in GZIP format");
+
+            return false;
+        }
+
+        getBits(16);
+        if(getBits(8)!=8)
+            throw new ZipException("Unsupported compression method");
+
+        int flags = getBits(8);
+        // Skip modification time, extra flags and OS
+        getBits(16);
+        getBits(16);
+        getBits(16);
+
+        if((flags & FEXTRA)!=0) {
+            int extraLength = getBits(16);
+            for(int i=0; i<extraLength; i++)
+                getBits(8);
+        }
+        if((flags & FNAME)!=0) {
+            while(getBits(8)!=0);
+        }
+        if((flags & FCOMMENT)!=0) {
+            while(getBits(8)!=0);
+        }
+        if((flags & FHCRC)!=0)
+            getBits(16);
+
+        firstMember = false;
+        lastBlock = false;
+        historyLength = 0;
+        memberSize = 0;
+        if(crc==null)
+            crc = new CRC32();
+        else
+            crc.reset();
+
+        return true;
+    }
+
+    private void readMemberTrailer() throws IOException {
+        alignToByte();
+
+        long expectedCrc = (getBits(16) & 0xFFFFL) | ((getBits(16) & 0xFFFFL) << 16);
+        long expectedSize = (getBits(16) & 0xFFFFL) | ((getBits(16) & 0xFFFFL) << 16);
+
+        if(crc!=null && (expectedCrc!=crc.getValue() || expectedSize!=(memberSize & 0xFFFFFFFFL)))
+            throw new ZipException("Corrupt GZIP trailer");
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = getBits(1)==1;
+
+        switch(getBits(2)) {
+            case 0:
+                alignToByte();
+                int length = getBits(16);
+                if(length!=(~getBits(16) & 0xFFFF))
+                    throw new ZipException("Invalid stored block length");
+
+                storedRemaining = length;
+                state = STATE_STORED_BLOCK;
+                break;
+
+            case 1:
+                literalTable = FIXED_LITERAL_TABLE;
+                distanceTable = FIXED_DISTANCE_TABLE;
+                state = STATE_HUFFMAN_BLOCK;
+                break;
+
+            case 2:
+                readDynamicTables();
+                state = STATE_HUFFMAN_BLOCK;
+                break;
+
+            default:
+                throw new ZipException("Invalid block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        int nbLiteralCodes = getBits(5) + 257;
+        int nbDistanceCodes = getBits(5) + 1;
+        int nbCodeLengthCodes = getBits(4) + 4;
+        if(nbLiteralCodes>286 || nbDistanceCodes>30)
+            throw new ZipException("Too many length or distance symbols");
+
+        int[] codeLengthLengths = new int[19];
+        for(int i=0; i<nbCodeLengthCodes; i++)
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = getBits(3);
+        HuffmanTable codeLengthTable = new HuffmanTable(codeLengthLengths, 0, 19);
+
+        int nbCodes = nbLiteralCodes + nbDistanceCodes;
+        int[] lengths = new int[nbCodes];
+        int i = 0;
+        while(i<nbCodes) {
+            int symbol = decodeSymbol(codeLengthTable);
+            if(symbol<16) {
+                lengths[i++] = symbol;
+                continue;
+            }
+
+            int value = 0;
+            int repeat;
+            if(symbol==16) {
+                if(i==0)
+                    throw new ZipException("Invalid bit length repeat");
+                value = lengths[i-1];
+                repeat = 3 + getBits(2);
+            }
+            else if(symbol==17) {
+                repeat = 3 + getBits(3);
+            }
+            else {
+                repeat = 11 + getBits(7);
+            }
+
+            if(i+repeat>nbCodes)
+                throw new ZipException("Invalid bit length repeat");
+
+            while(repeat-->0)
+                lengths[i++] = value;
+        }
+
+        if(lengths[256]==0)
+            throw new ZipException("Missing end-of-block code");
+
+        literalTable = new HuffmanTable(lengths, 0, nbLiteralCodes);
+        distanceTable = new HuffmanTable(lengths, nbLiteralCodes, nbDistanceCodes);
+    }
+
+    /**
+     * Copies bytes of the current stored block to the given buffer.
+     *
+     * @return the number of bytes that were copied
+     */
+    private int copyStoredBlock(byte[] b, int off, int len) throws IOException {
+        int count = Math.min(storedRemaining, len);
+        int n = 0;
+
+        while(n<count) {
+            // Bytes that have already been moved to the bit buffer come first (the bit buffer is byte-aligned)
+            if(bitCount>=8) {
+                b[off+n++] = (byte)getBits(8);
+                continue;
+            }
+
+            if(inBufferPos==inBufferLength) {
+                fillBits();
+                if(bitCount<8)
+                    throw new EOFException("Unexpected end of GZIP stream");
+                continue;
+            }
+
+            int chunk = Math.min(count-n, inBufferLength-inBufferPos);
+            System.arraycopy(inBuffer, inBufferPos, b, off+n, chunk);
+            inBufferPos += chunk;
+            inBytes += chunk;
+            n += chunk;
+        }
+
+        for(int i=0; i<n; i++) {
+            window[windowPos] = b[off+i];
+            windowPos = (windowPos+1) & WINDOW_MASK;
+        }
+
+        storedRemaining -= n;
+        if(storedRemaining==0)
+            state = STATE_BLOCK_HEADER;
+
+        return n;
+    }
+
+    /**
+     * Decompresses bytes of the current Huffman-compressed block to the given buffer.
+     *
+     * @return the number of bytes that were decompressed
+     */
+    private int inflateHuffmanBlock(byte[] b, int off, int len) throws IOException {
+        byte[] window = this.window;
+        int windowPos = this.windowPos;
+        int n = 0;
+
+        try {
+            while(n<len) {
+                if(copyLength>0) {
+                    int count = Math.min(copyLength, len-n);
+                    int from = (windowPos-copyDistance) & WINDOW_MASK;
+                    for(int i=0; i<count; i++) {
+                        byte value = window[from];
+                        from = (from+1) & WINDOW_MASK;
+                        window[windowPos] = value;
+                        windowPos = (windowPos+1) & WINDOW_MASK;
+                        b[off+n++] = value;
+                    }
+                    copyLength -= count;
+                    continue;
+                }
+
+                int symbol = decodeSymbol(literalTable);
+                if(symbol<256) {
+                    window[windowPos] = (byte)symbol;
+                    windowPos = (windowPos+1) & WINDOW_MASK;
+                    b[off+n++] = (byte)symbol;
+                }
+                else if(symbol==256) {
+                    state = STATE_BLOCK_HEADER;
+                    break;
+                }
+                else {
+                    symbol -= 257;
+                    if(symbol>=29)
+                        throw new ZipException("Invalid literal/length code");
+                    int length = LENGTH_BASE[symbol] + getBits(LENGTH_EXTRA_BITS[symbol]);
+
+                    symbol = decodeSymbol(distanceTable);
+                    if(symbol>=30)
+                        throw new ZipException("Invalid distance code");
+                    int distance = DISTANCE_BASE[symbol] + getBits(DISTANCE_EXTRA_BITS[symbol]);
+                    if(distance>historyLength+n)
+                        throw new ZipException("Invalid distance too far back");
+
+                    copyLength = length;
+                    copyDistance = distance;
+                }
+            }
+        }
+        finally {
+            this.windowPos = windowPos;
+        }
+
+        return n;
+    }
+
+    /**
+     * Adds a checkpoint at the current position if the previous one is far enough behind.
+     * Must be called at a block boundary.
+     */
+    private void addCheckpointIfNeeded() {
+        if(checkpoints==null || outOffset-lastCheckpointOffset<checkpointSpan)
+            return;
+
+        byte[] history = new byte[historyLength];
+        int start = (windowPos-historyLength) & WINDOW_MASK;
+        int firstPart = Math.min(historyLength, WINDOW_SIZE-start);
+        System.arraycopy(window, start, history, 0, firstPart);
+        System.arraycopy(window, 0, history, firstPart, historyLength-firstPart);
+
+        checkpoints.add(Checkpoint.create(outOffset, getInputBitOffset(), history));
+        lastCheckpointOffset = outOffset;
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        if(singleByte==null)
+            singleByte = new byte[1];
+
+        return read(singleByte, 0, 1)==-1 ? -1 : singleByte[0]&0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len==0)
+            return 0;
+
+        int total = 0;
+        while(total<len && state!=STATE_EOF) {
+            int n = 0;
+            switch(state) {
+                case STATE_MEMBER_HEADER:
+                    state = readMemberHeader() ? STATE_BLOCK_HEADER : STATE_EOF;
+                    break;
+
+                case STATE_BLOCK_HEADER:
+                    if(lastBlock) {
+                        readMemberTrailer();
+                        state = STATE_MEMBER_HEADER;
+                    }
+                    else {
+                        addCheckpointIfNeeded();
+                        readBlockHeader();
+                    }
+                    break;
+
+                case STATE_STORED_BLOCK:
+                    n = copyStoredBlock(b, off+total, len-total);
+                    break;
+
+                case STATE_HUFFMAN_BLOCK:
+                    n = inflateHuffmanBlock(b, off+total, len-total);
+                    break;
+            }
+
+            if(n>0) {
+                if(crc!=null)
+                    crc.update(b, off+total, n);
+                memberSize += n;
+                outOffset += n;
+                historyLength = (int)Math.min(historyLength+(long)n, WINDOW_SIZE);
+                total += n;
+            }
+        }
+
+        return total==0 ? -1 : total;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if(n<=0)
+            return 0;
+
+        if(skipBuffer==null)
+            skipBuffer = new byte[8192];
+
+        long remaining = n;
+        while(remaining>0) {
+            int nbRead = read(skipBuffer, 0, (int)Math.min(skipBuffer.length, remaining));
+            if(nbRead==-1)
+                break;
+            remaining -= nbRead;
+        }
+
+        return n-remaining;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Lookup table of a canonical Huffman code, indexed by the next bits of the stream. Each entry holds the symbol
+     * in its upper bits and the length of its code in its 4 lower bits, <code>0</code> for invalid codes.
+     */
+    private static class HuffmanTable {
+        private final int[] entries;
+        private final int bits;
+        private final int mask;
+
+        private HuffmanTable(int[] lengths, int offset, int count) throws ZipException {
+            int[] lengthCount = new int[16];
+            int maxLength = 1;
+            for(int i=0; i<count; i++) {
+                int length = lengths[offset+i];
+                lengthCount[length]++;
+                if(length>maxLength)
+                    maxLength = length;
+            }
+            lengthCount[0] = 0;
+
+            int left = 1;
+            for(int length=1; length<16; length++) {
+                left = (left<<1) - lengthCount[length];
+                if(left<0)
+                    throw new ZipException("Over-subscribed Huffman code");
+            }
+
+            int[] nextCode = new int[16];
+            int code = 0;
+            for(int length=1; length<16; length++) {
+                code = (code + lengthCount[length-1]) << 1;
+                nextCode[length] = code;
+            }
+
+            this.bits = maxLength;
+            this.mask = (1<<maxLength) - 1;
+            this.entries = new int[1<<maxLength];
+
+            for(int symbol=0; symbol<count; symbol++) {
+                int length = lengths[offset+symbol];
+                if(length==0)
+                    continue;
+
+                // Codes are stored MSB first, bits are read LSB first
+                int reversed = Integer.reverse(nextCode[length]++) >>> (32-length);
+                int entry = (symbol<<4) | length;
+                for(int i=reversed; i<entries.length; i+=1<<length)
+                    entries[i] = entry;
+            }
+        }
+    }
+
+    /**
+     * A position in a GZIP stream where decompression can be resumed: the offset in the uncompressed stream, the bit
+     * offset of the next DEFLATE block in the compressed stream, and the uncompressed data preceding the block, which
+     * is kept compressed.
+     */
+    static class Checkpoint {
+        private final long outputOffset;
+        private final long inputBitOffset;
+        private final int windowLength;
+        private final byte[] compressedWindow;
+
+        Checkpoint(long outputOffset, long inputBitOffset, int windowLength, byte[] compressedWindow) {
+            this.outputOffset = outputOffset;
+            this.inputBitOffset = inputBitOffset;
+            this.windowLength = windowLength;
+            this.compressedWindow = compressedWindow;
+        }
+
+        /**
+         * Creates a checkpoint, compressing the given window.
+         */
+        private static Checkpoint create(long outputOffset, long inputBitOffset, byte[] window) {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(window);
+                deflater.finish();
+
+                ByteArrayOutputStream bout = new ByteArrayOutputStream(window.length/2);
+                byte[] buffer = new byte[8192];
+                while(!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    bout.write(buffer, 0, n);
+                }
+
+                return new Checkpoint(outputOffset, inputBitOffset, window.length, bout.toByteArray());
+            }
+            finally {
+                deflater.end();
+            }
+        }
+
+        long getOutputOffset() {
+            return outputOffset;
+        }
+
+        long getInputBitOffset() {
+            return inputBitOffset;
+        }
+
+        int getWindowLength() {
+            return windowLength;
+        }
+
+        byte[] getCompressedWindow() {
+            return compressedWindow;
+        }
+
+        /**
+         * Returns the uncompressed data that precedes this checkpoint, up to 32KB.
+         *
+         * @return the uncompressed data that precedes this checkpoint
+         * @throws IOException if the window could not be uncompressed
+         */
+        byte[] getWindow() throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressedWindow);
+                byte[] window = new byte[windowLength];
+                int n = 0;
+                while(n<windowLength && !inflater.finished()) {
+                    int nbInflated = inflater.inflate(window, n, windowLength-n);
+                    if(nbInflated==0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    n += nbInflated;
+                }
+
+                if(n!=windowLength)
+                    throw new ZipException("Corrupt checkpoint window");
+
+                return window;
+            }
+            catch(DataFormatException e) {
+                throw new ZipException("Corrupt checkpoint window: "+e.getMessage());
+            }
+            finally {
+                inflater.end();
+            }
+        }
+    }
+}
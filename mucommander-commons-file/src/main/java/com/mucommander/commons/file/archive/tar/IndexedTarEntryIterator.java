@@ -0,0 +1,151 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+import com.mucommander.commons.file.archive.tar.provider.TarInputStream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An <code>ArchiveEntryIterator</code> that iterates through the entries of a {@link TarIndex}, without reading the
+ * archive.
+ *
+ * <p>The contents of the entries are read from a {@link TarInputStream} which is opened the first time an entry is
+ * requested, and then moved forward as long as the requested entries follow each other. This allows the entries of an
+ * archive to be read in a single pass (unpack operation). The stream is reopened when an entry that comes before the
+ * current one is requested, or when a {@link IndexedGzipInputStream.Checkpoint checkpoint} lies between the current
+ * entry and the requested one.</p>
+ */
+class IndexedTarEntryIterator implements ArchiveEntryIterator {
+
+    /** The archive file whose entries are iterated */
+    private final TarArchiveFile archiveFile;
+
+    /** The index to iterate through */
+    private final TarIndex index;
+
+    /** Position of the entry returned by the last call to {@link #nextEntry()} */
+    private int position = -1;
+
+    /** The current entry, returned by the last call to {@link #nextEntry()} */
+    private ArchiveEntry currentEntry;
+
+    /** Stream to the archive's contents, null until an entry's contents are requested */
+    private TarInputStream tin;
+
+    /** Position of the entry the TarInputStream is currently positioned at */
+    private int tinPosition;
+
+
+    /**
+     * Creates a new IndexedTarEntryIterator that iterates through the entries of the given index.
+     *
+     * @param archiveFile the archive file whose entries are iterated
+     * @param index the index of the archive file
+     */
+    IndexedTarEntryIterator(TarArchiveFile archiveFile, TarIndex index) {
+        this.archiveFile = archiveFile;
+        this.index = index;
+    }
+
+    /**
+     * Returns <code>true</code> if the given entry is the current entry of this iterator.
+     *
+     * @param entry the entry to test
+     * @return <code>true</code> if the given entry is the current entry of this iterator
+     */
+    boolean isCurrentEntry(ArchiveEntry entry) {
+        return currentEntry!=null && currentEntry.getPath().equals(entry.getPath())
+            && currentEntry.getEntryObject().equals(entry.getEntryObject());
+    }
+
+    /**
+     * Returns an <code>InputStream</code> to the contents of the current entry. The returned stream must be consumed
+     * or closed before {@link #nextEntry()} is called.
+     *
+     * @return an InputStream to the contents of the current entry
+     * @throws IOException if an error occurred while positioning the archive stream at the entry
+     */
+    InputStream getCurrentEntryInputStream() throws IOException {
+        long offset = index.getEntryOffset(position);
+
+        if(tin!=null && tinPosition<=position) {
+            // Reopen the stream at the entry if a checkpoint saves decompressing data between the two entries
+            IndexedGzipInputStream.Checkpoint checkpoint = archiveFile.getGzipCheckpoint(offset);
+            if(checkpoint!=null && checkpoint.getOutputOffset()>index.getEntryOffset(tinPosition))
+                closeTarStream();
+        }
+        else {
+            closeTarStream();
+        }
+
+        if(tin==null) {
+            tin = archiveFile.createTarStream(offset);
+            tin.getNextEntry();
+            tinPosition = position;
+        }
+        else {
+            while(tinPosition<position) {
+                if(tin.getNextEntry()==null)
+                    throw new IOException("Unexpected end of TAR archive");
+                tinPosition++;
+            }
+        }
+
+        // The tar stream is wrapped in a FilterInputStream where #close is implemented as a no-op:
+        // we don't want the TarInputStream to be closed when the caller closes the entry's stream.
+        return new FilterInputStream(tin) {
+            @Override
+            public void close() throws IOException {
+                // No-op
+            }
+        };
+    }
+
+    private void closeTarStream() throws IOException {
+        if(tin!=null) {
+            tin.close();
+            tin = null;
+        }
+    }
+
+
+    /////////////////////////////////////////
+    // ArchiveEntryIterator implementation //
+    /////////////////////////////////////////
+
+    public ArchiveEntry nextEntry() throws IOException {
+        if(position+1>=index.getEntryCount()) {
+            currentEntry = null;
+            return null;
+        }
+
+        currentEntry = index.getEntry(++position);
+
+        return currentEntry;
+    }
+
+    public void close() throws IOException {
+        closeTarStream();
+    }
+}
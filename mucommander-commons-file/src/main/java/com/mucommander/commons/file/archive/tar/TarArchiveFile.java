@@ -23,8 +23,8 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.archive.AbstractROArchiveFile;
 import com.mucommander.commons.file.archive.ArchiveEntry;
 import com.mucommander.commons.file.archive.ArchiveEntryIterator;
-import com.mucommander.commons.file.archive.tar.provider.TarEntry;
 import com.mucommander.commons.file.archive.tar.provider.TarInputStream;
+import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.StreamUtils;
 import com.mucommander.commons.util.StringUtils;
 import org.apache.tools.bzip2.CBZip2InputStream;
@@ -35,6 +35,8 @@ import java.io.BufferedInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 
 
@@ -44,12 +46,44 @@ import java.util.zip.GZIPInputStream;
  * <p>The actual decompression work is performed by the <code>Apache Ant</code> library under the terms of the
  * Apache Software License.</p>
  *
+ * <p>Archives larger than {@link #INDEX_MIN_ARCHIVE_SIZE} are indexed the first time they are listed: the index
+ * records the offset of each entry in the uncompressed archive and, for GZIP-compressed archives, checkpoints from
+ * which decompression can be resumed. The index is kept in memory and persisted in the
+ * {@link #getIndexFolder() index folder}, so that the archive can later be listed without being read, and a single
+ * entry be extracted without decompressing the archive from its beginning. Checkpoints are not available for
+ * Bzip2-compressed archives.</p>
+ *
+ * <p>Listing and unpacking an archive use the <code>java.util.zip</code> inflater, which is about twice as fast as
+ * {@link IndexedGzipInputStream}. The latter is only used to resume decompression at a checkpoint, and to record
+ * checkpoints the first time an entry is read from a part of the archive that has none yet.</p>
+ *
  * @see com.mucommander.commons.file.archive.tar.TarFormatProvider
  * @author Maxence Bernard
  */
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    /** Archives smaller than this size are not indexed, listing them is cheap enough */
+    public final static long INDEX_MIN_ARCHIVE_SIZE = 1024*1024;
+
+    /** Minimum number of uncompressed bytes between two GZIP checkpoints */
+    private final static long MIN_CHECKPOINT_SPAN = 4*1024*1024;
+
+    /** Maximum number of GZIP checkpoints per archive: larger archives get more distant checkpoints */
+    private final static long MAX_CHECKPOINTS = 1024;
+
+    /** Name of the default index folder, created within the temporary folder */
+    private final static String DEFAULT_INDEX_FOLDER_NAME = "mucommander-tar-index";
+
+    /** Folder where indexes are persisted, null if indexes are not persisted */
+    private static AbstractFile indexFolder;
+
+    /** True if the index folder has been set by {@link #setIndexFolder(AbstractFile)} */
+    private static boolean indexFolderSet;
+
+    /** The index of this archive, null if it is not available (yet) */
+    private TarIndex index;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -61,27 +95,171 @@ public class TarArchiveFile extends AbstractROArchiveFile {
 
 
     /**
-     * Returns a TarInputStream which can be used to read TAR entries.
+     * Returns the folder where the indexes of TAR archives are persisted, <code>null</code> if indexes are not
+     * persisted. Unless {@link #setIndexFolder(AbstractFile)} has been called, indexes are persisted in a subfolder of
+     * the {@link FileFactory#getTemporaryFolder() temporary folder}.
      *
-     * @param entryOffset offset from the start of the archive to an entry. Must be a multiple of recordSize, or
-     * <code>0</code> to start at the first entry.
-     * @return a TarInputStream which can be used to read TAR entries
-     * @throws IOException if an error occurred while create the stream
+     * @return the folder where indexes are persisted, null if indexes are not persisted
+     */
+    public static synchronized AbstractFile getIndexFolder() {
+        if(!indexFolderSet) {
+            indexFolder = FileFactory.getTemporaryFolder().getChildSilently(DEFAULT_INDEX_FOLDER_NAME);
+            indexFolderSet = true;
+        }
+
+        return indexFolder;
+    }
+
+    /**
+     * Sets the folder where the indexes of TAR archives are persisted. The folder is created when the first index is
+     * persisted. <code>null</code> disables persistence: indexes are then only kept in memory.
+     *
+     * @param folder the folder where indexes are persisted, null not to persist indexes
+     */
+    public static synchronized void setIndexFolder(AbstractFile folder) {
+        indexFolder = folder;
+        indexFolderSet = true;
+    }
+
+    /**
+     * Returns <code>true</code> if this archive is GZIP-compressed, based on its extension.
+     */
+    private boolean isGzipped() {
+        String name = getCustomExtension() != null ? getCustomExtension() : getName();
+        return StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz");
+    }
+
+    /**
+     * Returns <code>true</code> if this archive is Bzip2-compressed, based on its extension.
+     */
+    private boolean isBzipped() {
+        String name = getCustomExtension() != null ? getCustomExtension() : getName();
+        return StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2");
+    }
+
+    /**
+     * Returns the index of this archive if it is available, either in memory or in the index folder.
+     *
+     * @return the index of this archive, null if it is not available
+     */
+    private synchronized TarIndex getIndex() {
+        if(index!=null && !index.matches(file))
+            index = null;
+
+        if(index==null && file.getSize()>=INDEX_MIN_ARCHIVE_SIZE) {
+            AbstractFile indexFolder = getIndexFolder();
+            if(indexFolder!=null)
+                index = TarIndex.load(file, indexFolder);
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the minimum number of uncompressed bytes between two GZIP checkpoints of this archive.
+     */
+    private long getCheckpointSpan() {
+        return Math.max(MIN_CHECKPOINT_SPAN, file.getSize()/MAX_CHECKPOINTS);
+    }
+
+    /**
+     * Called by {@link TarEntryIterator} once all the entries of the archive have been added to the given index.
+     *
+     * @param index the index of this archive
+     */
+    synchronized void indexCreated(TarIndex index) {
+        this.index = index;
+
+        AbstractFile indexFolder = getIndexFolder();
+        if(indexFolder!=null)
+            index.save(file, indexFolder);
+    }
+
+    /**
+     * Called by {@link CheckpointingInputStream} when it is closed, to add the checkpoints it recorded to the given
+     * index and persist them.
+     *
+     * @param index the index of this archive
+     * @param checkpoints the checkpoints that were recorded
+     * @param length offset in the uncompressed archive up to which checkpoints were recorded
+     */
+    private synchronized void checkpointsRecorded(TarIndex index, List<IndexedGzipInputStream.Checkpoint> checkpoints, long length) {
+        if(!index.addCheckpoints(checkpoints, length) || !index.matches(file))
+            return;
+
+        AbstractFile indexFolder = getIndexFolder();
+        if(indexFolder!=null)
+            index.save(file, indexFolder);
+    }
+
+    /**
+     * Returns the last GZIP checkpoint that precedes the given offset in the uncompressed archive, <code>null</code>
+     * if there is none or if the archive is not GZIP-compressed.
+     *
+     * @param offset an offset in the uncompressed archive
+     * @return the last GZIP checkpoint that precedes the given offset, null if there is none
+     */
+    IndexedGzipInputStream.Checkpoint getGzipCheckpoint(long offset) {
+        if(!isGzipped())
+            return null;
+
+        TarIndex index = getIndex();
+        return index==null ? null : index.getCheckpoint(offset);
+    }
+
+    /**
+     * Returns an <code>InputStream</code> to the archive file, positioned at the given offset.
+     * The stream is seeked to the offset if the archive file supports random access.
+     *
+     * @param offset offset from the start of the archive file
+     * @return an InputStream to the archive file, positioned at the given offset
+     * @throws IOException if an error occurred while opening the stream or positioning it
      * @throws UnsupportedFileOperationException if this operation is not supported by the underlying filesystem,
      * or is not implemented.
      */
-    private TarInputStream createTarStream(long entryOffset) throws IOException, UnsupportedFileOperationException {
+    private InputStream createArchiveStream(long offset) throws IOException, UnsupportedFileOperationException {
+        if(offset>0 && file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
+            RandomAccessInputStream rais = file.getRandomAccessInputStream();
+            try {
+                rais.seek(offset);
+            }
+            catch(IOException e) {
+                rais.close();
+                throw e;
+            }
+
+            return rais;
+        }
+
         InputStream in = file.getInputStream();
+        try {
+            StreamUtils.skipFully(in, offset);
+        }
+        catch(IOException e) {
+            in.close();
+            throw e;
+        }
 
-        String name = getCustomExtension() != null ? getCustomExtension() : getName();
+        return in;
+    }
+
+    /**
+     * Wraps the given stream to the archive file into a stream that decompresses it, if the archive is compressed.
+     *
+     * @param in stream to the archive file
+     * @return a stream to the uncompressed archive
+     * @throws IOException if an error occurred while creating the stream
+     */
+    private InputStream createDecompressingStream(InputStream in) throws IOException {
             // Gzip-compressed file
-        if(StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz"))
+        if(isGzipped()) {
                 // Note: this will fail for gz/tgz entries inside a tar file (IOException: Not in GZIP format),
                 // why is a complete mystery: the gz/tgz entry can be extracted and then properly browsed
-            in = new GZIPInputStream(in);
+            return new GZIPInputStream(in);
+        }
 
         // Bzip2-compressed file
-        else if(StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
+        if(isBzipped()) {
             try {
                 // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
                 // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
@@ -92,7 +270,7 @@ public class TarArchiveFile extends AbstractROArchiveFile {
                 // Quoted from CBZip2InputStream's Javadoc:
                 // "CBZip2InputStream reads bytes from the compressed source stream via the single byte {@link java.io.InputStream#read()
                 // read()} method exclusively. Thus you should consider to use a buffered source stream."
-                in = new CBZip2InputStream(new BufferedInputStream(in));
+                return new CBZip2InputStream(new BufferedInputStream(in));
             }
             catch(Exception e) {
                 // CBZip2InputStream is known to throw NullPointerException if file is not properly Bzip2-encoded
@@ -103,7 +281,52 @@ public class TarArchiveFile extends AbstractROArchiveFile {
             }
         }
 
-        return new TarInputStream(in, entryOffset);
+        return in;
+    }
+
+    /**
+     * Returns a TarInputStream which can be used to read TAR entries. If the archive is GZIP-compressed and a
+     * checkpoint precedes the given offset, decompression starts at the checkpoint rather than at the beginning
+     * of the archive. If the offset lies beyond the checkpointed part of the archive, checkpoints are recorded
+     * on the way to it.
+     *
+     * <p>Note that the offsets of the entries returned by the stream are relative to the position the stream was
+     * started at, which is not necessarily the beginning of the archive.</p>
+     *
+     * @param entryOffset offset from the start of the archive to an entry. Must be a multiple of recordSize, or
+     * <code>0</code> to start at the first entry.
+     * @return a TarInputStream which can be used to read TAR entries
+     * @throws IOException if an error occurred while create the stream
+     * @throws UnsupportedFileOperationException if this operation is not supported by the underlying filesystem,
+     * or is not implemented.
+     */
+    TarInputStream createTarStream(long entryOffset) throws IOException, UnsupportedFileOperationException {
+        TarIndex index = entryOffset>0 && isGzipped() ? getIndex() : null;
+        if(index!=null) {
+            IndexedGzipInputStream.Checkpoint checkpoint = index.getCheckpoint(entryOffset);
+            long startOffset = checkpoint==null ? 0 : checkpoint.getOutputOffset();
+            long checkpointSpan = getCheckpointSpan();
+
+            InputStream in = null;
+            if(entryOffset>index.getCheckpointedLength() && entryOffset-startOffset>=checkpointSpan)
+                in = new CheckpointingInputStream(index, checkpoint, checkpointSpan);
+            else if(checkpoint!=null)
+                in = new IndexedGzipInputStream(createArchiveStream(checkpoint.getInputBitOffset()>>>3), checkpoint);
+
+            if(in!=null) {
+                try {
+                    StreamUtils.skipFully(in, entryOffset-startOffset);
+                }
+                catch(IOException e) {
+                    in.close();
+                    throw e;
+                }
+
+                return new TarInputStream(in);
+            }
+        }
+
+        return new TarInputStream(createDecompressingStream(file.getInputStream()), entryOffset);
     }
 
 
@@ -113,6 +336,16 @@ public class TarArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
+        TarIndex index = getIndex();
+        if(index!=null)
+            return new IndexedTarEntryIterator(this, index);
+
+        // Index the archive while listing it. Checkpoints are recorded later on, when they are first needed.
+        if(file.getSize()>=INDEX_MIN_ARCHIVE_SIZE) {
+            TarIndex newIndex = new TarIndex(file);
+            return new TarEntryIterator(new TarInputStream(createDecompressingStream(file.getInputStream())), this, newIndex);
+        }
+
         return new TarEntryIterator(createTarStream(0));
     }
 
@@ -139,13 +372,19 @@ public class TarArchiveFile extends AbstractROArchiveFile {
                 };
             }
 
-            // This is not the one, look for the entry from the beginning of the archive
+            // This is not the one, look for the entry in the archive
+        }
+        // If the archive is being iterated through using its index, read the entry from the iterator's stream which
+        // is moved forward from one entry to the next.
+        else if(entryIterator!=null && (entryIterator instanceof IndexedTarEntryIterator)) {
+            if(((IndexedTarEntryIterator)entryIterator).isCurrentEntry(entry))
+                return ((IndexedTarEntryIterator)entryIterator).getCurrentEntryInputStream();
         }
 
-        // Iterate through the archive until we've found the entry
-        TarEntry tarEntry = (TarEntry)entry.getEntryObject();
-        if(tarEntry!=null) {
-            TarInputStream tin = createTarStream(tarEntry.getOffset());
+        // Go to the entry's offset, from the closest checkpoint if there is one
+        Long entryOffset = (Long)entry.getEntryObject();
+        if(entryOffset!=null) {
+            TarInputStream tin = createTarStream(entryOffset);
             tin.getNextEntry();
 
             return tin;
@@ -153,4 +392,52 @@ public class TarArchiveFile extends AbstractROArchiveFile {
 
         throw new IOException("Unknown TAR entry: "+entry.getName());
     }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Decompresses the archive from a checkpoint (or from its beginning), recording checkpoints along the way.
+     * The checkpoints are added to the archive's index when the stream is closed.
+     */
+    private class CheckpointingInputStream extends FilterInputStream {
+
+        /** The index the checkpoints are added to */
+        private final TarIndex index;
+
+        /** Receives the checkpoints */
+        private final List<IndexedGzipInputStream.Checkpoint> checkpoints = new ArrayList<IndexedGzipInputStream.Checkpoint>();
+
+        private CheckpointingInputStream(TarIndex index, IndexedGzipInputStream.Checkpoint checkpoint, long checkpointSpan) throws IOException {
+            super(null);
+
+            this.index = index;
+
+            if(checkpoint==null) {
+                in = new IndexedGzipInputStream(file.getInputStream(), checkpoints, checkpointSpan);
+            }
+            else {
+                InputStream archiveIn = createArchiveStream(checkpoint.getInputBitOffset()>>>3);
+                try {
+                    in = new IndexedGzipInputStream(archiveIn, checkpoint, checkpoints, checkpointSpan);
+                }
+                catch(IOException e) {
+                    archiveIn.close();
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            }
+            finally {
+                checkpointsRecorded(index, checkpoints, ((IndexedGzipInputStream)in).getOutputOffset());
+            }
+        }
+    }
 }
@@ -40,6 +40,12 @@ class TarEntryIterator implements ArchiveEntryIterator {
     /** The current entry, where the TarInputStream is currently positionned */
     private ArchiveEntry currentEntry;
 
+    /** The archive file being indexed, null if the archive is not being indexed */
+    private TarArchiveFile archiveFile;
+
+    /** Receives the entries as they are iterated through, null if the archive is not being indexed */
+    private TarIndex index;
+
 
     /**
      * Creates a new TarEntryIterator that iterates through the entries of the given {@link TarInputStream}.
@@ -51,6 +57,22 @@ class TarEntryIterator implements ArchiveEntryIterator {
         this.tin = tin;
     }
 
+    /**
+     * Creates a new TarEntryIterator that iterates through the entries of the given {@link TarInputStream} and adds
+     * them to the given index. The index is handed over to the archive file once all entries have been iterated
+     * through.
+     *
+     * @param tin the TarInputStream to iterate through
+     * @param archiveFile the archive file being indexed
+     * @param index the index that receives the entries
+     * @throws IOException if an error occurred while fetching the first entry
+     */
+    TarEntryIterator(TarInputStream tin, TarArchiveFile archiveFile, TarIndex index) throws IOException {
+        this.tin = tin;
+        this.archiveFile = archiveFile;
+        this.index = index;
+    }
+
     /**
      * Returns the {@link TarInputStream} instance that was used to create this object.
      *
@@ -82,7 +104,7 @@ class TarEntryIterator implements ArchiveEntryIterator {
         entry.setPermissions(new SimpleFilePermissions(tarEntry.getMode() & PermissionBits.FULL_PERMISSION_INT));
         entry.setOwner(tarEntry.getUserName());
         entry.setGroup(tarEntry.getGroupName());
-        entry.setEntryObject(tarEntry);
+        entry.setEntryObject(tarEntry.getOffset());
 
         return entry;
     }
@@ -96,10 +118,20 @@ class TarEntryIterator implements ArchiveEntryIterator {
     private ArchiveEntry getNextEntry() throws IOException {
         TarEntry entry = tin.getNextEntry();
 
-        if(entry==null)
+        if(entry==null) {
+            if(index!=null) {
+                archiveFile.indexCreated(index);
+                index = null;
+            }
+
             return null;
+        }
+
+        ArchiveEntry archiveEntry = createArchiveEntry(entry);
+        if(index!=null)
+            index.addEntry(archiveEntry);
 
-        return createArchiveEntry(entry);
+        return archiveEntry;
     }
 
 
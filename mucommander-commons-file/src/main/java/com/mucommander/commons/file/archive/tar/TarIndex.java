@@ -0,0 +1,434 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.SimpleFilePermissions;
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import com.mucommander.commons.io.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * TarIndex holds the entries of a TAR archive along with the offset of their header in the uncompressed archive and,
+ * for GZIP-compressed archives, the {@link IndexedGzipInputStream.Checkpoint checkpoints} from which decompression
+ * can be resumed. This allows an entry to be read without decompressing the archive from its beginning, and the
+ * archive to be listed without decompressing it at all.
+ *
+ * <p>Checkpoints are not recorded when the index is created, as the archive is then listed with the faster
+ * <code>java.util.zip</code> inflater: they are added the first time an entry located beyond the
+ * {@link #getCheckpointedLength() checkpointed part} of the archive is read.</p>
+ *
+ * <p>Indexes are persisted in a folder, one file per archive. The index file of an archive is named after the
+ * archive's URL, size and date, so that an archive which has been modified no longer matches its previous index.
+ * Index files that have not been used for {@link #MAX_INDEX_FILE_AGE} are deleted, and so are the least recently used
+ * ones when the index files exceed {@link #MAX_INDEX_FOLDER_SIZE} in total.</p>
+ *
+ * @see TarArchiveFile#setIndexFolder(AbstractFile)
+ */
+class TarIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TarIndex.class);
+
+    /** Identifies index files, and their format version */
+    private final static int MAGIC = 0x6D755449;
+    private final static int VERSION = 2;
+
+    /** Extension of index files */
+    private final static String INDEX_FILE_EXTENSION = ".idx";
+
+    /** Index files that have not been used for this long are deleted: 30 days */
+    final static long MAX_INDEX_FILE_AGE = 30L*24*60*60*1000;
+
+    /** Least recently used index files are deleted when index files exceed this total size: 64MB */
+    final static long MAX_INDEX_FOLDER_SIZE = 64*1024*1024;
+
+    /** URL of the archive, without credentials */
+    private final String archiveURL;
+    /** Size of the archive at the time it was indexed */
+    private final long archiveSize;
+    /** Date of the archive at the time it was indexed */
+    private final long archiveDate;
+
+    /** Entries of the archive, in the order in which they appear. The entry object of each entry is its offset. */
+    private final List<ArchiveEntry> entries = new ArrayList<ArchiveEntry>();
+
+    /** Decompression checkpoints, sorted by increasing offset */
+    private final List<IndexedGzipInputStream.Checkpoint> checkpoints = new ArrayList<IndexedGzipInputStream.Checkpoint>();
+
+    /** Number of uncompressed bytes covered by the checkpoints: beyond that, checkpoints have not been recorded yet */
+    private long checkpointedLength;
+
+
+    /**
+     * Creates a new empty index for the given archive file.
+     *
+     * @param archive the archive file to index
+     */
+    TarIndex(AbstractFile archive) {
+        this(archive.getURL().toString(false), archive.getSize(), archive.getDate());
+    }
+
+    private TarIndex(String archiveURL, long archiveSize, long archiveDate) {
+        this.archiveURL = archiveURL;
+        this.archiveSize = archiveSize;
+        this.archiveDate = archiveDate;
+    }
+
+    /**
+     * Returns <code>true</code> if this index was created for the given archive file, in its current state.
+     *
+     * @param archive the archive file to test
+     * @return <code>true</code> if this index was created for the given archive file
+     */
+    boolean matches(AbstractFile archive) {
+        return archiveSize==archive.getSize() && archiveDate==archive.getDate() && archiveURL.equals(archive.getURL().toString(false));
+    }
+
+    /**
+     * Adds an entry to this index. The entry object of the given entry must be the offset of the entry's header,
+     * as a <code>Long</code>.
+     *
+     * @param entry the entry to add
+     */
+    void addEntry(ArchiveEntry entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * Returns the number of entries in this index.
+     *
+     * @return the number of entries in this index
+     */
+    int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a new <code>ArchiveEntry</code> with the attributes of the entry at the given position.
+     *
+     * @param position position of the entry in the archive
+     * @return a new ArchiveEntry with the attributes of the entry at the given position
+     */
+    ArchiveEntry getEntry(int position) {
+        ArchiveEntry indexedEntry = entries.get(position);
+
+        ArchiveEntry entry = new ArchiveEntry(indexedEntry.getPath(), indexedEntry.isDirectory(), indexedEntry.getDate(), indexedEntry.getSize(), true);
+        entry.setPermissions(indexedEntry.getPermissions());
+        entry.setOwner(indexedEntry.getOwner());
+        entry.setGroup(indexedEntry.getGroup());
+        entry.setEntryObject(indexedEntry.getEntryObject());
+
+        return entry;
+    }
+
+    /**
+     * Returns the offset of the header of the entry at the given position.
+     *
+     * @param position position of the entry in the archive
+     * @return the offset of the header of the entry at the given position
+     */
+    long getEntryOffset(int position) {
+        return (Long)entries.get(position).getEntryObject();
+    }
+
+    /**
+     * Returns the number of uncompressed bytes covered by the checkpoints of this index. Past this offset, checkpoints
+     * have not been recorded yet and {@link #getCheckpoint(long)} may not return the closest one.
+     *
+     * @return the number of uncompressed bytes covered by the checkpoints
+     */
+    synchronized long getCheckpointedLength() {
+        return checkpointedLength;
+    }
+
+    /**
+     * Adds checkpoints which have been recorded from the last checkpoint of this index (or from the beginning of the
+     * archive if there is none) up to the given offset.
+     *
+     * @param newCheckpoints the checkpoints to add, sorted by increasing offset
+     * @param length offset in the uncompressed archive up to which checkpoints have been recorded
+     * @return <code>true</code> if this index was changed
+     */
+    synchronized boolean addCheckpoints(List<IndexedGzipInputStream.Checkpoint> newCheckpoints, long length) {
+        if(length<=checkpointedLength)
+            return false;
+
+        // Checkpoints may have been added concurrently, only keep those that come after
+        long lastOffset = checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size()-1).getOutputOffset();
+        for(IndexedGzipInputStream.Checkpoint checkpoint : newCheckpoints) {
+            if(checkpoint.getOutputOffset()>lastOffset)
+                checkpoints.add(checkpoint);
+        }
+        checkpointedLength = length;
+
+        return true;
+    }
+
+    /**
+     * Returns the last checkpoint that precedes the given offset in the uncompressed archive, <code>null</code> if
+     * there is none.
+     *
+     * @param offset an offset in the uncompressed archive
+     * @return the last checkpoint that precedes the given offset, <code>null</code> if there is none
+     */
+    synchronized IndexedGzipInputStream.Checkpoint getCheckpoint(long offset) {
+        int low = 0;
+        int high = checkpoints.size()-1;
+        IndexedGzipInputStream.Checkpoint checkpoint = null;
+
+        while(low<=high) {
+            int mid = (low+high) >>> 1;
+            IndexedGzipInputStream.Checkpoint midCheckpoint = checkpoints.get(mid);
+            if(midCheckpoint.getOutputOffset()<=offset) {
+                checkpoint = midCheckpoint;
+                low = mid+1;
+            }
+            else {
+                high = mid-1;
+            }
+        }
+
+        return checkpoint;
+    }
+
+
+    /////////////////
+    // Persistence //
+    /////////////////
+
+    /**
+     * Returns the file in which the index of the given archive file is stored.
+     *
+     * @param archive the archive file
+     * @param indexFolder the folder where indexes are stored
+     * @return the file in which the index of the given archive file is stored
+     * @throws IOException if the index file could not be resolved
+     */
+    private static AbstractFile getIndexFile(AbstractFile archive, AbstractFile indexFolder) throws IOException {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update((archive.getURL().toString(false)+"|"+archive.getSize()+"|"+archive.getDate()).getBytes(StandardCharsets.UTF_8));
+
+            return indexFolder.getChild(ByteUtils.toHexString(md.digest())+INDEX_FILE_EXTENSION);
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Loads the index of the given archive file from the given folder.
+     *
+     * @param archive the archive file
+     * @param indexFolder the folder where indexes are stored
+     * @return the index of the archive, <code>null</code> if the archive has not been indexed or if its index could
+     * not be read
+     */
+    static TarIndex load(AbstractFile archive, AbstractFile indexFolder) {
+        AbstractFile indexFile = null;
+        try {
+            indexFile = getIndexFile(archive, indexFolder);
+            if(!indexFile.exists())
+                return null;
+
+            TarIndex index;
+            DataInputStream din = new DataInputStream(new BufferedInputStream(indexFile.getInputStream()));
+            try {
+                if(din.readInt()!=MAGIC || din.readInt()!=VERSION)
+                    throw new IOException("Unsupported index file");
+
+                index = new TarIndex(din.readUTF(), din.readLong(), din.readLong());
+                if(!index.matches(archive))
+                    return null;
+
+                int nbEntries = din.readInt();
+                for(int i=0; i<nbEntries; i++) {
+                    ArchiveEntry entry = new ArchiveEntry(din.readUTF(), din.readBoolean(), din.readLong(), din.readLong(), true);
+                    entry.setPermissions(new SimpleFilePermissions(din.readInt()));
+                    entry.setOwner(din.readUTF());
+                    entry.setGroup(din.readUTF());
+                    entry.setEntryObject(din.readLong());
+                    index.entries.add(entry);
+                }
+
+                index.checkpointedLength = din.readLong();
+                int nbCheckpoints = din.readInt();
+                for(int i=0; i<nbCheckpoints; i++) {
+                    long outputOffset = din.readLong();
+                    long inputBitOffset = din.readLong();
+                    int windowLength = din.readInt();
+                    byte[] compressedWindow = new byte[din.readInt()];
+                    din.readFully(compressedWindow);
+                    index.checkpoints.add(new IndexedGzipInputStream.Checkpoint(outputOffset, inputBitOffset, windowLength, compressedWindow));
+                }
+            }
+            finally {
+                din.close();
+            }
+
+            // The date of index files tells how recently they were used
+            try {
+                indexFile.changeDate(System.currentTimeMillis());
+            }
+            catch(IOException e) {
+                // Not much we can do about it
+            }
+
+            return index;
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not load TAR index of "+archive+", deleting it", e);
+
+            if(indexFile!=null) {
+                try {
+                    indexFile.delete();
+                }
+                catch(IOException e2) {
+                    // Not much we can do about it
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Stores this index in the given folder, creating the folder if it doesn't exist.
+     *
+     * @param archive the archive file this index was created for
+     * @param indexFolder the folder where indexes are stored
+     */
+    synchronized void save(AbstractFile archive, AbstractFile indexFolder) {
+        AbstractFile indexFile = null;
+        try {
+            if(!indexFolder.exists())
+                indexFolder.mkdir();
+
+            indexFile = getIndexFile(archive, indexFolder);
+
+            DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(indexFile.getOutputStream()));
+            try {
+                dout.writeInt(MAGIC);
+                dout.writeInt(VERSION);
+                dout.writeUTF(archiveURL);
+                dout.writeLong(archiveSize);
+                dout.writeLong(archiveDate);
+
+                dout.writeInt(entries.size());
+                for(ArchiveEntry entry : entries) {
+                    dout.writeUTF(entry.getPath());
+                    dout.writeBoolean(entry.isDirectory());
+                    dout.writeLong(entry.getDate());
+                    dout.writeLong(entry.getSize());
+                    dout.writeInt(entry.getPermissions().getIntValue());
+                    dout.writeUTF(entry.getOwner()==null?"":entry.getOwner());
+                    dout.writeUTF(entry.getGroup()==null?"":entry.getGroup());
+                    dout.writeLong((Long)entry.getEntryObject());
+                }
+
+                dout.writeLong(checkpointedLength);
+                dout.writeInt(checkpoints.size());
+                for(IndexedGzipInputStream.Checkpoint checkpoint : checkpoints) {
+                    dout.writeLong(checkpoint.getOutputOffset());
+                    dout.writeLong(checkpoint.getInputBitOffset());
+                    dout.writeInt(checkpoint.getWindowLength());
+                    dout.writeInt(checkpoint.getCompressedWindow().length);
+                    dout.write(checkpoint.getCompressedWindow());
+                }
+            }
+            finally {
+                dout.close();
+            }
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not save TAR index of "+archive, e);
+
+            // Don't leave a partial index behind
+            if(indexFile!=null) {
+                try {
+                    indexFile.delete();
+                }
+                catch(IOException e2) {
+                    // Not much we can do about it
+                }
+            }
+        }
+
+        prune(indexFolder, indexFile, MAX_INDEX_FILE_AGE, MAX_INDEX_FOLDER_SIZE);
+    }
+
+    /**
+     * Deletes the index files of the given folder which have not been used for <code>maxAge</code> milliseconds, and
+     * then the least recently used ones until index files no longer exceed <code>maxSize</code> bytes in total.
+     *
+     * @param indexFolder the folder where indexes are stored
+     * @param keptFile an index file that must not be deleted, <code>null</code> for none
+     * @param maxAge index files that have not been used for this many milliseconds are deleted
+     * @param maxSize maximum total size of the index files, in bytes
+     */
+    static void prune(AbstractFile indexFolder, AbstractFile keptFile, long maxAge, long maxSize) {
+        AbstractFile[] indexFiles;
+        try {
+            indexFiles = indexFolder.ls(new ExtensionFilenameFilter(INDEX_FILE_EXTENSION));
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not list TAR index folder "+indexFolder, e);
+            return;
+        }
+
+        // Most recently used first
+        Arrays.sort(indexFiles, new Comparator<AbstractFile>() {
+            public int compare(AbstractFile f1, AbstractFile f2) {
+                return Long.compare(f2.getDate(), f1.getDate());
+            }
+        });
+
+        long minDate = System.currentTimeMillis()-maxAge;
+        long totalSize = 0;
+        for(AbstractFile indexFile : indexFiles) {
+            if(keptFile==null || !indexFile.equals(keptFile)) {
+                if(indexFile.getDate()<minDate || totalSize+indexFile.getSize()>maxSize) {
+                    try {
+                        indexFile.delete();
+                        continue;
+                    }
+                    catch(IOException e) {
+                        // Not much we can do about it
+                    }
+                }
+            }
+
+            totalSize += indexFile.getSize();
+        }
+    }
+}
@@ -89,6 +89,11 @@ public class DeflatedOutputStream extends ZipEntryOutputStream {
     // ZipEntryOutputStream implementation //
     /////////////////////////////////////////
 
+    @Override
+    public void finish() throws IOException {
+        finishDeflate();
+    }
+
     @Override
     public int getTotalIn() {
         return deflater.getTotalIn();
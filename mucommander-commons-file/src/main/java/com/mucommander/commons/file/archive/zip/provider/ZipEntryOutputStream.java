@@ -81,6 +81,17 @@ public abstract class ZipEntryOutputStream extends OutputStream {
         return method;
     }
 
+    /**
+     * Completes writing the entry's data to the underlying stream, without closing it. Once this method has been
+     * called, {@link #getTotalIn()} and {@link #getTotalOut()} return the final sizes of the entry.
+     *
+     * <p>This implementation does nothing, implementations that buffer or compress data must override it.</p>
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    public void finish() throws IOException {
+    }
+
     /**
      * Returns the CRC value of the data written so far.
      *
@@ -25,6 +25,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Vector;
@@ -50,6 +52,11 @@ import java.util.zip.ZipException;
  * <p>Random read access is required to instantiate a <code>ZipFile</code> and retrieve its entries. Furthermore, random
  * write access is required for methods that modify the Zip file.</p>
  *
+ * <p>Several entries can be read at once, each from its own thread. If the archive's
+ * <code>RandomAccessInputStream</code> is {@link PositionalReadable}, as is the case of local files, the streams
+ * returned by {@link #getInputStream(ZipEntry)} share a single <code>RandomAccessInputStream</code> and read from it
+ * without any locking. Otherwise, each entry stream uses its own <code>RandomAccessInputStream</code>.</p>
+ *
  * <p>The method signatures mimic the ones of <code>java.util.zip.ZipFile</code> with a few exceptions:
  * <ul>
  *   <li>There is no <code>getName</code> method.</li>
@@ -81,6 +88,9 @@ public class ZipFile implements ZipConstants {
     /** The currently opened RandomAccessInputStream to the zip file (may be null) */
     private RandomAccessOutputStream raos;
 
+    /** RandomAccessInputStream shared by the entry streams, if it supports positional reads (may be null) */
+    private EntryDataSource sharedDataSource;
+
     /** Contains ZipEntry instances corresponding to the archive's entries, in the order they were found in the archive. */
     private Vector<ZipEntry> entries = new Vector<ZipEntry>();
 
@@ -266,27 +276,96 @@ public class ZipFile implements ZipConstants {
         if (entryInfo == null)
             throw new ZipException("Unknown entry: "+ze.getName());
 
-        openRead();
-        RandomAccessInputStream entryIn = this.rais;
+        if (ze.getMethod()!=ZipConstants.STORED && ze.getMethod()!=ZipConstants.DEFLATED)
+            throw new ZipException("Found unsupported compression method "
+                                   + ze.getMethod());
 
-        // If data offset is -1 (not calculated yet), calculate it now
-        if (entryInfo.dataOffset == -1)
-            calculateDataOffset(entryInfo);
+        EntryDataSource dataSource = acquireDataSource();
+        try {
+            // If data offset is -1 (not calculated yet), calculate it now
+            if (entryInfo.dataOffset == -1)
+                calculateDataOffset(dataSource, entryInfo);
+        }
+        catch(IOException e) {
+            releaseDataSource(dataSource);
+            throw e;
+        }
 
-        this.rais = null;
-        
         long start = entryInfo.dataOffset;
-        BoundedInputStream bis = new BoundedInputStream(entryIn, start, ze.getCompressedSize());
-        switch (ze.getMethod()) {
-            case ZipConstants.STORED:
-                return bis;
-            case ZipConstants.DEFLATED:
-                bis.addDummy();
-                return new InflaterInputStream(bis, new Inflater(true));
-            default:
-                throw new ZipException("Found unsupported compression method "
-                                       + ze.getMethod());
+        BoundedInputStream bis = new BoundedInputStream(dataSource, start, ze.getCompressedSize());
+        if (ze.getMethod() == ZipConstants.STORED)
+            return bis;
+
+        bis.addDummy();
+        final Inflater inflater = new Inflater(true);
+        return new InflaterInputStream(bis, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    // Release the inflater's native memory now rather than when it is garbage collected
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a source of entry data. If the archive's <code>RandomAccessInputStream</code> supports positional reads,
+     * the data source is shared by all entry streams, otherwise a new <code>RandomAccessInputStream</code> is opened.
+     * The returned data source must be released with {@link #releaseDataSource(EntryDataSource)} when it is not used
+     * anymore.
+     *
+     * @return a source of entry data
+     * @throws IOException if an error occured while opening the zip file for random read access.
+     * @throws UnsupportedFileOperationException if a required operation is not supported by the underlying filesystem.
+     */
+    private synchronized EntryDataSource acquireDataSource() throws IOException, UnsupportedFileOperationException {
+        EntryDataSource dataSource = sharedDataSource;
+        if(dataSource==null) {
+            dataSource = new EntryDataSource(file.getRandomAccessInputStream());
+            if(dataSource.isShareable())
+                sharedDataSource = dataSource;
         }
+
+        dataSource.nbUsers++;
+        return dataSource;
+    }
+
+    /**
+     * Releases a data source that was returned by {@link #acquireDataSource()}, closing its
+     * <code>RandomAccessInputStream</code> if it isn't used by any other entry stream.
+     *
+     * @param dataSource the data source to release
+     * @throws IOException if an error occurred while closing the RandomAccessInputStream
+     */
+    private synchronized void releaseDataSource(EntryDataSource dataSource) throws IOException {
+        if(--dataSource.nbUsers>0)
+            return;
+
+        if(sharedDataSource==dataSource)
+            sharedDataSource = null;
+
+        dataSource.rais.close();
+    }
+
+    /**
+     * Replaces a shared data source which channel has been closed, which happens when a thread that was reading from it
+     * got interrupted. The data source is released and a new one is returned in its place.
+     *
+     * @param dataSource the data source to replace
+     * @return a new data source
+     * @throws IOException if an error occured while opening the zip file for random read access.
+     */
+    private synchronized EntryDataSource replaceDataSource(EntryDataSource dataSource) throws IOException {
+        if(sharedDataSource==dataSource)
+            sharedDataSource = null;
+
+        releaseDataSource(dataSource);
+
+        return acquireDataSource();
     }
 
 
@@ -690,14 +769,25 @@ public class ZipFile implements ZipConstants {
 
 
     /**
-     * Calulcates the data offset of the entry which starts at the given ZipEntryInfo.headerOffset and stores the result
-     * in ZipEntryInfo.dataOffset. After calling this method, the RandomAccessInputStream will be positionned at the
-     * beginning of the filename field.
+     * Calulcates the data offset of the entry which starts at the given ZipEntryInfo.headerOffset, reading from the
+     * currently opened RandomAccessInputStream, and stores the result in ZipEntryInfo.dataOffset.
      *
      * @param entryInfo the ZipEntryInfo object in which to store the data offset
      * @throws IOException if an unexpected I/O error occurred
      */
     private void calculateDataOffset(ZipEntryInfo entryInfo) throws IOException {
+        calculateDataOffset(new EntryDataSource(rais), entryInfo);
+    }
+
+    /**
+     * Calulcates the data offset of the entry which starts at the given ZipEntryInfo.headerOffset, reading from the
+     * given data source, and stores the result in ZipEntryInfo.dataOffset.
+     *
+     * @param dataSource the data source to read the local file header from
+     * @param entryInfo the ZipEntryInfo object in which to store the data offset
+     * @throws IOException if an unexpected I/O error occurred
+     */
+    private void calculateDataOffset(EntryDataSource dataSource, ZipEntryInfo entryInfo) throws IOException {
         // Skip the following fields:
         //  local file header signature     4 bytes
         //  version needed to extract       2 bytes
@@ -711,16 +801,16 @@ public class ZipFile implements ZipConstants {
         // Total nb of bytes to skip:      26
 
         long dataOffset = entryInfo.headerOffset + 26;
-        rais.seek(dataOffset);
+
+        // Read the filename and extra field lengths
+        byte[] b = new byte[4];
+        dataSource.readFully(dataOffset, b);
 
         // Advance the offset of the filename field's length (plus the filename length field: 2 bytes)
-        byte[] b = new byte[2];
-        rais.readFully(b);
-        dataOffset += 2 + ZipShort.getValue(b);
+        dataOffset += 2 + ZipShort.getValue(b, 0);
 
         // Advance the offset of the extra field's length (plus the extra field length field: 2 bytes)
-        rais.readFully(b);
-        dataOffset += 2 + ZipShort.getValue(b);
+        dataOffset += 2 + ZipShort.getValue(b, 2);
 
         entryInfo.dataOffset = dataOffset;
     }
@@ -1108,40 +1198,89 @@ public class ZipFile implements ZipConstants {
     ///////////////////
     
     /**
-     * InputStream that delegates requests to the underlying RandomAccessFile, making sure that only bytes from a
-     * certain range can be read.
+     * Source of entry data: a <code>RandomAccessInputStream</code> to the zip file along with the number of entry
+     * streams that read from it.
      */
-    private static class BoundedInputStream extends InputStream {
+    private static class EntryDataSource {
 
         private final RandomAccessInputStream rais;
 
+        /** Non-null if the stream supports positional reads */
+        private final PositionalReadable positionalReadable;
+
+        /** Number of entry streams that read from this data source, guarded by the ZipFile's lock */
+        private int nbUsers;
+
+        EntryDataSource(RandomAccessInputStream rais) {
+            this.rais = rais;
+            this.positionalReadable = rais instanceof PositionalReadable?(PositionalReadable)rais:null;
+        }
+
+        /**
+         * Returns <code>true</code> if this data source can be used by several entry streams at once.
+         */
+        boolean isShareable() {
+            return positionalReadable!=null;
+        }
+
+        /**
+         * Reads up to <code>len</code> bytes of data starting at the given position.
+         */
+        int read(long position, byte b[], int off, int len) throws IOException {
+            if(positionalReadable!=null)
+                return positionalReadable.read(position, b, off, len);
+
+            synchronized(rais) {
+                rais.seek(position);
+                return rais.read(b, off, len);
+            }
+        }
+
+        /**
+         * Reads exactly <code>b.length</code> bytes of data starting at the given position.
+         */
+        void readFully(long position, byte b[]) throws IOException {
+            int off = 0;
+            while(off<b.length) {
+                int ret = read(position+off, b, off, b.length-off);
+                if(ret<0)
+                    throw new EOFException();
+                off += ret;
+            }
+        }
+    }
+
+    /**
+     * InputStream that reads a certain range of an {@link EntryDataSource}, and releases the data source when closed.
+     */
+    private class BoundedInputStream extends InputStream {
+
+        private EntryDataSource dataSource;
+
         private long remaining;
         private long loc;
         private boolean addDummyByte = false;
+        private boolean closed;
 
-        BoundedInputStream(RandomAccessInputStream rais, long start, long remaining) {
-            this.rais = rais;
+        BoundedInputStream(EntryDataSource dataSource, long start, long remaining) {
+            this.dataSource = dataSource;
             this.remaining = remaining;
             loc = start;
         }
 
         @Override
         public int read() throws IOException {
-            if (remaining-- <= 0) {
-                if (addDummyByte) {
-                    addDummyByte = false;
-                    return 0;
-                }
-                return -1;
-            }
-            synchronized (rais) {
-                rais.seek(loc++);
-                return rais.read();
-            }
+            byte b[] = new byte[1];
+            int ret = read(b, 0, 1);
+
+            return ret<=0?-1:b[0]&0xFF;
         }
 
         @Override
         public int read(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("Stream closed");
+
             if (remaining <= 0) {
                 if (addDummyByte) {
                     addDummyByte = false;
@@ -1159,9 +1298,17 @@ public class ZipFile implements ZipConstants {
                 len = (int) remaining;
             }
             int ret;
-            synchronized (rais) {
-                rais.seek(loc);
-                ret = rais.read(b, off, len);
+            try {
+                ret = dataSource.read(loc, b, off, len);
+            }
+            catch(ClosedChannelException e) {
+                // The shared channel was closed because another thread reading from it got interrupted:
+                // read from a new one
+                if(e instanceof ClosedByInterruptException || !dataSource.isShareable())
+                    throw e;
+
+                dataSource = replaceDataSource(dataSource);
+                ret = dataSource.read(loc, b, off, len);
             }
             if (ret > 0) {
                 loc += ret;
@@ -1172,7 +1319,11 @@ public class ZipFile implements ZipConstants {
 
         @Override
         public void close() throws IOException {
-            rais.close();
+            if(closed)
+                return;
+
+            closed = true;
+            releaseDataSource(dataSource);
         }
 
         /**
@@ -19,12 +19,21 @@
 package com.mucommander.commons.file.archive.zip.provider;
 
 import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ParallelDeflaterOutputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.LinkedList;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.zip.Deflater;
 import java.util.zip.ZipException;
 
@@ -39,6 +48,8 @@ import java.util.zip.ZipException;
  * code has been modified under the terms of the Apache License which you can find in the bundled muCommander license
  * file. It was forked at version 1.7.0 of Ant.</p>
  *
+ * <p>DEFLATED entries can be compressed on several threads, see {@link #setParallelCompression(Executor, int)}.</p>
+ *
  * @author Apache Ant, Maxence Bernard
  */
 public class ZipOutputStream extends OutputStream implements ZipConstants {
@@ -79,6 +90,22 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** Holds byte buffer instance used to convert short and longs, avoids creating lots of small arrays */
     private ZipBuffer zipBuffer = new ZipBuffer();
 
+    /** Executes the compression tasks of DEFLATED entries, null if entries are compressed on the caller thread */
+    private Executor executor;
+
+    /** Maximum number of compression tasks in flight */
+    private int nbThreads = 1;
+
+    /** Entries that have been compressed, or are being compressed, in the background and have yet to be written */
+    private LinkedList<PendingEntry> pendingEntries = new LinkedList<PendingEntry>();
+
+    /** Deflaters that are not used by a background compression task at the moment */
+    private ConcurrentLinkedQueue<Deflater> parallelDeflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    /** Maximum size of an entry that is buffered in memory and compressed as a whole in the background. Larger
+     * entries are written as they come, their data being split into blocks that are compressed in parallel. */
+    private final static int MAX_BUFFERED_ENTRY_SIZE = 1024*1024;
+
     /** 0 (zero) as ZipShort */
     private static final byte[] SHORT_0 = ZipShort.getBytes(0);
 
@@ -181,6 +208,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      */
     public void finish() throws IOException {
         closeEntry();
+        writePendingEntries();
+
         long cdOffset = written;
         int nbEntries = entries.size();
         ZipEntry ze;
@@ -203,11 +232,18 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         if (entry == null)
             return;
 
-        finalizeEntryData(entry, zeos, out, !hasRandomAccess, zipBuffer);
-        written += entry.getCompressedSize();
+        if(zeos instanceof ParallelEntryOutputStream && ((ParallelEntryOutputStream)zeos).isBuffered()) {
+            // The entry's header and data will be written once it has been compressed in the background,
+            // and all the entries before it have been written
+            queueEntry(entry, (ParallelEntryOutputStream)zeos);
+        }
+        else {
+            finalizeEntryData(entry, zeos, out, !hasRandomAccess, zipBuffer);
+            written += entry.getCompressedSize();
 
-        if(!hasRandomAccess)
-            written += writeDataDescriptor(entry, out, zipBuffer);
+            if(!hasRandomAccess)
+                written += writeDataDescriptor(entry, out, zipBuffer);
+        }
 
         entry = null;
         entryInfo = null;
@@ -235,7 +271,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         long crc = zeos.getCrc();
 
         if (entry.getMethod() == DEFLATED) {
-            ((DeflatedOutputStream)zeos).finishDeflate();
+            zeos.finish();
 
             entry.setSize(adjustToLong(zeos.getTotalIn()));
             long compressedSize = adjustToLong(zeos.getTotalOut());
@@ -252,17 +288,40 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         // If random access output, write the local file header containing
         // the correct CRC and compressed/uncompressed sizes
-        if (!useDataDescriptor) {
-            RandomAccessOutputStream raos = (RandomAccessOutputStream)out;
+        if (!useDataDescriptor)
+            updateLocalFileHeader(entry, (RandomAccessOutputStream)out, zipBuffer);
+    }
 
-            long save = raos.getOffset();
+    /**
+     * Writes the CRC and compressed/uncompressed sizes of the given entry, which has already been written, in its
+     * local file header.
+     *
+     * @param entry the entry
+     * @param raos the stream the entry has been written to
+     * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
+     * @throws IOException if an I/O error occurred
+     */
+    private static void updateLocalFileHeader(ZipEntry entry, RandomAccessOutputStream raos, ZipBuffer zipBuffer) throws IOException {
+        long save = raos.getOffset();
+
+        raos.seek(entry.getEntryInfo().headerOffset + 14);
+        raos.write(ZipLong.getBytes(entry.getCrc(), zipBuffer.longBuffer));
+        raos.write(ZipLong.getBytes(entry.getCompressedSize(), zipBuffer.longBuffer));
+        raos.write(ZipLong.getBytes(entry.getSize(), zipBuffer.longBuffer));
+        raos.seek(save);
+    }
 
-            raos.seek(entry.getEntryInfo().headerOffset + 14);
-            raos.write(ZipLong.getBytes(entry.getCrc(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getCompressedSize(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getSize(), zipBuffer.longBuffer));
-            raos.seek(save);
-        }
+    /**
+     * Writes the local file header of the given entry at the current position, and records its offset.
+     *
+     * @param ze the entry whose header to write
+     * @throws IOException if an I/O error occurred
+     */
+    private void writeEntryHeader(ZipEntry ze) throws IOException {
+        ZipEntryInfo info = ze.getEntryInfo();
+        info.headerOffset = written;
+        written += writeLocalFileHeader(ze, out, encoding, !hasRandomAccess, zipBuffer);
+        info.dataOffset = written;
     }
 
     /**
@@ -292,6 +351,19 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             entry.setTime(System.currentTimeMillis());
         }
 
+        if(entryMethod == DEFLATED && executor!=null) {
+            zeos = new ParallelEntryOutputStream();
+
+            // Entries known to be large are not worth buffering
+            if(entry.getSize()>MAX_BUFFERED_ENTRY_SIZE)
+                ((ParallelEntryOutputStream)zeos).startStreaming();
+
+            return;
+        }
+
+        // Entries that are compressed on this thread are written right away, after the ones in the background
+        writePendingEntries();
+
         if(entryMethod == DEFLATED) {
             deflater.reset();
             deflater.setLevel(level);
@@ -302,9 +374,108 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             zeos = new StoredOutputStream(out);
         }
 
-        entryInfo.headerOffset = written;
-        written += writeLocalFileHeader(entry, out, encoding, !hasRandomAccess, zipBuffer);
-        entryInfo.dataOffset = written;
+        writeEntryHeader(entry);
+    }
+
+    /**
+     * Queues the given entry, whose data has been buffered, for compression in the background. If too many entries
+     * are already in flight, the oldest one is written first.
+     *
+     * @param ze the entry
+     * @param entryOut the stream the entry's data has been buffered in
+     * @throws IOException if an error occurred while writing the oldest entry
+     */
+    private void queueEntry(ZipEntry ze, ParallelEntryOutputStream entryOut) throws IOException {
+        if(pendingEntries.size()>=nbThreads)
+            writeOldestPendingEntry();
+
+        PendingEntry pendingEntry = new PendingEntry(ze, entryOut.getCrc(), entryOut.getTotalIn(),
+                new FutureTask<ByteArrayOutputStream>(new EntryCompressor(entryOut.data, entryOut.count)));
+        pendingEntries.add(pendingEntry);
+        executor.execute(pendingEntry.compressedData);
+    }
+
+    /**
+     * Waits for the oldest entry compressed in the background and writes it: local file header, compressed data
+     * and size information.
+     *
+     * @throws IOException if the entry could not be compressed or written
+     */
+    private void writeOldestPendingEntry() throws IOException {
+        PendingEntry pendingEntry = pendingEntries.removeFirst();
+
+        ByteArrayOutputStream compressed;
+        try {
+            compressed = pendingEntry.compressedData.get();
+        }
+        catch(InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        ZipEntry ze = pendingEntry.entry;
+        writeEntryHeader(ze);
+        compressed.writeTo(out);
+
+        ze.setSize(adjustToLong(pendingEntry.size));
+        ze.setCompressedSize(compressed.size());
+        ze.setCrc(pendingEntry.crc);
+        written += ze.getCompressedSize();
+
+        if(hasRandomAccess)
+            updateLocalFileHeader(ze, (RandomAccessOutputStream)out, zipBuffer);
+        else
+            written += writeDataDescriptor(ze, out, zipBuffer);
+    }
+
+    /**
+     * Writes all the entries compressed in the background, waiting for them to be compressed if needed.
+     *
+     * @throws IOException if an entry could not be compressed or written
+     */
+    private void writePendingEntries() throws IOException {
+        while(!pendingEntries.isEmpty())
+            writeOldestPendingEntry();
+    }
+
+    /**
+     * Compresses DEFLATED entries on several threads, using the given <code>Executor</code>. Entries up to 1MB are
+     * buffered in memory and compressed as a whole, several of them at once; they are written in the order in which
+     * they were put, once compressed. Larger entries are written as they come, their data being split into blocks
+     * that are compressed in parallel by a {@link ParallelDeflaterOutputStream}.
+     *
+     * <p>This method must be called before the first entry is put. Passing a <code>null</code> executor or a number
+     * of threads lower than 2 compresses entries on the caller thread, which is the default.</p>
+     *
+     * @param executor executes the compression tasks
+     * @param nbThreads the maximum number of entries or blocks to compress at once
+     */
+    public void setParallelCompression(Executor executor, int nbThreads) {
+        if(executor==null || nbThreads<2) {
+            this.executor = null;
+            this.nbThreads = 1;
+        }
+        else {
+            this.executor = executor;
+            this.nbThreads = nbThreads;
+        }
+    }
+
+    /**
+     * Returns a deflater that is not used by any background compression task, creating one if needed.
+     *
+     * @return a deflater set to the current compression level
+     */
+    private Deflater getParallelDeflater() {
+        Deflater parallelDeflater = parallelDeflaters.poll();
+        if(parallelDeflater==null)
+            parallelDeflater = new Deflater(level, true);
+        else
+            parallelDeflater.setLevel(level);
+
+        return parallelDeflater;
     }
 
     /**
@@ -699,7 +870,23 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      */
     @Override
     public void close() throws IOException {
-        finish();
+        try {
+            finish();
+        }
+        finally {
+            // Let any compression task still running (after a failure) complete before releasing its deflater
+            for(PendingEntry pendingEntry : pendingEntries) {
+                try { pendingEntry.compressedData.get(); }
+                catch(Exception e) {
+                    // Not much we can do about it
+                }
+            }
+            pendingEntries.clear();
+
+            Deflater parallelDeflater;
+            while((parallelDeflater=parallelDeflaters.poll())!=null)
+                parallelDeflater.end();
+        }
 
         if(deflaterBuf !=null) {         // Only if close() has not already been called already
             BufferPool.releaseByteArray(deflaterBuf);
@@ -718,4 +905,149 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     public void flush() throws IOException {
         out.flush();
     }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Receives the data of a DEFLATED entry when entries are compressed in parallel. The data is buffered in memory,
+     * until it becomes larger than {@link ZipOutputStream#MAX_BUFFERED_ENTRY_SIZE}: the entries that are pending are
+     * then written, followed by the entry's header and its data, compressed by a {@link ParallelDeflaterOutputStream}.
+     */
+    private class ParallelEntryOutputStream extends ZipEntryOutputStream {
+
+        /** The buffered data, null once the entry is streamed */
+        private byte data[] = new byte[8192];
+        /** Number of bytes in the buffer */
+        private int count;
+        /** Compresses the entry's data once it is streamed, null while it is buffered */
+        private ParallelDeflaterOutputStream deflaterOut;
+
+        private ParallelEntryOutputStream() {
+            super(ZipOutputStream.this.out, DEFLATED);
+        }
+
+        /**
+         * Returns <code>true</code> if the entry's data is buffered in memory, <code>false</code> if it is written
+         * to the underlying stream as it comes.
+         */
+        private boolean isBuffered() {
+            return deflaterOut==null;
+        }
+
+        /**
+         * Writes the pending entries and the entry's header, and compresses the data buffered so far and any data
+         * that follows to the underlying stream.
+         */
+        private void startStreaming() throws IOException {
+            writePendingEntries();
+            writeEntryHeader(entry);
+
+            deflaterOut = new ParallelDeflaterOutputStream(out, level, nbThreads, executor);
+            deflaterOut.write(data, 0, count);
+            data = null;
+        }
+
+        @Override
+        public void write(byte[] b, int offset, int length) throws IOException {
+            crc.update(b, offset, length);
+
+            if(deflaterOut==null) {
+                if(count+length<=MAX_BUFFERED_ENTRY_SIZE) {
+                    if(count+length>data.length) {
+                        byte newData[] = new byte[Math.min(Math.max(data.length*2, count+length), MAX_BUFFERED_ENTRY_SIZE)];
+                        System.arraycopy(data, 0, newData, 0, count);
+                        data = newData;
+                    }
+
+                    System.arraycopy(b, offset, data, count, length);
+                    count += length;
+                    return;
+                }
+
+                startStreaming();
+            }
+
+            deflaterOut.write(b, offset, length);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if(deflaterOut!=null)
+                deflaterOut.finish();
+        }
+
+        @Override
+        public int getTotalIn() {
+            return deflaterOut==null?count:(int)deflaterOut.getTotalIn();
+        }
+
+        @Override
+        public int getTotalOut() {
+            return deflaterOut==null?0:(int)deflaterOut.getTotalOut();
+        }
+
+        /**
+         * Completes writing a streamed entry <b>without</b> closing the underlying <code>OutputStream</code>.
+         */
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+    }
+
+    /**
+     * Compresses the data of a buffered entry in the background.
+     */
+    private class EntryCompressor implements Callable<ByteArrayOutputStream> {
+
+        private final byte data[];
+        private final int length;
+
+        private EntryCompressor(byte data[], int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        public ByteArrayOutputStream call() {
+            Deflater parallelDeflater = getParallelDeflater();
+            try {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(length/2+64);
+                byte buf[] = new byte[8192];
+
+                parallelDeflater.setInput(data, 0, length);
+                parallelDeflater.finish();
+                while(!parallelDeflater.finished()) {
+                    int len = parallelDeflater.deflate(buf, 0, buf.length);
+                    compressed.write(buf, 0, len);
+                }
+
+                return compressed;
+            }
+            finally {
+                parallelDeflater.reset();
+                parallelDeflaters.add(parallelDeflater);
+            }
+        }
+    }
+
+    /**
+     * An entry whose data is compressed in the background, and which is yet to be written.
+     */
+    private static class PendingEntry {
+
+        private final ZipEntry entry;
+        private final long crc;
+        private final int size;
+        private final FutureTask<ByteArrayOutputStream> compressedData;
+
+        private PendingEntry(ZipEntry entry, long crc, int size, FutureTask<ByteArrayOutputStream> compressedData) {
+            this.entry = entry;
+            this.crc = crc;
+            this.size = size;
+            this.compressedData = compressedData;
+        }
+    }
 }
@@ -23,12 +23,16 @@ import com.mucommander.commons.file.FileAttributes;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.io.BufferedRandomOutputStream;
+import com.mucommander.commons.io.ParallelGZIPOutputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.util.IOScheduler;
 import org.apache.tools.bzip2.CBZip2OutputStream;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 
@@ -232,6 +236,26 @@ public abstract class Archiver {
      * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
      */
     public static Archiver getArchiver(AbstractFile file, int format) throws IOException, UnsupportedFileOperationException {
+        return getArchiver(file, format, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Returns an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to,
+     * compressing data with the given level and number of threads. See {@link #getArchiver(AbstractFile, int)} for
+     * details on how the file is opened.
+     *
+     * @param file the AbstractFile which the returned Archiver will write entries to
+     * @param format an archive format
+     * @param level the compression level, between 0 and 9 or <code>Deflater.DEFAULT_COMPRESSION</code>, used by the
+     * formats that support it
+     * @param nbThreads the number of threads to compress data on, used by the formats that support it
+     * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
+     * null if the specified format is not valid.
+     * @throws IOException if the file cannot be opened for write, or if an error occurred while intializing the archiver
+     * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
+     * @see #formatSupportsCompressionLevel(int)
+     */
+    public static Archiver getArchiver(AbstractFile file, int format, int level, int nbThreads) throws IOException, UnsupportedFileOperationException {
         OutputStream out = null;
 
         if(file.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE)) {
@@ -251,7 +275,7 @@ public abstract class Archiver {
         if(out==null)
             out = new BufferedOutputStream(file.getOutputStream());
 
-        return getArchiver(out, format);
+        return getArchiver(out, format, level, nbThreads);
     }
 
 
@@ -267,14 +291,38 @@ public abstract class Archiver {
      * @throws IOException if an error occurred while intializing the archiver
      */
     public static Archiver getArchiver(OutputStream out, int format) throws IOException {
+        return getArchiver(out, format, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Returns an Archiver for the specified format and that uses the given <code>OutputStream</code> to write entries
+     * to, compressing data with the given level and number of threads. <code>null</code> is returned if the specified
+     * format is not valid.
+     *
+     * <p>The Zip, Gzip and Tar/Gzip formats honour the compression level. When more than one thread is requested,
+     * they compress data on that many threads of the {@link IOScheduler.Pool#BACKGROUND background} pool: Zip entries
+     * are compressed concurrently, and Gzip streams are split into blocks that are compressed concurrently.
+     * Bzip2 streams are always compressed on the calling thread.</p>
+     *
+     * @param out the OutputStream which the returned Archiver will write entries to
+     * @param format an archive format
+     * @param level the compression level, between 0 and 9 or <code>Deflater.DEFAULT_COMPRESSION</code>, used by the
+     * formats that support it
+     * @param nbThreads the number of threads to compress data on, used by the formats that support it
+     * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
+     * null if the specified format is not valid.
+     * @throws IOException if an error occurred while intializing the archiver
+     * @see #formatSupportsCompressionLevel(int)
+     */
+    public static Archiver getArchiver(OutputStream out, int format, int level, int nbThreads) throws IOException {
         Archiver archiver;
 
         switch(format) {
             case ZIP_FORMAT:
-                archiver = new ZipArchiver(out);
+                archiver = new ZipArchiver(out, level, nbThreads>1?getCompressionExecutor():null, nbThreads);
                 break;
             case GZ_FORMAT:
-                archiver = new SingleFileArchiver(new GZIPOutputStream(out));
+                archiver = new SingleFileArchiver(createGzipOutputStream(out, level, nbThreads));
                 break;
             case BZ2_FORMAT:
                 archiver = new SingleFileArchiver(createBzip2OutputStream(out));
@@ -283,7 +331,7 @@ public abstract class Archiver {
                 archiver = new TarArchiver(out);
                 break;
             case TAR_GZ_FORMAT:
-                archiver = new TarArchiver(new GZIPOutputStream(out));
+                archiver = new TarArchiver(createGzipOutputStream(out, level, nbThreads));
                 break;
             case TAR_BZ2_FORMAT:
                 archiver = new TarArchiver(createBzip2OutputStream(out));
@@ -298,6 +346,36 @@ public abstract class Archiver {
         return archiver;
     }
 
+    /**
+     * Creates and returns a Gzip <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
+     * stream.
+     *
+     * @param out the underlying stream
+     * @param level the compression level
+     * @param nbThreads the number of threads to compress data on
+     * @return a Gzip OutputStream
+     * @throws IOException if an error occurred while writing the Gzip header
+     */
+    protected static OutputStream createGzipOutputStream(OutputStream out, final int level, int nbThreads) throws IOException {
+        if(nbThreads>1)
+            return new ParallelGZIPOutputStream(out, level, nbThreads, getCompressionExecutor());
+
+        return new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * Returns the <code>Executor</code> that runs compression tasks.
+     *
+     * @return the Executor that runs compression tasks
+     */
+    private static Executor getCompressionExecutor() {
+        return IOScheduler.getExecutor(IOScheduler.Pool.SUBTASK, IOScheduler.Priority.NORMAL, null);
+    }
+
     /**
      * Creates and returns a Bzip2 <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
      * stream.
@@ -368,6 +446,17 @@ public abstract class Archiver {
     public static boolean formatSupportsComment(int format) {
         return format==ZIP_FORMAT;
     }
+
+
+    /**
+     * Returns true if the specified archive format honours the compression level and number of threads passed to
+     * {@link #getArchiver(AbstractFile, int, int, int)}, i.e. if it is a Deflate-based format.
+     *
+     * @param format an archive format
+     */
+    public static boolean formatSupportsCompressionLevel(int format) {
+        return format==ZIP_FORMAT || format==GZ_FORMAT || format==TAR_GZ_FORMAT;
+    }
 	
 	
     //////////////////////
@@ -26,6 +26,7 @@ import com.mucommander.commons.file.archive.zip.provider.ZipOutputStream;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.Executor;
 //import java.util.zip.ZipEntry;
 //import java.util.zip.ZipOutputStream;
 
@@ -48,6 +49,16 @@ class ZipArchiver extends Archiver {
         this.zos = new ZipOutputStream(outputStream);
     }
 
+    /**
+     * Creates a ZipArchiver that compresses entries with the given level, on several threads if an executor is given.
+     */
+    protected ZipArchiver(OutputStream outputStream, int level, Executor executor, int nbThreads) {
+        this(outputStream);
+
+        zos.setLevel(level);
+        zos.setParallelCompression(executor, nbThreads);
+    }
+
 
     /**
      * Overrides Archiver's no-op setComment method as Zip supports archive comment.
@@ -50,7 +50,7 @@ public class ConnectionPool implements Runnable {
     private final static int MONITOR_SLEEP_PERIOD = 1000;
 
     /** Maximum number of simultaneous connections per realm/credentials combo */
-    private final static int MAX_CONNECTIONS_PER_REALM = 4;
+    public final static int MAX_CONNECTIONS_PER_REALM = 4;
 
 
     public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
@@ -43,6 +43,15 @@ public class AbstractContainsFilter extends AbstractStringCriterionFilter {
         this.s = s;
     }
 
+    /**
+     * Returns the string to look for in criterion values.
+     *
+     * @return the string to look for in criterion values
+     */
+    String getString() {
+        return s;
+    }
+
 
     //////////////////////////////////////////////////
     // AbstractStringCriterionFilter implementation //
@@ -44,6 +44,15 @@ public class AbstractEndsWithFilter extends AbstractStringCriterionFilter {
         this.s = s;
     }
 
+    /**
+     * Returns the string to compare criterion values against.
+     *
+     * @return the string to compare criterion values against
+     */
+    String getString() {
+        return s;
+    }
+
 
     //////////////////////////////////////////////////
     // AbstractStringCriterionFilter implementation //
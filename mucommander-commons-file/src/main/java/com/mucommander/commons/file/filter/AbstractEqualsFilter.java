@@ -42,6 +42,15 @@ public class AbstractEqualsFilter extends AbstractStringCriterionFilter {
         this.s = s;
     }
 
+    /**
+     * Returns the string to compare criterion values against.
+     *
+     * @return the string to compare criterion values against
+     */
+    String getString() {
+        return s;
+    }
+
 
     //////////////////////////////////////////////////
     // AbstractStringCriterionFilter implementation //
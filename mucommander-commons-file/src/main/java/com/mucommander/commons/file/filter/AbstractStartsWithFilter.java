@@ -44,6 +44,15 @@ public class AbstractStartsWithFilter extends AbstractStringCriterionFilter {
         this.s = s;
     }
 
+    /**
+     * Returns the string to match against criterion values.
+     *
+     * @return the string to match against criterion values
+     */
+    String getString() {
+        return s;
+    }
+
 
     //////////////////////////////////////////////////
     // AbstractStringCriterionFilter implementation //
@@ -0,0 +1,587 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.filter;
+
+import com.mucommander.commons.file.AbstractFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompiledFileFilter merges an ordered list of filters into a single matcher, which finds the first of those filters
+ * that matches a file without evaluating them one after the other. It matches the files that are matched by at least
+ * one of the filters, and none if there are no filters.
+ *
+ * <p>Each filter is broken down into the filters it is the conjunction of, when it is a non-inverted
+ * {@link AndFileFilter}. One of the filename predicates of that conjunction &ndash; an {@link EqualsFilenameFilter},
+ * an {@link ExtensionFilenameFilter}, an {@link EndsWithFilenameFilter}, a {@link StartsWithFilenameFilter},
+ * a {@link ContainsFilenameFilter}, or a {@link RegexpFilenameFilter} whose expression is a plain string optionally
+ * surrounded by <code>.*</code> &ndash; is used as a key to index the filter:
+ * <ul>
+ *  <li>equal names and extensions are looked up in hash tables</li>
+ *  <li>the other prefixes, suffixes and substrings are all found in a single pass over the filename, by an
+ * Aho-Corasick automaton</li>
+ * </ul>
+ * Only the filters whose key was found in a filename, and the filters that have no key, are evaluated against the
+ * file. Filename predicates are evaluated before the other ones, so that attributes, which may require I/O, are only
+ * retrieved for files whose name already matched. A case-insensitive key is indexed in a case-folded form which may
+ * find a few more candidates than necessary, but never fewer: since candidates are evaluated in full, the result is
+ * always the same as that of evaluating each filter in turn.</p>
+ *
+ * <p>Filters are compiled when this filter is created: changes made to them afterwards are not taken into account.</p>
+ */
+public class CompiledFileFilter extends AbstractFileFilter {
+
+    /** Filename equals a string */
+    private final static int EQUALS = 0;
+    /** Filename ends with a string */
+    private final static int ENDS_WITH = 1;
+    /** Filename starts with a string */
+    private final static int STARTS_WITH = 2;
+    /** Filename contains a string */
+    private final static int CONTAINS = 3;
+
+    /** Compiled filters, in the order they were given */
+    private final Clause clauses[];
+    /** Filters that have no key and must be evaluated against every file */
+    private final BitSet unindexed = new BitSet();
+
+    /** Filters keyed by a case-sensitive filename */
+    private final Map<String, BitSet> names = new HashMap<String, BitSet>();
+    /** Filters keyed by a case-insensitive filename, in folded form */
+    private final Map<String, BitSet> foldedNames = new HashMap<String, BitSet>();
+    /** Filters keyed by a case-sensitive extension, including the '.' */
+    private final Map<String, BitSet> extensions = new HashMap<String, BitSet>();
+    /** Filters keyed by a case-insensitive extension, including the '.', in folded form */
+    private final Map<String, BitSet> foldedExtensions = new HashMap<String, BitSet>();
+    /** Finds case-sensitive prefixes, suffixes and substrings */
+    private final Automaton automaton = new Automaton();
+    /** Finds case-insensitive prefixes, suffixes and substrings in folded filenames */
+    private final Automaton foldedAutomaton = new Automaton();
+
+    /**
+     * Creates a new <code>CompiledFileFilter</code> that compiles the given filters.
+     *
+     * @param filters the filters to compile, in the order they must be tried
+     */
+    public CompiledFileFilter(FileFilter... filters) {
+        clauses = new Clause[filters.length];
+        for(int i=0; i<filters.length; i++)
+            clauses[i] = compile(i, filters[i]);
+
+        automaton.build();
+        foldedAutomaton.build();
+    }
+
+    /**
+     * Returns the number of filters this filter was compiled from.
+     *
+     * @return the number of filters this filter was compiled from
+     */
+    public int getFilterCount() {
+        return clauses.length;
+    }
+
+    /**
+     * Returns the index of the first filter that matches the given file, <code>-1</code> if none of them does.
+     *
+     * @param file the file to test
+     * @return the index of the first filter that matches the given file, -1 if none of them does
+     */
+    public int indexOf(AbstractFile file) {
+        return indexOf(file, new BitSet(clauses.length));
+    }
+
+    /**
+     * Returns, for each of the given files, the index of the first filter that matches it, <code>-1</code> if none
+     * of them does. This is faster than calling {@link #indexOf(AbstractFile)} for each file.
+     *
+     * @param files the files to test
+     * @return the index of the first filter that matches each file
+     */
+    public int[] indexOf(AbstractFile files[]) {
+        int indexes[] = new int[files.length];
+        BitSet candidates = new BitSet(clauses.length);
+        for(int i=0; i<files.length; i++)
+            indexes[i] = indexOf(files[i], candidates);
+
+        return indexes;
+    }
+
+    /**
+     * Returns the index of the first filter that matches the given file, using the given set to collect candidates.
+     */
+    private int indexOf(AbstractFile file, BitSet candidates) {
+        candidates.clear();
+        candidates.or(unindexed);
+
+        String name = file.getName();
+        BitSet filters;
+
+        if(!names.isEmpty() && (filters=names.get(name))!=null)
+            candidates.or(filters);
+
+        int dot = name.lastIndexOf('.');
+        if(dot!=-1 && !extensions.isEmpty() && (filters=extensions.get(name.substring(dot)))!=null)
+            candidates.or(filters);
+
+        automaton.find(name, candidates);
+
+        if(!foldedNames.isEmpty() || !foldedExtensions.isEmpty() || !foldedAutomaton.isEmpty()) {
+            // Folding does not change the length of the name, nor the position of its extension
+            String foldedName = fold(name);
+
+            if(!foldedNames.isEmpty() && (filters=foldedNames.get(foldedName))!=null)
+                candidates.or(filters);
+
+            if(dot!=-1 && !foldedExtensions.isEmpty() && (filters=foldedExtensions.get(foldedName.substring(dot)))!=null)
+                candidates.or(filters);
+
+            foldedAutomaton.find(foldedName, candidates);
+        }
+
+        for(int i=candidates.nextSetBit(0); i>=0; i=candidates.nextSetBit(i+1)) {
+            if(clauses[i].match(file))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Compiles the given filter and indexes it under its key, if it has one.
+     */
+    private Clause compile(int index, FileFilter filter) {
+        List<FileFilter> predicates = new ArrayList<FileFilter>();
+        flatten(filter, predicates);
+
+        // Filename and path predicates are cheap, evaluate them before those that may require I/O
+        List<FileFilter> ordered = new ArrayList<FileFilter>(predicates.size());
+        for(FileFilter predicate : predicates)
+            if(predicate instanceof StringCriterionFilter)
+                ordered.add(predicate);
+        for(FileFilter predicate : predicates)
+            if(!(predicate instanceof StringCriterionFilter))
+                ordered.add(predicate);
+
+        // Use the most selective key
+        Key key = null;
+        for(FileFilter predicate : ordered) {
+            Key predicateKey = getKey(predicate);
+            if(predicateKey!=null && (key==null || predicateKey.kind<key.kind))
+                key = predicateKey;
+        }
+
+        if(key==null)
+            unindexed.set(index);
+        else
+            for(String string : key.strings)
+                index(index, key.kind, string, key.caseSensitive);
+
+        return new Clause(ordered.toArray(new FileFilter[ordered.size()]));
+    }
+
+    /**
+     * Adds the given filter to the list of filters that are candidates for files whose name matches the given string.
+     */
+    private void index(int index, int kind, String string, boolean caseSensitive) {
+        if(!caseSensitive)
+            string = fold(string);
+
+        if(kind==EQUALS)
+            add(caseSensitive?names:foldedNames, string, index);
+        else if(kind==ENDS_WITH && string.length()>1 && string.lastIndexOf('.')==0)
+            add(caseSensitive?extensions:foldedExtensions, string, index);
+        else
+            (caseSensitive?automaton:foldedAutomaton).add(string, kind, index);
+    }
+
+    /**
+     * Adds the given filter to the set of filters mapped to the given key.
+     */
+    private static void add(Map<String, BitSet> map, String key, int index) {
+        BitSet filters = map.get(key);
+        if(filters==null) {
+            filters = new BitSet();
+            map.put(key, filters);
+        }
+
+        filters.set(index);
+    }
+
+    /**
+     * Adds the filters the given filter is the conjunction of to the given list, or the filter itself if it is not
+     * a non-inverted {@link AndFileFilter}.
+     */
+    private static void flatten(FileFilter filter, List<FileFilter> predicates) {
+        if(filter instanceof AndFileFilter && !filter.isInverted()) {
+            for(FileFilter f : ((AndFileFilter)filter).filters.toArray(new FileFilter[0]))
+                flatten(f, predicates);
+        }
+        else {
+            predicates.add(filter);
+        }
+    }
+
+    /**
+     * Returns the key a file must have for the given filter to match it, <code>null</code> if it has none that can
+     * be indexed.
+     */
+    private static Key getKey(FileFilter filter) {
+        if(!(filter instanceof FilenameFilter) || filter.isInverted())
+            return null;
+
+        boolean caseSensitive = ((StringCriterionFilter)filter).isCaseSensitive();
+
+        if(filter instanceof AbstractEqualsFilter)
+            return Key.create(EQUALS, caseSensitive, ((AbstractEqualsFilter)filter).getString());
+        if(filter instanceof AbstractExtensionFilter)
+            return Key.create(ENDS_WITH, caseSensitive, ((AbstractExtensionFilter)filter).getExtensions());
+        if(filter instanceof AbstractEndsWithFilter)
+            return Key.create(ENDS_WITH, caseSensitive, ((AbstractEndsWithFilter)filter).getString());
+        if(filter instanceof AbstractStartsWithFilter)
+            return Key.create(STARTS_WITH, caseSensitive, ((AbstractStartsWithFilter)filter).getString());
+        if(filter instanceof AbstractContainsFilter) {
+            String s = ((AbstractContainsFilter)filter).getString();
+            // A case-insensitive AbstractContainsFilter lower-cases whole strings, which may turn these characters
+            // into something that folding each character does not account for
+            if(!caseSensitive && !isFoldable(s))
+                return null;
+            return Key.create(CONTAINS, caseSensitive, s);
+        }
+        if(filter instanceof AbstractRegexpFilter)
+            return getKey(((AbstractRegexpFilter)filter).getRegularExpression(), caseSensitive);
+
+        return null;
+    }
+
+    /**
+     * Returns the key of a regular expression made of a plain string, optionally preceded and/or followed by
+     * <code>.*</code>, <code>null</code> for any other regular expression.
+     */
+    private static Key getKey(String regexp, boolean caseSensitive) {
+        int len = regexp.length();
+        boolean anyPrefix = regexp.startsWith(".*");
+        boolean anySuffix = false;
+        StringBuilder sb = new StringBuilder();
+
+        for(int i=anyPrefix?2:0; i<len; i++) {
+            char c = regexp.charAt(i);
+            if(c=='\\') {
+                // Escaped letters and digits are character classes, back references or quotes
+                if(++i==len || Character.isLetterOrDigit(c=regexp.charAt(i)))
+                    return null;
+                sb.append(c);
+            }
+            else if(c=='.' && i==len-2 && regexp.charAt(i+1)=='*') {
+                anySuffix = true;
+                break;
+            }
+            else if("^$.|?*+()[]{}".indexOf(c)!=-1) {
+                return null;
+            }
+            else {
+                sb.append(c);
+            }
+        }
+
+        return Key.create(anyPrefix?(anySuffix?CONTAINS:ENDS_WITH):(anySuffix?STARTS_WITH:EQUALS), caseSensitive, sb.toString());
+    }
+
+    /**
+     * Returns <code>true</code> if the given string contains neither surrogate characters, which
+     * <code>String.toLowerCase()</code> lower-cases as code points, nor the combining dot above which some locales
+     * insert when lower-casing <code>I</code>.
+     */
+    private static boolean isFoldable(String s) {
+        int len = s.length();
+        for(int i=0; i<len; i++) {
+            char c = s.charAt(i);
+            if(Character.isSurrogate(c) || c=='\u0307')
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Folds the case of the given string, one character at a time. Two characters that are equal when ignoring
+     * case, either when upper-casing or lower-casing them, have the same folded form.
+     */
+    private static String fold(String s) {
+        int len = s.length();
+        char chars[] = new char[len];
+        for(int i=0; i<len; i++)
+            chars[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+
+        return new String(chars);
+    }
+
+
+    ///////////////////////////////
+    // FileFilter implementation //
+    ///////////////////////////////
+
+    /**
+     * Returns <code>true</code> if at least one of the filters this filter was compiled from matches the given file.
+     *
+     * @param file the file to test
+     * @return true if at least one of the filters matches the given file
+     */
+    public boolean accept(AbstractFile file) {
+        return indexOf(file)!=-1;
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A compiled filter: the predicates a file must all match.
+     */
+    private static class Clause {
+
+        /** Predicates, in the order they are evaluated */
+        private final FileFilter predicates[];
+
+        private Clause(FileFilter predicates[]) {
+            this.predicates = predicates;
+        }
+
+        private boolean match(AbstractFile file) {
+            for(FileFilter predicate : predicates)
+                if(!predicate.match(file))
+                    return false;
+
+            return true;
+        }
+    }
+
+    /**
+     * The strings, one of which a filename must equal, end with, start with or contain.
+     */
+    private static class Key {
+
+        private final int kind;
+        private final boolean caseSensitive;
+        private final String strings[];
+
+        private Key(int kind, boolean caseSensitive, String strings[]) {
+            this.kind = kind;
+            this.caseSensitive = caseSensitive;
+            this.strings = strings;
+        }
+
+        /**
+         * Returns a key for the given strings, <code>null</code> if one of them is matched by all strings of this
+         * kind, i.e. is empty and not a name.
+         */
+        private static Key create(int kind, boolean caseSensitive, String... strings) {
+            if(strings.length==0)
+                return null;
+
+            for(String s : strings)
+                if(s.isEmpty() && kind!=EQUALS)
+                    return null;
+
+            return new Key(kind, caseSensitive, strings);
+        }
+    }
+
+    /**
+     * An Aho-Corasick automaton, which finds all occurrences of a set of strings in a single pass over a filename.
+     */
+    private static class Automaton {
+
+        private final Node root = new Node();
+        /** For each string added to the automaton: its kind */
+        private final List<Integer> kinds = new ArrayList<Integer>();
+        /** For each string added to the automaton: its length */
+        private final List<Integer> lengths = new ArrayList<Integer>();
+        /** For each string added to the automaton: the filter it is the key of */
+        private final List<Integer> filters = new ArrayList<Integer>();
+
+        private int patternKinds[];
+        private int patternLengths[];
+        private int patternFilters[];
+
+        /**
+         * Returns <code>true</code> if no string was added to this automaton.
+         */
+        private boolean isEmpty() {
+            return kinds.isEmpty();
+        }
+
+        /**
+         * Adds a string to this automaton. Must be called before {@link #build()}.
+         */
+        private void add(String s, int kind, int filter) {
+            Node node = root;
+            for(int i=0; i<s.length(); i++)
+                node = node.getOrCreateChild(s.charAt(i));
+
+            node.addOutput(kinds.size());
+            kinds.add(kind);
+            lengths.add(s.length());
+            filters.add(filter);
+        }
+
+        /**
+         * Computes the failure links and outputs of all nodes, breadth-first.
+         */
+        private void build() {
+            patternKinds = new int[kinds.size()];
+            patternLengths = new int[lengths.size()];
+            patternFilters = new int[filters.size()];
+            for(int i=0; i<patternKinds.length; i++) {
+                patternKinds[i] = kinds.get(i);
+                patternLengths[i] = lengths.get(i);
+                patternFilters[i] = filters.get(i);
+            }
+
+            LinkedList<Node> queue = new LinkedList<Node>();
+            root.freeze();
+            for(Node child : root.children) {
+                child.fail = root;
+                queue.add(child);
+            }
+
+            while(!queue.isEmpty()) {
+                Node node = queue.removeFirst();
+                node.freeze();
+
+                for(int i=0; i<node.chars.length; i++) {
+                    Node child = node.children[i];
+                    Node fail = node.fail;
+                    Node next;
+                    while((next=fail.getChild(node.chars[i]))==null && fail!=root)
+                        fail = fail.fail;
+                    child.fail = next==null?root:next;
+                    queue.add(child);
+                }
+
+                // Strings that end at the failure node also end here
+                node.mergeOutputs(node.fail);
+            }
+        }
+
+        /**
+         * Adds the filters whose key is found in the given filename to the given set.
+         */
+        private void find(String name, BitSet candidates) {
+            if(patternKinds.length==0)
+                return;
+
+            int len = name.length();
+            Node node = root;
+            for(int i=0; i<len; i++) {
+                char c = name.charAt(i);
+                Node next;
+                while((next=node.getChild(c))==null && node!=root)
+                    node = node.fail;
+                if(next!=null)
+                    node = next;
+
+                for(int pattern : node.outputs) {
+                    switch(patternKinds[pattern]) {
+                        case STARTS_WITH:
+                            if(patternLengths[pattern]!=i+1)
+                                continue;
+                            break;
+                        case ENDS_WITH:
+                            if(i!=len-1)
+                                continue;
+                            break;
+                    }
+
+                    candidates.set(patternFilters[pattern]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A node of an {@link Automaton}, which stands for the string made of the characters leading to it.
+     */
+    private static class Node {
+
+        /** Children by character, until the node is frozen */
+        private Map<Character, Node> childMap = new HashMap<Character, Node>();
+        /** Characters leading to the children, sorted */
+        private char chars[];
+        /** Children, in the order of their characters */
+        private Node children[];
+        /** Node of the longest proper suffix of this node's string that is in the automaton */
+        private Node fail;
+        /** Strings that end at this node */
+        private int outputs[] = new int[0];
+
+        private Node getOrCreateChild(char c) {
+            Node child = childMap.get(c);
+            if(child==null) {
+                child = new Node();
+                childMap.put(c, child);
+            }
+
+            return child;
+        }
+
+        private Node getChild(char c) {
+            int index = Arrays.binarySearch(chars, c);
+            return index<0?null:children[index];
+        }
+
+        private void addOutput(int pattern) {
+            outputs = Arrays.copyOf(outputs, outputs.length+1);
+            outputs[outputs.length-1] = pattern;
+        }
+
+        private void mergeOutputs(Node node) {
+            if(node.outputs.length==0)
+                return;
+
+            int merged[] = Arrays.copyOf(outputs, outputs.length+node.outputs.length);
+            System.arraycopy(node.outputs, 0, merged, outputs.length, node.outputs.length);
+            outputs = merged;
+        }
+
+        /**
+         * Replaces the map of children by sorted arrays, which are faster to look up.
+         */
+        private void freeze() {
+            chars = new char[childMap.size()];
+            int i = 0;
+            for(char c : childMap.keySet())
+                chars[i++] = c;
+            Arrays.sort(chars);
+
+            children = new Node[chars.length];
+            for(i=0; i<chars.length; i++)
+                children[i] = childMap.get(chars[i]);
+
+            childMap = null;
+        }
+    }
+}
@@ -31,7 +31,8 @@ import java.awt.*;
  * to a {@link CacheableFileIconProvider} instance. All this class does is use the cache implementation to harness its
  * befinits and take all the credit for it.</br>
  * When an icon is requested, a cache lookup is performed. If a cached value is found, it is returned. If not, the icon
- * is fetched from the underlying provider and added to the cache.</p>
+ * is fetched from the underlying provider and added to the cache. Cacheable icons are fetched one at a time, so that
+ * an icon requested by several threads at once is fetched only once.</p>
  *
  * @author Maxence Bernard
  */
@@ -80,24 +81,24 @@ public class CachedFileIconProvider implements FileIconProvider {
      * is simply called on the <code>CacheableFileIconProvider</code> and its value returned.</p>
      */
     public Icon getFileIcon(AbstractFile file, Dimension preferredResolution) {
-        Icon icon;
-        boolean isCacheable = cacheableFip.isCacheable(file, preferredResolution);
-
-        // Look for the file icon in the provider's cache
-        if(isCacheable)
-            icon = cacheableFip.lookupCache(file, preferredResolution);
-        else
-            icon = null;
-
-        // Icon is not cacheable or isn't present in the cache, retrieve it from the provider
-        if(icon==null) {
-            icon = cacheableFip.getFileIcon(file, preferredResolution);
-
-            // Cache the icon
-            if(isCacheable && icon!=null)
-                cacheableFip.addToCache(file, icon, preferredResolution);
-        }
+        // Icon is not cacheable, retrieve it from the provider
+        if(!cacheableFip.isCacheable(file, preferredResolution))
+            return cacheableFip.getFileIcon(file, preferredResolution);
+
+        synchronized(cacheableFip) {
+            // Look for the file icon in the provider's cache
+            Icon icon = cacheableFip.lookupCache(file, preferredResolution);
+
+            // Icon isn't present in the cache, retrieve it from the provider
+            if(icon==null) {
+                icon = cacheableFip.getFileIcon(file, preferredResolution);
 
-        return icon;
+                // Cache the icon
+                if(icon!=null)
+                    cacheableFip.addToCache(file, icon, preferredResolution);
+            }
+
+            return icon;
+        }
     }
 }
@@ -28,8 +28,8 @@ import javax.swing.*;
  * Any kind of Object may be used as the key: a file, a URL, an extension, ... allowing different of icon caching
  * strategies to be implemented.
  *
- * <p>Icons are stored as {@link java.lang.ref.SoftReference soft references} so they can be garbage collected 
- * when the VM runs low on memory.</p>
+ * <p>Icons are by default stored as {@link java.lang.ref.SoftReference soft references} so they can be garbage
+ * collected when the VM runs low on memory.</p>
  *
  * <p>The implementation uses the {@link ReferenceMap} class part of the <code>Apache Commons Collection</code> library.
  * All accesses to the underlying map is synchronized, making this cache thread-safe.</p>
@@ -39,12 +39,23 @@ import javax.swing.*;
 public class IconCache {
 
    /** The actual hash map */
-    protected final ReferenceMap hashMap = new ReferenceMap(ReferenceMap.HARD, ReferenceMap.SOFT);
+    protected final ReferenceMap hashMap;
 
     /**
-     * Creates a new icon cache.
+     * Creates a new icon cache whose icons can be garbage collected.
      */
     public IconCache() {
+        this(true);
+    }
+
+    /**
+     * Creates a new icon cache.
+     *
+     * @param softValues <code>true</code> to hold icons as soft references, <code>false</code> to hold them as hard
+     * references, which is suitable for caches whose number of keys is small and whose icons are expensive to retrieve
+     */
+    public IconCache(boolean softValues) {
+        hashMap = new ReferenceMap(ReferenceMap.HARD, softValues?ReferenceMap.SOFT:ReferenceMap.HARD);
     }
 
     /**
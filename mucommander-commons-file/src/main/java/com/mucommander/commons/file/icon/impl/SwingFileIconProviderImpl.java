@@ -21,7 +21,6 @@ package com.mucommander.commons.file.icon.impl;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.icon.CacheableFileIconProvider;
-import com.mucommander.commons.file.icon.CachedFileIconProvider;
 import com.mucommander.commons.file.icon.IconCache;
 import com.mucommander.commons.file.icon.LocalFileIconProvider;
 import com.mucommander.commons.file.protocol.FileProtocols;
@@ -56,11 +55,20 @@ class SwingFileIconProviderImpl extends LocalFileIconProvider implements Cacheab
     /** Swing object used to retrieve file icons, used under Mac OS X only */
     private static JFileChooser fileChooser;
 
+    // Icons of non-local files are retrieved by creating a temporary local file, they are cached by extension
+    // for the whole session so that this happens only once per extension. There are few extensions, hence hard references.
+
     /** Caches icons for directories, used only for non-local files */
-    protected static IconCache directoryIconCache = CachedFileIconProvider.createCache();
+    protected static IconCache directoryIconCache = new IconCache(false);
 
     /** Caches icons for regular files, used only for non-local files */
-    protected static IconCache fileIconCache = CachedFileIconProvider.createCache();
+    protected static IconCache fileIconCache = new IconCache(false);
+
+    /** Caches icons for symlinks to directories, used only for non-local files */
+    protected static IconCache directorySymlinkIconCache = new IconCache(false);
+
+    /** Caches icons for symlinks to regular files, used only for non-local files */
+    protected static IconCache fileSymlinkIconCache = new IconCache(false);
 
     /** True if init has been called */
     protected static boolean initialized;
@@ -173,22 +181,33 @@ class SwingFileIconProviderImpl extends LocalFileIconProvider implements Cacheab
         return extension==null?"":extension;
     }
 
+    /**
+     * Returns the cache that holds the icons of non-local files of the same kind as the given one: directory or
+     * regular file, symlink or not.
+     *
+     * @param file a non-local file
+     * @return the cache for the given file's kind
+     */
+    private static IconCache getIconCache(AbstractFile file) {
+        if(file.isSymlink())
+            return file.isDirectory()? directorySymlinkIconCache : fileSymlinkIconCache;
+
+        return file.isDirectory()? directoryIconCache : fileIconCache;
+    }
+
 
     //////////////////////////////////////////
     // LocalFileIconProvider implementation //
     //////////////////////////////////////////
 
     /**
-     * <b>Implementation notes:</b> returns <code>false</code> (no caching) for:
-     * <ul>
-     *  <li>local files: their icons are cached by the Swing component that provides icons.</li>
-     *  <li>symlinks: their icon cannot be cached using the file's extension as a key.</li>
-     * </ul>
-     * <code>true</code> is returned for non-local files that are not symlinks to avoid excessive temporary file
+     * <b>Implementation notes:</b> returns <code>false</code> (no caching) for local files: their icons are cached
+     * by the Swing component that provides icons.
+     * <code>true</code> is returned for non-local files, symlinks included, to avoid excessive temporary file
      * creation.
      */
     public boolean isCacheable(AbstractFile file, Dimension preferredResolution) {
-        return !((file.getTopAncestor() instanceof LocalFile) || file.isSymlink());
+        return !(file.getTopAncestor() instanceof LocalFile);
     }
 
     public Icon lookupCache(AbstractFile file, Dimension preferredResolution) {
@@ -197,12 +216,12 @@ class SwingFileIconProviderImpl extends LocalFileIconProvider implements Cacheab
             return getSwingIcon(new java.io.File("/Network"));
 
         // Look for an existing icon instance for the file's extension
-        return (file.isDirectory()? directoryIconCache : fileIconCache).get(getCheckedExtension(file));
+        return getIconCache(file).get(getCheckedExtension(file));
     }
 
     public void addToCache(AbstractFile file, Icon icon, Dimension preferredResolution) {
         // Map the extension onto the given icon
-        (file.isDirectory()? directoryIconCache : fileIconCache).put(getCheckedExtension(file), icon);
+        getIconCache(file).put(getCheckedExtension(file), icon);
     }
 
     /**
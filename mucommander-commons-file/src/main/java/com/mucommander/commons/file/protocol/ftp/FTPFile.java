@@ -26,6 +26,7 @@ import com.mucommander.commons.file.connection.ConnectionHandlerFactory;
 import com.mucommander.commons.file.connection.ConnectionPool;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.ByteUtils;
 import com.mucommander.commons.io.FilteredOutputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
@@ -76,6 +77,9 @@ import java.util.Date;
  * The {@link #getUnderlyingFileObject()} method allows to retrieve a <code>org.apache.commons.net.ftp.FTPFile</code>
  * instance corresponding to this FTPFile.
  *
+ * <p>Folder contents are cached by {@link ListingCache}, which this class also uses to retrieve the attributes of a
+ * file without listing its parent folder, whenever the parent folder has recently been listed.
+ *
  * @see ConnectionPool
  * @author Maxence Bernard
  */
@@ -166,6 +170,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             return createFTPFile("/", true);
         }
         else {
+            // Look the file up in the cached contents of its parent, if they are fresh
+            AbstractFile cachedFile = ListingCache.getFile(fileURL);
+            if(cachedFile!=null && cachedFile.getUnderlyingFileObject() instanceof org.apache.commons.net.ftp.FTPFile)
+                return (org.apache.commons.net.ftp.FTPFile)cachedFile.getUnderlyingFileObject();
+
             FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
             org.apache.commons.net.ftp.FTPFile files[];
             try {
@@ -353,6 +362,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             throw e;
         }
         finally {
+            // The file has changed, cached folder contents are no longer accurate
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler
             if(connHandler!=null)
                 connHandler.releaseLock();
@@ -540,6 +552,8 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             throw e;
         }
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler
             connHandler.releaseLock();
         }
@@ -548,6 +562,13 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
     @Override
     public AbstractFile[] ls() throws IOException {
+        // Return the cached contents of this folder, if they are fresh
+        AbstractFile cachedChildren[] = ListingCache.get(fileURL);
+        if(cachedChildren!=null)
+            return cachedChildren;
+
+        long invalidationCount = ListingCache.getInvalidationCount();
+
         // Retrieve a ConnectionHandler and lock it
         FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
         org.apache.commons.net.ftp.FTPFile files[];
@@ -562,8 +583,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             connHandler.releaseLock();
         }
 
-        if(files==null || files.length==0)
+        if(files==null || files.length==0) {
+            ListingCache.put(fileURL, new AbstractFile[0], invalidationCount);
             return new AbstractFile[] {};
+        }
 
         AbstractFile children[] = new AbstractFile[files.length];
         AbstractFile child;
@@ -599,9 +622,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         if(fileCount<nbFiles) {
             AbstractFile newChildren[] = new AbstractFile[fileCount];
             System.arraycopy(children, 0, newChildren, 0, fileCount);
-            return newChildren;
+            children = newChildren;
         }
 
+        ListingCache.put(fileURL, children, invalidationCount);
+
         return children;
     }
 
@@ -629,6 +654,8 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             throw e;
         }
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler
             connHandler.releaseLock();
         }
@@ -720,6 +747,8 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             throw e;
         }
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler
             if(connHandler!=null)
                 connHandler.releaseLock();
@@ -764,6 +793,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             throw e;
         }
         finally {
+            // Both the source and destination folders have changed
+            ListingCache.invalidate(fileURL);
+            ListingCache.invalidate(destFile.getURL());
+
             // Release the lock on the ConnectionHandler
             if(connHandler!=null)
                 connHandler.releaseLock();
@@ -1104,6 +1137,8 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 throw e;
             }
             finally {
+                ListingCache.invalidate(fileURL);
+
                 // Release the lock on the ConnectionHandler
                 connHandler.releaseLock();
             }
@@ -22,6 +22,7 @@ package com.mucommander.commons.file.protocol.hadoop;
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.*;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.*;
@@ -40,6 +41,8 @@ import java.io.OutputStream;
  * <p>{@link ProtocolFile} is fully implemented by <code>HadoopFile</code>. All is left for subclasses is to implement
  * the abstract methods defined in this class.</p>
  *
+ * <p>Folder contents are cached by {@link ListingCache}, which is invalidated by the operations that modify them.</p>
+ *
  * @see HDFSFile
  * @see S3File
  * @author Maxence Bernard
@@ -113,8 +116,13 @@ public abstract class HadoopFile extends ProtocolFile {
         ) {
             @Override
             public void close() throws IOException {
-                super.close();
-                isWriting = false;
+                try {
+                    super.close();
+                }
+                finally {
+                    isWriting = false;
+                    ListingCache.invalidate(fileURL);
+                }
             }
         };
 
@@ -230,8 +238,13 @@ public abstract class HadoopFile extends ProtocolFile {
 
     @Override
     public void mkdir() throws IOException {
-        if(exists() || !fs.mkdirs(path))
-            throw new IOException();
+        try {
+            if(exists() || !fs.mkdirs(path))
+                throw new IOException();
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
 
         // Update local attributes
         fileAttributes.setExists(true);
@@ -242,8 +255,13 @@ public abstract class HadoopFile extends ProtocolFile {
 
     @Override
     public void delete() throws IOException {
-        if(!fs.delete(path, false))
-            throw new IOException();
+        try {
+            if(!fs.delete(path, false))
+                throw new IOException();
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
 
         // Update local attributes
         fileAttributes.setExists(false);
@@ -261,8 +279,15 @@ public abstract class HadoopFile extends ProtocolFile {
         if(destFile.exists())
             destFile.delete();
 
-        if(!fs.rename(path, ((HadoopFile)destFile).path))
-            throw new IOException();
+        try {
+            if(!fs.rename(path, ((HadoopFile)destFile).path))
+                throw new IOException();
+        }
+        finally {
+            // Both the source and destination folders have changed
+            ListingCache.invalidate(fileURL);
+            ListingCache.invalidate(destFile.getURL());
+        }
 
         // Update destination file attributes by fetching them from the server
         ((HadoopFileAttributes)destFile.getUnderlyingFileObject()).fetchAttributes();
@@ -276,7 +301,12 @@ public abstract class HadoopFile extends ProtocolFile {
     @Override
     public void changeDate(long lastModified) throws IOException {
         // Note: setTimes seems to fail on HDFS directories.
-        fs.setTimes(path, lastModified, lastModified);
+        try {
+            fs.setTimes(path, lastModified, lastModified);
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
 
         // Update local attributes
         fileAttributes.setDate(lastModified);
@@ -364,6 +394,13 @@ public abstract class HadoopFile extends ProtocolFile {
 
     @Override
     public AbstractFile[] ls(FilenameFilter filter) throws IOException {
+        // Return the cached contents of this folder, if they are fresh
+        AbstractFile cachedChildren[] = ListingCache.get(fileURL);
+        if(cachedChildren!=null)
+            return filter==null?cachedChildren:filter.filter(cachedChildren);
+
+        long invalidationCount = ListingCache.getInvalidationCount();
+
         // We need to ensure that the file is a directory: if it isn't listStatus returns an empty array but doesn't
         // throw an exception
         if(!exists() || !isDirectory())
@@ -390,12 +427,21 @@ public abstract class HadoopFile extends ProtocolFile {
             children[i] = FileFactory.getFile(childURL, this, fs, childStatus);
         }
 
+        // Filtered listings are incomplete and are not cached
+        if(filter==null)
+            ListingCache.put(fileURL, children, invalidationCount);
+
         return children;
     }
 
     @Override
     public void changePermissions(int permissions) throws IOException, UnsupportedFileOperationException {
-       fs.setPermission(path, new FsPermission((short)permissions));
+        try {
+            fs.setPermission(path, new FsPermission((short)permissions));
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
 
         // Update local attributes
         fileAttributes.setPermissions(new SimpleFilePermissions(permissions));
@@ -23,8 +23,10 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
 import com.mucommander.commons.io.BlockRandomInputStream;
+import com.mucommander.commons.io.BoundedInputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.StreamUtils;
 import com.mucommander.commons.io.base64.Base64Encoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -711,6 +713,32 @@ public class HTTPFile extends ProtocolFile {
         return conn.getInputStream();
     }
 
+    /**
+     * Overrides AbstractFile's getInputStream(long, long) method to provide a more efficient implementation:
+     * use the HTTP 1.1 header to request the given range only.
+     */
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        HttpURLConnection conn = getHttpURLConnection(this.url);
+
+        // Set header that requests the range
+        conn.setRequestProperty("Range", "bytes="+offset+"-"+(offset+length-1));
+
+        // Establish connection
+        conn.connect();
+
+        // Check HTTP response code and throw appropriate IOException if request failed
+        checkHTTPResponse(conn);
+
+        InputStream in = conn.getInputStream();
+
+        // The server may ignore the Range header and send the whole file
+        if(conn.getResponseCode()!=HttpURLConnection.HTTP_PARTIAL)
+            StreamUtils.skipFully(in, offset);
+
+        return new BoundedInputStream(in, length, false);
+    }
+
 
     ///////////////////
     // Inner classes //
@@ -20,6 +20,7 @@
 package com.mucommander.commons.file.protocol.local;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -31,7 +32,17 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.regex.Matcher;
@@ -41,6 +52,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
@@ -56,16 +68,24 @@ import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.C;
+import com.mucommander.commons.file.util.CLibrary;
 import com.mucommander.commons.file.util.Kernel32;
 import com.mucommander.commons.file.util.Kernel32API;
 import com.mucommander.commons.file.util.PathUtils;
 import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ChannelTransferable;
+import com.mucommander.commons.io.FileTransferError;
+import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.FilteredOutputStream;
+import com.mucommander.commons.io.PositionalReadable;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.StreamUtils;
 import com.mucommander.commons.runtime.JavaVersion;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.commons.runtime.OsVersion;
+import com.sun.jna.NativeLong;
 import com.sun.jna.ptr.LongByReference;
 
 
@@ -124,6 +144,10 @@ public class LocalFile extends ProtocolFile {
      * of having single a root folder '/' */
     public final static boolean USES_ROOT_DRIVES = IS_WINDOWS || OsFamily.OS_2.isCurrent();
 
+    /** Maximum number of bytes transferred at once by {@link #copyStream(InputStream, boolean, long)} when the source
+     * stream supports channel transfers */
+    private final static long TRANSFER_CHUNK_SIZE = 8*1024*1024;
+
     /** Pattern matching Windows-like drives' root, e.g. C:\ */
     final static Pattern DRIVE_ROOT_PATTERN = Pattern.compile("^[a-zA-Z]{1}[:]{1}[\\\\]{1}");
 
@@ -153,6 +177,22 @@ public class LocalFile extends ProtocolFile {
                                                    "iso9660", "jfs", "minix", "msdos", "ncpfs", "nfs", "nfs4", "ntfs",
                                                    "qnx4", "reiserfs", "smbfs", "udf", "ufs", "usbfs", "vfat", "xfs" };
 
+    /** Kernel virtual file that lists the mounted filesystems under Linux */
+    private final static String PROC_MOUNTS = "/proc/mounts";
+
+    /** Raw contents of {@link #PROC_MOUNTS} when the mount entries were last parsed */
+    private static byte[] mountTable;
+
+    /** Mount points that were parsed from {@link #mountTable} */
+    private static List<AbstractFile> mountEntries;
+
+    /** Paths of all the mount points listed in {@link #mountTable}, whatever their filesystem, each ending with a
+     * separator, the deepest ones first */
+    private static List<String> mountPoints;
+
+    /** Lock that guards {@link #mountTable}, {@link #mountEntries} and {@link #mountPoints} */
+    private final static Object MOUNT_TABLE_LOCK = new Object();
+
     static {
         // Prevents Windows from poping up a message box when it cannot find a file. Those message box are triggered by
         // java.io.File methods when operating on removable drives such as floppy or CD-ROM drives which have no disk
@@ -238,168 +278,73 @@ public class LocalFile extends ProtocolFile {
      * @throws IOException if an I/O error occurred
      */
     public long[] getVolumeInfo() throws IOException {
-        // Under Java 1.6 and up, use the (new) java.io.File methods
-        if(JavaVersion.JAVA_1_6.isCurrentOrHigher()) {
-            return new long[] {
-                getTotalSpace(),
-                getFreeSpace()
-            };
-        }
-
-        // Under Java 1.5 or lower, use native methods
         return getNativeVolumeInfo();
     }
 
     /**
      * Uses platform dependent functions to retrieve the total and free space on the volume where this file resides.
+     * Both values are retrieved with a single call to <code>GetDiskFreeSpaceEx</code> under Windows and
+     * <code>statvfs</code> under Linux, when the corresponding native library is available. Otherwise, the values
+     * are retrieved using the <code>java.io.File</code> methods. No external process is ever spawned.
      *
-     * @return a {totalSpace, freeSpace} long array, both values can be <code>null</code> if the information could not
+     * @return a {totalSpace, freeSpace} long array, both values can be <code>-1</code> if the information could not
      * be retrieved.
      * @throws IOException if an I/O error occurred
      */
     protected long[] getNativeVolumeInfo() throws IOException {
-        BufferedReader br = null;
         String absPath = getAbsolutePath();
         long dfInfo[] = new long[]{-1, -1};
 
-        try {
-            // OS is Windows
-            if(IS_WINDOWS) {
-                // Use the Kernel32 DLL if it is available
-                if(Kernel32.isAvailable()) {
-                    // Retrieves the total and free space information using the GetDiskFreeSpaceEx function of the
-                    // Kernel32 API.
-                    LongByReference totalSpaceLBR = new LongByReference();
-                    LongByReference freeSpaceLBR = new LongByReference();
-
-                    if(Kernel32.getInstance().GetDiskFreeSpaceEx(absPath, null, totalSpaceLBR, freeSpaceLBR)) {
-                        dfInfo[0] = totalSpaceLBR.getValue();
-                        dfInfo[1] = freeSpaceLBR.getValue();
-                    }
-                    else {
-                        LOGGER.warn("Call to GetDiskFreeSpaceEx failed, absPath={}", absPath);
-                    }
-                }
-                // Otherwise, parse the output of 'dir "filePath"' command to retrieve free space information, if
-                // running Window NT or higher.
-                // Note: no command invocation under Windows 95/98/Me, because it causes a shell window to
-                // appear briefly every time this method is called (See ticket #63).
-                else if(OsVersion.WINDOWS_NT.isCurrentOrHigher()) {
-                    // 'dir' command returns free space on the last line
-                    Process process = Runtime.getRuntime().exec(
-                            (OsVersion.getCurrent().compareTo(OsVersion.WINDOWS_NT)>=0 ? "cmd /c" : "command.com /c")
-                            + " dir \""+absPath+"\"");
-
-                    // Check that the process was correctly started
-                    if(process!=null) {
-                        br = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                        String line;
-                        String lastLine = null;
-                        // Retrieves last line of dir
-                        while((line=br.readLine())!=null) {
-                            if(!line.trim().equals(""))
-                                lastLine = line;
-                        }
-
-                        // Last dir line may look like something this (might vary depending on system's language, below in French):
-                        // 6 Rep(s)  14 767 521 792 octets libres
-                        if(lastLine!=null) {
-                            StringTokenizer st = new StringTokenizer(lastLine, " \t\n\r\f,.");
-                            // Discard first token
-                            st.nextToken();
-
-                            // Concatenates as many contiguous groups of numbers
-                            String token;
-                            String freeSpace = "";
-                            while(st.hasMoreTokens()) {
-                                token = st.nextToken();
-                                char c = token.charAt(0);
-                                if(c>='0' && c<='9')
-                                    freeSpace += token;
-                                else if(!freeSpace.equals(""))
-                                    break;
-                            }
-
-                            dfInfo[1] = Long.parseLong(freeSpace);
-                        }
-                    }
-                }
+        // OS is Windows, use the Kernel32 DLL if it is available
+        if(IS_WINDOWS && Kernel32.isAvailable()) {
+            // Retrieves the total and free space information using the GetDiskFreeSpaceEx function of the
+            // Kernel32 API.
+            LongByReference totalSpaceLBR = new LongByReference();
+            LongByReference freeSpaceLBR = new LongByReference();
+
+            if(Kernel32.getInstance().GetDiskFreeSpaceEx(absPath, null, totalSpaceLBR, freeSpaceLBR)) {
+                dfInfo[0] = totalSpaceLBR.getValue();
+                dfInfo[1] = freeSpaceLBR.getValue();
+            }
+            else {
+                LOGGER.warn("Call to GetDiskFreeSpaceEx failed, absPath={}", absPath);
             }
-            else if(OsFamily.getCurrent().isUnixBased()) {
-                // Parses the output of 'df -P -k "filePath"' command on UNIX-based systems to retrieve free and total space information
-
-                // 'df -P -k' returns totals in block of 1K = 1024 bytes, -P uses the POSIX output format, ensures that line won't break
-                Process process = Runtime.getRuntime().exec(new String[]{"df", "-P", "-k", absPath}, null, file);
-
-                // Check that the process was correctly started
-                if(process!=null) {
-                    br = new BufferedReader(new InputStreamReader(process.getInputStream()));
-                    // Discard the first line ("Filesystem   1K-blocks     Used    Avail Capacity  Mounted on");
-                    br.readLine();
-                    String line = br.readLine();
-
-                    // Sample lines:
-                    // /dev/disk0s2            116538416 109846712  6179704    95%    /
-                    // automount -fstab [202]          0         0        0   100%    /automount/Servers
-                    // /dev/disk2s2                 2520      1548      972    61%    /Volumes/muCommander 0.8
-
-                    // We're interested in the '1K-blocks' and 'Avail' fields (only).
-                    // The 'Filesystem' and 'Mounted On' fields can contain spaces (e.g. 'automount -fstab [202]' and
-                    // '/Volumes/muCommander 0.8' resp.) and therefore be made of several tokens. A stable way to
-                    // determine the position of the fields we're interested in is to look for the last token that
-                    // starts with a '/' character which should necessarily correspond to the first token of the
-                    // 'Mounted on' field. The '1K-blocks' and 'Avail' fields are 4 and 2 tokens away from it
-                    // respectively.
-
-                    // Start by tokenizing the whole line
-                    Vector<String> tokenV = new Vector<String>();
-                    if(line!=null) {
-                        StringTokenizer st = new StringTokenizer(line);
-                        while(st.hasMoreTokens())
-                            tokenV.add(st.nextToken());
-                    }
-
-                    int nbTokens = tokenV.size();
-                    if(nbTokens<6) {
-                        // This shouldn't normally happen
-                        LOGGER.warn("Failed to parse output of df -k {} line={}", absPath, line);
-                        return dfInfo;
-                    }
-
-                    // Find the last token starting with '/'
-                    int pos = nbTokens-1;
-                    while(!tokenV.elementAt(pos).startsWith("/")) {
-                        if(pos==0) {
-                            // This shouldn't normally happen
-                            LOGGER.warn("Failed to parse output of df -k {} line={}", absPath, line);
-                            return dfInfo;
-                        }
-
-                        --pos;
-                    }
 
-                    // '1-blocks' field (total space)
-                    dfInfo[0] = Long.parseLong(tokenV.elementAt(pos-4)) * 1024;
-                    // 'Avail' field (free space)
-                    dfInfo[1] = Long.parseLong(tokenV.elementAt(pos-2)) * 1024;
-                }
+            return dfInfo;
+        }
 
-//                // Retrieves the total and free space information using the POSIX statvfs function
-//                POSIX.STATVFSSTRUCT struct = new POSIX.STATVFSSTRUCT();
-//                if(POSIX.INSTANCE.statvfs(absPath, struct)==0) {
-//                    dfInfo[0] = struct.f_blocks * (long)struct.f_frsize;
-//                    dfInfo[1] = struct.f_bfree * (long)struct.f_frsize;
-//                }
+        // OS is Linux, use the statvfs function of the C library if it is available. Note: the layout of the statvfs
+        // structure differs on other UNIX-based systems.
+        if(OsFamily.LINUX.isCurrent() && C.isAvailable()) {
+            CLibrary.STATVFSSTRUCT struct = new CLibrary.STATVFSSTRUCT();
+            if(C.getInstance().statvfs(absPath, struct)==0) {
+                long fragmentSize = toUnsignedLong(struct.f_frsize);
+                // Some old kernels leave the fragment size unset
+                if(fragmentSize==0)
+                    fragmentSize = toUnsignedLong(struct.f_bsize);
+
+                dfInfo[0] = toUnsignedLong(struct.f_blocks) * fragmentSize;
+                // Space available to non-root users, like java.io.File#getUsableSpace()
+                dfInfo[1] = toUnsignedLong(struct.f_bavail) * fragmentSize;
+
+                return dfInfo;
             }
         }
-        finally {
-            if(br!=null)
-                try { br.close(); } catch(IOException e) {}
-        }
+
+        // Otherwise, or if statvfs failed (e.g. because the file doesn't exist), use the java.io.File methods
+        dfInfo[0] = file.getTotalSpace();
+        dfInfo[1] = file.getUsableSpace();
 
         return dfInfo;
     }
 
+    /**
+     * Returns the value of the given <code>unsigned long</code> C integer, which is 32-bit wide on 32-bit platforms.
+     */
+    private static long toUnsignedLong(NativeLong value) {
+        return NativeLong.SIZE==4 ? value.longValue() & 0xFFFFFFFFL : value.longValue();
+    }
+
 	
     /**
      * Attemps to detect if this file is the root of a removable media drive (floppy, CD, DVD, USB drive...).
@@ -507,17 +452,147 @@ public class LocalFile extends ProtocolFile {
     }
 
     /**
-     * Parses <code>/proc/mounts</code> kernel virtual file, resolves all the mount points that look like regular
-     * filesystems it contains and adds them to the given <code>Vector</code>.
+     * Resolves all the mount points that look like regular filesystems listed in the <code>/proc/mounts</code> kernel
+     * virtual file, and adds them to the given <code>Vector</code>.
      *
      * @param v the <code>Vector</code> to add mount points to
      */
     private static void addMountEntries(Vector<AbstractFile> v) {
+        for(AbstractFile file : getMountEntries()) {
+            if(!v.contains(file))
+                v.add(file);
+        }
+    }
+
+    /**
+     * Returns the mount points that look like regular filesystems listed in the <code>/proc/mounts</code> kernel
+     * virtual file.
+     *
+     * <p>The date of <code>/proc/mounts</code> does not reflect mount table changes, so its raw contents are compared
+     * with the ones that were last parsed: the entries are parsed and resolved again only if a filesystem has been
+     * mounted or unmounted since.</p>
+     *
+     * @return the mount points that look like regular filesystems
+     */
+    private static List<AbstractFile> getMountEntries() {
+        synchronized(MOUNT_TABLE_LOCK) {
+            if(!updateMountTable())
+                return Collections.emptyList();
+
+            return mountEntries;
+        }
+    }
+
+    /**
+     * Reads the {@link #PROC_MOUNTS} kernel virtual file and parses it again if it has changed since it was last
+     * parsed. This method must be called with {@link #MOUNT_TABLE_LOCK} held.
+     *
+     * @return <code>true</code> if the file could be read
+     */
+    private static boolean updateMountTable() {
+        byte[] table;
+        try {
+            table = Files.readAllBytes(new File(PROC_MOUNTS).toPath());
+        }
+        catch(IOException e) {
+            LOGGER.warn("Error reading "+PROC_MOUNTS, e);
+            return false;
+        }
+
+        if(!Arrays.equals(table, mountTable)) {
+            mountEntries = parseMountEntries(table);
+            mountPoints = parseMountPoints(table);
+            mountTable = table;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the given <code>/proc/mounts</code> contents and returns the paths of all the mount points, whatever
+     * their filesystem, each ending with a separator, the deepest ones first.
+     *
+     * @param table the contents of <code>/proc/mounts</code>
+     * @return the paths of all the mount points, the deepest ones first
+     */
+    private static List<String> parseMountPoints(byte[] table) {
+        List<String> paths = new ArrayList<String>();
+        StringTokenizer lines = new StringTokenizer(new String(table), "\n");
+        while(lines.hasMoreTokens()) {
+            // Tokens are: device, mount_point, fs_type, attributes, fs_freq, fs_passno
+            StringTokenizer st = new StringTokenizer(lines.nextToken());
+            if(st.countTokens()<2)
+                continue;
+
+            st.nextToken();
+            String path = st.nextToken().replace("\\040", " ");
+            if(!path.endsWith("/"))
+                path += "/";
+            paths.add(path);
+        }
+
+        Collections.sort(paths, new Comparator<String>() {
+            public int compare(String path1, String path2) {
+                return path2.length()-path1.length();
+            }
+        });
+
+        return Collections.unmodifiableList(paths);
+    }
+
+    /**
+     * Returns the path of the mount point of the local volume that contains the given path: the drive root on
+     * Windows-like systems, the <code>/Volumes</code> subfolder on Mac OS X, the deepest mount point listed in
+     * <code>/proc/mounts</code> on other UNIX-based systems, and the root folder otherwise.
+     *
+     * <p>The volume itself is not accessed, so this method does not block on network mounts that do not respond.
+     * The returned path ends with a separator.</p>
+     *
+     * @param path absolute path of a local file
+     * @return the path of the mount point of the volume that contains the file
+     */
+    public static String getMountPoint(String path) {
+        if(USES_ROOT_DRIVES)
+            return path.length()>=2 && path.charAt(1)==':' ? path.substring(0, 2)+SEPARATOR : SEPARATOR;
+
+        if(!path.endsWith("/"))
+            path += "/";
+
+        if(OsFamily.MAC_OS_X.isCurrent()) {
+            if(path.startsWith("/Volumes/")) {
+                int end = path.indexOf('/', "/Volumes/".length());
+                if(end!=-1)
+                    return path.substring(0, end+1);
+            }
+        }
+        else if(OsFamily.getCurrent().isUnixBased()) {
+            synchronized(MOUNT_TABLE_LOCK) {
+                if(updateMountTable()) {
+                    for(String mountPoint : mountPoints) {
+                        if(path.startsWith(mountPoint))
+                            return mountPoint;
+                    }
+                }
+            }
+        }
+
+        return "/";
+    }
+
+    /**
+     * Parses the given <code>/proc/mounts</code> contents and resolves all the mount points that look like regular
+     * filesystems.
+     *
+     * @param table the contents of <code>/proc/mounts</code>
+     * @return the mount points that look like regular filesystems
+     */
+    private static List<AbstractFile> parseMountEntries(byte[] table) {
+        List<AbstractFile> entries = new ArrayList<AbstractFile>();
         BufferedReader br;
 
         br = null;
         try {
-            br = new BufferedReader(new InputStreamReader(new FileInputStream("/proc/mounts")));
+            br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(table)));
             StringTokenizer st;
             String line;
             AbstractFile file;
@@ -543,8 +618,8 @@ public class LocalFile extends ProtocolFile {
 
                 if (knownFS) {
                     file = FileFactory.getFile(mountPoint);
-                    if(file!=null && !v.contains(file))
-                        v.add(file);
+                    if(file!=null && !entries.contains(file))
+                        entries.add(file);
                 }
             }
         }
@@ -559,6 +634,8 @@ public class LocalFile extends ProtocolFile {
                 catch(IOException e) {}
             }
         }
+
+        return Collections.unmodifiableList(entries);
     }
 
     /**
@@ -995,6 +1072,44 @@ public class LocalFile extends ProtocolFile {
         return SEPARATOR;
     }
 
+    /**
+     * Overridden to let the operating system copy the data, without it going through the JVM, when the given
+     * <code>InputStream</code> supports {@link ChannelTransferable channel transfers} -- which is the case when it
+     * was returned by {@link #getInputStream()}, possibly wrapped in a {@link com.mucommander.commons.io.CounterInputStream}
+     * or {@link com.mucommander.commons.io.ThroughputLimitInputStream}. The data is transferred in chunks of
+     * {@link #TRANSFER_CHUNK_SIZE} bytes so that those streams keep on monitoring and limiting the transfer.
+     * Other streams are copied by the super implementation.
+     */
+    @Override
+    public void copyStream(InputStream in, boolean append, long length) throws FileTransferException {
+        if(!(in instanceof ChannelTransferable && ((ChannelTransferable)in).isChannelTransferSupported())) {
+            super.copyStream(in, append, length);
+            return;
+        }
+
+        FileChannel out;
+
+        try {
+            out = new FileOutputStream(absPath, append).getChannel();
+        }
+        catch(IOException e) {
+            throw new FileTransferException(FileTransferError.OPENING_DESTINATION);
+        }
+
+        try {
+            StreamUtils.transferStream(in, out, TRANSFER_CHUNK_SIZE);
+        }
+        finally {
+            // Close channel even if transferStream() threw an IOException
+            try {
+                out.close();
+            }
+            catch(IOException e) {
+                throw new FileTransferException(FileTransferError.CLOSING_DESTINATION);
+            }
+        }
+    }
+
 
     @Override
     public AbstractFile[] ls(FilenameFilter filenameFilter) throws IOException {
@@ -1022,6 +1137,15 @@ public class LocalFile extends ProtocolFile {
         return children;
     }
 
+    /**
+     * Overridden to list this folder incrementally through a {@link DirectoryStream}, rather than through
+     * <code>java.io.File#listFiles()</code> which retrieves all files at once.
+     */
+    @Override
+    public DirectoryIterator iterateChildren() throws IOException {
+        return new LocalDirectoryIterator(Files.newDirectoryStream(file.toPath()));
+    }
+
     @Override
     public boolean isHidden() {
         return file.isHidden();
@@ -1116,8 +1240,12 @@ public class LocalFile extends ProtocolFile {
      * This implementation uses a NIO <code>FileChannel</code> under the hood to benefit from
      * <code>InterruptibleChannel</code> and allow a thread waiting for an I/O to be gracefully interrupted using
      * <code>Thread#interrupt()</code>.
+     *
+     * <p>This class also implements {@link ChannelTransferable}, allowing data to be transferred to another channel
+     * using <code>FileChannel#transferTo</code>, and {@link PositionalReadable}, allowing several threads to read
+     * from the same stream at once using <code>FileChannel#read(ByteBuffer, long)</code>.</p>
      */
-    public static class LocalRandomAccessInputStream extends RandomAccessInputStream {
+    public static class LocalRandomAccessInputStream extends RandomAccessInputStream implements ChannelTransferable, PositionalReadable {
 
         private final FileChannel channel;
         private final ByteBuffer bb;
@@ -1158,6 +1286,10 @@ public class LocalFile extends ProtocolFile {
             }
         }
 
+        public int read(long position, byte b[], int off, int len) throws IOException {
+            return channel.read(ByteBuffer.wrap(b, off, len), position);
+        }
+
         @Override
         public void close() throws IOException {
             BufferPool.releaseByteBuffer(bb);
@@ -1175,6 +1307,21 @@ public class LocalFile extends ProtocolFile {
         public void seek(long offset) throws IOException {
             channel.position(offset);
         }
+
+        public boolean isChannelTransferSupported() {
+            return true;
+        }
+
+        public long transferTo(WritableByteChannel target, long count) throws IOException {
+            long position = channel.position();
+            if(position>=channel.size())
+                return -1;
+
+            long nbTransferred = channel.transferTo(position, count, target);
+            channel.position(position+nbTransferred);
+
+            return nbTransferred;
+        }
     }
 
     /**
@@ -1188,11 +1335,19 @@ public class LocalFile extends ProtocolFile {
      * being used.</p>
      *
      */
-    public static class LocalInputStream extends FilterInputStream {
+    public static class LocalInputStream extends FilterInputStream implements ChannelTransferable {
 
         public LocalInputStream(FileChannel channel) {
             super(new LocalRandomAccessInputStream(channel));
         }
+
+        public boolean isChannelTransferSupported() {
+            return true;
+        }
+
+        public long transferTo(WritableByteChannel target, long count) throws IOException {
+            return ((LocalRandomAccessInputStream)in).transferTo(target, count);
+        }
     }
 
     /**
@@ -1383,6 +1538,56 @@ public class LocalFile extends ProtocolFile {
     }
 
 
+    /**
+     * Iterates over the children of this folder as they are returned by a {@link DirectoryStream}.
+     */
+    private class LocalDirectoryIterator implements DirectoryIterator {
+
+        private DirectoryStream<Path> stream;
+        private Iterator<Path> iterator;
+
+        private LocalDirectoryIterator(DirectoryStream<Path> stream) {
+            this.stream = stream;
+            this.iterator = stream.iterator();
+        }
+
+
+        //////////////////////////////////////
+        // DirectoryIterator implementation //
+        //////////////////////////////////////
+
+        public boolean hasNext() throws IOException {
+            try {
+                return iterator.hasNext();
+            }
+            catch(DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+        }
+
+        public AbstractFile next() throws IOException {
+            Path path;
+            try {
+                path = iterator.next();
+            }
+            catch(DirectoryIteratorException e) {
+                throw e.getCause();
+            }
+
+            // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
+            // FileURL instance from scratch.
+            FileURL childURL = (FileURL)fileURL.clone();
+            childURL.setPath(absPath+SEPARATOR+path.getFileName().toString());
+
+            return FileFactory.getFile(childURL, LocalFile.this, path.toFile());
+        }
+
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+
+
     /**
      * Turns a {@link FilenameFilter} into a {@link java.io.FilenameFilter}.
      */
@@ -20,6 +20,7 @@
 package com.mucommander.commons.file.protocol.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
@@ -90,6 +91,11 @@ public class S3Bucket extends S3File {
         return listObjects(bucketName, "", this);
     }
 
+    @Override
+    public DirectoryIterator iterateChildren() throws IOException {
+        return iterateObjects(bucketName, "", this);
+    }
+
     @Override
     public void delete() throws IOException {
         try {
@@ -98,6 +104,9 @@ public class S3Bucket extends S3File {
         catch(S3ServiceException e) {
             throw getIOException(e);
         }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
     }
 
     @Override
@@ -108,6 +117,9 @@ public class S3Bucket extends S3File {
         catch(S3ServiceException e) {
             throw getIOException(e);
         }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
     }
 
 
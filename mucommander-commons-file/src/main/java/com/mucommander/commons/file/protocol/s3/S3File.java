@@ -21,6 +21,8 @@ package com.mucommander.commons.file.protocol.s3;
 
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ArrayDirectoryIterator;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import com.mucommander.commons.runtime.JavaVersion;
 import org.jets3t.service.Constants;
@@ -31,10 +33,13 @@ import org.jets3t.service.S3ServiceException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Date;
+import java.util.NoSuchElementException;
 
 /**
  * Super class of {@link S3Root}, {@link S3Bucket} and {@link S3Object}.
  *
+ * <p>Bucket and folder contents are cached by {@link ListingCache}.</p>
+ *
  * @author Maxence Bernard
  */
 public abstract class S3File extends ProtocolFile {
@@ -74,6 +79,13 @@ public abstract class S3File extends ProtocolFile {
     }
     
     protected AbstractFile[] listObjects(String bucketName, String prefix, S3File parent) throws IOException {
+        // Return the cached contents of this folder, if they are fresh
+        AbstractFile cachedChildren[] = ListingCache.get(fileURL);
+        if(cachedChildren!=null)
+            return cachedChildren;
+
+        long invalidationCount = ListingCache.getInvalidationCount();
+
         try {
             S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, null, true);
             org.jets3t.service.model.S3Object objects[] = chunk.getObjects();
@@ -85,33 +97,19 @@ public abstract class S3File extends ProtocolFile {
             }
 
             AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
-            FileURL childURL;
             int i=0;
-            String objectKey;
 
             for(org.jets3t.service.model.S3Object object : objects) {
                 // Discard the object corresponding to the prefix itself
-                objectKey = object.getKey();
-                if(objectKey.equals(prefix))
+                if(object.getKey().equals(prefix))
                     continue;
 
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + objectKey);
-
-                children[i] = FileFactory.getFile(childURL, parent, service, object);
+                children[i] = getObjectFile(bucketName, object, parent);
                 i++;
             }
 
-            org.jets3t.service.model.S3Object directoryObject;
             for(String commonPrefix : commonPrefixes) {
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + commonPrefix);
-
-                directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
-                // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
-                directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
-                directoryObject.setContentLength(0);
-                children[i] = FileFactory.getFile(childURL, parent, service, directoryObject);
+                children[i] = getCommonPrefixFile(bucketName, commonPrefix, parent);
                 i++;
             }
 
@@ -122,9 +120,11 @@ public abstract class S3File extends ProtocolFile {
                 AbstractFile[] childrenTrimmed = new AbstractFile[i];
                 System.arraycopy(children, 0, childrenTrimmed, 0, i);
 
-                return childrenTrimmed;
+                children = childrenTrimmed;
             }
 
+            ListingCache.put(fileURL, children, invalidationCount);
+
             return children;
         }
         catch(S3ServiceException e) {
@@ -132,6 +132,50 @@ public abstract class S3File extends ProtocolFile {
         }
     }
 
+    /**
+     * Returns an iterator over the objects and common prefixes (folders) found under the given prefix. Unlike
+     * {@link #listObjects(String, String, S3File)} which retrieves the complete listing before returning, objects
+     * are requested one chunk at a time, as the iterator goes. The cached listing is returned if it is fresh.
+     *
+     * @param bucketName name of the bucket to list
+     * @param prefix prefix of the objects to list, "" to list the bucket's top-level objects
+     * @param parent the parent of the returned files
+     * @return an iterator over the files found under the prefix
+     * @throws IOException if the listing failed or if the prefix does not exist
+     */
+    protected DirectoryIterator iterateObjects(String bucketName, String prefix, S3File parent) throws IOException {
+        AbstractFile cachedChildren[] = ListingCache.get(fileURL);
+        if(cachedChildren!=null)
+            return new ArrayDirectoryIterator(cachedChildren);
+
+        return new S3DirectoryIterator(bucketName, prefix, parent);
+    }
+
+    /**
+     * Returns the file corresponding to the given object.
+     */
+    private AbstractFile getObjectFile(String bucketName, org.jets3t.service.model.S3Object object, S3File parent) throws IOException {
+        FileURL childURL = (FileURL)fileURL.clone();
+        childURL.setPath(bucketName + "/" + object.getKey());
+
+        return FileFactory.getFile(childURL, parent, service, object);
+    }
+
+    /**
+     * Returns the directory corresponding to the given common prefix.
+     */
+    private AbstractFile getCommonPrefixFile(String bucketName, String commonPrefix, S3File parent) throws IOException {
+        FileURL childURL = (FileURL)fileURL.clone();
+        childURL.setPath(bucketName + "/" + commonPrefix);
+
+        org.jets3t.service.model.S3Object directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
+        // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
+        directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
+        directoryObject.setContentLength(0);
+
+        return FileFactory.getFile(childURL, parent, service, directoryObject);
+    }
+
 
     //////////////////////
     // Abstract methods //
@@ -265,4 +309,91 @@ public abstract class S3File extends ProtocolFile {
     public void changeDate(long lastModified) throws UnsupportedFileOperationException {
         throw new UnsupportedFileOperationException(FileOperation.CHANGE_DATE);
     }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Iterates over the objects and common prefixes found under a prefix, requesting the next chunk of the listing
+     * when the current one has been iterated through.
+     */
+    private class S3DirectoryIterator implements DirectoryIterator {
+
+        private String bucketName;
+        private String prefix;
+        private S3File parent;
+
+        private org.jets3t.service.model.S3Object objects[];
+        private String commonPrefixes[];
+        /** Index of the next object or common prefix in the current chunk */
+        private int index;
+        /** Key to resume the listing from, null if the current chunk is the last one */
+        private String priorLastKey;
+
+        private S3DirectoryIterator(String bucketName, String prefix, S3File parent) throws IOException {
+            this.bucketName = bucketName;
+            this.prefix = prefix;
+            this.parent = parent;
+
+            listChunk(null);
+
+            if(objects.length==0 && !prefix.equals("")) {
+                // This happens only when the directory does not exist
+                throw new IOException();
+            }
+        }
+
+        private void listChunk(String priorLastKey) throws IOException {
+            try {
+                S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, priorLastKey, false);
+                objects = chunk.getObjects();
+                commonPrefixes = chunk.getCommonPrefixes();
+                this.priorLastKey = chunk.getPriorLastKey();
+                index = 0;
+            }
+            catch(S3ServiceException e) {
+                throw getIOException(e);
+            }
+        }
+
+
+        //////////////////////////////////////
+        // DirectoryIterator implementation //
+        //////////////////////////////////////
+
+        public boolean hasNext() throws IOException {
+            while(true) {
+                // Discard the object corresponding to the prefix itself
+                if(index<objects.length && objects[index].getKey().equals(prefix))
+                    index++;
+
+                if(index<objects.length+commonPrefixes.length)
+                    return true;
+
+                if(priorLastKey==null)
+                    return false;
+
+                listChunk(priorLastKey);
+            }
+        }
+
+        public AbstractFile next() throws IOException {
+            if(!hasNext())
+                throw new NoSuchElementException();
+
+            int i = index++;
+            if(i<objects.length)
+                return getObjectFile(bucketName, objects[i], parent);
+
+            return getCommonPrefixFile(bucketName, commonPrefixes[i-objects.length], parent);
+        }
+
+        public void close() {
+            objects = new org.jets3t.service.model.S3Object[0];
+            commonPrefixes = new String[0];
+            priorLastKey = null;
+        }
+    }
 }
@@ -20,6 +20,7 @@
 package com.mucommander.commons.file.protocol.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.FileTransferError;
 import com.mucommander.commons.io.FileTransferException;
@@ -103,6 +104,8 @@ public class S3Object extends S3File {
             throw new FileTransferException(FileTransferError.UNKNOWN);
         }
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Close the InputStream, no matter what
             try {
                 in.close();
@@ -143,6 +146,11 @@ public class S3Object extends S3File {
         return listObjects(bucketName, getObjectKey(true), this);
     }
 
+    @Override
+    public DirectoryIterator iterateChildren() throws IOException {
+        return iterateObjects(bucketName, getObjectKey(true), this);
+    }
+
     @Override
     public void mkdir() throws IOException {
         if(exists())
@@ -156,6 +164,9 @@ public class S3Object extends S3File {
         catch(S3ServiceException e) {
             throw getIOException(e);
         }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
     }
 
     @Override
@@ -181,6 +192,9 @@ public class S3Object extends S3File {
         catch(S3ServiceException e) {
             throw getIOException(e);
         }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
     }
 
     @Override
@@ -220,6 +234,9 @@ public class S3Object extends S3File {
         catch(S3ServiceException e) {
             throw getIOException(e);
         }
+        finally {
+            ListingCache.invalidate(destFile.getURL());
+        }
     }
 
     @Override
@@ -239,6 +256,17 @@ public class S3Object extends S3File {
         }
     }
 
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        try {
+            // Request the range only, so that the bytes past it are neither transferred nor billed
+            return service.getObject(bucketName, getObjectKey(false), null, null, null, null, offset, offset+length-1).getDataInputStream();
+        }
+        catch(S3ServiceException e) {
+            throw getIOException(e);
+        }
+    }
+
     @Override
     public RandomAccessInputStream getRandomAccessInputStream() throws IOException {
         if(!exists())
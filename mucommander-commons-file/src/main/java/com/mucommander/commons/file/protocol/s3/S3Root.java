@@ -20,6 +20,7 @@
 package com.mucommander.commons.file.protocol.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
@@ -81,6 +82,13 @@ public class S3Root extends S3File {
 
     @Override
     public AbstractFile[] ls() throws IOException {
+        // Return the cached list of buckets, if it is fresh
+        AbstractFile cachedBucketFiles[] = ListingCache.get(fileURL);
+        if(cachedBucketFiles!=null)
+            return cachedBucketFiles;
+
+        long invalidationCount = ListingCache.getInvalidationCount();
+
         try {
             org.jets3t.service.model.S3Bucket buckets[] = service.listAllBuckets();
             int nbBuckets = buckets.length;
@@ -94,6 +102,8 @@ public class S3Root extends S3File {
                 bucketFiles[i] = FileFactory.getFile(bucketURL, null, service, buckets[i]);
             }
 
+            ListingCache.put(fileURL, bucketFiles, invalidationCount);
+
             return bucketFiles;
         }
         catch(S3ServiceException e) {
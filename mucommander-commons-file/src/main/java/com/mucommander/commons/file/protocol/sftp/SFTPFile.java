@@ -20,6 +20,7 @@
 
 package com.mucommander.commons.file.protocol.sftp;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -50,6 +51,7 @@ import com.mucommander.commons.file.connection.ConnectionHandler;
 import com.mucommander.commons.file.connection.ConnectionPool;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ByteUtils;
 import com.mucommander.commons.io.CounterOutputStream;
@@ -75,6 +77,9 @@ import com.mucommander.commons.io.RandomAccessOutputStream;
  * reused by SFTPFile instances located on the same server, dealing with concurrency issues. Connections are
  * thus managed transparently and need not be manually managed.</p>
  *
+ * <p>Folder contents are cached by {@link ListingCache}: files whose parent folder has recently been listed are
+ * created without querying the server for their attributes.</p>
+ *
  * <p>Low-level SFTP implementation is provided by the <code>JSCH</code> library distributed under the BSD license.</p>
  *
  * @see ConnectionPool
@@ -130,8 +135,16 @@ public class SFTPFile extends ProtocolFile {
 
         this.absPath = fileURL.getPath();
 
-        if(fileAttributes==null)
-            this.fileAttributes = new SFTPFileAttributes(fileURL);
+        if(fileAttributes==null) {
+            // Copy the attributes of the file if its parent folder has recently been listed. The cached attributes are
+            // not shared as this file updates them when it is modified.
+            AbstractFile cachedFile = ListingCache.getFile(fileURL);
+            Object cachedAttributes = cachedFile==null?null:cachedFile.getUnderlyingFileObject();
+            if(cachedAttributes instanceof SFTPFileAttributes && !((SFTPFileAttributes)cachedAttributes).hasExpired())
+                this.fileAttributes = new SFTPFileAttributes(fileURL, (SFTPFileAttributes)cachedAttributes);
+            else
+                this.fileAttributes = new SFTPFileAttributes(fileURL);
+        }
         else
             this.fileAttributes = fileAttributes;
     }
@@ -192,9 +205,15 @@ public class SFTPFile extends ProtocolFile {
             ) {
             	@Override
             	public void close() throws IOException {
-            		super.close();
-            		// Release the lock on the ConnectionHandler
-                    connHandler.releaseLock();
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        ListingCache.invalidate(fileURL);
+
+                        // Release the lock on the ConnectionHandler
+                        connHandler.releaseLock();
+                    }
             	}
             };
         }
@@ -272,6 +291,8 @@ public class SFTPFile extends ProtocolFile {
 			e.printStackTrace();
 		}
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler
             if(connHandler!=null)
                 connHandler.releaseLock();
@@ -409,6 +430,8 @@ public class SFTPFile extends ProtocolFile {
 			e.printStackTrace();
 		}
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler if the OutputStream could not be created
             if(connHandler!=null)
                 connHandler.releaseLock();
@@ -419,6 +442,13 @@ public class SFTPFile extends ProtocolFile {
     @SuppressWarnings("unchecked")
 	@Override
     public AbstractFile[] ls() throws IOException {
+        // Return the cached contents of this folder, if they are fresh
+        AbstractFile cachedChildren[] = ListingCache.get(fileURL);
+        if(cachedChildren!=null)
+            return cachedChildren;
+
+        long invalidationCount = ListingCache.getInvalidationCount();
+
         // Retrieve a ConnectionHandler and lock it
         SFTPConnectionHandler connHandler = (SFTPConnectionHandler)ConnectionPool.getConnectionHandler(connHandlerFactory, fileURL, true);
         List<LsEntry> files = new ArrayList<LsEntry>();
@@ -467,9 +497,11 @@ public class SFTPFile extends ProtocolFile {
         if(fileCount<nbFiles) {
             AbstractFile newChildren[] = new AbstractFile[fileCount];
             System.arraycopy(children, 0, newChildren, 0, fileCount);
-            return newChildren;
+            children = newChildren;
         }
 
+        ListingCache.put(fileURL, children, invalidationCount);
+
         return children;
     }
 
@@ -494,6 +526,8 @@ public class SFTPFile extends ProtocolFile {
 			e.printStackTrace();
 		}
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler
             connHandler.releaseLock();
         }
@@ -536,6 +570,10 @@ public class SFTPFile extends ProtocolFile {
 			e.printStackTrace();
 		}
         finally {
+            // Both the source and destination folders have changed
+            ListingCache.invalidate(fileURL);
+            ListingCache.invalidate(destFile.getURL());
+
             // Release the lock on the ConnectionHandler
             if(connHandler!=null)
                 connHandler.releaseLock();
@@ -619,6 +657,8 @@ public class SFTPFile extends ProtocolFile {
 			e.printStackTrace();
 		}
         finally {
+            ListingCache.invalidate(fileURL);
+
             // Release the lock on the ConnectionHandler
             if(connHandler!=null)
                 connHandler.releaseLock();
@@ -633,9 +673,25 @@ public class SFTPFile extends ProtocolFile {
             // Makes sure the connection is started, if not starts it
             connHandler.checkConnection();
 
-            InputStream in = connHandler.channelSftp.get(absPath);
-            in.skip(offset);
-            return in;
+            // Start reading at the given offset, rather than reading and discarding the bytes before it
+            return new FilterInputStream(connHandler.channelSftp.get(absPath, null, offset)) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    if(closed)
+                        return;
+
+                    closed = true;
+                    try {
+                        super.close();
+                    }
+                    finally {
+                        // Release the lock on the ConnectionHandler
+                        connHandler.releaseLock();
+                    }
+                }
+            };
         }
         catch(IOException e) {
             // Release the lock on the ConnectionHandler if the InputStream could not be created
@@ -644,10 +700,11 @@ public class SFTPFile extends ProtocolFile {
             // Re-throw IOException
             throw e;
         } catch (SftpException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			return null;
-		}
+            // Release the lock on the ConnectionHandler if the InputStream could not be created
+            connHandler.releaseLock();
+
+            throw new IOException(e);
+        }
     }
 
     @Override
@@ -751,6 +808,25 @@ public class SFTPFile extends ProtocolFile {
             updateExpirationDate(); // declare the attributes as 'fresh'
         }
 
+        // this constructor is called by SFTPFile public constructor when the file's parent folder has been listed
+        private SFTPFileAttributes(FileURL url, SFTPFileAttributes attributes) {
+            super(attributeCachingPeriod, false);   // no initial update
+
+            this.url = url;
+
+            setExists(attributes.exists());
+            setDirectory(attributes.isDirectory());
+            setDate(attributes.getDate());
+            setSize(attributes.getSize());
+            setPermissions(attributes.getPermissions());
+            setOwner(attributes.getOwner());
+            setGroup(attributes.getGroup());
+            this.isSymlink = attributes.isSymlink();
+
+            // The attributes are as fresh as the ones they were copied from
+            setExpirationDate(attributes.getExpirationDate());
+        }
+
         private void fetchAttributes() throws AuthException {
             SFTPConnectionHandler connHandler = null;
             try {
@@ -23,6 +23,7 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import jcifs.smb.*;
@@ -58,6 +59,9 @@ import java.net.MalformedURLException;
  * The {@link #getUnderlyingFileObject()} method allows to retrieve a <code>jcifs.smb.SmbFile</code> instance
  * corresponding to this <code>SMBFile</code>.
  * </p>
+ * <p>
+ * Folder contents are cached by {@link ListingCache}, which is invalidated by the operations that modify them.
+ * </p>
  *
  * @author Maxence Bernard
  */
@@ -220,7 +224,12 @@ import java.net.MalformedURLException;
 
     @Override
     public void changeDate(long lastModified) throws IOException {
-        file.setLastModified(lastModified);
+        try {
+            file.setLastModified(lastModified);
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
     }
 
     @Override
@@ -283,10 +292,15 @@ import java.net.MalformedURLException;
         if(access!=PermissionAccess.USER || permission!=PermissionType.WRITE)
             throw new IOException();
 
-        if(enabled)
-            file.setReadWrite();
-        else
-            file.setReadOnly();
+        try {
+            if(enabled)
+                file.setReadWrite();
+            else
+                file.setReadOnly();
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
     }
 
     /**
@@ -349,12 +363,26 @@ import java.net.MalformedURLException;
 
     @Override
     public OutputStream getOutputStream() throws IOException {
-        return new SmbFileOutputStream(file, false);
+        return getOutputStream(false);
     }
 
     @Override
     public OutputStream getAppendOutputStream() throws IOException {
-        return new SmbFileOutputStream(file, true);
+        return getOutputStream(true);
+    }
+
+    private OutputStream getOutputStream(boolean append) throws IOException {
+        return new SmbFileOutputStream(file, append) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    ListingCache.invalidate(fileURL);
+                }
+            }
+        };
     }
 
     @Override
@@ -372,12 +400,27 @@ import java.net.MalformedURLException;
     public RandomAccessOutputStream getRandomAccessOutputStream() throws IOException {
 //        // Explicitly allow the file to be read/write/delete by another random access file while this one is open
 //        return new SMBRandomAccessOutputStream(new SmbRandomAccessFile(fileURL.toString(true), "rw", SmbFile.FILE_SHARE_READ | SmbFile.FILE_SHARE_WRITE | SmbFile.FILE_SHARE_DELETE));
-        return new SMBRandomAccessOutputStream(new SmbRandomAccessFile(file, "rw"));
+        return new SMBRandomAccessOutputStream(new SmbRandomAccessFile(file, "rw")) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    ListingCache.invalidate(fileURL);
+                }
+            }
+        };
     }
 
     @Override
     public void delete() throws IOException {
-        file.delete();
+        try {
+            file.delete();
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
         checkSmbFile(false);
     }
 
@@ -393,7 +436,12 @@ import java.net.MalformedURLException;
 
         // Note: unlike java.io.File.mkdir(), SmbFile does not return a boolean value
         // to indicate if the folder could be created
-        file.mkdir();
+        try {
+            file.mkdir();
+        }
+        finally {
+            ListingCache.invalidate(fileURL);
+        }
     }
 
     @Override
@@ -408,7 +456,12 @@ import java.net.MalformedURLException;
         SmbFile destSmbFile = ((SMBFile)destFile).file;
 
         // Remotely copy the file
-        file.copyTo(destSmbFile);
+        try {
+            file.copyTo(destSmbFile);
+        }
+        finally {
+            ListingCache.invalidate(destFile.getURL());
+        }
 
         // Ensure that the destination jcifs.smb.SmbFile's path is consistent with its new directory/non-directory state
         ((SMBFile)destFile).checkSmbFile(file.isDirectory());
@@ -431,7 +484,14 @@ import java.net.MalformedURLException;
         boolean isDirectory = file.isDirectory();
 
         // Rename the file
-        file.renameTo(((SMBFile)destFile).file);
+        try {
+            file.renameTo(((SMBFile)destFile).file);
+        }
+        finally {
+            // Both the source and destination folders have changed
+            ListingCache.invalidate(fileURL);
+            ListingCache.invalidate(destFile.getURL());
+        }
 
         // Ensure that the destination jcifs.smb.SmbFile's path is consistent with its new directory/non-directory state
         ((SMBFile)destFile).checkSmbFile(isDirectory);
@@ -469,6 +529,13 @@ import java.net.MalformedURLException;
 
     @Override
     public AbstractFile[] ls(FilenameFilter filenameFilter) throws IOException {
+        // Return the cached contents of this folder, if they are fresh
+        AbstractFile cachedChildren[] = ListingCache.get(fileURL);
+        if(cachedChildren!=null)
+            return filenameFilter==null?cachedChildren:filenameFilter.filter(cachedChildren);
+
+        long invalidationCount = ListingCache.getInvalidationCount();
+
         try {
             SmbFile smbFiles[] = file.listFiles(filenameFilter==null?null:new SMBFilenameFilter(filenameFilter));
 
@@ -507,6 +574,10 @@ import java.net.MalformedURLException;
                 children[currentIndex++] = FileFactory.getFile(childURL, this, smbFile);
             }
 
+            // Filtered listings are incomplete and are not cached
+            if(filenameFilter==null)
+                ListingCache.put(fileURL, children, invalidationCount);
+
             return children;
         }
         catch(SmbAuthException e) {
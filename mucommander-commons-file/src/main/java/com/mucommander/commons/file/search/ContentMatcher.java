@@ -0,0 +1,57 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.search;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A <code>ContentMatcher</code> looks for a match in the contents of files, which {@link FileSearch} hands over as
+ * consecutive ranges of bytes. Each range is searched by a separate call to {@link #find(ByteBuffer, int, int)}:
+ * the buffer also holds the bytes that follow the range, up to {@link #getOverlap()} of them, so that matches that
+ * straddle two ranges are found.
+ *
+ * <p>Implementations must be thread-safe: a matcher is used by several threads at once.</p>
+ *
+ * @see LiteralContentMatcher
+ * @see RegexpContentMatcher
+ */
+public interface ContentMatcher {
+
+    /**
+     * Returns the maximum number of bytes a match may extend past the offset it starts at.
+     *
+     * @return the maximum number of bytes a match may extend past the offset it starts at
+     */
+    int getOverlap();
+
+    /**
+     * Returns <code>true</code> if a match starts at an offset between <code>from</code> (inclusive) and
+     * <code>to</code> (exclusive) of the given buffer. The match may extend up to the buffer's limit, which is at
+     * most {@link #getOverlap()} bytes past <code>to</code>, or less at the end of the file.
+     *
+     * <p><code>from</code> is <code>0</code> only at the beginning of a file: otherwise, the byte that precedes
+     * <code>from</code> is available in the buffer. The position of the buffer is meaningless.</p>
+     *
+     * @param buffer contents of the file
+     * @param from offset of the first byte of the range to search in the buffer
+     * @param to offset of the end of the range to search in the buffer (exclusive)
+     * @return true if a match starts within the given range
+     */
+    boolean find(ByteBuffer buffer, int from, int to);
+}
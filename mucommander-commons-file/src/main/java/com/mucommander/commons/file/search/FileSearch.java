@@ -0,0 +1,571 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.search;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.protocol.FileProtocols;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FileSearch looks for the files of one or several file trees whose name matches a {@link FileFilter} and, optionally,
+ * whose contents match a {@link ContentMatcher}.
+ *
+ * <p>Like {@link com.mucommander.commons.file.util.FolderSizeCalculator}, the search runs on a shared {@link ForkJoinPool}: each folder and each file
+ * to scan is a task, and idle threads steal the tasks that are waiting to be run by busy ones. The contents of local
+ * files are scanned through memory-mapped regions of {@link #REGION_SIZE} bytes, the regions of large files being
+ * scanned in parallel. Small local files, files within archives and remote files are read as a stream. The number of
+ * folders that are listed and files that are read concurrently on a same remote server is bounded (see
+ * {@link #REMOTE_CONCURRENCY}).</p>
+ *
+ * <p>Symbolic links to folders are not followed. Archives are searched like folders if requested, otherwise their
+ * raw contents are scanned like those of any other file. Without a <code>ContentMatcher</code>, folders whose name
+ * matches the filter are found as well.</p>
+ *
+ * <p>Files are reported to a {@link FileSearchListener} as they are found, in no particular order. The search can be
+ * cancelled at any time, and its progress read while it is running.</p>
+ */
+public class FileSearch {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSearch.class);
+
+    /** Maximum number of folders and files that are read concurrently on a same remote server */
+    public final static int REMOTE_CONCURRENCY = 4;
+
+    /** Size of the regions that local files are mapped and scanned by */
+    public final static int REGION_SIZE = 32*1024*1024;
+
+    /** Local files smaller than this are read rather than mapped, as mapping them costs more than it saves */
+    private final static int MIN_MAPPED_SIZE = 1024*1024;
+
+    /** Size of the buffer that files that are not mapped are read into */
+    private final static int BUFFER_SIZE = 256*1024;
+
+    /** Number of threads of the pool. Scanning is CPU bound when files are in the page cache, I/O bound otherwise:
+     * more threads than processors help keeping slow filesystems busy. */
+    private final static int PARALLELISM = Math.max(8, 2*Runtime.getRuntime().availableProcessors());
+
+    /** Pool that runs the searches */
+    private final static ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+    /** Limits the number of concurrent reads per remote realm */
+    private final static ConcurrentMap<String, Semaphore> REALM_PERMITS = new ConcurrentHashMap<String, Semaphore>();
+
+    private final AbstractFile roots[];
+    private final FileFilter filter;
+    private final ContentMatcher matcher;
+    private final boolean searchArchives;
+    private final FileSearchListener listener;
+
+    private final LongAdder nbFiles = new LongAdder();
+    private final LongAdder nbFolders = new LongAdder();
+    private final LongAdder nbBytes = new LongAdder();
+    private final LongAdder nbResults = new LongAdder();
+
+    private volatile boolean cancelled;
+    private volatile long startTime;
+    private volatile long endTime;
+
+    /** The task that runs the search, null until the search has been started */
+    private ForkJoinTask<?> task;
+
+    /**
+     * Creates a new <code>FileSearch</code>. The search is not started until {@link #start()} is called.
+     *
+     * @param roots the files and folders to search
+     * @param filter files whose name (or any other attribute) matches this filter are found, or have their contents
+     * scanned. <code>null</code> to match all files.
+     * @param matcher files whose contents match are found, <code>null</code> to find files by name only
+     * @param searchArchives if true, archives are searched like folders
+     * @param listener notified of the files that are found, may be <code>null</code>
+     */
+    public FileSearch(AbstractFile roots[], FileFilter filter, ContentMatcher matcher, boolean searchArchives, FileSearchListener listener) {
+        this.roots = roots;
+        this.filter = filter;
+        this.matcher = matcher;
+        this.searchArchives = searchArchives;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the search in the background. This method returns immediately.
+     *
+     * @throws IllegalStateException if the search has already been started
+     */
+    public synchronized void start() {
+        if(task!=null)
+            throw new IllegalStateException("Search already started");
+
+        startTime = System.currentTimeMillis();
+        task = POOL.submit(new SearchTask());
+    }
+
+    /**
+     * Waits for the search to complete.
+     *
+     * @throws IllegalStateException if the search has not been started
+     */
+    public void join() {
+        ForkJoinTask<?> task;
+        synchronized(this) {
+            task = this.task;
+        }
+
+        if(task==null)
+            throw new IllegalStateException("Search not started");
+
+        task.quietlyJoin();
+    }
+
+    /**
+     * Stops the search as soon as possible. The listener is notified when the search has stopped.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #cancel()} has been called.
+     *
+     * @return true if the search has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns <code>true</code> if the search has completed, or has stopped after having been cancelled.
+     *
+     * @return true if the search has completed
+     */
+    public boolean isFinished() {
+        return endTime!=0;
+    }
+
+    /**
+     * Returns the number of files whose name matched the filter so far, whether their contents were scanned or not.
+     *
+     * @return the number of files whose name matched the filter so far
+     */
+    public long getNbFiles() {
+        return nbFiles.sum();
+    }
+
+    /**
+     * Returns the number of folders listed so far, including archives.
+     *
+     * @return the number of folders listed so far
+     */
+    public long getNbFolders() {
+        return nbFolders.sum();
+    }
+
+    /**
+     * Returns the number of bytes of file contents scanned so far.
+     *
+     * @return the number of bytes of file contents scanned so far
+     */
+    public long getNbBytes() {
+        return nbBytes.sum();
+    }
+
+    /**
+     * Returns the number of files found so far.
+     *
+     * @return the number of files found so far
+     */
+    public long getNbResults() {
+        return nbResults.sum();
+    }
+
+    /**
+     * Returns the time elapsed since the search was started, until it completed if it has, in milliseconds.
+     *
+     * @return the time the search has been running for, in milliseconds
+     */
+    public long getElapsedTime() {
+        if(startTime==0)
+            return 0;
+
+        long endTime = this.endTime;
+        return (endTime==0?System.currentTimeMillis():endTime)-startTime;
+    }
+
+    /**
+     * Returns the average number of files matched by the filter per second.
+     *
+     * @return the average number of files per second
+     */
+    public double getFilesPerSecond() {
+        long elapsedTime = getElapsedTime();
+        return elapsedTime==0?0:getNbFiles()*1000d/elapsedTime;
+    }
+
+    /**
+     * Returns the average number of bytes scanned per second.
+     *
+     * @return the average number of bytes per second
+     */
+    public long getBytesPerSecond() {
+        long elapsedTime = getElapsedTime();
+        return elapsedTime==0?0:getNbBytes()*1000/elapsedTime;
+    }
+
+    /**
+     * Reports the given file to the listener.
+     */
+    private void found(AbstractFile file) {
+        nbResults.increment();
+        if(listener!=null)
+            listener.fileFound(this, file);
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is a folder that should be traversed.
+     */
+    private boolean isFolder(AbstractFile file) {
+        return (file.isDirectory() && !file.isSymlink()) || (searchArchives && file.isArchive());
+    }
+
+    /**
+     * Returns the <code>java.io.File</code> of the given file if it is a local file which can be mapped,
+     * <code>null</code> otherwise.
+     */
+    private static File getLocalFile(AbstractFile file) {
+        if(!FileProtocols.FILE.equals(file.getURL().getScheme()))
+            return null;
+
+        // Archive entries have a local URL but not a local file
+        Object underlyingFile = file.getUnderlyingFileObject();
+        return underlyingFile instanceof File?(File)underlyingFile:null;
+    }
+
+    /**
+     * Returns the semaphore that bounds the number of concurrent reads on the given location's realm,
+     * <code>null</code> for local files which are not bounded.
+     */
+    private static Semaphore getPermits(FileURL url) {
+        if(FileProtocols.FILE.equals(url.getScheme()))
+            return null;
+
+        String realm = url.getRealm().toString(false);
+        Semaphore permits = REALM_PERMITS.get(realm);
+        if(permits==null) {
+            Semaphore newPermits = new Semaphore(REMOTE_CONCURRENCY);
+            permits = REALM_PERMITS.putIfAbsent(realm, newPermits);
+            if(permits==null)
+                permits = newPermits;
+        }
+
+        return permits;
+    }
+
+    /**
+     * Scans the given range of a local file, mapped along with the byte that precedes it and the bytes that a match
+     * may extend over.
+     */
+    private boolean scanRegion(FileChannel channel, long size, long start, long end) throws IOException {
+        long mapStart = start==0?0:start-1;
+        long mapEnd = Math.min(size, end+matcher.getOverlap());
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd-mapStart);
+
+        int from = (int)(start-mapStart);
+        boolean match = matcher.find(buffer, from, from+(int)(end-start));
+        nbBytes.add(end-start);
+
+        return match;
+    }
+
+    /**
+     * Scans the contents of the given file as a stream.
+     */
+    private boolean scanStream(AbstractFile file) throws IOException {
+        int overlap = matcher.getOverlap();
+        // Leave room for the bytes that are carried over to the next read
+        byte buf[] = new byte[Math.max(BUFFER_SIZE, 2*(overlap+1))];
+        ByteBuffer buffer = ByteBuffer.wrap(buf);
+
+        InputStream in = file.getInputStream();
+        try {
+            int from = 0;
+            int length = 0;
+            while(true) {
+                boolean eof = false;
+                int nbRead;
+                while(length<buf.length) {
+                    if((nbRead=in.read(buf, length, buf.length-length))==-1) {
+                        eof = true;
+                        break;
+                    }
+                    length += nbRead;
+                }
+
+                int to = eof?length:length-overlap;
+                buffer.limit(length);
+                if(to>from) {
+                    nbBytes.add(to-from);
+                    if(matcher.find(buffer, from, to))
+                        return true;
+                }
+
+                if(eof || cancelled)
+                    return false;
+
+                // Carry over the byte that precedes the next range, and those of the next range read so far
+                System.arraycopy(buf, to-1, buf, 0, length-to+1);
+                length = length-to+1;
+                from = 1;
+            }
+        }
+        finally {
+            try { in.close(); }
+            catch(IOException e) {
+                // Not much we can do about it
+            }
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Searches all the roots, and notifies the listener once done.
+     */
+    private class SearchTask extends RecursiveAction {
+        @Override
+        protected void compute() {
+            try {
+                List<ForkJoinTask<?>> subtasks = new ArrayList<ForkJoinTask<?>>();
+                for(AbstractFile root : roots) {
+                    if(isFolder(root))
+                        subtasks.add(new FolderTask(root));
+                    else
+                        addFile(root, subtasks);
+                }
+
+                invokeAll(subtasks);
+            }
+            finally {
+                endTime = System.currentTimeMillis();
+                if(listener!=null)
+                    listener.searchFinished(FileSearch.this);
+            }
+        }
+    }
+
+    /**
+     * Matches the given file, which is not a folder, against the filter and finds it or adds a task to scan it.
+     */
+    private void addFile(AbstractFile file, List<ForkJoinTask<?>> subtasks) {
+        if(filter!=null && !filter.match(file))
+            return;
+
+        if(matcher==null) {
+            nbFiles.increment();
+            found(file);
+        }
+        else {
+            subtasks.add(new ScanTask(file));
+        }
+    }
+
+    /**
+     * Lists a folder, and forks a task for each of its subfolders and for each of its files to scan.
+     */
+    private class FolderTask extends RecursiveAction {
+        private final AbstractFile folder;
+
+        private FolderTask(AbstractFile folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        protected void compute() {
+            if(cancelled)
+                return;
+
+            nbFolders.increment();
+
+            List<ForkJoinTask<?>> subtasks = new ArrayList<ForkJoinTask<?>>();
+            Semaphore permits = getPermits(folder.getURL());
+            if(permits!=null)
+                permits.acquireUninterruptibly();
+            try {
+                DirectoryIterator children = folder.iterateChildren();
+                try {
+                    AbstractFile child;
+                    while(children.hasNext() && !cancelled) {
+                        child = children.next();
+                        if(isFolder(child)) {
+                            subtasks.add(new FolderTask(child));
+                            // Without a matcher, folders (and archives) are found by name too
+                            if(matcher==null && (filter==null || filter.match(child)))
+                                found(child);
+                        }
+                        else {
+                            addFile(child, subtasks);
+                        }
+                    }
+                }
+                finally {
+                    children.close();
+                }
+            }
+            catch(IOException e) {
+                LOGGER.debug("Could not list "+folder, e);
+            }
+            finally {
+                if(permits!=null)
+                    permits.release();
+            }
+
+            invokeAll(subtasks);
+        }
+    }
+
+    /**
+     * Scans the contents of a file, in parallel regions if it is a large local file.
+     */
+    private class ScanTask extends RecursiveAction {
+        private final AbstractFile file;
+
+        private ScanTask(AbstractFile file) {
+            this.file = file;
+        }
+
+        @Override
+        protected void compute() {
+            if(cancelled)
+                return;
+
+            nbFiles.increment();
+
+            try {
+                File localFile = getLocalFile(file);
+                long size = file.getSize();
+                boolean match;
+                if(localFile!=null && size>=MIN_MAPPED_SIZE)
+                    match = scanMapped(localFile);
+                else
+                    match = scanStream();
+
+                if(match && !cancelled)
+                    found(file);
+            }
+            catch(IOException e) {
+                LOGGER.debug("Could not scan "+file, e);
+            }
+        }
+
+        private boolean scanStream() throws IOException {
+            Semaphore permits = getPermits(file.getURL());
+            if(permits!=null)
+                permits.acquireUninterruptibly();
+            try {
+                return FileSearch.this.scanStream(file);
+            }
+            finally {
+                if(permits!=null)
+                    permits.release();
+            }
+        }
+
+        private boolean scanMapped(File localFile) throws IOException {
+            FileChannel channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if(size<=REGION_SIZE)
+                    return scanRegion(channel, size, 0, size);
+
+                AtomicBoolean match = new AtomicBoolean();
+                List<RegionTask> subtasks = new ArrayList<RegionTask>();
+                for(long start=0; start<size; start+=REGION_SIZE)
+                    subtasks.add(new RegionTask(channel, size, start, Math.min(size, start+REGION_SIZE), match));
+
+                for(RegionTask subtask : invokeAll(subtasks))
+                    if(subtask.exception!=null)
+                        throw subtask.exception;
+
+                return match.get();
+            }
+            finally {
+                try { channel.close(); }
+                catch(IOException e) {
+                    // Not much we can do about it
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans a region of a large local file, unless a match has already been found in another region.
+     */
+    private class RegionTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final long size;
+        private final long start;
+        private final long end;
+        private final AtomicBoolean match;
+        /** The error that occurred while scanning the region, if any */
+        private IOException exception;
+
+        private RegionTask(FileChannel channel, long size, long start, long end, AtomicBoolean match) {
+            this.channel = channel;
+            this.size = size;
+            this.start = start;
+            this.end = end;
+            this.match = match;
+        }
+
+        @Override
+        protected void compute() {
+            if(cancelled || match.get())
+                return;
+
+            try {
+                if(scanRegion(channel, size, start, end))
+                    match.set(true);
+            }
+            catch(IOException e) {
+                exception = e;
+            }
+        }
+    }
+}
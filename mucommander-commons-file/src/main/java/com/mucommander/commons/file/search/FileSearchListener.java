@@ -0,0 +1,43 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.search;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * Interface to be implemented by classes that wish to be notified of the files found by a {@link FileSearch}.
+ * The methods of this interface are called by the threads of the search, not necessarily the same one each time.
+ */
+public interface FileSearchListener {
+
+    /**
+     * Called when a file matching the criteria of the search has been found.
+     *
+     * @param search the search that found the file
+     * @param file the file that was found
+     */
+    void fileFound(FileSearch search, AbstractFile file);
+
+    /**
+     * Called once the search has completed, or has stopped after having been cancelled.
+     *
+     * @param search the search that completed
+     */
+    void searchFinished(FileSearch search);
+}
@@ -0,0 +1,118 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.search;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * LiteralContentMatcher looks for a string in the contents of files, using the Boyer-Moore-Horspool algorithm:
+ * the encoded string is compared right to left and, on a mismatch, skipped ahead by as many bytes as the last
+ * byte compared allows. The longer the string, the fewer bytes are actually read.
+ *
+ * <p>When not case-sensitive, the case of ASCII letters is ignored, as with
+ * <code>java.util.regex.Pattern.CASE_INSENSITIVE</code>. Other characters must match exactly.</p>
+ */
+public class LiteralContentMatcher implements ContentMatcher {
+
+    /** The encoded string, with ASCII letters in lower case if not case-sensitive */
+    private final byte pattern[];
+    /** Number of bytes to skip when a given byte is the last one compared */
+    private final int shifts[] = new int[256];
+    /** Whether the case of ASCII letters matters */
+    private final boolean caseSensitive;
+
+    /**
+     * Creates a new <code>LiteralContentMatcher</code>.
+     *
+     * @param s the string to look for
+     * @param charset the charset the contents of files are encoded in
+     * @param caseSensitive if false, the case of ASCII letters is ignored
+     * @throws IllegalArgumentException if the string is empty
+     */
+    public LiteralContentMatcher(String s, Charset charset, boolean caseSensitive) {
+        if(s.isEmpty())
+            throw new IllegalArgumentException("Empty string");
+
+        this.caseSensitive = caseSensitive;
+
+        pattern = s.getBytes(charset);
+        if(!caseSensitive) {
+            for(int i=0; i<pattern.length; i++)
+                pattern[i] = toLowerCase(pattern[i]);
+        }
+
+        int last = pattern.length-1;
+        for(int i=0; i<shifts.length; i++)
+            shifts[i] = pattern.length;
+        for(int i=0; i<last; i++) {
+            shifts[pattern[i]&0xFF] = last-i;
+            if(!caseSensitive)
+                shifts[toUpperCase(pattern[i])&0xFF] = last-i;
+        }
+    }
+
+    private static byte toLowerCase(byte b) {
+        return b>='A' && b<='Z'?(byte)(b+'a'-'A'):b;
+    }
+
+    private static byte toUpperCase(byte b) {
+        return b>='a' && b<='z'?(byte)(b-'a'+'A'):b;
+    }
+
+
+    ///////////////////////////////////
+    // ContentMatcher implementation //
+    ///////////////////////////////////
+
+    /**
+     * Returns the length of the encoded string minus one.
+     */
+    public int getOverlap() {
+        return pattern.length-1;
+    }
+
+    public boolean find(ByteBuffer buffer, int from, int to) {
+        int last = pattern.length-1;
+        // The match must fit in the buffer
+        int end = Math.min(to, buffer.limit()-last);
+
+        for(int i=from; i<end; ) {
+            byte b = buffer.get(i+last);
+            if((caseSensitive?b:toLowerCase(b))==pattern[last]) {
+                int j = last-1;
+                if(caseSensitive) {
+                    while(j>=0 && buffer.get(i+j)==pattern[j])
+                        j--;
+                }
+                else {
+                    while(j>=0 && toLowerCase(buffer.get(i+j))==pattern[j])
+                        j--;
+                }
+
+                if(j<0)
+                    return true;
+            }
+
+            i += shifts[b&0xFF];
+        }
+
+        return false;
+    }
+}
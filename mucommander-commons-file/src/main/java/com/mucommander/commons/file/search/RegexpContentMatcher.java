@@ -0,0 +1,163 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.search;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * RegexpContentMatcher looks for lines of text that contain a match for a regular expression, like
+ * <code>grep</code> does: matches never span several lines.
+ *
+ * <p>The contents of files are decoded chunk by chunk, each chunk ending at a line break. Lines that straddle two
+ * ranges of a file are matched only if they fit within {@link #getOverlap()} bytes, and lines longer than that are
+ * split. Lines are separated by <code>'\n'</code> bytes, the charset must thus be a superset of ASCII, as are
+ * UTF-8 and the ISO-8859 charsets.</p>
+ */
+public class RegexpContentMatcher implements ContentMatcher {
+
+    /** Maximum length of a line that straddles two ranges, in bytes */
+    public final static int MAX_LINE_LENGTH = 64*1024;
+
+    /** Number of bytes that are decoded at once, give or take a line */
+    private final static int CHUNK_SIZE = 1024*1024;
+
+    /** The compiled regular expression */
+    private final Pattern pattern;
+    /** The charset the contents of files are encoded in */
+    private final Charset charset;
+
+    /**
+     * Creates a new <code>RegexpContentMatcher</code>.
+     *
+     * @param regexp the regular expression to look for in each line
+     * @param charset the charset the contents of files are encoded in, a superset of ASCII
+     * @param caseSensitive whether the regular expression is case sensitive or not
+     * @throws PatternSyntaxException if the syntax of the regular expression is not correct
+     * @throws IllegalArgumentException if the charset does not encode line breaks as a single <code>'\n'</code> byte
+     */
+    public RegexpContentMatcher(String regexp, Charset charset, boolean caseSensitive) throws PatternSyntaxException {
+        if(!Arrays.equals("\n".getBytes(charset), new byte[]{'\n'}))
+            throw new IllegalArgumentException("Unsupported charset: "+charset);
+
+        this.pattern = Pattern.compile(regexp, caseSensitive?0:Pattern.CASE_INSENSITIVE);
+        this.charset = charset;
+    }
+
+    /**
+     * Returns the offset of the first line break between the given offsets of the buffer, <code>-1</code> if there
+     * is none.
+     */
+    private static int indexOfLineBreak(ByteBuffer buffer, int from, int to) {
+        for(int i=from; i<to; i++)
+            if(buffer.get(i)=='\n')
+                return i;
+
+        return -1;
+    }
+
+
+    ///////////////////////////////////
+    // ContentMatcher implementation //
+    ///////////////////////////////////
+
+    /**
+     * Returns {@link #MAX_LINE_LENGTH}.
+     */
+    public int getOverlap() {
+        return MAX_LINE_LENGTH;
+    }
+
+    /**
+     * Returns <code>true</code> if one of the lines that start between the given offsets contains a match.
+     */
+    public boolean find(ByteBuffer buffer, int from, int to) {
+        int limit = buffer.limit();
+
+        // The line that the range starts in belongs to the previous range, unless the range starts on a line
+        int start = from;
+        if(from>0 && buffer.get(from-1)!='\n') {
+            start = indexOfLineBreak(buffer, from, to);
+            if(start==-1)
+                return false;
+            start++;
+        }
+
+        if(start>=to)
+            return false;
+
+        // The last line that starts in the range may extend past it
+        int end = indexOfLineBreak(buffer, to-1, limit);
+        if(end==-1)
+            end = limit;
+
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        Matcher matcher = pattern.matcher("");
+        ByteBuffer chunk = buffer.duplicate();
+
+        while(start<end) {
+            // Chunks end at a line break, unless the line is too long
+            int chunkEnd = end;
+            boolean lineBreak = false;
+            if(start+CHUNK_SIZE<end) {
+                int max = Math.min(end, start+CHUNK_SIZE+MAX_LINE_LENGTH);
+                chunkEnd = indexOfLineBreak(buffer, start+CHUNK_SIZE, max);
+                lineBreak = chunkEnd!=-1;
+                if(!lineBreak)
+                    chunkEnd = max;
+            }
+
+            chunk.limit(chunkEnd).position(start);
+            CharBuffer chars;
+            try {
+                chars = decoder.decode(chunk);
+            }
+            catch(CharacterCodingException e) {
+                // Cannot happen, malformed input is replaced
+                return false;
+            }
+
+            matcher.reset(chars);
+            int length = chars.length();
+            int lineStart = 0;
+            for(int i=0; i<=length; i++) {
+                if(i==length || chars.charAt(i)=='\n') {
+                    matcher.region(lineStart, i);
+                    if(matcher.find())
+                        return true;
+                    lineStart = i+1;
+                }
+            }
+
+            start = lineBreak?chunkEnd+1:chunkEnd;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link DirectoryIterator} that returns the files of an array that has already been retrieved, typically by
+ * {@link AbstractFile#ls()}. This is what filesystems that can only list a folder as a whole return.
+ */
+public class ArrayDirectoryIterator implements DirectoryIterator {
+
+    /** The files to iterate over */
+    private AbstractFile files[];
+    /** Index of the next file to return */
+    private int index;
+
+    /**
+     * Creates a new <code>ArrayDirectoryIterator</code> over the given files.
+     *
+     * @param files the files to iterate over
+     */
+    public ArrayDirectoryIterator(AbstractFile files[]) {
+        this.files = files;
+    }
+
+
+    //////////////////////////////////////
+    // DirectoryIterator implementation //
+    //////////////////////////////////////
+
+    public boolean hasNext() {
+        return files!=null && index<files.length;
+    }
+
+    public AbstractFile next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        return files[index++];
+    }
+
+    public void close() {
+        // Let the array be garbage collected
+        files = null;
+    }
+}
@@ -20,6 +20,7 @@
 package com.mucommander.commons.file.util;
 
 import com.sun.jna.Library;
+import com.sun.jna.NativeLong;
 import com.sun.jna.Structure;
 
 import java.util.Arrays;
@@ -38,36 +39,41 @@ public interface CLibrary extends Library {
     
     /**
      * Structure that holds the information returned by {@link CLibrary#statvfs(String, STATVFSSTRUCT)}.
+     *
+     * <p>This structure follows the layout used by the GNU C library, where all fields are <code>unsigned long</code>
+     * integers: it must not be used on other platforms, which lay the structure out differently.</p>
      */
     public static class STATVFSSTRUCT extends Structure {
         /* file system block size */
-        public int f_bsize;
+        public NativeLong f_bsize;
         /* fragment size */
-        public int f_frsize;
+        public NativeLong f_frsize;
         /* size of fs in f_frsize units */
-        public int f_blocks;
+        public NativeLong f_blocks;
         /* # free blocks */
-        public int f_bfree;
+        public NativeLong f_bfree;
         /* # free blocks for non-root */
-        public int f_bavail;
+        public NativeLong f_bavail;
         /* # inodes */
-        public int f_files;
+        public NativeLong f_files;
         /* # free inodes */
-        public int f_ffree;
+        public NativeLong f_ffree;
         /* # free inodes for non-root */
-        public int f_favail;
+        public NativeLong f_favail;
         /* file system ID */
-        public long f_fsid;
+        public NativeLong f_fsid;
         /* mount flags */
-        public int f_flag;
+        public NativeLong f_flag;
         /* maximum filename length */
-        public int f_namemax;
+        public NativeLong f_namemax;
+        /* reserved, also leaves room for the padding that 32-bit platforms insert after f_fsid */
+        public int[] f_spare = new int[6];
 
         @Override
         protected List getFieldOrder() {
             return Arrays.asList(
                     "f_bsize", "f_frsize", "f_blocks", "f_bfree", "f_bavail", "f_files",
-                    "f_ffree", "f_favail", "f_fsid", "f_flag", "f_namemax");
+                    "f_ffree", "f_favail", "f_fsid", "f_flag", "f_namemax", "f_spare");
         }
     }
 
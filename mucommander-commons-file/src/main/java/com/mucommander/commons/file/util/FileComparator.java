@@ -22,8 +22,6 @@ package com.mucommander.commons.file.util;
 import com.mucommander.commons.file.AbstractFile;
 
 import java.util.Comparator;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /**
@@ -69,10 +67,6 @@ public class FileComparator implements Comparator<AbstractFile> {
     /** Criterion for group comparison. */
     public final static int GROUP_CRITERION = 6;
 
-    /** Matches filenames that contain a number, like "01 - Do the Joy.mp3" */
-    private final static Pattern FILENAME_WITH_NUMBER_PATTERN = Pattern.compile("\\d+");
-
-
     /**
      * Creates a new FileComparator using the specified comparison criterion, order (ascending or descending) and
      * directory handling rule.
@@ -102,7 +96,7 @@ public class FileComparator implements Comparator<AbstractFile> {
      * @param c character for which to return a value
      * @return a <code>value</code> for the given character
      */
-    private int getCharacterValue(int c) {
+    static int getCharacterValue(int c) {
         // Note: max char value is 65535
         if(Character.isLetter(c))
             c += 131070;    // yields a value higher than any other symbol or digit
@@ -114,21 +108,60 @@ public class FileComparator implements Comparator<AbstractFile> {
     }
 
     /**
-     * Removes leading zeros ('0') from the given string (if it contains any), and returns the trimmed string.
+     * Returns the index of the first digit of the first number contained in the given string, like "01" in
+     * "01 - Do the Joy.mp3", <code>-1</code> if the string doesn't contain any number.
+     *
+     * @param s the string in which to look for a number
+     * @return the index of the first digit of the first number, -1 if the string doesn't contain any number
+     */
+    static int findNumber(String s) {
+        int len = s.length();
+        for(int i=0; i<len; i++) {
+            if(isDigit(s.charAt(i)))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the index of the character that follows the number starting at the given index.
      *
-     * @param s the string from which to remove leading zeros
-     * @return a string without leading zeros
+     * @param s the string containing the number
+     * @param start index of the number's first digit
+     * @return the index of the character that follows the number
      */
-    private String removeLeadingZeros(String s) {
+    static int findNumberEnd(String s, int start) {
         int len = s.length();
-        int i=0;
-        while(i<len && s.charAt(i)=='0')
+        int i = start;
+        while(i<len && isDigit(s.charAt(i)))
             i++;
 
-        if(i>0)
-            return s.substring(i, len);
+        return i;
+    }
+
+    /**
+     * Returns the index of the first digit that is not a leading zero ('0') in the given number, <code>end</code>
+     * if all digits are zeros.
+     *
+     * @param s the string containing the number
+     * @param start index of the number's first digit
+     * @param end index of the character that follows the number
+     * @return the index of the first digit that is not a leading zero
+     */
+    static int skipLeadingZeros(String s, int start, int end) {
+        int i = start;
+        while(i<end && s.charAt(i)=='0')
+            i++;
 
-        return s;
+        return i;
+    }
+
+    /**
+     * Returns <code>true</code> if the given character is an ASCII digit.
+     */
+    private static boolean isDigit(char c) {
+        return c>='0' && c<='9';
     }
 
     /**
@@ -162,32 +195,29 @@ public class FileComparator implements Comparator<AbstractFile> {
         // 1 < 1a < 2 < 10, like Mac OS X Finder and Windows Explorer do.
         //
         // This special order applies only if both strings contain a number and have the same prefix. Otherwise, the general order applies.
-        Matcher m1 = FILENAME_WITH_NUMBER_PATTERN.matcher(s1);
-        if(m1.find()) {
-            Matcher m2 = FILENAME_WITH_NUMBER_PATTERN.matcher(s2);
-            if(m2.find()) {
-                // So we got two filenames that both contain a number, check if they have the same prefix
-                int start1 = m1.start();
-                int start2 = m2.start();
-
-                // Note: compare prefixes only if start indexes match, faster that way
-                if(start1==start2 && (start1==0 || s1.substring(0, start1).equals(s2.substring(0, start2)))) {
-                    String g1 = removeLeadingZeros(m1.group());
-                    String g2 = removeLeadingZeros(m2.group());
-
-                    int g1Len = g1.length();
-                    int g2Len = g2.length();
-
-                    if(g1Len!=g2Len)
-                        return g1Len - g2Len;
-
-                    int c1, c2;
-                    for (int i=0; i<g1Len && i<g2Len; i++) {
-                        c1 = g1.charAt(i);
-                        c2 = g2.charAt(i);
-                        if(c1 != c2)
-                            return c1 - c2;
-                    }
+        int start1 = findNumber(s1);
+        if(start1!=-1) {
+            int start2 = findNumber(s2);
+            // So we got two filenames that both contain a number, check if they have the same prefix
+            // Note: compare prefixes only if start indexes match, faster that way
+            if(start1==start2 && (start1==0 || s1.regionMatches(0, s2, 0, start1))) {
+                int end1 = findNumberEnd(s1, start1);
+                int end2 = findNumberEnd(s2, start2);
+                int g1 = skipLeadingZeros(s1, start1, end1);
+                int g2 = skipLeadingZeros(s2, start2, end2);
+
+                int g1Len = end1-g1;
+                int g2Len = end2-g2;
+
+                if(g1Len!=g2Len)
+                    return g1Len - g2Len;
+
+                int c1, c2;
+                for (int i=0; i<g1Len; i++) {
+                    c1 = s1.charAt(g1+i);
+                    c2 = s2.charAt(g2+i);
+                    if(c1 != c2)
+                        return c1 - c2;
                 }
             }
         }
@@ -245,11 +275,7 @@ public class FileComparator implements Comparator<AbstractFile> {
 
         if (criterion == SIZE_CRITERION)  {
             // Consider that directories have a size of 0
-            long fileSize1 = is1Directory?0:f1.getSize();
-            long fileSize2 = is2Directory?0:f2.getSize();
-
-            // Returns file1 size - file2 size, file size of -1 (unavailable) is considered as enormous (max long value)
-            diff = (fileSize1==-1?Long.MAX_VALUE:fileSize1)-(fileSize2==-1?Long.MAX_VALUE:fileSize2);
+            diff = compareSizes(is1Directory?0:f1.getSize(), is2Directory?0:f2.getSize());
         }
         else if (criterion == DATE_CRITERION) {
             diff = f1.getDate()-f2.getDate();
@@ -267,21 +293,116 @@ public class FileComparator implements Comparator<AbstractFile> {
             diff = compareStrings(f1.getGroup(), f2.getGroup(), true, true);
         }
         else {      // criterion == NAME_CRITERION
+            diff = compareNames(f1.getName(), f2.getName());
+        }
+
+        if(criterion!=NAME_CRITERION && diff==0)	// If both files have the same criterion's value, compare names
             diff = compareStrings(f1.getName(), f2.getName(), true, false);
 
-            if(diff==0) {
-                // This should never happen unless the current filesystem allows a directory to have
-                // several files with different case variations of the same name.
-                // AFAIK, no OS/filesystem allows this, but just to be safe.
+        return toResult(diff);
+    }
 
-                // Case-sensitive name comparison
-                diff = compareStrings(f1.getName(), f2.getName(), false, false);
-            }
+    /**
+     * Returns <code>true</code> if this comparator's criterion can be evaluated from the name, type, size and date of
+     * files alone, i.e. if it is {@link #NAME_CRITERION}, {@link #SIZE_CRITERION}, {@link #DATE_CRITERION} or
+     * {@link #EXTENSION_CRITERION}. In that case, files can be compared without <code>AbstractFile</code> instances
+     * using {@link #compare(FilenameCollationKey, boolean, long, long, FilenameCollationKey, boolean, long, long)}.
+     *
+     * @return true if files can be compared by their name, type, size and date
+     */
+    public boolean isAttributeCriterion() {
+        return criterion==NAME_CRITERION || criterion==SIZE_CRITERION || criterion==DATE_CRITERION || criterion==EXTENSION_CRITERION;
+    }
+
+    /**
+     * Compares two files given the collation key of their name, their type, size and date, in the same order as
+     * {@link #compare(AbstractFile, AbstractFile)} would. This method can only be used if
+     * {@link #isAttributeCriterion()} returns <code>true</code>.
+     *
+     * <p>Collation keys are meant to be created once for all the files to sort, this method is thus much faster than
+     * {@link #compare(AbstractFile, AbstractFile)} when files are compared repeatedly.</p>
+     *
+     * @param name1 collation key of the first file's name
+     * @param isDirectory1 true if the first file is a directory
+     * @param size1 size of the first file, as returned by {@link AbstractFile#getSize()}
+     * @param date1 date of the first file, as returned by {@link AbstractFile#getDate()}
+     * @param name2 collation key of the second file's name
+     * @param isDirectory2 true if the second file is a directory
+     * @param size2 size of the second file, as returned by {@link AbstractFile#getSize()}
+     * @param date2 date of the second file, as returned by {@link AbstractFile#getDate()}
+     * @return a negative integer, zero, or a positive integer as the first file is less than, equal to, or greater
+     * than the second
+     * @throws IllegalStateException if this comparator's criterion cannot be evaluated from the given attributes
+     */
+    public int compare(FilenameCollationKey name1, boolean isDirectory1, long size1, long date1, FilenameCollationKey name2, boolean isDirectory2, long size2, long date2) {
+        long diff;
+
+        if(directoriesFirst && isDirectory1!=isDirectory2)
+            return isDirectory1?-1:1;
+
+        if (criterion == SIZE_CRITERION)
+            diff = compareSizes(isDirectory1?0:size1, isDirectory2?0:size2);
+        else if (criterion == DATE_CRITERION)
+            diff = date1-date2;
+        else if (criterion == EXTENSION_CRITERION)
+            diff = compareKeys(name1.getExtensionKey(), name2.getExtensionKey());
+        else if (criterion == NAME_CRITERION) {
+            diff = name1.compareTo(name2);
+
+            // Case-sensitive name comparison
+            if(diff==0)
+                diff = compareStrings(name1.toString(), name2.toString(), false, false);
         }
+        else
+            throw new IllegalStateException("Criterion cannot be evaluated from file attributes: "+criterion);
 
         if(criterion!=NAME_CRITERION && diff==0)	// If both files have the same criterion's value, compare names
-            diff = compareStrings(f1.getName(), f2.getName(), true, false);
+            diff = name1.compareTo(name2);
+
+        return toResult(diff);
+    }
+
+    /**
+     * Compares collation keys that can be <code>null</code>, a <code>null</code> key preceding any other key.
+     */
+    private int compareKeys(FilenameCollationKey key1, FilenameCollationKey key2) {
+        if(key1==null)
+            return key2==null?0:-1;
+        if(key2==null)
+            return 1;
+
+        return key1.compareTo(key2);
+    }
+
+    /**
+     * Returns file1 size - file2 size, file size of -1 (unavailable) is considered as enormous (max long value).
+     */
+    private long compareSizes(long fileSize1, long fileSize2) {
+        return (fileSize1==-1?Long.MAX_VALUE:fileSize1)-(fileSize2==-1?Long.MAX_VALUE:fileSize2);
+    }
+
+    /**
+     * Compares filenames, case-insensitively first.
+     */
+    private long compareNames(String name1, String name2) {
+        long diff = compareStrings(name1, name2, true, false);
 
+        if(diff==0) {
+            // This should never happen unless the current filesystem allows a directory to have
+            // several files with different case variations of the same name.
+            // AFAIK, no OS/filesystem allows this, but just to be safe.
+
+            // Case-sensitive name comparison
+            diff = compareStrings(name1, name2, false, false);
+        }
+
+        return diff;
+    }
+
+    /**
+     * Casts the given difference to an int and applies the sort order.
+     */
+    private int toResult(long diff) {
         // Cast long value to int, without overflowing the int if the long value exceeds the min or max int value
         int intValue;
         
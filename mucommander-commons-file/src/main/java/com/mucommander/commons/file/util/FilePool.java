@@ -20,7 +20,15 @@
 package com.mucommander.commons.file.util;
 
 import com.mucommander.commons.file.AbstractFile;
-import org.apache.commons.collections.map.ReferenceMap;
+import com.mucommander.commons.file.archive.AbstractArchiveFile;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * This class allows {@link AbstractFile} instances to be pooled, so that existing file instances can be reused,
@@ -31,20 +39,56 @@ import org.apache.commons.collections.map.ReferenceMap;
  * <p>Files are stored as {@link java.lang.ref.WeakReference weak references} so they can be garbage collected
  * when they are no longer hard-referenced.</p>
  *
- * <p>This class uses the {@link ReferenceMap} class part of the <code>Apache Commons Collection</code> library.
- * All accesses to the underlying map is synchronized, making this class thread-safe.</p>
+ * <p>The number of files a pool holds is bounded: when the bound is exceeded, files are evicted using the CLOCK
+ * policy, i.e. files that have been retrieved since the last eviction sweep are spared once. An evicted file that is
+ * still referenced elsewhere is no longer guaranteed to be the only instance of the file. Archive files are never
+ * evicted, only removed once garbage collected: their contents are cached by the instance, which must remain the only
+ * one. The pool may thus exceed its bound if more archive files than that are referenced.</p>
+ *
+ * <p>This class is thread-safe and does not lock on lookups: files are held by a <code>ConcurrentHashMap</code>.
+ * The number of hits, misses and evictions are counted for diagnostic purposes.</p>
  *
  * @author Maxence Bernard
  */
 public class FilePool {
 
-    /** The actual hash map */
-    protected final ReferenceMap hashMap = new ReferenceMap(ReferenceMap.HARD, ReferenceMap.WEAK);
+    /** Default maximum number of files a pool holds */
+    public final static int DEFAULT_MAX_SIZE = 10000;
+
+    /** Maps keys onto weak references to the pooled files */
+    private final ConcurrentHashMap<Object, FileReference> map = new ConcurrentHashMap<Object, FileReference>();
+
+    /** Receives the references of the files that have been garbage collected */
+    private final ReferenceQueue<AbstractFile> referenceQueue = new ReferenceQueue<AbstractFile>();
+
+    /** Maximum number of files this pool holds */
+    private final int maxSize;
+
+    /** Allows only one thread at a time to evict files */
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
 
     /**
-     * Creates a new file pool.
+     * Creates a new file pool that holds up to {@link #DEFAULT_MAX_SIZE} files.
      */
     public FilePool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new file pool that holds up to the specified number of files.
+     *
+     * @param maxSize maximum number of files the pool holds
+     * @throws IllegalArgumentException if maxSize is not strictly positive
+     */
+    public FilePool(int maxSize) {
+        if(maxSize<=0)
+            throw new IllegalArgumentException("maxSize must be strictly positive: "+maxSize);
+
+        this.maxSize = maxSize;
     }
 
     /**
@@ -56,8 +100,15 @@ public class FilePool {
      * @return returns the file instance previously mapped onto the given key, <code>null</code> if no
      * such mapping existed
      */
-    public synchronized AbstractFile put(Object key, AbstractFile value) {
-        return (AbstractFile)hashMap.put(key, value);
+    public AbstractFile put(Object key, AbstractFile value) {
+        expungeCollectedFiles();
+
+        FileReference previous = map.put(key, new FileReference(key, value, referenceQueue));
+
+        if(map.size()>maxSize)
+            evictFiles();
+
+        return previous==null ? null : previous.get();
     }
 
     /**
@@ -68,8 +119,21 @@ public class FilePool {
      * @return the {@link AbstractFile} instance mapped onto the given key if there is one,
      * <code>null</code> otherwise
      */
-    public synchronized AbstractFile get(Object key) {
-        return (AbstractFile)hashMap.get(key);
+    public AbstractFile get(Object key) {
+        FileReference reference = map.get(key);
+        AbstractFile file = reference==null ? null : reference.get();
+
+        if(file==null) {
+            missCount.increment();
+            return null;
+        }
+
+        // Avoid writing to the shared reference when the flag is already set
+        if(!reference.accessed)
+            reference.accessed = true;
+        hitCount.increment();
+
+        return file;
     }
 
     /**
@@ -80,8 +144,9 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given key is used as
      * the mapping's key.
      */
-    public synchronized boolean containsKey(Object key) {
-        return hashMap.containsKey(key);
+    public boolean containsKey(Object key) {
+        FileReference reference = map.get(key);
+        return reference!=null && reference.get()!=null;
     }
 
     /**
@@ -92,16 +157,23 @@ public class FilePool {
      * @return <code>true</code> if this pool currently contains a key/file mapping where the given file is used as
      * the mapping's key.
      */
-    public synchronized boolean containsValue(AbstractFile file) {
-        return hashMap.containsValue(file);
+    public boolean containsValue(AbstractFile file) {
+        for(FileReference reference : map.values()) {
+            AbstractFile pooledFile = reference.get();
+            if(pooledFile!=null && pooledFile.equals(file))
+                return true;
+        }
+
+        return false;
     }
 
     /**
      * Removes all existing key/file mapping from this pool, leaving the pool in the same state as it was right after
-     * its creation.
+     * its creation. The hit, miss and eviction counters are left untouched.
      */
-    public synchronized void clear() {
-        hashMap.clear();
+    public void clear() {
+        map.clear();
+        expungeCollectedFiles();
     }
 
     /**
@@ -109,7 +181,119 @@ public class FilePool {
      *
      * @return the number of key/file mapping this pool currently contains.
      */
-    public synchronized int size() {
-        return hashMap.size();
+    public int size() {
+        expungeCollectedFiles();
+
+        return map.size();
+    }
+
+    /**
+     * Returns the maximum number of files this pool holds.
+     *
+     * @return the maximum number of files this pool holds
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get(Object)} has returned a pooled file.
+     *
+     * @return the number of times {@link #get(Object)} has returned a pooled file
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of times {@link #get(Object)} has returned <code>null</code>.
+     *
+     * @return the number of times {@link #get(Object)} has returned <code>null</code>
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of files that have been evicted because the pool exceeded its maximum size. Files that have
+     * been garbage collected are not counted.
+     *
+     * @return the number of files that have been evicted because the pool exceeded its maximum size
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Removes the mappings of the files that have been garbage collected.
+     */
+    private void expungeCollectedFiles() {
+        Reference<? extends AbstractFile> reference;
+        while((reference=referenceQueue.poll())!=null) {
+            FileReference fileReference = (FileReference)reference;
+            // Leave the mapping alone if it has been replaced in the meantime
+            map.remove(fileReference.key, fileReference);
+        }
+    }
+
+    /**
+     * Evicts files until the pool holds no more than 90% of its maximum size, so that evictions don't occur on every
+     * subsequent put. Returns immediately if another thread is already evicting files.
+     */
+    private void evictFiles() {
+        if(!evicting.compareAndSet(false, true))
+            return;
+
+        try {
+            int targetSize = maxSize - maxSize/10;
+            // The first sweep may only clear access flags, the second one is guaranteed to evict
+            for(int sweep=0; sweep<2 && map.size()>targetSize; sweep++) {
+                for(Map.Entry<Object, FileReference> entry : map.entrySet()) {
+                    if(map.size()<=targetSize)
+                        break;
+
+                    FileReference reference = entry.getValue();
+                    boolean collected = reference.get()==null;
+                    if(!collected && reference.archive)
+                        continue;
+
+                    if(!collected && reference.accessed) {
+                        reference.accessed = false;
+                        continue;
+                    }
+
+                    if(map.remove(entry.getKey(), reference) && !collected)
+                        evictionCount.increment();
+                }
+            }
+        }
+        finally {
+            evicting.set(false);
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Weak reference to a pooled file, which remembers its key so that its mapping can be removed once the file has
+     * been garbage collected.
+     */
+    private static class FileReference extends WeakReference<AbstractFile> {
+        private final Object key;
+
+        /** True if the file is an archive file, which is never evicted */
+        private final boolean archive;
+
+        /** True if the file has been retrieved since the last eviction sweep */
+        private volatile boolean accessed;
+
+        private FileReference(Object key, AbstractFile file, ReferenceQueue<AbstractFile> queue) {
+            super(file, queue);
+            this.key = key;
+            this.archive = file instanceof AbstractArchiveFile;
+        }
     }
 }
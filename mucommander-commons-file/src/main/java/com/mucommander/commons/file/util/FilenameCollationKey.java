@@ -0,0 +1,161 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * FilenameCollationKey holds the information {@link FileComparator} needs to compare a filename to others, computed
+ * once so that filenames can be compared repeatedly without matching patterns, allocating strings or converting case.
+ *
+ * <p>Characters are encoded in a byte array, three bytes per character, such that comparing arrays byte by byte
+ * yields the case-insensitive order in which <code>FileComparator</code> compares filenames. The position of the first
+ * number contained in the filename is also recorded, as filenames that share the same prefix are ordered by the value
+ * of that number first.</p>
+ *
+ * @see FileComparator#compare(FilenameCollationKey, boolean, long, long, FilenameCollationKey, boolean, long, long)
+ */
+public class FilenameCollationKey implements Comparable<FilenameCollationKey> {
+
+    /** The filename */
+    private final String filename;
+
+    /** Case-insensitive character values, three bytes per character */
+    private final byte[] key;
+
+    /** Index of the first digit of the filename's first number, -1 if the filename doesn't contain any number */
+    private final int numberStart;
+
+    /** Index of the first significant (non zero) digit of the filename's first number */
+    private final int numberValueStart;
+
+    /** Index of the character that follows the filename's first number */
+    private final int numberEnd;
+
+    /** Collation key of the filename's extension, created when first requested */
+    private FilenameCollationKey extensionKey;
+
+    /** True once the extension key has been created */
+    private boolean extensionKeySet;
+
+    /** Case-insensitive character values of ASCII characters */
+    private final static int ASCII_VALUES[] = new int[128];
+
+    static {
+        for(int c=0; c<ASCII_VALUES.length; c++)
+            ASCII_VALUES[c] = getCharacterValue(c);
+    }
+
+    /**
+     * Creates the collation key of the given filename.
+     *
+     * @param filename a filename
+     */
+    public FilenameCollationKey(String filename) {
+        this.filename = filename;
+
+        int len = filename.length();
+        key = new byte[3*len];
+        for(int i=0, k=0; i<len; i++) {
+            char c = filename.charAt(i);
+            int value = c<ASCII_VALUES.length?ASCII_VALUES[c]:getCharacterValue(c);
+
+            key[k++] = (byte)(value>>16);
+            key[k++] = (byte)(value>>8);
+            key[k++] = (byte)value;
+        }
+
+        numberStart = FileComparator.findNumber(filename);
+        if(numberStart==-1) {
+            numberValueStart = -1;
+            numberEnd = -1;
+        }
+        else {
+            numberEnd = FileComparator.findNumberEnd(filename, numberStart);
+            numberValueStart = FileComparator.skipLeadingZeros(filename, numberStart, numberEnd);
+        }
+    }
+
+    /**
+     * Returns the value of the given character in the case-insensitive order, see
+     * {@link FileComparator#getCharacterValue(int)}.
+     */
+    private static int getCharacterValue(int c) {
+        return FileComparator.getCharacterValue(Character.toLowerCase(Character.toUpperCase(c)));
+    }
+
+    /**
+     * Returns the collation key of this filename's extension, <code>null</code> if the filename has no extension.
+     *
+     * @return the collation key of this filename's extension, null if the filename has no extension
+     */
+    public synchronized FilenameCollationKey getExtensionKey() {
+        if(!extensionKeySet) {
+            String extension = AbstractFile.getExtension(filename);
+            extensionKey = extension==null?null:new FilenameCollationKey(extension);
+            extensionKeySet = true;
+        }
+
+        return extensionKey;
+    }
+
+    /**
+     * Compares this filename to the given one, in the order {@link FileComparator} compares filenames when ignoring
+     * case.
+     *
+     * @param other the key of the filename to compare this one to
+     * @return a negative integer, zero, or a positive integer as this filename is less than, equal to, or greater
+     * than the other one
+     */
+    public int compareTo(FilenameCollationKey other) {
+        // Filenames that contain a number and have the same prefix are ordered by the number's value first
+        if(numberStart!=-1 && numberStart==other.numberStart
+           && (numberStart==0 || filename.regionMatches(0, other.filename, 0, numberStart))) {
+            int len1 = numberEnd-numberValueStart;
+            int len2 = other.numberEnd-other.numberValueStart;
+
+            if(len1!=len2)
+                return len1-len2;
+
+            for(int i=0; i<len1; i++) {
+                int c1 = filename.charAt(numberValueStart+i);
+                int c2 = other.filename.charAt(other.numberValueStart+i);
+                if(c1!=c2)
+                    return c1-c2;
+            }
+        }
+
+        byte[] key2 = other.key;
+        int len = Math.min(key.length, key2.length);
+        for(int i=0; i<len; i++) {
+            if(key[i]!=key2[i])
+                return (key[i]&0xFF)-(key2[i]&0xFF);
+        }
+
+        return key.length-key2.length;
+    }
+
+    /**
+     * Returns the filename this key was created for.
+     */
+    @Override
+    public String toString() {
+        return filename;
+    }
+}
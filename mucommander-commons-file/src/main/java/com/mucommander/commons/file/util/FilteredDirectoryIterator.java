@@ -0,0 +1,80 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
+import com.mucommander.commons.file.filter.FileFilter;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link DirectoryIterator} that only returns the files of another <code>DirectoryIterator</code> that are
+ * {@link FileFilter#match(AbstractFile) matched} by a {@link FileFilter}.
+ */
+public class FilteredDirectoryIterator implements DirectoryIterator {
+
+    /** The iterator to filter */
+    private DirectoryIterator iterator;
+    /** The filter that files must match */
+    private FileFilter filter;
+    /** The next matching file, null if it hasn't been looked up yet */
+    private AbstractFile nextFile;
+
+    /**
+     * Creates a new <code>FilteredDirectoryIterator</code> returning the files of the given iterator that match the
+     * specified filter.
+     *
+     * @param iterator the iterator to filter
+     * @param filter the filter that files must match
+     */
+    public FilteredDirectoryIterator(DirectoryIterator iterator, FileFilter filter) {
+        this.iterator = iterator;
+        this.filter = filter;
+    }
+
+
+    //////////////////////////////////////
+    // DirectoryIterator implementation //
+    //////////////////////////////////////
+
+    public boolean hasNext() throws IOException {
+        while(nextFile==null && iterator.hasNext()) {
+            AbstractFile file = iterator.next();
+            if(filter.match(file))
+                nextFile = file;
+        }
+
+        return nextFile!=null;
+    }
+
+    public AbstractFile next() throws IOException {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        AbstractFile file = nextFile;
+        nextFile = null;
+        return file;
+    }
+
+    public void close() throws IOException {
+        iterator.close();
+    }
+}
@@ -0,0 +1,342 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.protocol.FileProtocols;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class calculates the number of files and folders contained in a file tree, and their combined size.
+ *
+ * <p>Folders are traversed in parallel by a shared {@link ForkJoinPool}: idle threads steal the subfolders that are
+ * waiting to be traversed by busy ones. Local folders are listed with as much concurrency as the pool allows, whereas
+ * the number of folders that are listed concurrently on a same remote server is bounded (see
+ * {@link #REMOTE_CONCURRENCY}) so as not to flood it with requests.</p>
+ *
+ * <p>The contents of the folders that were traversed are cached, keyed by the folder's location and date. When a
+ * tree is traversed again, folders whose date has not changed since are not listed again: only their date needs to
+ * be retrieved. Note that a folder's date reflects the addition, removal or renaming of its direct children, but not
+ * changes made to the contents of existing files: a file that has grown since it was last seen will be counted with
+ * its former size. At most {@link #MAX_CACHED_FOLDERS} folders are cached, the least recently used ones are
+ * evicted first.</p>
+ *
+ * <p>Results are accumulated in a {@link Totals} instance which can be read while the calculation is in progress,
+ * and which allows the calculation to be cancelled. This class is thread-safe.</p>
+ *
+ * @see ListingCache
+ */
+public class FolderSizeCalculator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderSizeCalculator.class);
+
+    /** Maximum number of folders that are listed concurrently on a same remote server */
+    public final static int REMOTE_CONCURRENCY = 4;
+
+    /** Maximum number of folders whose contents are cached */
+    public final static int MAX_CACHED_FOLDERS = 100000;
+
+    /** Number of threads of the pool. Traversing folders is I/O bound, more threads than processors help keeping
+     * slow (network) filesystems busy. */
+    private final static int PARALLELISM = Math.max(8, 2*Runtime.getRuntime().availableProcessors());
+
+    /** Pool that traverses the folders */
+    private final static ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+    /** Limits the number of concurrent listings per remote realm */
+    private final static ConcurrentMap<String, Semaphore> REALM_PERMITS = new ConcurrentHashMap<String, Semaphore>();
+
+    /** Cached folder contents, in access order */
+    private final static Map<String, FolderContents> CACHE = new LinkedHashMap<String, FolderContents>(16, 0.75f, true);
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private FolderSizeCalculator() {
+    }
+
+    /**
+     * Adds the given file to the specified totals: if the file is a folder (and not a symlink), it is counted as a
+     * folder and its contents are added recursively, otherwise it is counted as a regular file and its size is added
+     * to the total size.
+     *
+     * <p>This method blocks until the whole tree has been traversed, or until the calculation has been
+     * {@link Totals#cancel() cancelled}. Folders that cannot be listed are counted but their contents are ignored.</p>
+     *
+     * @param file the file or folder to add to the totals
+     * @param totals the totals to add to
+     */
+    public static void calculate(AbstractFile file, Totals totals) {
+        if(totals.isCancelled())
+            return;
+
+        if(!isFolder(file)) {
+            totals.add(1, 0, file.getSize());
+            return;
+        }
+
+        totals.add(0, 1, 0);
+        POOL.invoke(new FolderTask(file, totals));
+    }
+
+    /**
+     * Empties the cache of folder contents.
+     */
+    public static void clearCache() {
+        synchronized(CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is a folder that should be traversed.
+     */
+    private static boolean isFolder(AbstractFile file) {
+        return file.isDirectory() && !file.isSymlink();
+    }
+
+    /**
+     * Returns the contents of the given folder, from the cache if the folder hasn't changed since it was last listed.
+     * Returns <code>null</code> if the folder could not be listed.
+     */
+    private static FolderContents getContents(AbstractFile folder) {
+        FileURL url = folder.getURL();
+        String key = ListingCache.getKey(url);
+
+        // Retrieve the date before listing the folder, so that a change that occurs in the meantime is noticed the
+        // next time the folder is traversed
+        long date = folder.getDate();
+        if(date>0) {
+            synchronized(CACHE) {
+                FolderContents contents = CACHE.get(key);
+                if(contents!=null && contents.date==date)
+                    return contents;
+            }
+        }
+
+        // Files are counted as the folder is being listed: only subfolders are retained
+        int nbFiles = 0;
+        long nbBytes = 0;
+        List<AbstractFile> subfolders = new ArrayList<AbstractFile>();
+        Semaphore permits = getPermits(url);
+        if(permits!=null)
+            permits.acquireUninterruptibly();
+        try {
+            DirectoryIterator children = folder.iterateChildren();
+            try {
+                AbstractFile child;
+                while(children.hasNext()) {
+                    child = children.next();
+                    if(isFolder(child)) {
+                        subfolders.add(child);
+                    }
+                    else {
+                        nbFiles++;
+                        long size = child.getSize();
+                        if(size>0)      // Can be equal to -1 if size not available
+                            nbBytes += size;
+                    }
+                }
+            }
+            finally {
+                children.close();
+            }
+        }
+        catch(IOException e) {
+            LOGGER.debug("Could not list "+folder, e);
+            return null;
+        }
+        finally {
+            if(permits!=null)
+                permits.release();
+        }
+
+        FolderContents contents = new FolderContents(date, nbFiles, nbBytes, subfolders.toArray(new AbstractFile[subfolders.size()]));
+        if(date>0) {
+            synchronized(CACHE) {
+                CACHE.put(key, contents);
+
+                if(CACHE.size()>MAX_CACHED_FOLDERS) {
+                    Iterator<FolderContents> iterator = CACHE.values().iterator();
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+
+        return contents;
+    }
+
+    /**
+     * Returns the semaphore that bounds the number of concurrent listings on the given location's realm,
+     * <code>null</code> for local files which are not bounded.
+     */
+    private static Semaphore getPermits(FileURL url) {
+        if(FileProtocols.FILE.equals(url.getScheme()))
+            return null;
+
+        String realm = url.getRealm().toString(false);
+        Semaphore permits = REALM_PERMITS.get(realm);
+        if(permits==null) {
+            Semaphore newPermits = new Semaphore(REMOTE_CONCURRENCY);
+            permits = REALM_PERMITS.putIfAbsent(realm, newPermits);
+            if(permits==null)
+                permits = newPermits;
+        }
+
+        return permits;
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Accumulates the number of files and folders, and the combined size of the files, seen by a calculation.
+     * Totals can be read at any time, including while the calculation is in progress.
+     */
+    public static class Totals {
+
+        private final LongAdder nbFiles = new LongAdder();
+
+        private final LongAdder nbFolders = new LongAdder();
+
+        private final LongAdder totalBytes = new LongAdder();
+
+        private volatile boolean cancelled;
+
+        /**
+         * Returns the number of regular files (not folders) counted so far.
+         *
+         * @return the number of regular files counted so far
+         */
+        public int getNbFiles() {
+            return nbFiles.intValue();
+        }
+
+        /**
+         * Returns the number of folders counted so far.
+         *
+         * @return the number of folders counted so far
+         */
+        public int getNbFolders() {
+            return nbFolders.intValue();
+        }
+
+        /**
+         * Returns the combined size of the files counted so far, in bytes.
+         *
+         * @return the combined size of the files counted so far
+         */
+        public long getTotalBytes() {
+            return totalBytes.sum();
+        }
+
+        /**
+         * Stops the calculations that add to these totals as soon as possible.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Returns <code>true</code> if {@link #cancel()} has been called.
+         *
+         * @return true if the calculation has been cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void add(int nbFiles, int nbFolders, long nbBytes) {
+            this.nbFiles.add(nbFiles);
+            this.nbFolders.add(nbFolders);
+            if(nbBytes>0)
+                this.totalBytes.add(nbBytes);
+        }
+    }
+
+    /**
+     * The direct contents of a folder, as they were at a given folder date.
+     */
+    private static class FolderContents {
+        private final long date;
+        private final int nbFiles;
+        private final long nbBytes;
+        private final AbstractFile subfolders[];
+
+        private FolderContents(long date, int nbFiles, long nbBytes, AbstractFile subfolders[]) {
+            this.date = date;
+            this.nbFiles = nbFiles;
+            this.nbBytes = nbBytes;
+            this.subfolders = subfolders;
+        }
+    }
+
+    /**
+     * Adds the contents of a folder to the totals, and forks a task for each of its subfolders.
+     */
+    private static class FolderTask extends RecursiveAction {
+        private final AbstractFile folder;
+        private final Totals totals;
+
+        private FolderTask(AbstractFile folder, Totals totals) {
+            this.folder = folder;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            if(totals.isCancelled())
+                return;
+
+            FolderContents contents = getContents(folder);
+            if(contents==null)
+                return;
+
+            totals.add(contents.nbFiles, contents.subfolders.length, contents.nbBytes);
+
+            int nbSubfolders = contents.subfolders.length;
+            if(nbSubfolders==0 || totals.isCancelled())
+                return;
+
+            List<FolderTask> subtasks = new ArrayList<FolderTask>(nbSubfolders);
+            for(AbstractFile subfolder : contents.subfolders)
+                subtasks.add(new FolderTask(subfolder, totals));
+
+            invokeAll(subtasks);
+        }
+    }
+}
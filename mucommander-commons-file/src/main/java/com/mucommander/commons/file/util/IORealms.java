@@ -0,0 +1,60 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.protocol.FileProtocols;
+import com.mucommander.commons.file.protocol.local.LocalFile;
+
+/**
+ * This class returns the realms that the tasks accessing files are submitted to
+ * {@link com.mucommander.commons.util.IOScheduler} with, so that the number of tasks that run at once is capped per
+ * server or volume.
+ *
+ * <p>The realm of a remote file is its server, see {@link FileURL#getRealm()}. All local files have the same
+ * <code>FileURL</code> realm: the realm of a local file is the volume it is located on instead, so that volumes that
+ * do not respond, typically hung network mounts, only hold up the tasks that access them.</p>
+ */
+public final class IORealms {
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private IORealms() {
+    }
+
+    /**
+     * Returns the realm that the tasks accessing the file with the given URL belong to.
+     *
+     * @param url the URL of the file the task accesses
+     * @return the realm that the tasks accessing the file belong to
+     */
+    public static String getRealm(FileURL url) {
+        String realm = url.getRealm().toString(false);
+        if(!FileProtocols.FILE.equals(url.getScheme()) || !FileURL.LOCALHOST.equals(url.getHost()))
+            return realm;
+
+        String path = url.getPath();
+        // Remove the leading '/' of Windows-like paths
+        if(LocalFile.USES_ROOT_DRIVES && path.startsWith("/"))
+            path = path.substring(1);
+
+        return realm+LocalFile.getMountPoint(path);
+    }
+}
@@ -0,0 +1,338 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.Credentials;
+import com.mucommander.commons.file.FileURL;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches the contents of remote folders, so that folders that are listed repeatedly, e.g. when navigating
+ * back and forth, and files whose attributes are looked up in their parent folder do not require a round trip to the
+ * server every time. It is meant to be used by file protocols which <code>ls()</code> requires network I/O.
+ *
+ * <p>Listings are keyed by the {@link FileURL#getRealm() realm}, login and path of the folder they were listed from.
+ * A listing is fresh for a certain amount of time (the 'time to live', see {@link #setTtl(long)}) after which
+ * {@link #get(FileURL)} no longer returns it and the folder has to be listed again. Expired listings are however kept
+ * and can still be retrieved with {@link #getListing(FileURL)} by readers that favor responsiveness over accuracy and
+ * are able to refresh the folder afterwards, e.g. to present a folder instantly.</p>
+ *
+ * <p>File protocols are expected to call {@link #invalidate(FileURL)} whenever they modify a file (creation, deletion,
+ * renaming, attribute change, ...), so that the cache never returns a listing that is known to be outdated. Changes
+ * made by other clients are not detected before listings expire.</p>
+ *
+ * <p>The total number of files held by the cache is bounded (see {@link #setMaxFiles(int)}): when the bound is
+ * exceeded, the least recently used listings are evicted. This class is thread-safe.</p>
+ *
+ * @see FilePool
+ */
+public class ListingCache {
+
+    /** Default 'time to live' of listings, in milliseconds */
+    public final static long DEFAULT_TTL = 30000;
+
+    /** Default maximum number of files held by the cache */
+    public final static int DEFAULT_MAX_FILES = 100000;
+
+    /** Cached listings, in access order */
+    private final static Map<String, Listing> LISTINGS = new LinkedHashMap<String, Listing>(16, 0.75f, true);
+
+    /** Total number of files held by the cached listings */
+    private static int nbCachedFiles;
+
+    /** Number of invalidations that have been performed so far */
+    private static long invalidationCount;
+
+    /** 'Time to live' of listings, in milliseconds */
+    private static long ttl = DEFAULT_TTL;
+
+    /** Maximum number of files held by the cache */
+    private static int maxFiles = DEFAULT_MAX_FILES;
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private ListingCache() {
+    }
+
+    /**
+     * Returns the amount of time during which a listing is considered fresh, in milliseconds.
+     *
+     * @return the amount of time during which a listing is considered fresh, in milliseconds
+     */
+    public static synchronized long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Sets the amount of time during which a listing is considered fresh and returned by {@link #get(FileURL)}.
+     * The higher this value, the lower the number of network requests but also the longer it takes before changes
+     * made by other clients are noticed. A value of <code>0</code> disables fresh reads: folders are always listed
+     * again, the cache is then only used for {@link #getListing(FileURL) stale reads}.
+     *
+     * @param ttl the amount of time during which a listing is considered fresh, in milliseconds
+     */
+    public static synchronized void setTtl(long ttl) {
+        ListingCache.ttl = ttl;
+    }
+
+    /**
+     * Returns the maximum number of files held by the cache.
+     *
+     * @return the maximum number of files held by the cache
+     */
+    public static synchronized int getMaxFiles() {
+        return maxFiles;
+    }
+
+    /**
+     * Sets the maximum number of files held by the cache, least recently used listings being evicted if the current
+     * number of files exceeds the new bound. A value of <code>0</code> disables the cache.
+     *
+     * @param maxFiles the maximum number of files held by the cache
+     */
+    public static synchronized void setMaxFiles(int maxFiles) {
+        ListingCache.maxFiles = maxFiles;
+        evict();
+    }
+
+    /**
+     * Returns the number of invalidations that have been performed so far. This value must be retrieved before a
+     * folder is listed and passed to {@link #put(FileURL, AbstractFile[], long)}, so that a listing that was
+     * invalidated while it was being retrieved is not cached.
+     *
+     * @return the number of invalidations that have been performed so far
+     */
+    public static synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Caches the contents of the given folder.
+     *
+     * @param folderURL the URL of the folder that was listed
+     * @param children the folder's contents
+     * @param invalidationCount the value returned by {@link #getInvalidationCount()} before the folder was listed
+     */
+    public static synchronized void put(FileURL folderURL, AbstractFile children[], long invalidationCount) {
+        // Don't cache listings that may have been invalidated while they were being retrieved
+        if(invalidationCount!=ListingCache.invalidationCount || children.length>maxFiles)
+            return;
+
+        Listing oldListing = LISTINGS.put(getKey(folderURL), new Listing(children.clone(), System.currentTimeMillis()));
+        if(oldListing!=null)
+            nbCachedFiles -= oldListing.files.length;
+        nbCachedFiles += children.length;
+
+        evict();
+    }
+
+    /**
+     * Returns the cached contents of the given folder if they are fresh, <code>null</code> if the folder's contents
+     * are not cached or have expired.
+     *
+     * @param folderURL the URL of a folder
+     * @return the cached contents of the given folder, null if they are not cached or have expired
+     */
+    public static synchronized AbstractFile[] get(FileURL folderURL) {
+        Listing listing = LISTINGS.get(getKey(folderURL));
+        if(listing==null || listing.isExpired())
+            return null;
+
+        return listing.getFiles();
+    }
+
+    /**
+     * Returns the cached contents of the given folder, even if they have expired, <code>null</code> if the folder's
+     * contents are not cached. {@link Listing#isExpired()} tells whether the returned listing has expired, in which
+     * case the folder should be listed again as soon as possible.
+     *
+     * @param folderURL the URL of a folder
+     * @return the cached contents of the given folder, null if they are not cached
+     */
+    public static synchronized Listing getListing(FileURL folderURL) {
+        return LISTINGS.get(getKey(folderURL));
+    }
+
+    /**
+     * Returns the file with the given URL if it is part of a fresh listing of its parent folder, <code>null</code>
+     * otherwise. This allows the attributes of a file to be retrieved without querying the server.
+     *
+     * @param fileURL the URL of a file
+     * @return the file with the given URL if it is part of a fresh listing of its parent folder, null otherwise
+     */
+    public static synchronized AbstractFile getFile(FileURL fileURL) {
+        FileURL parentURL = fileURL.getParent();
+        String filename = fileURL.getFilename();
+        if(parentURL==null || filename==null)
+            return null;
+
+        Listing listing = LISTINGS.get(getKey(parentURL));
+        if(listing==null || listing.isExpired())
+            return null;
+
+        return listing.filesByName.get(filename);
+    }
+
+    /**
+     * Invalidates the cached information about the given file, which has been created, modified or deleted: the listing
+     * of its parent folder is removed from the cache, as well as the listings of the file itself and its
+     * subfolders if it is a folder.
+     *
+     * @param fileURL the URL of a file that has been created, modified or deleted
+     */
+    public static synchronized void invalidate(FileURL fileURL) {
+        invalidationCount++;
+
+        if(LISTINGS.isEmpty())
+            return;
+
+        FileURL parentURL = fileURL.getParent();
+        if(parentURL!=null)
+            remove(getKey(parentURL));
+
+        String key = getKey(fileURL);
+        remove(key);
+
+        String separator = fileURL.getPathSeparator();
+        String prefix = key.endsWith(separator)?key:key+separator;
+        Iterator<Map.Entry<String, Listing>> iterator = LISTINGS.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<String, Listing> entry = iterator.next();
+            if(entry.getKey().startsWith(prefix)) {
+                nbCachedFiles -= entry.getValue().files.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the listing of the given folder from the cache, so that the folder is listed again the next time it is
+     * requested. This method can be used when the user explicitly asks for a folder to be refreshed.
+     *
+     * @param folderURL the URL of a folder
+     */
+    public static synchronized void removeListing(FileURL folderURL) {
+        invalidationCount++;
+        remove(getKey(folderURL));
+    }
+
+    /**
+     * Removes all listings from the cache.
+     */
+    public static synchronized void clear() {
+        invalidationCount++;
+        LISTINGS.clear();
+        nbCachedFiles = 0;
+    }
+
+    /**
+     * Removes the listing with the given key, if there is one.
+     */
+    private static void remove(String key) {
+        Listing listing = LISTINGS.remove(key);
+        if(listing!=null)
+            nbCachedFiles -= listing.files.length;
+    }
+
+    /**
+     * Evicts the least recently used listings until the number of cached files no longer exceeds the maximum.
+     */
+    private static void evict() {
+        Iterator<Listing> iterator = LISTINGS.values().iterator();
+        while(nbCachedFiles>maxFiles && iterator.hasNext()) {
+            nbCachedFiles -= iterator.next().files.length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns the key of the given location: its realm, login and path, without any trailing separator.
+     */
+    static String getKey(FileURL url) {
+        Credentials credentials = url.getCredentials();
+        String path = PathUtils.removeTrailingSeparator(url.getPath(), url.getPathSeparator());
+
+        return (credentials==null?"":credentials.getLogin()+'@')+url.getRealm().toString(false)+'|'+path;
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * The contents of a folder, as it was at a given time.
+     */
+    public static class Listing {
+
+        /** The folder's contents */
+        private final AbstractFile files[];
+
+        /** The folder's contents, keyed by name */
+        private final Map<String, AbstractFile> filesByName;
+
+        /** Date at which the folder was listed */
+        private final long date;
+
+        private Listing(AbstractFile files[], long date) {
+            this.files = files;
+            this.date = date;
+
+            filesByName = new HashMap<String, AbstractFile>(files.length*4/3+1);
+            for(AbstractFile file : files) {
+                // Keep the first of files with the same name
+                if(!filesByName.containsKey(file.getName()))
+                    filesByName.put(file.getName(), file);
+            }
+        }
+
+        /**
+         * Returns the folder's contents.
+         *
+         * @return the folder's contents
+         */
+        public AbstractFile[] getFiles() {
+            return files.clone();
+        }
+
+        /**
+         * Returns the date at which the folder was listed.
+         *
+         * @return the date at which the folder was listed
+         */
+        public long getDate() {
+            return date;
+        }
+
+        /**
+         * Returns <code>true</code> if this listing is older than the cache's 'time to live'.
+         *
+         * @return true if this listing is older than the cache's 'time to live'
+         */
+        public boolean isExpired() {
+            return System.currentTimeMillis()-date>=getTtl();
+        }
+    }
+}
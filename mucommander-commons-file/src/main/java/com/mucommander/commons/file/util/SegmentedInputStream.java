@@ -0,0 +1,387 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.protocol.FileProtocols;
+import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.util.IOScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * SegmentedInputStream reads a range of a remote file sequentially, while fetching several segments of it
+ * concurrently, each with its own ranged request (see {@link AbstractFile#getInputStream(long, long)}). On links with a
+ * high bandwidth and a high latency, a single stream only uses a fraction of the available bandwidth: several
+ * concurrent requests make a better use of it.
+ *
+ * <p>At most {@link #DEFAULT_NB_SEGMENTS} segments are fetched ahead of the segment being read, which bounds the memory
+ * used by the stream. The segment being read can be read while it is being fetched. Since segments are consumed in
+ * order, the stream can be used as any sequential stream: if the reader slows down (for instance because of a
+ * throughput limit), fetching stops as soon as the segments ahead have been fetched.</p>
+ *
+ * <p>A segment whose request fails is requested again, starting after the bytes that were already received, up to
+ * {@link #MAX_ATTEMPTS} times. If the segment still can't be fetched, the error is reported by the next read that
+ * reaches the segment. The bytes read before that are valid, which allows a failed transfer to be resumed.</p>
+ *
+ * <p>Closing the stream closes the requests in progress. This class is not thread-safe: it must be read by a single
+ * thread, but may be closed by another one.</p>
+ */
+public class SegmentedInputStream extends InputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedInputStream.class);
+
+    /** Default number of segments that are fetched concurrently */
+    public final static int DEFAULT_NB_SEGMENTS = 4;
+
+    /** Default size of a segment, in bytes */
+    public final static int DEFAULT_SEGMENT_SIZE = 4*1024*1024;
+
+    /** Minimum number of bytes to read for segmented reads to be worth it, see {@link #isWorthSegmenting(AbstractFile, long)} */
+    public final static long MIN_SEGMENTED_LENGTH = 2*DEFAULT_SEGMENT_SIZE;
+
+    /** Maximum number of times a segment is requested */
+    public final static int MAX_ATTEMPTS = 3;
+
+    /** Schemes of the protocols that can request ranges of a file efficiently */
+    private final static Set<String> SEGMENTED_SCHEMES = new HashSet<String>(Arrays.asList(
+            FileProtocols.HTTP, FileProtocols.HTTPS, FileProtocols.S3, FileProtocols.SFTP));
+
+    /** The file to read */
+    private final AbstractFile file;
+
+    /** Realm of the file, the segments are fetched by the IOScheduler's background pool within this realm */
+    private final String realm;
+
+    /** Size of a segment */
+    private final int segmentSize;
+
+    /** Maximum number of segments that are being fetched or waiting to be read */
+    private final int nbSegments;
+
+    /** Offset of the end of the range to read */
+    private final long endOffset;
+
+    /** Offset of the next segment to fetch */
+    private long nextSegmentOffset;
+
+    /** Segments that are being fetched or waiting to be read, in order */
+    private final Deque<Segment> segments = new ArrayDeque<Segment>();
+
+    /** Position in the first segment */
+    private int position;
+
+    /** True when the stream has been closed */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new SegmentedInputStream that reads the given range of the file, with the default number and size
+     * of segments.
+     *
+     * @param file the file to read
+     * @param offset the offset of the first byte to read
+     * @param length the number of bytes to read
+     */
+    public SegmentedInputStream(AbstractFile file, long offset, long length) {
+        this(file, offset, length, DEFAULT_NB_SEGMENTS, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a new SegmentedInputStream that reads the given range of the file.
+     *
+     * @param file the file to read
+     * @param offset the offset of the first byte to read
+     * @param length the number of bytes to read
+     * @param nbSegments the number of segments that are fetched concurrently
+     * @param segmentSize the size of a segment, in bytes
+     */
+    public SegmentedInputStream(AbstractFile file, long offset, long length, int nbSegments, int segmentSize) {
+        this.file = file;
+        this.realm = file.getURL().getRealm().toString(false);
+        this.nbSegments = nbSegments;
+        this.segmentSize = segmentSize;
+        this.nextSegmentOffset = offset;
+        this.endOffset = offset+length;
+
+        for(int i=0; i<nbSegments; i++)
+            fetchNextSegment(null);
+    }
+
+    /**
+     * Returns <code>true</code> if the given file is served by a protocol that can request ranges of it efficiently,
+     * and if the given number of bytes is large enough for segmented reads to be worth it.
+     *
+     * @param file the file to read
+     * @param length the number of bytes to read, <code>-1</code> if unknown
+     * @return <code>true</code> if the file should be read with a SegmentedInputStream
+     */
+    public static boolean isWorthSegmenting(AbstractFile file, long length) {
+        if(length<MIN_SEGMENTED_LENGTH)
+            return false;
+
+        // Archive entries are not protocol files, and can't be read by ranges
+        AbstractFile topAncestor = file.getTopAncestor();
+        return topAncestor instanceof ProtocolFile && SEGMENTED_SCHEMES.contains(topAncestor.getURL().getScheme());
+    }
+
+    /**
+     * Starts fetching the next segment of the range, if any, reusing the given buffer if it is not <code>null</code>.
+     */
+    private void fetchNextSegment(byte buffer[]) {
+        if(nextSegmentOffset>=endOffset)
+            return;
+
+        int length = (int)Math.min(segmentSize, endOffset-nextSegmentOffset);
+        Segment segment = new Segment(nextSegmentOffset, buffer==null?new byte[length]:buffer, length);
+        nextSegmentOffset += length;
+
+        segments.add(segment);
+        IOScheduler.execute(IOScheduler.Pool.SUBTASK, IOScheduler.Priority.NORMAL, realm, "SegmentedInputStream-fetcher", segment);
+    }
+
+    /**
+     * Returns the segment being read, waiting until at least one of its bytes past the current position has been
+     * fetched. Returns <code>null</code> if the end of the range has been reached.
+     */
+    private Segment waitForData() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+
+        Segment segment = segments.peek();
+        if(segment==null)
+            return null;
+
+        synchronized(segment) {
+            while(position>=segment.nbFetched && segment.error==null && !closed) {
+                try {
+                    segment.wait();
+                }
+                catch(InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+
+            if(closed)
+                throw new IOException("Stream closed");
+
+            if(position>=segment.nbFetched)
+                throw segment.error;
+        }
+
+        return segment;
+    }
+
+    /**
+     * Moves past the given segment once it has been read entirely, and starts fetching the next one in its buffer.
+     */
+    private void segmentRead(Segment segment) {
+        if(position<segment.length)
+            return;
+
+        segments.poll();
+        position = 0;
+        fetchNextSegment(segment.buffer);
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        Segment segment = waitForData();
+        if(segment==null)
+            return -1;
+
+        int b = segment.buffer[position++] & 0xFF;
+        segmentRead(segment);
+
+        return b;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if(len==0)
+            return 0;
+
+        Segment segment = waitForData();
+        if(segment==null)
+            return -1;
+
+        int nbBytes;
+        synchronized(segment) {
+            nbBytes = Math.min(len, segment.nbFetched-position);
+        }
+
+        System.arraycopy(segment.buffer, position, b, off, nbBytes);
+        position += nbBytes;
+        segmentRead(segment);
+
+        return nbBytes;
+    }
+
+    @Override
+    public int available() throws IOException {
+        Segment segment = segments.peek();
+        if(segment==null)
+            return 0;
+
+        synchronized(segment) {
+            return segment.nbFetched-position;
+        }
+    }
+
+    /**
+     * Closes this stream and the requests in progress. This method may be called by another thread than the one
+     * reading the stream, to abort a blocked read.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        // Note: the segments may be modified concurrently by the reading thread
+        for(Segment segment : segments.toArray(new Segment[0]))
+            segment.cancel();
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A segment of the range, fetched by an executor thread.
+     */
+    private class Segment implements Runnable {
+        /** Offset of the segment in the file */
+        private final long offset;
+        /** Receives the segment's bytes */
+        private final byte buffer[];
+        /** Length of the segment */
+        private final int length;
+        /** Number of bytes fetched so far */
+        private int nbFetched;
+        /** Error that prevented the segment from being fetched */
+        private IOException error;
+        /** Stream of the request in progress */
+        private InputStream in;
+
+        private Segment(long offset, byte buffer[], int length) {
+            this.offset = offset;
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        public void run() {
+            int attempt = 1;
+            while(!closed) {
+                InputStream in = null;
+                try {
+                    int nbFetched = getNbFetched();
+                    in = file.getInputStream(offset+nbFetched, length-nbFetched);
+                    if(!setStream(in))
+                        return;
+
+                    while(nbFetched<length) {
+                        int nbRead = in.read(buffer, nbFetched, length-nbFetched);
+                        if(nbRead==-1)
+                            throw new EOFException("Premature end of segment at offset "+(offset+nbFetched));
+
+                        nbFetched += nbRead;
+                        fetched(nbFetched);
+                    }
+
+                    return;
+                }
+                catch(IOException e) {
+                    if(closed)
+                        return;
+
+                    if(attempt++>=MAX_ATTEMPTS) {
+                        LOGGER.info("Failed to fetch segment at offset {} of {}", offset, file, e);
+                        failed(e);
+                        return;
+                    }
+
+                    LOGGER.debug("Failed to fetch segment at offset {} of {}, retrying", offset, file, e);
+                }
+                catch(RuntimeException e) {
+                    failed(new IOException(e));
+                    throw e;
+                }
+                finally {
+                    setStream(null);
+                    if(in!=null) {
+                        try { in.close(); }
+                        catch(IOException e) {}
+                    }
+                }
+            }
+        }
+
+        private synchronized int getNbFetched() {
+            return nbFetched;
+        }
+
+        private synchronized void fetched(int nbFetched) {
+            this.nbFetched = nbFetched;
+            notifyAll();
+        }
+
+        private synchronized void failed(IOException e) {
+            error = e;
+            notifyAll();
+        }
+
+        /**
+         * Registers the stream of the request in progress, so that it can be closed by {@link #cancel()}.
+         * Returns <code>false</code> if the segment has been cancelled.
+         */
+        private synchronized boolean setStream(InputStream in) {
+            this.in = in;
+            return !closed;
+        }
+
+        /**
+         * Closes the request in progress, if any, and wakes up the reading thread.
+         */
+        private void cancel() {
+            InputStream in;
+            synchronized(this) {
+                in = this.in;
+                notifyAll();
+            }
+
+            if(in!=null) {
+                try { in.close(); }
+                catch(IOException e) {}
+            }
+        }
+    }
+}
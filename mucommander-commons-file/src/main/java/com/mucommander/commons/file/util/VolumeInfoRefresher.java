@@ -0,0 +1,211 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.protocol.local.LocalFile;
+import com.mucommander.commons.util.IOScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class retrieves the total and free space of volumes in the background, for components that display this
+ * information and refresh it periodically.
+ *
+ * <p>Requests are coalesced per volume: the information retrieved for a volume is reused for {@link #TIME_TO_LIVE}
+ * milliseconds, and requests made while the volume is being queried are given the result of the query in progress.
+ * A volume is never queried by more than one thread at a time.</p>
+ *
+ * <p>Requests complete within {@link #TIMEOUT} milliseconds: if the volume has not responded by then, which typically
+ * happens with hung network mounts, the request completes with the last known information, or with <code>-1</code>
+ * values if there is none. The volume is not queried again until the blocked query returns, so that blocked threads
+ * do not pile up. At most {@link #MAX_CACHED_VOLUMES} volumes are cached, the least recently used ones are evicted
+ * first. This class is thread-safe.</p>
+ */
+public class VolumeInfoRefresher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VolumeInfoRefresher.class);
+
+    /** Maximum number of milliseconds a request waits for the volume to respond */
+    public final static long TIMEOUT = 3000;
+
+    /** Number of milliseconds during which the information retrieved for a volume is reused */
+    public final static long TIME_TO_LIVE = 60000;
+
+    /** Maximum number of volumes whose information is cached */
+    public final static int MAX_CACHED_VOLUMES = 50;
+
+    /** Volume states, keyed by location, in access order */
+    private final static Map<String, VolumeState> VOLUMES = new LinkedHashMap<String, VolumeState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VolumeState> eldest) {
+            return size()>MAX_CACHED_VOLUMES;
+        }
+    };
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private VolumeInfoRefresher() {
+    }
+
+    /**
+     * Requests the total and free space of the given volume. The returned future completes with a
+     * {totalSpace, freeSpace} long array, immediately if the information is cached, within {@link #TIMEOUT}
+     * milliseconds otherwise. Either value is <code>-1</code> if it could not be retrieved.
+     *
+     * <p>The returned future and array may be shared with other requests for the same volume: they must not be
+     * modified.</p>
+     *
+     * @param volume the volume to retrieve the information of, as returned by {@link AbstractFile#getVolume()}
+     * @return a future that completes with a {totalSpace, freeSpace} long array
+     */
+    public static CompletableFuture<long[]> getVolumeInfo(final AbstractFile volume) {
+        String key = ListingCache.getKey(volume.getURL());
+        final VolumeState state;
+        final CompletableFuture<long[]> request;
+
+        synchronized(VOLUMES) {
+            VolumeState volumeState = VOLUMES.get(key);
+            if(volumeState==null) {
+                volumeState = new VolumeState();
+                VOLUMES.put(key, volumeState);
+            }
+            state = volumeState;
+
+            if(state.info!=null && System.currentTimeMillis()-state.timestamp<TIME_TO_LIVE)
+                return CompletableFuture.completedFuture(state.info);
+
+            // The volume is being queried: share the request in progress, or use the last known information if
+            // the query has timed out
+            if(state.request!=null)
+                return state.request;
+
+            if(state.querying)
+                return CompletableFuture.completedFuture(state.getLastKnownInfo());
+
+            request = new CompletableFuture<long[]>();
+            state.request = request;
+            state.querying = true;
+        }
+
+        // A server or local volume that doesn't respond holds up a limited number of housekeeping threads, as
+        // queries of the same realm are capped: local volumes each have their own realm
+        IOScheduler.execute(IOScheduler.Pool.HOUSEKEEPING, IOScheduler.Priority.NORMAL, IORealms.getRealm(volume.getURL()),
+                "VolumeInfoRefresher-query", new Runnable() {
+            public void run() {
+                long[] info = null;
+                try {
+                    info = queryVolumeInfo(volume);
+                }
+                finally {
+                    synchronized(VOLUMES) {
+                        if(info!=null) {
+                            state.info = info;
+                            state.timestamp = System.currentTimeMillis();
+                        }
+                        else {
+                            info = state.getLastKnownInfo();
+                        }
+
+                        state.querying = false;
+                        if(state.request==request)
+                            state.request = null;
+                    }
+
+                    request.complete(info);
+                }
+            }
+        });
+
+        IOScheduler.schedule(new Runnable() {
+            public void run() {
+                long[] info;
+                synchronized(VOLUMES) {
+                    if(state.request!=request)
+                        return;
+
+                    state.request = null;
+                    info = state.getLastKnownInfo();
+                }
+
+                LOGGER.info("Volume {} did not respond within {}ms", volume, TIMEOUT);
+                request.complete(info);
+            }
+        }, TIMEOUT, TimeUnit.MILLISECONDS);
+
+        return request;
+    }
+
+    /**
+     * Retrieves the total and free space of the given volume, blocking until the volume responds.
+     */
+    private static long[] queryVolumeInfo(AbstractFile volume) {
+        // Local volumes can retrieve both values at once
+        LocalFile localFile = volume.getAncestor(LocalFile.class);
+        if(localFile!=null) {
+            try {
+                return localFile.getVolumeInfo();
+            }
+            catch(IOException e) {
+                LOGGER.debug("Could not retrieve volume info of "+volume, e);
+                return new long[]{-1, -1};
+            }
+        }
+
+        long totalSpace;
+        long freeSpace;
+
+        try { totalSpace = volume.getTotalSpace(); }
+        catch(IOException e) { totalSpace = -1; }
+
+        try { freeSpace = volume.getFreeSpace(); }
+        catch(IOException e) { freeSpace = -1; }
+
+        return new long[]{totalSpace, freeSpace};
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Information retrieved for a volume, and the state of its query.
+     */
+    private static class VolumeState {
+        /** Last retrieved {totalSpace, freeSpace}, null if the volume has never responded */
+        private long[] info;
+        /** Time at which info was retrieved */
+        private long timestamp;
+        /** Request that is waiting for the volume to respond, null if there is none or if it has timed out */
+        private CompletableFuture<long[]> request;
+        /** True while a thread is querying the volume */
+        private boolean querying;
+
+        private long[] getLastKnownInfo() {
+            return info==null ? new long[]{-1, -1} : info;
+        }
+    }
+}
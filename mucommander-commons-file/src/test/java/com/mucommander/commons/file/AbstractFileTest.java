@@ -1130,6 +1130,23 @@ public abstract class AbstractFileTest {
         assert 1 == children.length;
         assert child.equals(children[0]);
         assert children[0].exists();
+
+        // Create a second child and assert that iterateChildren() returns the same files as ls()
+        tempFile.getChild("child2").mkfile();
+        children = tempFile.ls();
+        List<AbstractFile> iteratedChildren = new ArrayList<AbstractFile>();
+        DirectoryIterator iterator = tempFile.iterateChildren();
+        try {
+            while(iterator.hasNext())
+                iteratedChildren.add(iterator.next());
+        }
+        finally {
+            iterator.close();
+        }
+
+        assert 2 == children.length;
+        assert iteratedChildren.size() == children.length;
+        assert iteratedChildren.containsAll(Arrays.asList(children));
     }
 
     /**
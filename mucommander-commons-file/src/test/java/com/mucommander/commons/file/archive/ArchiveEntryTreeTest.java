@@ -0,0 +1,150 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive;
+
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link ArchiveEntryTree}.
+ *
+ * @see ArchiveEntryTree
+ */
+public class ArchiveEntryTreeTest {
+    /** Number of entries of the flat archive */
+    private final static int NB_FLAT_ENTRIES = 200000;
+
+    /**
+     * Asserts that entries can be found by path, regardless of trailing slashes, and that parent directories are
+     * created for entries whose directories are not listed in the archive.
+     */
+    @Test
+    public void testFindEntryNode() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(new ArchiveEntry("dir/", true, 0, 0, true));
+        tree.addArchiveEntry(new ArchiveEntry("dir/file", false, 0, 10, true));
+        tree.addArchiveEntry(new ArchiveEntry("other/sub/file", false, 0, 20, true));
+
+        assert 2 == tree.getChildCount();
+        assert "dir/file".equals(tree.findEntryNode("dir/file").getEntry().getPath());
+        assert "dir/".equals(tree.findEntryNode("dir").getEntry().getPath());
+        assert "dir/".equals(tree.findEntryNode("dir/").getEntry().getPath());
+        assert tree.findEntryNode("dir/missing") == null;
+        assert tree.findEntryNode("di") == null;
+
+        // Implicit directories
+        ArchiveEntryNode sub = tree.findEntryNode("other/sub");
+        assert sub != null;
+        assert sub.getEntry().isDirectory();
+        assert "other/sub/".equals(sub.getEntry().getPath());
+        assert sub.getParent() == tree.findEntryNode("other");
+        assert tree.findEntryNode("other").getParent() == tree;
+        assert 20 == tree.findEntryNode("other/sub/file").getEntry().getSize();
+
+        // A directory entry found after its implicit node replaces the node's entry, keeping its children
+        ArchiveEntry subEntry = new ArchiveEntry("other/sub/", true, 1000, 0, true);
+        tree.addArchiveEntry(subEntry);
+        assert tree.findEntryNode("other/sub") == sub;
+        assert sub.getEntry() == subEntry;
+        assert 1 == sub.getChildCount();
+    }
+
+    /**
+     * Asserts that children keep their order and can be looked up and removed, whether or not they are indexed.
+     */
+    @Test
+    public void testChildren() {
+        int nbChildren = ArchiveEntryNode.INDEX_THRESHOLD*3;
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        for(int i=0; i<nbChildren; i++)
+            tree.addArchiveEntry(new ArchiveEntry("dir/file"+i, false, 0, i, true));
+
+        ArchiveEntryNode dir = tree.findEntryNode("dir");
+        assert nbChildren == dir.getChildCount();
+        for(int i=0; i<nbChildren; i++) {
+            assert ("file"+i).equals(dir.getChildAt(i).getName());
+            assert dir.getChildAt(i).getEntry() == tree.findEntryNode("dir/file"+i).getEntry();
+            assert dir.getChildAt(i).getParent() == dir;
+        }
+
+        // Remove children until they are no longer indexed
+        for(int i=0; i<nbChildren; i+=2)
+            dir.remove(tree.findEntryNode("dir/file"+i));
+
+        assert nbChildren/2 == dir.getChildCount();
+        for(int i=0; i<nbChildren; i++) {
+            ArchiveEntryNode node = tree.findEntryNode("dir/file"+i);
+            assert i%2==0 ? node==null : node.getEntry()==dir.getChildAt(i/2).getEntry();
+        }
+    }
+
+    /**
+     * Asserts that a leaf entry becomes a node once entries are added below it, keeping its position and entry.
+     */
+    @Test
+    public void testLeafWithChildren() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        ArchiveEntry dirEntry = new ArchiveEntry("a/", true, 0, 0, true);
+        tree.addArchiveEntry(new ArchiveEntry("first", false, 0, 0, true));
+        tree.addArchiveEntry(dirEntry);
+        tree.addArchiveEntry(new ArchiveEntry("last", false, 0, 0, true));
+        assert 0 == tree.findEntryNode("a").getChildCount();
+
+        tree.addArchiveEntry(new ArchiveEntry("a/b/c", false, 0, 0, true));
+        ArchiveEntryNode a = tree.getChildAt(1);
+        assert a.getEntry() == dirEntry;
+        assert a == tree.findEntryNode("a/");
+        assert a == tree.findEntryNode("a/b").getParent();
+        assert 3 == tree.getChildCount();
+        assert "last".equals(tree.getChildAt(2).getName());
+        assert "c".equals(tree.findEntryNode("a/b/c").getName());
+    }
+
+    /**
+     * Builds the tree of a flat archive containing a large number of entries, asserts its structure and looks all
+     * entries up. Looking up every entry used to take time quadratic in the number of entries.
+     */
+    @Test
+    public void testFlatArchive() {
+        ArchiveEntry entries[] = new ArchiveEntry[NB_FLAT_ENTRIES];
+        for(int i=0; i<NB_FLAT_ENTRIES; i++)
+            entries[i] = new ArchiveEntry("folder/file"+i, false, 0, i, true);
+
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        for(ArchiveEntry entry : entries)
+            tree.addArchiveEntry(entry);
+
+        assert 1 == tree.getChildCount();
+        ArchiveEntryNode folder = tree.getChildAt(0);
+        assert "folder".equals(folder.getName());
+        assert "folder/".equals(folder.getEntry().getPath());
+        assert folder.getEntry().isDirectory();
+        assert folder.getParent() == tree;
+        assert NB_FLAT_ENTRIES == folder.getChildCount();
+
+        for(int i=0; i<NB_FLAT_ENTRIES; i++) {
+            ArchiveEntryNode node = folder.getChildAt(i);
+            assert node.getEntry() == entries[i];
+            assert node.getParent() == folder;
+            assert 0 == node.getChildCount();
+            assert tree.findEntryNode("folder/file"+i).getEntry() == entries[i];
+        }
+
+        assert tree.findEntryNode("folder/file"+NB_FLAT_ENTRIES) == null;
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on {@link IndexedGzipInputStream}, comparing its output with the data that was compressed by
+ * <code>java.util.zip</code>.
+ */
+public class IndexedGzipInputStreamTest {
+
+    /** Words the test data is made of, so that it compresses with matches and literals alike */
+    private final static String[] WORDS = {
+        "muCommander", "archive", "entry", "checkpoint", "window", "block", "huffman", "stored", "the", "a", "of"
+    };
+
+    /**
+     * Returns <code>size</code> bytes of text-like data, which the same seed always yields.
+     */
+    private static byte[] createData(int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        int pos = 0;
+        while(pos<size) {
+            byte[] word;
+            // Some random bytes break up matches
+            if(random.nextInt(8)==0) {
+                word = new byte[1+random.nextInt(16)];
+                random.nextBytes(word);
+            }
+            else {
+                word = (WORDS[random.nextInt(WORDS.length)]+' ').getBytes();
+            }
+
+            int length = Math.min(word.length, size-pos);
+            System.arraycopy(word, 0, data, pos, length);
+            pos += length;
+        }
+
+        return data;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream gout = new GZIPOutputStream(bout);
+        gout.write(data);
+        gout.close();
+
+        return bout.toByteArray();
+    }
+
+    /**
+     * Compresses the given data into a GZIP member, using the given compression level and strategy.
+     */
+    private static byte[] gzip(byte[] data, int level, int strategy) throws IOException {
+        byte[] deflated = deflate(data, level, strategy);
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        bout.write(new byte[] {0x1F, (byte)0x8B, 8, 0, 0, 0, 0, 0, 0, (byte)0xFF});
+        bout.write(deflated);
+        writeInt(bout, (int)crc.getValue());
+        writeInt(bout, data.length);
+
+        return bout.toByteArray();
+    }
+
+    /**
+     * Compresses the given data into a raw DEFLATE stream, using the given compression level and strategy.
+     */
+    private static byte[] deflate(byte[] data, int level, int strategy) {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while(!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            bout.write(buffer, 0, n);
+        }
+        deflater.end();
+
+        return bout.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream bout, int value) {
+        bout.write(value);
+        bout.write(value>>>8);
+        bout.write(value>>>16);
+        bout.write(value>>>24);
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        for(byte[] array : arrays)
+            bout.write(array, 0, array.length);
+
+        return bout.toByteArray();
+    }
+
+    /**
+     * Reads the given stream until its end, using reads of various lengths, and closes it.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int length = 1;
+        try {
+            int n;
+            while((n=in.read(buffer, 0, length))!=-1) {
+                bout.write(buffer, 0, n);
+                length = length*3 % buffer.length + 1;
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        return bout.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] gzipped) throws IOException {
+        return readFully(new IndexedGzipInputStream(new ByteArrayInputStream(gzipped), null, 0));
+    }
+
+    /**
+     * Returns the type of the first block of the given raw DEFLATE stream: 0 for stored, 1 for fixed Huffman codes
+     * and 2 for dynamic Huffman codes.
+     */
+    private static int getFirstBlockType(byte[] deflated) {
+        return (deflated[0]>>1) & 3;
+    }
+
+    /**
+     * Decompresses data compressed by <code>GZIPOutputStream</code>.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for(int size : new int[] {0, 1, 1000, 100000, 1000000}) {
+            byte[] data = createData(size, size);
+            assertEquals(inflate(gzip(data)), data);
+        }
+    }
+
+    /**
+     * Decompresses stored blocks, including blocks which don't start on a byte boundary.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testStoredBlocks() throws IOException {
+        byte[] data = createData(200000, 1);
+        assertEquals(getFirstBlockType(deflate(data, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY)), 0);
+        assertEquals(inflate(gzip(data, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY)), data);
+
+        // Stored blocks following compressed blocks
+        byte[] random = new byte[100000];
+        new Random(2).nextBytes(random);
+        data = concat(createData(100000, 3), random, createData(100000, 4));
+        assertEquals(inflate(gzip(data, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY)), data);
+    }
+
+    /**
+     * Decompresses blocks compressed with fixed Huffman codes.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testFixedBlocks() throws IOException {
+        // zlib uses fixed codes for short inputs
+        byte[] data = "muCommander muCommander muCommander".getBytes();
+        assertEquals(getFirstBlockType(deflate(data, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY)), 1);
+        assertEquals(inflate(gzip(data, Deflater.BEST_COMPRESSION, Deflater.DEFAULT_STRATEGY)), data);
+    }
+
+    /**
+     * Decompresses blocks compressed with dynamic Huffman codes, with and without matches.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testDynamicBlocks() throws IOException {
+        byte[] data = createData(500000, 5);
+        for(int strategy : new int[] {Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY}) {
+            assertEquals(getFirstBlockType(deflate(data, Deflater.DEFAULT_COMPRESSION, strategy)), 2);
+            assertEquals(inflate(gzip(data, Deflater.DEFAULT_COMPRESSION, strategy)), data);
+        }
+    }
+
+    /**
+     * Decompresses concatenated GZIP members as a single stream, and ignores trailing garbage.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testMultipleMembers() throws IOException {
+        byte[] data1 = createData(300000, 6);
+        byte[] data2 = createData(70000, 7);
+        byte[] data3 = createData(0, 8);
+
+        byte[] gzipped = concat(gzip(data1), gzip(data2, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY), gzip(data3));
+        assertEquals(inflate(gzipped), concat(data1, data2, data3));
+        assertEquals(inflate(concat(gzipped, new byte[] {1, 2, 3})), concat(data1, data2, data3));
+    }
+
+    /**
+     * Fails on a corrupt CRC.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(expectedExceptions = ZipException.class)
+    public void testCorruptCrc() throws IOException {
+        byte[] gzipped = gzip(createData(10000, 9));
+        gzipped[gzipped.length-8] ^= 1;
+
+        inflate(gzipped);
+    }
+
+    /**
+     * Resumes decompression at each of the checkpoints that were recorded while decompressing a stream, and checks
+     * that recording checkpoints from a checkpoint yields the same checkpoints as from the beginning of the stream.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCheckpoints() throws IOException {
+        byte[] data1 = createData(3000000, 10);
+        byte[] data2 = createData(1000000, 11);
+        byte[] data = concat(data1, data2);
+        // The second member is made of stored blocks
+        byte[] gzipped = concat(gzip(data1), gzip(data2, Deflater.NO_COMPRESSION, Deflater.DEFAULT_STRATEGY));
+        long checkpointSpan = 256*1024;
+
+        List<IndexedGzipInputStream.Checkpoint> checkpoints = new ArrayList<IndexedGzipInputStream.Checkpoint>();
+        assertEquals(readFully(new IndexedGzipInputStream(new ByteArrayInputStream(gzipped), checkpoints, checkpointSpan)), data);
+        assertTrue(checkpoints.size()>=data.length/checkpointSpan/2);
+
+        long lastOffset = 0;
+        for(IndexedGzipInputStream.Checkpoint checkpoint : checkpoints) {
+            long outputOffset = checkpoint.getOutputOffset();
+            assertTrue(outputOffset-lastOffset>=checkpointSpan);
+            lastOffset = outputOffset;
+
+            // The window holds the data that precedes the checkpoint
+            byte[] window = checkpoint.getWindow();
+            assertEquals(window, Arrays.copyOfRange(data, (int)outputOffset-window.length, (int)outputOffset));
+
+            // Restore the checkpoint from its persisted form
+            checkpoint = new IndexedGzipInputStream.Checkpoint(outputOffset, checkpoint.getInputBitOffset(), checkpoint.getWindowLength(), checkpoint.getCompressedWindow());
+
+            int inputOffset = (int)(checkpoint.getInputBitOffset()>>>3);
+            InputStream in = new ByteArrayInputStream(gzipped, inputOffset, gzipped.length-inputOffset);
+            assertEquals(readFully(new IndexedGzipInputStream(in, checkpoint)), Arrays.copyOfRange(data, (int)outputOffset, data.length));
+        }
+
+        // Record checkpoints from the first checkpoint on
+        IndexedGzipInputStream.Checkpoint first = checkpoints.get(0);
+        int inputOffset = (int)(first.getInputBitOffset()>>>3);
+        List<IndexedGzipInputStream.Checkpoint> resumedCheckpoints = new ArrayList<IndexedGzipInputStream.Checkpoint>();
+        IndexedGzipInputStream gin = new IndexedGzipInputStream(new ByteArrayInputStream(gzipped, inputOffset, gzipped.length-inputOffset), first, resumedCheckpoints, checkpointSpan);
+        readFully(gin);
+        assertEquals(gin.getOutputOffset(), data.length);
+
+        assertEquals(resumedCheckpoints.size(), checkpoints.size()-1);
+        for(int i=0; i<resumedCheckpoints.size(); i++) {
+            assertEquals(resumedCheckpoints.get(i).getOutputOffset(), checkpoints.get(i+1).getOutputOffset());
+            assertEquals(resumedCheckpoints.get(i).getInputBitOffset(), checkpoints.get(i+1).getInputBitOffset());
+        }
+    }
+
+    /**
+     * Skips to an offset, as when seeking to a TAR entry.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testSkip() throws IOException {
+        byte[] data = createData(1000000, 12);
+        InputStream in = new IndexedGzipInputStream(new ByteArrayInputStream(gzip(data)), null, 0);
+
+        long skipped = 0;
+        while(skipped<654321)
+            skipped += in.skip(654321-skipped);
+
+        assertEquals(readFully(in), Arrays.copyOfRange(data, 654321, data.length));
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.tar;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.archive.ArchiveEntry;
+import com.mucommander.commons.file.archive.ArchiveEntryIterator;
+import com.mucommander.commons.file.archive.tar.provider.TarEntry;
+import com.mucommander.commons.file.archive.tar.provider.TarOutputStream;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on the indexing of {@link TarArchiveFile}: entries are indexed when the archive is first listed, and
+ * GZIP checkpoints are recorded when an entry is first read.
+ */
+public class TarArchiveFileTest {
+
+    /** Number of entries in the test archive */
+    private final static int NB_ENTRIES = 40;
+
+    /** Size of each entry of the test archive */
+    private final static int ENTRY_SIZE = 256*1024;
+
+    private AbstractFile tempFolder;
+
+    private AbstractFile indexFolder;
+
+    /** The index folder before the test, restored after it */
+    private AbstractFile previousIndexFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        tempFolder = FileFactory.getTemporaryFile(TarArchiveFileTest.class.getName(), false);
+        tempFolder.mkdir();
+
+        indexFolder = tempFolder.getChild("index");
+        previousIndexFolder = TarArchiveFile.getIndexFolder();
+        TarArchiveFile.setIndexFolder(indexFolder);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        TarArchiveFile.setIndexFolder(previousIndexFolder);
+        tempFolder.deleteRecursively();
+    }
+
+    /**
+     * Returns the contents of the entry at the given position, which compress to about half their size.
+     */
+    private static byte[] getEntryData(int position) {
+        Random random = new Random(position);
+        byte[] data = new byte[ENTRY_SIZE];
+        for(int i=0; i<data.length; i++)
+            data[i] = (byte)('a'+random.nextInt(16));
+
+        return data;
+    }
+
+    private AbstractFile createArchive() throws IOException {
+        AbstractFile file = tempFolder.getChild("test.tar.gz");
+        TarOutputStream tout = new TarOutputStream(new GZIPOutputStream(file.getOutputStream()));
+        try {
+            for(int i=0; i<NB_ENTRIES; i++) {
+                TarEntry entry = new TarEntry("entry"+i);
+                entry.setSize(ENTRY_SIZE);
+                tout.putNextEntry(entry);
+                tout.write(getEntryData(i));
+                tout.closeEntry();
+            }
+        }
+        finally {
+            tout.close();
+        }
+
+        return file;
+    }
+
+    private static List<ArchiveEntry> getEntries(TarArchiveFile archive) throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<ArchiveEntry>();
+        ArchiveEntryIterator iterator = archive.getEntryIterator();
+        try {
+            ArchiveEntry entry;
+            while((entry=iterator.nextEntry())!=null)
+                entries.add(entry);
+        }
+        finally {
+            iterator.close();
+        }
+
+        return entries;
+    }
+
+    private static byte[] readEntry(TarArchiveFile archive, ArchiveEntry entry) throws IOException {
+        InputStream in = archive.getEntryInputStream(entry, null);
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            long remaining = entry.getSize();
+            while(remaining>0) {
+                int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if(n==-1)
+                    break;
+                bout.write(buffer, 0, n);
+                remaining -= n;
+            }
+
+            return bout.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Lists the archive, which indexes its entries without recording checkpoints, and then reads entries: checkpoints
+     * are recorded the first time an entry located far enough is read, and used from then on.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testIndex() throws IOException {
+        AbstractFile file = createArchive();
+        assertTrue(file.getSize()>=TarArchiveFile.INDEX_MIN_ARCHIVE_SIZE);
+
+        List<ArchiveEntry> entries = getEntries(new TarArchiveFile(file));
+        assertEquals(entries.size(), NB_ENTRIES);
+
+        TarIndex index = TarIndex.load(file, indexFolder);
+        assertNotNull(index);
+        assertEquals(index.getEntryCount(), NB_ENTRIES);
+        assertEquals(index.getCheckpointedLength(), 0);
+        assertNull(index.getCheckpoint(Long.MAX_VALUE));
+
+        // Read the last entry, recording checkpoints on the way to it
+        ArchiveEntry lastEntry = entries.get(NB_ENTRIES-1);
+        assertEquals(readEntry(new TarArchiveFile(file), lastEntry), getEntryData(NB_ENTRIES-1));
+
+        index = TarIndex.load(file, indexFolder);
+        assertNotNull(index);
+        long lastEntryOffset = (Long)lastEntry.getEntryObject();
+        assertTrue(index.getCheckpointedLength()>lastEntryOffset);
+        assertNotNull(index.getCheckpoint(lastEntryOffset));
+
+        // Read entries from the checkpoints, through the persisted index
+        TarArchiveFile archive = new TarArchiveFile(file);
+        entries = getEntries(archive);
+        assertEquals(entries.size(), NB_ENTRIES);
+        for(int i=NB_ENTRIES-1; i>=0; i-=7)
+            assertEquals(readEntry(archive, entries.get(i)), getEntryData(i));
+
+        // Unpack the archive
+        ArchiveEntryIterator iterator = archive.getEntryIterator();
+        try {
+            ArchiveEntry entry;
+            int position = 0;
+            while((entry=iterator.nextEntry())!=null) {
+                InputStream in = archive.getEntryInputStream(entry, iterator);
+                byte[] data = new byte[ENTRY_SIZE];
+                int read = 0;
+                while(read<data.length) {
+                    int n = in.read(data, read, data.length-read);
+                    if(n==-1)
+                        break;
+                    read += n;
+                }
+                in.close();
+
+                assertEquals(data, getEntryData(position++));
+            }
+        }
+        finally {
+            iterator.close();
+        }
+    }
+
+    private static void createIndexFile(AbstractFile folder, String name, int size, long date) throws IOException {
+        AbstractFile file = folder.getChild(name);
+        OutputStream out = file.getOutputStream();
+        try {
+            out.write(new byte[size]);
+        }
+        finally {
+            out.close();
+        }
+        file.changeDate(date);
+    }
+
+    /**
+     * Deletes the index files that have not been used for too long, and then the least recently used ones beyond
+     * the maximum size.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testPrune() throws IOException {
+        indexFolder.mkdir();
+
+        long now = System.currentTimeMillis();
+        long day = 24*60*60*1000L;
+        createIndexFile(indexFolder, "old.idx", 10, now-40*day);
+        createIndexFile(indexFolder, "kept.idx", 10, now-50*day);
+        createIndexFile(indexFolder, "recent1.idx", 100, now-day);
+        createIndexFile(indexFolder, "recent2.idx", 100, now-2*day);
+        createIndexFile(indexFolder, "recent3.idx", 100, now-3*day);
+        createIndexFile(indexFolder, "other.txt", 10, now-40*day);
+
+        TarIndex.prune(indexFolder, indexFolder.getChild("kept.idx"), 30*day, 220);
+
+        assertFalse(indexFolder.getChild("old.idx").exists());
+        assertTrue(indexFolder.getChild("kept.idx").exists());
+        assertTrue(indexFolder.getChild("recent1.idx").exists());
+        assertTrue(indexFolder.getChild("recent2.idx").exists());
+        assertFalse(indexFolder.getChild("recent3.idx").exists());
+        assertTrue(indexFolder.getChild("other.txt").exists());
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.archive.zip.provider;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Runs tests on {@link ZipFile} instances reading a local zip file, whose entry streams share the same
+ * <code>RandomAccessInputStream</code> when reading concurrently.
+ */
+public class ZipFileTest {
+
+    /** Number of entries in the test zip file */
+    private final static int NB_ENTRIES = 8;
+
+    /** Size of each entry, large enough for entries to be read with many positional reads */
+    private final static int ENTRY_SIZE = 256*1024;
+
+    /** Number of threads that read the entries concurrently */
+    private final static int NB_THREADS = 4;
+
+    /** The local zip file */
+    private AbstractFile tempFile;
+
+    /** Contents of the entries, indexed by entry number */
+    private byte[][] entryData;
+
+    /**
+     * Creates a local zip file whose even entries are stored and odd entries are deflated.
+     */
+    @BeforeMethod
+    public void setUp() throws IOException {
+        // Not an archive extension, so that the file is a plain local file
+        tempFile = FileFactory.getTemporaryFile(ZipFileTest.class.getName()+".tmp", true);
+
+        Random random = new Random(0);
+        entryData = new byte[NB_ENTRIES][];
+        ZipOutputStream zout = new ZipOutputStream(tempFile.getOutputStream());
+        try {
+            for(int i=0; i<NB_ENTRIES; i++) {
+                byte[] data = new byte[ENTRY_SIZE];
+                // Deflated entries are made of a few distinct bytes so that they are actually compressed
+                random.nextBytes(data);
+                if(i%2==1) {
+                    for(int b=0; b<data.length; b++)
+                        data[b] &= 0x3;
+                }
+                entryData[i] = data;
+
+                java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry(getEntryName(i));
+                if(i%2==0) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(java.util.zip.ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCompressedSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                else {
+                    entry.setMethod(java.util.zip.ZipEntry.DEFLATED);
+                }
+
+                zout.putNextEntry(entry);
+                zout.write(data);
+                zout.closeEntry();
+            }
+        }
+        finally {
+            zout.close();
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        if(tempFile!=null && tempFile.exists())
+            tempFile.delete();
+    }
+
+    private static String getEntryName(int i) {
+        return "entry"+i;
+    }
+
+    /**
+     * Reads the given entry fully and returns its contents.
+     */
+    private static byte[] readEntry(ZipFile zipFile, String name) throws IOException {
+        InputStream in = zipFile.getInputStream(zipFile.getEntry(name));
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(ENTRY_SIZE);
+            StreamUtils.copyStream(in, bout);
+
+            return bout.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads all entries of the zip file from several threads at once, each thread starting with a different entry,
+     * and asserts that their contents are correct.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final ZipFile zipFile = new ZipFile(tempFile);
+
+        ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for(int t=0; t<NB_THREADS; t++) {
+                final int firstEntry = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        for(int i=0; i<NB_ENTRIES; i++) {
+                            int entry = (firstEntry+i)%NB_ENTRIES;
+                            assert Arrays.equals(entryData[entry], readEntry(zipFile, getEntryName(entry))) : getEntryName(entry);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            // Rethrows assertion errors and exceptions thrown by the readers
+            for(Future<Void> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Interrupts a thread in the middle of reading an entry, which closes the channel shared by all entry streams,
+     * and asserts that another entry stream that was already open can still be read, as well as entries that are
+     * opened afterwards.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testInterruptedRead() throws Exception {
+        ZipFile zipFile = new ZipFile(tempFile);
+
+        // Stored entries are read from the shared channel without any buffering
+        InputStream interruptedIn = zipFile.getInputStream(zipFile.getEntry(getEntryName(0)));
+        InputStream otherIn = zipFile.getInputStream(zipFile.getEntry(getEntryName(2)));
+        try {
+            byte[] otherData = new byte[ENTRY_SIZE];
+            StreamUtils.readFully(interruptedIn, new byte[ENTRY_SIZE/2]);
+            StreamUtils.readFully(otherIn, otherData, 0, ENTRY_SIZE/2);
+
+            Thread.currentThread().interrupt();
+            boolean interrupted = false;
+            try {
+                interruptedIn.read(new byte[ENTRY_SIZE/2]);
+            }
+            catch(ClosedByInterruptException e) {
+                interrupted = true;
+            }
+            finally {
+                // Clear the interrupted flag
+                Thread.interrupted();
+            }
+            assert interrupted;
+
+            // The stream that was already open reads from a new channel
+            StreamUtils.readFully(otherIn, otherData, ENTRY_SIZE/2, ENTRY_SIZE/2);
+            assert -1 == otherIn.read();
+            assert Arrays.equals(entryData[2], otherData);
+        }
+        finally {
+            interruptedIn.close();
+            otherIn.close();
+        }
+
+        // Entries opened afterwards can be read, whether stored or deflated
+        for(int i=0; i<NB_ENTRIES; i++)
+            assert Arrays.equals(entryData[i], readEntry(zipFile, getEntryName(i))) : getEntryName(i);
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.filter;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DummyFile;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.filter.AttributeFileFilter.FileAttribute;
+import org.testng.annotations.Test;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * This class is a TestNG test case for {@link CompiledFileFilter}.
+ */
+public class CompiledFileFilterTest {
+
+    /** Characters filenames and filter strings are made of, including some whose case is peculiar */
+    private final static String CHARS = "aAbB.zZİiıIſsS";
+
+    /**
+     * Returns a file with the given name, which is a directory if it does not contain a '.'.
+     */
+    private static AbstractFile getFile(String name) throws MalformedURLException {
+        final boolean directory = name.indexOf('.')==-1;
+        return new DummyFile(FileURL.getFileURL("/folder/"+name)) {
+            @Override
+            public boolean isDirectory() {
+                return directory;
+            }
+        };
+    }
+
+    /**
+     * Returns the index of the first of the given filters that matches the given file, -1 if none of them does.
+     */
+    private static int indexOf(FileFilter filters[], AbstractFile file) {
+        for(int i=0; i<filters.length; i++)
+            if(filters[i].match(file))
+                return i;
+
+        return -1;
+    }
+
+    private static String getString(Random random, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(maxLength+1);
+        for(int i=0; i<length; i++)
+            sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+
+        return sb.toString();
+    }
+
+    private static FileFilter getFilenameFilter(Random random) {
+        String s = getString(random, 3);
+        boolean caseSensitive = random.nextBoolean();
+        boolean inverted = random.nextInt(5)==0;
+
+        switch(random.nextInt(7)) {
+            case 0:
+                return new EqualsFilenameFilter(s, caseSensitive, inverted);
+            case 1:
+                return new StartsWithFilenameFilter(s, caseSensitive, inverted);
+            case 2:
+                return new EndsWithFilenameFilter(s, caseSensitive, inverted);
+            case 3:
+                return new ContainsFilenameFilter(s, caseSensitive, inverted);
+            case 4:
+                return new ExtensionFilenameFilter(new String[]{"."+s, getString(random, 3)}, caseSensitive, inverted);
+            case 5:
+                String regexp = s.replace(".", "\\.");
+                if(random.nextBoolean())
+                    regexp = ".*"+regexp;
+                if(random.nextBoolean())
+                    regexp = regexp+".*";
+                return new RegexpFilenameFilter(regexp, caseSensitive, inverted);
+            default:
+                return new RegexpFilenameFilter("[aA].*"+s.replace(".", "\\."), caseSensitive, inverted);
+        }
+    }
+
+    private static FileFilter getFilter(Random random) {
+        switch(random.nextInt(4)) {
+            case 0:
+                return getFilenameFilter(random);
+            case 1:
+                return new OrFileFilter(getFilenameFilter(random), getFilenameFilter(random));
+            default:
+                AndFileFilter filter = new AndFileFilter(random.nextInt(6)==0);
+                if(random.nextBoolean())
+                    filter.addFileFilter(new AttributeFileFilter(FileAttribute.DIRECTORY, random.nextBoolean()));
+                for(int i=random.nextInt(3); i>0; i--)
+                    filter.addFileFilter(getFilenameFilter(random));
+                if(random.nextInt(4)==0)
+                    filter.addFileFilter(new AndFileFilter(getFilenameFilter(random)));
+                return filter;
+        }
+    }
+
+    /**
+     * Asserts that the compiled filter finds the same filter as evaluating each filter in turn, for random filters
+     * and filenames.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testRandomFilters() throws MalformedURLException {
+        Random random = new Random(0);
+
+        List<AbstractFile> files = new ArrayList<AbstractFile>();
+        for(int i=0; i<500; i++)
+            files.add(getFile(getString(random, 6)));
+        AbstractFile fileArray[] = files.toArray(new AbstractFile[files.size()]);
+
+        for(int run=0; run<200; run++) {
+            FileFilter filters[] = new FileFilter[random.nextInt(20)];
+            for(int i=0; i<filters.length; i++)
+                filters[i] = getFilter(random);
+
+            CompiledFileFilter compiledFilter = new CompiledFileFilter(filters);
+            int indexes[] = compiledFilter.indexOf(fileArray);
+            for(int i=0; i<fileArray.length; i++) {
+                int expected = indexOf(filters, fileArray[i]);
+                assertEquals(indexes[i], expected, fileArray[i].getName());
+                assertEquals(compiledFilter.indexOf(fileArray[i]), expected, fileArray[i].getName());
+                assertEquals(compiledFilter.match(fileArray[i]), expected!=-1);
+            }
+        }
+    }
+
+    /**
+     * Asserts that the first matching filter is found, regardless of the kind of filters that match.
+     *
+     * @throws MalformedURLException should not happen
+     */
+    @Test
+    public void testFirstMatch() throws MalformedURLException {
+        CompiledFileFilter filter = new CompiledFileFilter(
+            new AndFileFilter(new RegexpFilenameFilter(".*\\.zip", false), new AttributeFileFilter(FileAttribute.DIRECTORY)),
+            new ExtensionFilenameFilter(new String[]{".zip", ".jar"}),
+            new StartsWithFilenameFilter("read", true),
+            new AttributeFileFilter(FileAttribute.DIRECTORY),
+            new ContainsFilenameFilter("og", false),
+            new PassThroughFileFilter());
+
+        assertEquals(filter.getFilterCount(), 6);
+        assertEquals(filter.indexOf(getFile("archive.ZIP")), 1);
+        assertEquals(filter.indexOf(getFile("readme.jar")), 1);
+        assertEquals(filter.indexOf(getFile("readme.txt")), 2);
+        assertEquals(filter.indexOf(getFile("README.txt")), 5);
+        assertEquals(filter.indexOf(getFile("folder")), 3);
+        assertEquals(filter.indexOf(getFile("LOG.txt")), 4);
+
+        assertEquals(new CompiledFileFilter().indexOf(getFile("file.txt")), -1);
+    }
+}
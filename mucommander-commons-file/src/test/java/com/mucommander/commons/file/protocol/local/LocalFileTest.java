@@ -23,10 +23,14 @@ import com.mucommander.commons.file.AbstractFileTest;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.protocol.local.LocalFile;
+import com.mucommander.commons.io.ChecksumInputStream;
+import com.mucommander.commons.io.CounterInputStream;
+import com.mucommander.commons.io.ThroughputLimitInputStream;
 
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.regex.Matcher;
 
@@ -157,6 +161,20 @@ public class LocalFileTest extends AbstractFileTest {
             testVolume(volume);
     }
 
+    /**
+     * Asserts that {@link LocalFile#getMountPoint(String)} returns a parent of the given path, which is its own mount
+     * point.
+     */
+    @Test
+    public void testMountPoint() {
+        String path = tempFile.getAbsolutePath(true);
+        String mountPoint = LocalFile.getMountPoint(path);
+
+        assert mountPoint.endsWith(LocalFile.SEPARATOR);
+        assert path.startsWith(mountPoint);
+        assert mountPoint.equals(LocalFile.getMountPoint(mountPoint));
+    }
+
     /**
      * Tests the regex pattern
      */
@@ -176,4 +194,54 @@ public class LocalFileTest extends AbstractFileTest {
         matcher = LocalFile.DRIVE_ROOT_PATTERN.matcher("/blah/C:\\");
         assert !matcher.matches();
     }
+
+    /**
+     * Asserts that {@link LocalFile#copyStream(java.io.InputStream, boolean, long)} transfers the contents of a local
+     * file stream through channel transfers, with bytes being accounted for by the counter and throughput limit streams
+     * the stream is wrapped into.
+     *
+     * @throws IOException should not happen
+     * @throws NoSuchAlgorithmException should not happen
+     */
+    @Test
+    public void testCopyStreamChannelTransfer() throws IOException, NoSuchAlgorithmException {
+        String md5 = createFile(tempFile, 100000);
+        AbstractFile destFile = deleteWhenFinished(getTemporaryFile());
+
+        CounterInputStream in = new CounterInputStream(new ThroughputLimitInputStream(tempFile.getInputStream()));
+        assert in.isChannelTransferSupported();
+        try {
+            destFile.copyStream(in, false, tempFile.getSize());
+        }
+        finally {
+            in.close();
+        }
+
+        assert md5.equals(calculateMd5(destFile));
+        assert in.getCounter().getByteCount() == 100000;
+
+        // Append the source file to the destination and assert that its size has doubled
+        in = new CounterInputStream(tempFile.getInputStream());
+        try {
+            destFile.copyStream(in, true, tempFile.getSize());
+        }
+        finally {
+            in.close();
+        }
+
+        assert destFile.getSize() == 200000;
+        assert in.getCounter().getByteCount() == 100000;
+
+        // A stream that does not support channel transfers must still be copied
+        in = new CounterInputStream(new ChecksumInputStream(tempFile.getInputStream(), MessageDigest.getInstance("md5")));
+        assert !in.isChannelTransferSupported();
+        try {
+            destFile.copyStream(in, false, tempFile.getSize());
+        }
+        finally {
+            in.close();
+        }
+
+        assert md5.equals(calculateMd5(destFile));
+    }
 }
@@ -0,0 +1,203 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.search;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on {@link FileSearch}, {@link LiteralContentMatcher} and {@link RegexpContentMatcher}.
+ */
+public class FileSearchTest {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private AbstractFile root;
+
+    @BeforeMethod
+    public void createTree() throws IOException {
+        root = FileFactory.getTemporaryFile(FileSearchTest.class.getName(), false);
+        root.mkdir();
+    }
+
+    @AfterMethod
+    public void deleteTree() throws IOException {
+        root.deleteRecursively();
+    }
+
+    /**
+     * Returns text made of random lines, the given string being inserted at the given offset.
+     */
+    private static byte[] getData(int length, String s, int offset) {
+        Random random = new Random(length);
+        byte data[] = new byte[length];
+        for(int i=0; i<length; i++)
+            data[i] = (byte)(random.nextInt(40)==0?'\n':'a'+random.nextInt(3));
+
+        if(s!=null)
+            System.arraycopy(s.getBytes(UTF8), 0, data, offset, s.length());
+
+        return data;
+    }
+
+    private static AbstractFile createFile(AbstractFile parent, String name, byte data[]) throws IOException {
+        AbstractFile file = parent.getChild(name);
+        OutputStream out = file.getOutputStream();
+        try {
+            out.write(data);
+        }
+        finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * Searches the given data split in ranges of the given size, the way FileSearch does.
+     */
+    private static boolean find(ContentMatcher matcher, byte data[], int rangeSize) {
+        for(int start=0; start<data.length; start+=rangeSize) {
+            int bufferStart = Math.max(0, start-1);
+            int end = Math.min(data.length, start+rangeSize);
+            ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOfRange(data, bufferStart, Math.min(data.length, end+matcher.getOverlap())));
+            if(matcher.find(buffer, start-bufferStart, end-bufferStart))
+                return true;
+        }
+
+        return false;
+    }
+
+    private static Set<AbstractFile> search(AbstractFile root, ContentMatcher matcher) {
+        final Set<AbstractFile> results = Collections.synchronizedSet(new HashSet<AbstractFile>());
+        FileSearch search = new FileSearch(new AbstractFile[]{root}, new ExtensionFilenameFilter(".log"), matcher, false, new FileSearchListener() {
+            public void fileFound(FileSearch search, AbstractFile file) {
+                results.add(file);
+            }
+
+            public void searchFinished(FileSearch search) {
+            }
+        });
+
+        search.start();
+        search.join();
+        assertTrue(search.isFinished());
+
+        return results;
+    }
+
+    /**
+     * Asserts that a string is found wherever it is, including across ranges, and with or without case.
+     */
+    @Test
+    public void testLiteral() {
+        ContentMatcher matcher = new LiteralContentMatcher("needle", UTF8, true);
+        ContentMatcher caseInsensitiveMatcher = new LiteralContentMatcher("NeedLE", UTF8, false);
+
+        for(int offset : new int[]{0, 1, 95, 98, 99, 100, 101, 994}) {
+            byte data[] = getData(1000, "needle", offset);
+            for(int rangeSize : new int[]{1, 7, 100, 1000}) {
+                assertTrue(find(matcher, data, rangeSize), offset+" "+rangeSize);
+                assertTrue(find(caseInsensitiveMatcher, data, rangeSize), offset+" "+rangeSize);
+            }
+        }
+
+        byte data[] = getData(1000, "needl", 994);
+        assertFalse(find(matcher, data, 100));
+        assertFalse(find(new LiteralContentMatcher("NEEDLE", UTF8, true), getData(1000, "needle", 10), 100));
+    }
+
+    /**
+     * Asserts that a regular expression is matched against each line, including lines that straddle two ranges.
+     */
+    @Test
+    public void testRegexp() {
+        ContentMatcher matcher = new RegexpContentMatcher("^x+y{2}$", UTF8, true);
+
+        for(int offset : new int[]{0, 95, 100, 150, 994}) {
+            byte data[] = getData(1000, "\nxxyy\n", offset);
+            for(int rangeSize : new int[]{1, 3, 100, 1000})
+                assertTrue(find(matcher, data, rangeSize), offset+" "+rangeSize);
+        }
+
+        // Matches do not span lines
+        assertFalse(find(matcher, getData(1000, "\nxx\nyy\n", 500), 100));
+        assertFalse(find(matcher, getData(1000, "\nxxyya\n", 500), 100));
+        assertTrue(find(new RegexpContentMatcher("XXYY", UTF8, false), getData(1000, "\nxxyya\n", 500), 100));
+    }
+
+    /**
+     * Asserts that files are found by name and contents, whether they are read as a stream or mapped.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testSearch() throws IOException {
+        AbstractFile folder = root.getChild("folder");
+        folder.mkdir();
+
+        // Small files are read at once, mid-sized ones in several reads, large ones are mapped
+        AbstractFile small = createFile(root, "small.log", getData(1000, "needle", 500));
+        AbstractFile midSized = createFile(folder, "mid.log", getData(600*1024, "needle", 256*1024-3));
+        AbstractFile large = createFile(folder, "large.log", getData(3*1024*1024, "needle", 3*1024*1024-10));
+        createFile(folder, "other.log", getData(600*1024, null, 0));
+        createFile(folder, "needle.txt", getData(1000, "needle", 0));
+
+        assertEquals(search(root, new LiteralContentMatcher("needle", UTF8, true)), new HashSet<AbstractFile>(Arrays.asList(small, midSized, large)));
+        assertEquals(search(root, new RegexpContentMatcher("ne+dle", UTF8, true)), new HashSet<AbstractFile>(Arrays.asList(small, midSized, large)));
+        assertEquals(search(root, null).size(), 4);
+    }
+
+    /**
+     * Asserts that a cancelled search stops without reporting any file.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCancel() throws IOException {
+        createFile(root, "small.log", getData(1000, "needle", 500));
+
+        FileSearch search = new FileSearch(new AbstractFile[]{root}, null, null, false, null);
+        search.cancel();
+        search.start();
+        search.join();
+
+        assertTrue(search.isFinished());
+        assertEquals(search.getNbResults(), 0);
+        assertEquals(search.getNbFolders(), 0);
+    }
+}
@@ -197,5 +197,54 @@ public class FileComparatorTest {
         assert B.equals(files[2]);
         assert A.equals(files[3]);
     }
-    
+
+    @Test
+    public void testCompareAttributes() {
+        int criteria[] = {FileComparator.NAME_CRITERION, FileComparator.SIZE_CRITERION, FileComparator.DATE_CRITERION, FileComparator.EXTENSION_CRITERION};
+        for(int criterion : criteria) {
+            for(int i=0; i<8; i++) {
+                FileComparator fc = new FileComparator(criterion, (i&1)!=0, (i&2)!=0);
+                assert fc.isAttributeCriterion();
+
+                for(AbstractFile f1 : files) {
+                    for(AbstractFile f2 : files) {
+                        int expected = Integer.signum(fc.compare(f1, f2));
+                        int actual = Integer.signum(fc.compare(new FilenameCollationKey(f1.getName()), f1.isDirectory(), f1.getSize(), f1.getDate(),
+                                                               new FilenameCollationKey(f2.getName()), f2.isDirectory(), f2.getSize(), f2.getDate()));
+                        assert expected==actual;
+                    }
+                }
+            }
+        }
+
+        assert !new FileComparator(FileComparator.PERMISSIONS_CRITERION, true, true).isAttributeCriterion();
+    }
+
+    @Test
+    public void testCollationKeys() throws Exception {
+        String names[] = {"1", "1a", "2", "10", "010", "a1", "A1", "a01", "a1b2", "a10", "a2", "b", "B", "_b", "-b",
+                          "track 01 - intro.mp3", "Track 1 - Intro.mp3", "track 2.mp3", "track 10.mp3", "\u00e9t\u00e9",
+                          "\u00c9T\u00c9", "ete", "\u00df", "SS", "\u0394elta", "\u03b4elta", "", ".hidden", "a.TXT", "a.txt"};
+
+        AbstractFile nameFiles[] = new AbstractFile[names.length];
+        for(int i=0; i<names.length; i++)
+            nameFiles[i] = new TestFile(FileFactory.getTemporaryFolder() + "dir/" + names[i], false, 0, 0, null);
+
+        FileComparator fc = new FileComparator(FileComparator.NAME_CRITERION, true, false);
+        for(AbstractFile f1 : nameFiles) {
+            for(AbstractFile f2 : nameFiles) {
+                FilenameCollationKey k1 = new FilenameCollationKey(f1.getName());
+                FilenameCollationKey k2 = new FilenameCollationKey(f2.getName());
+
+                assert Integer.signum(fc.compare(f1, f2))==Integer.signum(fc.compare(k1, false, 0, 0, k2, false, 0, 0));
+                assert Integer.signum(k1.compareTo(k2))==-Integer.signum(k2.compareTo(k1));
+            }
+        }
+
+        assert new FilenameCollationKey("1a").compareTo(new FilenameCollationKey("2"))<0;
+        assert new FilenameCollationKey("2").compareTo(new FilenameCollationKey("10"))<0;
+        assert new FilenameCollationKey("a.TXT").compareTo(new FilenameCollationKey("a.txt"))==0;
+        assert new FilenameCollationKey("a.txt").getExtensionKey().compareTo(new FilenameCollationKey("TXT"))==0;
+        assert new FilenameCollationKey("b").getExtensionKey()==null;
+    }
 }
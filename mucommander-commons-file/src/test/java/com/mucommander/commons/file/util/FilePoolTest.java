@@ -0,0 +1,119 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.archive.AbstractArchiveFile;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on {@link FilePool}.
+ */
+public class FilePoolTest {
+
+    private static List<AbstractFile> createFiles(int count) throws IOException {
+        List<AbstractFile> files = new ArrayList<AbstractFile>(count);
+        for(int i=0; i<count; i++)
+            files.add(FileFactory.getTemporaryFolder().getChild("file"+i));
+
+        return files;
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        FilePool pool = new FilePool();
+        AbstractFile file = createFiles(1).get(0);
+
+        assertNull(pool.put(file.getURL(), file));
+        assertSame(pool.get(file.getURL()), file);
+        assertTrue(pool.containsKey(file.getURL()));
+        assertTrue(pool.containsValue(file));
+        assertEquals(pool.size(), 1);
+        assertSame(pool.put(file.getURL(), file), file);
+
+        pool.clear();
+        assertNull(pool.get(file.getURL()));
+        assertFalse(pool.containsKey(file.getURL()));
+        assertEquals(pool.size(), 0);
+    }
+
+    @Test
+    public void testCounters() throws IOException {
+        FilePool pool = new FilePool();
+        AbstractFile file = createFiles(1).get(0);
+
+        pool.get(file.getURL());
+        pool.put(file.getURL(), file);
+        pool.get(file.getURL());
+        pool.get(file.getURL());
+
+        assertEquals(pool.getHitCount(), 2);
+        assertEquals(pool.getMissCount(), 1);
+        assertEquals(pool.getEvictionCount(), 0);
+    }
+
+    /**
+     * Asserts that the pool does not grow past its maximum size, and that recently retrieved files are spared.
+     */
+    @Test
+    public void testMaxSize() throws IOException {
+        FilePool pool = new FilePool(100);
+        List<AbstractFile> files = createFiles(1000);
+
+        AbstractFile retrievedFile = files.get(0);
+        pool.put(retrievedFile.getURL(), retrievedFile);
+        for(AbstractFile file : files.subList(1, files.size())) {
+            pool.get(retrievedFile.getURL());
+            pool.put(file.getURL(), file);
+            assertTrue(pool.size()<=pool.getMaxSize());
+        }
+
+        assertSame(pool.get(retrievedFile.getURL()), retrievedFile);
+        assertTrue(pool.getEvictionCount()>=files.size()-pool.getMaxSize());
+    }
+
+    @Test
+    public void testArchiveFilesNotEvicted() throws IOException {
+        FilePool pool = new FilePool(10);
+        List<AbstractFile> archiveFiles = new ArrayList<AbstractFile>();
+        for(int i=0; i<10; i++) {
+            AbstractFile archiveFile = FileFactory.getTemporaryFolder().getChild("archive"+i+".zip");
+            assertTrue(archiveFile instanceof AbstractArchiveFile);
+            archiveFiles.add(archiveFile);
+            pool.put(archiveFile.getURL(), archiveFile);
+        }
+
+        for(AbstractFile file : createFiles(100))
+            pool.put(file.getURL(), file);
+
+        for(AbstractFile archiveFile : archiveFiles)
+            assertSame(pool.get(archiveFile.getURL()), archiveFile);
+    }
+}
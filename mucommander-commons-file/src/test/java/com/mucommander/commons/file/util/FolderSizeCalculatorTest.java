@@ -0,0 +1,124 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Runs tests on {@link FolderSizeCalculator}.
+ */
+public class FolderSizeCalculatorTest {
+
+    private AbstractFile root;
+
+    @BeforeMethod
+    public void createTree() throws IOException {
+        root = FileFactory.getTemporaryFile(FolderSizeCalculatorTest.class.getName(), false);
+        root.mkdir();
+
+        // 3 levels of 3 folders, each containing 2 files of 10 bytes
+        createFolders(root, 3);
+    }
+
+    @AfterMethod
+    public void deleteTree() throws IOException {
+        root.deleteRecursively();
+        FolderSizeCalculator.clearCache();
+    }
+
+    private static void createFolders(AbstractFile parent, int depth) throws IOException {
+        createFile(parent.getChild("file1"), 10);
+        createFile(parent.getChild("file2"), 10);
+
+        if(depth==0)
+            return;
+
+        for(int i=0; i<3; i++) {
+            AbstractFile folder = parent.getChild("folder"+i);
+            folder.mkdir();
+            createFolders(folder, depth-1);
+        }
+    }
+
+    private static void createFile(AbstractFile file, int size) throws IOException {
+        OutputStream out = file.getOutputStream();
+        try {
+            out.write(new byte[size]);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static FolderSizeCalculator.Totals calculate(AbstractFile file) {
+        FolderSizeCalculator.Totals totals = new FolderSizeCalculator.Totals();
+        FolderSizeCalculator.calculate(file, totals);
+
+        return totals;
+    }
+
+    @Test
+    public void testCalculate() throws IOException {
+        // 1+3+9+27 folders, each containing 2 files
+        FolderSizeCalculator.Totals totals = calculate(root);
+        assertEquals(totals.getNbFolders(), 40);
+        assertEquals(totals.getNbFiles(), 80);
+        assertEquals(totals.getTotalBytes(), 800);
+
+        // Regular files are counted as such
+        totals = calculate(root.getChild("file1"));
+        assertEquals(totals.getNbFolders(), 0);
+        assertEquals(totals.getNbFiles(), 1);
+        assertEquals(totals.getTotalBytes(), 10);
+    }
+
+    @Test
+    public void testChangedFolder() throws IOException {
+        assertEquals(calculate(root).getNbFiles(), 80);
+
+        // Adding a file changes the folder's date, its cached contents must not be used
+        AbstractFile folder = root.getChild("folder1").getChild("folder2");
+        long date = folder.getDate();
+        createFile(folder.getChild("file3"), 5);
+        folder.changeDate(date+2000);
+
+        FolderSizeCalculator.Totals totals = calculate(root);
+        assertEquals(totals.getNbFiles(), 81);
+        assertEquals(totals.getTotalBytes(), 805);
+    }
+
+    @Test
+    public void testCancel() {
+        FolderSizeCalculator.Totals totals = new FolderSizeCalculator.Totals();
+        totals.cancel();
+        FolderSizeCalculator.calculate(root, totals);
+
+        assertEquals(totals.getNbFolders(), 0);
+        assertEquals(totals.getNbFiles(), 0);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on {@link ListingCache}.
+ */
+public class ListingCacheTest {
+
+    @AfterMethod
+    public void reset() {
+        ListingCache.clear();
+        ListingCache.setTtl(ListingCache.DEFAULT_TTL);
+        ListingCache.setMaxFiles(ListingCache.DEFAULT_MAX_FILES);
+    }
+
+    private static AbstractFile getFolder(String name) throws IOException {
+        return FileFactory.getTemporaryFolder().getChild(name);
+    }
+
+    private static AbstractFile[] getChildren(AbstractFile folder, int count) throws IOException {
+        AbstractFile children[] = new AbstractFile[count];
+        for(int i=0; i<count; i++)
+            children[i] = folder.getChild("file"+i);
+
+        return children;
+    }
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        AbstractFile folder = getFolder("folder");
+        AbstractFile children[] = getChildren(folder, 3);
+
+        assertNull(ListingCache.get(folder.getURL()));
+
+        ListingCache.put(folder.getURL(), children, ListingCache.getInvalidationCount());
+        AbstractFile cachedChildren[] = ListingCache.get(folder.getURL());
+        assertNotNull(cachedChildren);
+        assertEquals(cachedChildren, children);
+
+        // Callers must not be able to alter the cached listing
+        cachedChildren[0] = null;
+        assertSame(ListingCache.get(folder.getURL())[0], children[0]);
+
+        assertSame(ListingCache.getFile(children[1].getURL()), children[1]);
+        assertNull(ListingCache.getFile(folder.getChild("missing").getURL()));
+    }
+
+    @Test
+    public void testExpiration() throws IOException, InterruptedException {
+        AbstractFile folder = getFolder("folder");
+        ListingCache.setTtl(50);
+        ListingCache.put(folder.getURL(), getChildren(folder, 1), ListingCache.getInvalidationCount());
+        assertFalse(ListingCache.getListing(folder.getURL()).isExpired());
+
+        Thread.sleep(100);
+
+        // Expired listings are only available through getListing
+        assertNull(ListingCache.get(folder.getURL()));
+        assertNull(ListingCache.getFile(folder.getChild("file0").getURL()));
+        assertTrue(ListingCache.getListing(folder.getURL()).isExpired());
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        AbstractFile folder = getFolder("folder");
+        AbstractFile subfolder = folder.getChild("sub");
+        AbstractFile otherFolder = getFolder("folder2");
+        long invalidationCount = ListingCache.getInvalidationCount();
+        ListingCache.put(folder.getURL(), getChildren(folder, 2), invalidationCount);
+        ListingCache.put(subfolder.getURL(), getChildren(subfolder, 2), invalidationCount);
+        ListingCache.put(otherFolder.getURL(), getChildren(otherFolder, 2), invalidationCount);
+
+        // Invalidating the subfolder affects its parent and itself
+        ListingCache.invalidate(subfolder.getURL());
+        assertNull(ListingCache.get(folder.getURL()));
+        assertNull(ListingCache.get(subfolder.getURL()));
+        assertNotNull(ListingCache.get(otherFolder.getURL()));
+        assertTrue(ListingCache.getInvalidationCount()>invalidationCount);
+
+        // Listings fetched before an invalidation are not cached
+        ListingCache.put(folder.getURL(), getChildren(folder, 2), invalidationCount);
+        assertNull(ListingCache.get(folder.getURL()));
+    }
+
+    @Test
+    public void testMaxFiles() throws IOException {
+        ListingCache.setMaxFiles(5);
+        AbstractFile folder1 = getFolder("folder1");
+        AbstractFile folder2 = getFolder("folder2");
+
+        ListingCache.put(folder1.getURL(), getChildren(folder1, 3), ListingCache.getInvalidationCount());
+        ListingCache.put(folder2.getURL(), getChildren(folder2, 3), ListingCache.getInvalidationCount());
+
+        // The least recently used listing is evicted
+        assertNull(ListingCache.get(folder1.getURL()));
+        assertNotNull(ListingCache.get(folder2.getURL()));
+
+        // Listings larger than the cache are not cached
+        AbstractFile folder3 = getFolder("folder3");
+        ListingCache.put(folder3.getURL(), getChildren(folder3, 6), ListingCache.getInvalidationCount());
+        assertNull(ListingCache.get(folder3.getURL()));
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.TestFile;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+/**
+ * Runs tests on {@link SegmentedInputStream}.
+ */
+public class SegmentedInputStreamTest {
+
+    /**
+     * Asserts that the segments of a range are reassembled in order.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testRead() throws Exception {
+        RangedFile file = new RangedFile(100000, 0);
+
+        assertEquals(readFully(new SegmentedInputStream(file, 0, 100000, 3, 7000)), file.range(0, 100000));
+        assertEquals(readFully(new SegmentedInputStream(file, 12345, 54321, 4, 1000)), file.range(12345, 54321));
+        assertEquals(readFully(new SegmentedInputStream(file, 99999, 1, 4, 1000)), file.range(99999, 1));
+        assertEquals(readFully(new SegmentedInputStream(file, 0, 0, 4, 1000)), new byte[0]);
+    }
+
+    /**
+     * Asserts that a segment whose request fails is requested again from the bytes that were already received, and that
+     * the stream reports an error if it keeps failing.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testRetry() throws Exception {
+        RangedFile file = new RangedFile(50000, SegmentedInputStream.MAX_ATTEMPTS-1);
+        assertEquals(readFully(new SegmentedInputStream(file, 0, 50000, 4, 10000)), file.range(0, 50000));
+
+        file = new RangedFile(50000, SegmentedInputStream.MAX_ATTEMPTS);
+        try {
+            readFully(new SegmentedInputStream(file, 0, 50000, 4, 10000));
+            fail();
+        }
+        catch(IOException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            StreamUtils.copyStream(in, out);
+        }
+        finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A file with random contents, whose ranged requests fail after a few bytes a given number of times.
+     */
+    private static class RangedFile extends TestFile {
+        private final byte[] contents;
+        private final int nbFailuresPerSegment;
+        /** Number of failed requests, by end offset of the requested range (which is the same for all the requests of a segment) */
+        private final ConcurrentMap<Long, AtomicInteger> nbFailures = new ConcurrentHashMap<Long, AtomicInteger>();
+
+        private RangedFile(int size, int nbFailuresPerSegment) throws MalformedURLException {
+            super("/ranged", false, size, 0, null);
+
+            contents = new byte[size];
+            new Random(size).nextBytes(contents);
+            this.nbFailuresPerSegment = nbFailuresPerSegment;
+        }
+
+        private byte[] range(int offset, int length) {
+            byte[] range = new byte[length];
+            System.arraycopy(contents, offset, range, 0, length);
+            return range;
+        }
+
+        @Override
+        public InputStream getInputStream(long offset, final long length) {
+            nbFailures.putIfAbsent(offset+length, new AtomicInteger());
+            final boolean failing = length>1 && nbFailures.get(offset+length).getAndIncrement()<nbFailuresPerSegment;
+            return new ByteArrayInputStream(contents, (int)offset, (int)length) {
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    if(failing && length-available()>=length/2)
+                        return -1;
+                    return super.read(b, off, Math.min(len, 100));
+                }
+            };
+        }
+    }
+}
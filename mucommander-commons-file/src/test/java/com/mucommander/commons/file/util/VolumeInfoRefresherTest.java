@@ -0,0 +1,116 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.TestFile;
+import org.testng.annotations.Test;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs tests on {@link VolumeInfoRefresher}.
+ */
+public class VolumeInfoRefresherTest {
+
+    /**
+     * Asserts that concurrent requests for the same volume share a single query, and that its result is cached.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCoalescing() throws Exception {
+        BlockingVolume volume = new BlockingVolume("/volume/coalescing");
+
+        CompletableFuture<long[]> request = VolumeInfoRefresher.getVolumeInfo(volume);
+        assertSame(VolumeInfoRefresher.getVolumeInfo(volume), request);
+
+        volume.release.countDown();
+        assertEquals(request.get(VolumeInfoRefresher.TIMEOUT, TimeUnit.MILLISECONDS), new long[]{100, 40});
+
+        CompletableFuture<long[]> cachedRequest = VolumeInfoRefresher.getVolumeInfo(volume);
+        assertTrue(cachedRequest.isDone());
+        assertEquals(cachedRequest.get(), new long[]{100, 40});
+        assertEquals(volume.nbQueries.get(), 1);
+    }
+
+    /**
+     * Asserts that requests for a volume that doesn't respond complete after the timeout, and that the volume is not
+     * queried again until it responds.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        BlockingVolume volume = new BlockingVolume("/volume/timeout");
+        try {
+            CompletableFuture<long[]> request = VolumeInfoRefresher.getVolumeInfo(volume);
+            assertEquals(request.get(2*VolumeInfoRefresher.TIMEOUT, TimeUnit.MILLISECONDS), new long[]{-1, -1});
+
+            CompletableFuture<long[]> nextRequest = VolumeInfoRefresher.getVolumeInfo(volume);
+            assertTrue(nextRequest.isDone());
+            assertEquals(nextRequest.get(), new long[]{-1, -1});
+            assertEquals(volume.nbQueries.get(), 1);
+        }
+        finally {
+            volume.release.countDown();
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A volume that does not respond until it is released.
+     */
+    private static class BlockingVolume extends TestFile {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger nbQueries = new AtomicInteger();
+
+        private BlockingVolume(String path) throws MalformedURLException {
+            super(path, true, 0, 0, null);
+        }
+
+        @Override
+        public long getTotalSpace() {
+            nbQueries.incrementAndGet();
+            try {
+                release.await();
+            }
+            catch(InterruptedException e) {
+                // Return right away
+            }
+            return 100;
+        }
+
+        @Override
+        public long getFreeSpace() {
+            return 40;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * ChannelTransferable is implemented by input streams that are able to transfer their content directly to a
+ * {@link WritableByteChannel}, without the data having to be copied to and from a user-space buffer. Streams backed
+ * by a <code>java.nio.channels.FileChannel</code> can for instance rely on <code>FileChannel#transferTo</code>,
+ * which lets the operating system copy the data itself whenever it can.
+ *
+ * <p>Filter streams can implement this interface as well, by delegating to the stream they filter if it is itself
+ * <code>ChannelTransferable</code>. {@link #isChannelTransferSupported()} allows to tell at runtime whether the
+ * whole chain of streams supports channel transfers.</p>
+ *
+ * @see StreamUtils#transferStream(java.io.InputStream, WritableByteChannel, long)
+ */
+public interface ChannelTransferable {
+
+    /**
+     * Returns <code>true</code> if {@link #transferTo(WritableByteChannel, long)} can be used with this stream.
+     * If <code>false</code> is returned, the stream's data must be read using the regular <code>InputStream</code>
+     * methods.
+     *
+     * @return <code>true</code> if {@link #transferTo(WritableByteChannel, long)} can be used with this stream
+     */
+    boolean isChannelTransferSupported();
+
+    /**
+     * Transfers up to <code>count</code> bytes from the current position of this stream to the given channel, and
+     * advances the position of this stream by the number of bytes that have been transferred.
+     * This method must only be called if {@link #isChannelTransferSupported()} returns <code>true</code>.
+     *
+     * @param target the channel to transfer the data to
+     * @param count maximum number of bytes to transfer
+     * @return the number of bytes that have been transferred, possibly <code>0</code>, or <code>-1</code> if the end
+     * of the stream has been reached
+     * @throws IOException if an I/O error occurred while reading from this stream or writing to the channel
+     */
+    long transferTo(WritableByteChannel target, long count) throws IOException;
+}
@@ -20,6 +20,7 @@ package com.mucommander.commons.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * An InputStream that keeps track of the number of bytes that have been read from it. Bytes that are skipped (using
@@ -30,10 +31,13 @@ import java.io.InputStream;
  * ByteCounter instance instead of creating a new one. The ByteCounter will always remain accessible, even
  * after this stream has been closed.
  *
+ * <p>This stream supports {@link ChannelTransferable channel transfers} if the underlying stream does: transferred
+ * bytes are accounted for just like bytes that are read.
+ *
  * @see ByteCounter
  * @author Maxence Bernard
  */
-public class CounterInputStream extends InputStream {
+public class CounterInputStream extends InputStream implements ChannelTransferable {
 
     /** Underlying InputStream */
     private final InputStream in;
@@ -168,4 +172,21 @@ public class CounterInputStream extends InputStream {
     public void reset() throws IOException  {
         in.reset();
     }
+
+
+    ////////////////////////////////////////
+    // ChannelTransferable implementation //
+    ////////////////////////////////////////
+
+    public boolean isChannelTransferSupported() {
+        return in instanceof ChannelTransferable && ((ChannelTransferable)in).isChannelTransferSupported();
+    }
+
+    public long transferTo(WritableByteChannel target, long count) throws IOException {
+        long nbTransferred = ((ChannelTransferable)in).transferTo(target, count);
+        if(nbTransferred>0)
+            counter.add(nbTransferred);
+
+        return nbTransferred;
+    }
 }
@@ -0,0 +1,241 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An InputStream that updates several <code>MessageDigest</code> instances with the data read from an underlying
+ * stream, so that several checksums of a file can be calculated in a single pass.
+ *
+ * <p>When more than one digest is used, the data is passed on in chunks of {@link #CHUNK_SIZE} bytes to digest threads,
+ * each digest being updated by its own thread. This allows the digests to be calculated on separate processors while
+ * the stream is being read. At most {@link #NB_CHUNKS} chunks are waiting to be digested at any time: reads block
+ * when the digests don't keep up.</p>
+ *
+ * <p>The checksums are available once the stream has been read entirely, see {@link #getChecksumStrings()}.</p>
+ *
+ * @see com.mucommander.commons.io.ChecksumInputStream
+ */
+public class MultiDigestInputStream extends FilterInputStream {
+
+    /** Number of bytes passed on to the digest threads at once */
+    public final static int CHUNK_SIZE = 65536;
+
+    /** Maximum number of chunks waiting to be digested */
+    public final static int NB_CHUNKS = 4;
+
+    /** Updates the digests */
+    private final static ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MultiDigestInputStream digester");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** The digests to update */
+    private final MessageDigest digests[];
+
+    /** Completes when the chunks submitted so far have been digested, for each digest */
+    private final CompletableFuture<?> digestTasks[];
+
+    /** Chunks of data passed on to the digest threads, allocated the first time they are used */
+    private final byte chunks[][];
+
+    /** Completes when the corresponding chunk has been digested by all the digests, and can be reused */
+    private final CompletableFuture<?> chunkTasks[];
+
+    /** Index of the chunk being filled */
+    private int chunkIndex;
+
+    /** Number of bytes in the chunk being filled */
+    private int chunkLength;
+
+    /** Holds the byte read by {@link #read()} */
+    private final byte oneByte[] = new byte[1];
+
+    /**
+     * Creates a new MultiDigestInputStream that updates the given digests with the data read from the given stream.
+     *
+     * @param in the underlying stream
+     * @param digests the digests to update
+     */
+    public MultiDigestInputStream(InputStream in, MessageDigest... digests) {
+        super(in);
+
+        this.digests = digests;
+
+        digestTasks = new CompletableFuture<?>[digests.length];
+        for(int i=0; i<digests.length; i++)
+            digestTasks[i] = CompletableFuture.completedFuture(null);
+
+        chunks = new byte[NB_CHUNKS][];
+        chunkTasks = new CompletableFuture<?>[NB_CHUNKS];
+        for(int i=0; i<NB_CHUNKS; i++)
+            chunkTasks[i] = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Updates the digests with the given bytes. A single digest is updated right away in the calling thread.
+     */
+    private void update(byte b[], int off, int len) {
+        if(digests.length==1) {
+            digests[0].update(b, off, len);
+            return;
+        }
+
+        while(len>0) {
+            if(chunks[chunkIndex]==null)
+                chunks[chunkIndex] = new byte[CHUNK_SIZE];
+
+            int nbBytes = Math.min(len, CHUNK_SIZE-chunkLength);
+            System.arraycopy(b, off, chunks[chunkIndex], chunkLength, nbBytes);
+            chunkLength += nbBytes;
+            off += nbBytes;
+            len -= nbBytes;
+
+            if(chunkLength==CHUNK_SIZE)
+                submitChunk();
+        }
+    }
+
+    /**
+     * Submits the chunk being filled to the digest threads, and waits until the next chunk can be filled.
+     */
+    private void submitChunk() {
+        if(chunkLength==0)
+            return;
+
+        final byte chunk[] = chunks[chunkIndex];
+        final int length = chunkLength;
+
+        for(int i=0; i<digests.length; i++) {
+            final MessageDigest digest = digests[i];
+            // Chaining the updates of a digest guarantees that the chunks are digested in order
+            digestTasks[i] = digestTasks[i].thenRunAsync(new Runnable() {
+                public void run() {
+                    digest.update(chunk, 0, length);
+                }
+            }, EXECUTOR);
+        }
+
+        chunkTasks[chunkIndex] = CompletableFuture.allOf(digestTasks);
+
+        chunkIndex = (chunkIndex+1)%NB_CHUNKS;
+        chunkLength = 0;
+
+        chunkTasks[chunkIndex].join();
+    }
+
+    /**
+     * Returns the digests, once all the data read so far has been digested.
+     *
+     * @return the digests, in the order they were specified to the constructor
+     */
+    public MessageDigest[] getMessageDigests() {
+        submitChunk();
+        CompletableFuture.allOf(digestTasks).join();
+
+        return digests;
+    }
+
+    /**
+     * Returns the checksums of the data read so far, expressed as hexadecimal strings. The digests are reset by this
+     * method.
+     *
+     * @return the checksums of the data read so far, in the order the digests were specified to the constructor
+     */
+    public String[] getChecksumStrings() {
+        MessageDigest digests[] = getMessageDigests();
+
+        String checksums[] = new String[digests.length];
+        for(int i=0; i<digests.length; i++)
+            checksums[i] = ByteUtils.toHexString(digests[i].digest());
+
+        return checksums;
+    }
+
+
+    ////////////////////////////////////////
+    // FilterInputStream method overrides //
+    ////////////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if(b!=-1) {
+            oneByte[0] = (byte)b;
+            update(oneByte, 0, 1);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        int nbRead = in.read(b, off, len);
+        if(nbRead>0)
+            update(b, off, nbRead);
+
+        return nbRead;
+    }
+
+    /**
+     * Skips bytes by reading them, so that they are digested.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if(n<=0)
+            return 0;
+
+        byte buffer[] = new byte[(int)Math.min(n, CHUNK_SIZE)];
+        long nbSkipped = 0;
+        while(nbSkipped<n) {
+            int nbRead = read(buffer, 0, (int)Math.min(n-nbSkipped, buffer.length));
+            if(nbRead==-1)
+                break;
+
+            nbSkipped += nbRead;
+        }
+
+        return nbSkipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
+
+/**
+ * ParallelDeflaterOutputStream compresses data in the raw DEFLATE format (RFC 1951), using several threads.
+ *
+ * <p>The data is split into blocks of {@link #DEFAULT_BLOCK_SIZE} bytes which are compressed independently of each
+ * other by the tasks of an <code>Executor</code>. The compressed blocks are written to the underlying stream in order,
+ * by the thread that writes to this stream. Each block is compressed with the last 32KB of the previous block as
+ * a preset dictionary and all but the last block end with a sync flush, so that the concatenated blocks form a single
+ * valid DEFLATE stream which compresses almost as well as a sequential one. This is the approach taken by
+ * <code>pigz</code>.</p>
+ *
+ * <p>At most <code>nbThreads</code> blocks are compressed at once: when as many blocks are in flight, writing to this
+ * stream waits for the oldest one to be compressed and written, which caps the memory used by the stream.</p>
+ *
+ * @see ParallelGZIPOutputStream
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+
+    /** Default size of the blocks that are compressed independently, in bytes */
+    public final static int DEFAULT_BLOCK_SIZE = 128*1024;
+
+    /** Size of the DEFLATE window, i.e. the maximum size of a preset dictionary */
+    private final static int DICTIONARY_SIZE = 32*1024;
+
+    /** The underlying stream the compressed data is written to */
+    protected OutputStream out;
+
+    /** Compression level of the deflaters */
+    private final int level;
+    /** Maximum number of blocks compressed at once */
+    private final int nbThreads;
+    /** Executes the compression tasks */
+    private final Executor executor;
+    /** Size of the blocks that are compressed independently */
+    private final int blockSize;
+
+    /** The block being filled */
+    private byte block[];
+    /** Number of bytes in the block being filled */
+    private int blockLength;
+    /** The previous block, which primes the dictionary of the block being filled, null for the first block */
+    private byte previousBlock[];
+    /** Number of bytes in the previous block */
+    private int previousBlockLength;
+
+    /** Blocks being compressed, in the order they must be written */
+    private final LinkedList<FutureTask<ByteArrayOutputStream>> blocksInFlight = new LinkedList<FutureTask<ByteArrayOutputStream>>();
+    /** Deflaters that are not used by a compression task at the moment */
+    private final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    /** Number of uncompressed bytes written so far */
+    private long totalIn;
+    /** Number of compressed bytes written to the underlying stream so far */
+    private long totalOut;
+    /** True once the compressed stream has been completed */
+    private boolean finished;
+
+
+    /**
+     * Creates a new <code>ParallelDeflaterOutputStream</code> using blocks of {@link #DEFAULT_BLOCK_SIZE} bytes.
+     *
+     * @param out the stream the compressed data is written to
+     * @param level the compression level, between 0 and 9, or <code>Deflater.DEFAULT_COMPRESSION</code>
+     * @param nbThreads the maximum number of blocks to compress at once
+     * @param executor executes the compression tasks
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int nbThreads, Executor executor) {
+        this(out, level, nbThreads, executor, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new <code>ParallelDeflaterOutputStream</code>.
+     *
+     * @param out the stream the compressed data is written to
+     * @param level the compression level, between 0 and 9, or <code>Deflater.DEFAULT_COMPRESSION</code>
+     * @param nbThreads the maximum number of blocks to compress at once
+     * @param executor executes the compression tasks
+     * @param blockSize size of the blocks that are compressed independently, in bytes. Blocks smaller than 32KB make
+     * the dictionary less effective and hurt the compression ratio.
+     * @throws IllegalArgumentException if the level, the number of threads or the block size is invalid
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, int nbThreads, Executor executor, int blockSize) {
+        if(level<Deflater.DEFAULT_COMPRESSION || level>Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level: "+level);
+        if(nbThreads<1)
+            throw new IllegalArgumentException("Invalid number of threads: "+nbThreads);
+        if(blockSize<1)
+            throw new IllegalArgumentException("Invalid block size: "+blockSize);
+
+        this.out = out;
+        this.level = level;
+        this.nbThreads = nbThreads;
+        this.executor = executor;
+        this.blockSize = blockSize;
+
+        block = new byte[blockSize];
+    }
+
+    /**
+     * Returns the number of uncompressed bytes written to this stream so far.
+     *
+     * @return the number of uncompressed bytes written to this stream so far
+     */
+    public long getTotalIn() {
+        return totalIn;
+    }
+
+    /**
+     * Returns the number of compressed bytes written to the underlying stream so far. The value is final only once
+     * {@link #finish()} has been called.
+     *
+     * @return the number of compressed bytes written to the underlying stream so far
+     */
+    public long getTotalOut() {
+        return totalOut;
+    }
+
+    /**
+     * Compresses the remaining data and writes it to the underlying stream, without closing it. This method has no
+     * effect if the stream has already been finished. No data may be written after this method has been called.
+     *
+     * @throws IOException if an error occurred while compressing or writing the data
+     */
+    public void finish() throws IOException {
+        if(finished)
+            return;
+
+        try {
+            submitBlock(true);
+
+            while(!blocksInFlight.isEmpty())
+                writeOldestBlock();
+        }
+        finally {
+            finished = true;
+            block = null;
+            previousBlock = null;
+
+            // Let the tasks that may still be running (after a failure) finish before releasing the deflaters
+            for(FutureTask<ByteArrayOutputStream> task : blocksInFlight) {
+                try { task.get(); }
+                catch(Exception e) {
+                    // Not much we can do about it
+                }
+            }
+            blocksInFlight.clear();
+
+            Deflater deflater;
+            while((deflater=deflaters.poll())!=null)
+                deflater.end();
+        }
+    }
+
+    /**
+     * Submits the block being filled for compression and starts a new one. If the maximum number of blocks are
+     * already in flight, the oldest one is written first.
+     *
+     * @param last true if this is the last block of the stream
+     * @throws IOException if an error occurred while writing the oldest block
+     */
+    private void submitBlock(boolean last) throws IOException {
+        if(blocksInFlight.size()>=nbThreads)
+            writeOldestBlock();
+
+        FutureTask<ByteArrayOutputStream> task = new FutureTask<ByteArrayOutputStream>(
+                new BlockCompressor(block, blockLength, previousBlock, previousBlockLength, last));
+        blocksInFlight.add(task);
+        executor.execute(task);
+
+        previousBlock = block;
+        previousBlockLength = blockLength;
+        block = last?null:new byte[blockSize];
+        blockLength = 0;
+    }
+
+    /**
+     * Waits for the oldest block in flight to be compressed and writes it to the underlying stream.
+     *
+     * @throws IOException if the block could not be compressed or written
+     */
+    private void writeOldestBlock() throws IOException {
+        ByteArrayOutputStream compressed;
+        try {
+            compressed = blocksInFlight.getFirst().get();
+        }
+        catch(InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            throw new IOException(cause);
+        }
+
+        blocksInFlight.removeFirst();
+        compressed.writeTo(out);
+        totalOut += compressed.size();
+    }
+
+    /**
+     * Returns a deflater that is not used by any other task, creating one if needed.
+     */
+    private Deflater getDeflater() {
+        Deflater deflater = deflaters.poll();
+        if(deflater==null)
+            deflater = new Deflater(level, true);
+
+        return deflater;
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte b[], int off, int len) throws IOException {
+        if(finished)
+            throw new IOException("Stream finished");
+
+        totalIn += len;
+
+        while(len>0) {
+            // A full block is only submitted once more data comes in, so that finish() can mark the last block
+            if(blockLength==blockSize)
+                submitBlock(false);
+
+            int nbBytes = Math.min(len, blockSize-blockLength);
+            System.arraycopy(b, off, block, blockLength, nbBytes);
+            blockLength += nbBytes;
+            off += nbBytes;
+            len -= nbBytes;
+        }
+    }
+
+    /**
+     * Flushes the underlying stream. The data of the block being filled is not compressed until the block is full
+     * or the stream is finished.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Finishes the compressed stream and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Compresses a block into a standalone DEFLATE segment, using the end of the previous block as a dictionary.
+     */
+    private class BlockCompressor implements Callable<ByteArrayOutputStream> {
+
+        private final byte data[];
+        private final int length;
+        private final byte dictionary[];
+        private final int dictionaryLength;
+        private final boolean last;
+
+        private BlockCompressor(byte data[], int length, byte dictionary[], int dictionaryLength, boolean last) {
+            this.data = data;
+            this.length = length;
+            this.dictionary = dictionary;
+            this.dictionaryLength = dictionaryLength;
+            this.last = last;
+        }
+
+        public ByteArrayOutputStream call() {
+            Deflater deflater = getDeflater();
+            try {
+                if(dictionary!=null) {
+                    int size = Math.min(dictionaryLength, DICTIONARY_SIZE);
+                    deflater.setDictionary(dictionary, dictionaryLength-size, size);
+                }
+
+                deflater.setInput(data, 0, length);
+
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(length/2+64);
+                byte buf[] = new byte[8192];
+                int len;
+                if(last) {
+                    deflater.finish();
+                    while(!deflater.finished()) {
+                        len = deflater.deflate(buf, 0, buf.length);
+                        compressed.write(buf, 0, len);
+                    }
+                }
+                else {
+                    // A sync flush ends the segment on a byte boundary; a full output buffer means there is more
+                    do {
+                        len = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buf, 0, len);
+                    }
+                    while(len==buf.length);
+                }
+
+                return compressed;
+            }
+            finally {
+                deflater.reset();
+                deflaters.add(deflater);
+            }
+        }
+    }
+}
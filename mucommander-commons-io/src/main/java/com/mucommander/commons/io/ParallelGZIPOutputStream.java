@@ -0,0 +1,95 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * ParallelGZIPOutputStream writes data in the GZIP format, compressing it on several threads as described in
+ * {@link ParallelDeflaterOutputStream}. The output can be read by any GZIP decompressor, including
+ * <code>java.util.zip.GZIPInputStream</code>.
+ *
+ * <p>The CRC32 checksum of the data is calculated by the thread that writes to this stream, as it is much cheaper
+ * than the compression itself.</p>
+ */
+public class ParallelGZIPOutputStream extends ParallelDeflaterOutputStream {
+
+    /** GZIP header: magic number, DEFLATE method, no flags, no modification time, no extra flags, unknown OS */
+    private final static byte HEADER[] = {
+        (byte)0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff
+    };
+
+    /** Checksum of the uncompressed data */
+    private final CRC32 crc = new CRC32();
+
+    /** True once the GZIP trailer has been written */
+    private boolean trailerWritten;
+
+
+    /**
+     * Creates a new <code>ParallelGZIPOutputStream</code> and writes the GZIP header to the given stream.
+     *
+     * @param out the stream the compressed data is written to
+     * @param level the compression level, between 0 and 9, or <code>Deflater.DEFAULT_COMPRESSION</code>
+     * @param nbThreads the maximum number of blocks to compress at once
+     * @param executor executes the compression tasks
+     * @throws IOException if the header could not be written
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int level, int nbThreads, Executor executor) throws IOException {
+        super(out, level, nbThreads, executor);
+
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(byte b[], int off, int len) throws IOException {
+        super.write(b, off, len);
+        crc.update(b, off, len);
+    }
+
+    /**
+     * Compresses the remaining data and writes it to the underlying stream, followed by the GZIP trailer, without
+     * closing the underlying stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        if(trailerWritten)
+            return;
+
+        // Do not attempt to write the trailer again if compressing the data failed
+        trailerWritten = true;
+        super.finish();
+
+        writeInt(crc.getValue());
+        writeInt(getTotalIn());
+    }
+
+    /**
+     * Writes the 4 lower bytes of the given value in little-endian order.
+     */
+    private void writeInt(long value) throws IOException {
+        out.write((int)value);
+        out.write((int)(value>>8));
+        out.write((int)(value>>16));
+        out.write((int)(value>>24));
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+
+/**
+ * PositionalReadable is implemented by random access streams that are able to read data at a given position without
+ * changing their current offset. Unlike the <code>seek</code>-then-<code>read</code> sequence, positional reads do not
+ * depend on the stream's state, and can thus be performed by several threads at once on the same stream: a single
+ * stream can serve concurrent readers of different parts of a file without any locking. Streams backed by a
+ * <code>java.nio.channels.FileChannel</code> can for instance rely on <code>FileChannel#read(ByteBuffer, long)</code>.
+ *
+ * @see ChannelTransferable
+ */
+public interface PositionalReadable {
+
+    /**
+     * Reads up to <code>len</code> bytes starting at the given position into the byte array. This method does not
+     * change the current offset of the stream and may be called concurrently by several threads.
+     *
+     * @param position the position in the stream where to start reading
+     * @param b the buffer into which the data is read
+     * @param off the start offset in the buffer
+     * @param len the maximum number of bytes to read
+     * @return the number of bytes read, possibly <code>0</code>, or <code>-1</code> if the given position is at or
+     * past the end of the stream
+     * @throws IOException if an I/O error occurred
+     */
+    int read(long position, byte b[], int off, int len) throws IOException;
+}
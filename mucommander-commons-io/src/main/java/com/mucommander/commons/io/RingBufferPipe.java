@@ -0,0 +1,484 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * RingBufferPipe is a bounded pipe between a thread that produces bytes and a thread that consumes them. Unlike
+ * <code>PipedInputStream</code>/<code>PipedOutputStream</code>, it never polls, and unlike an unbounded
+ * <code>CircularByteBuffer</code>, the producer is blocked when the pipe is full, which caps the memory used no matter
+ * how far ahead of the consumer the producer is.
+ *
+ * <p>The bytes are stored in a ring whose capacity is a power of two. The positions of the producer and the consumer
+ * are published through volatile fields: as long as the pipe is neither full nor empty, bytes are written and read
+ * without any locking. A lock is only used to park a thread that waits for room or for data.
+ * The pipe must be used by a single producer thread and a single consumer thread.</p>
+ *
+ * <p>Bytes can be written and read in a blocking way, through {@link #write(byte[], int, int)} and
+ * {@link #read(byte[], int, int)} or the streams returned by {@link #getOutputStream()} and {@link #getInputStream()},
+ * or in a non-blocking way through {@link #offer(byte[], int, int)} and {@link #poll(byte[], int, int)}.
+ * {@link #transferFrom(InputStream)} and {@link #transferTo(OutputStream)} copy bytes from a stream to the ring, or from
+ * the ring to a stream, without any intermediate buffer.</p>
+ *
+ * <p>The producer signals the end of the data with {@link #closeWrite()}, after which the consumer reads the remaining
+ * bytes and then the end of the stream. The consumer may give up with {@link #closeRead()}, after which writes fail.
+ * Either side may {@link #cancel(IOException) cancel} the pipe, after which both sides fail with the given exception.</p>
+ */
+public class RingBufferPipe {
+
+    /** Default capacity of a pipe, in bytes */
+    public final static int DEFAULT_CAPACITY = 65536;
+
+    /** Maximum capacity of a pipe, in bytes */
+    public final static int MAX_CAPACITY = 1<<30;
+
+    /** The ring the bytes are stored in */
+    private final byte buffer[];
+
+    /** Mask that turns a position into an index in the ring */
+    private final int mask;
+
+    /** Number of bytes written so far, only modified by the producer */
+    private volatile long writePosition;
+
+    /** Number of bytes read so far, only modified by the consumer */
+    private volatile long readPosition;
+
+    /** True when the producer has written all its bytes */
+    private volatile boolean writeClosed;
+
+    /** True when the consumer has given up reading */
+    private volatile boolean readClosed;
+
+    /** The exception thrown by both sides after the pipe has been cancelled */
+    private volatile IOException failure;
+
+    /** True while the consumer is waiting for data */
+    private volatile boolean readerWaiting;
+
+    /** True while the producer is waiting for room */
+    private volatile boolean writerWaiting;
+
+    /** Lock the threads wait on */
+    private final Object lock = new Object();
+
+    /** Stream view of the consumer side */
+    private final InputStream in = new PipeInputStream();
+
+    /** Stream view of the producer side */
+    private final OutputStream out = new PipeOutputStream();
+
+    /**
+     * Creates a new pipe with a capacity of {@link #DEFAULT_CAPACITY} bytes.
+     */
+    public RingBufferPipe() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new pipe that holds at least the given number of bytes. The capacity is rounded up to the next power
+     * of two.
+     *
+     * @param capacity the minimum capacity of the pipe, in bytes
+     * @throws IllegalArgumentException if the capacity is not positive or greater than {@link #MAX_CAPACITY}
+     */
+    public RingBufferPipe(int capacity) {
+        if(capacity<=0 || capacity>MAX_CAPACITY)
+            throw new IllegalArgumentException("Invalid capacity: "+capacity);
+
+        int size = capacity==1?1:Integer.highestOneBit(capacity-1)<<1;
+        buffer = new byte[size];
+        mask = size-1;
+    }
+
+    /**
+     * Returns the capacity of this pipe, in bytes.
+     *
+     * @return the capacity of this pipe, in bytes
+     */
+    public int getCapacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Returns the number of bytes that can be read without blocking.
+     *
+     * @return the number of bytes that can be read without blocking
+     */
+    public int getAvailable() {
+        return (int)(writePosition-readPosition);
+    }
+
+    /**
+     * Returns the stream the consumer reads from. Closing it calls {@link #closeRead()}.
+     *
+     * @return the stream the consumer reads from
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Returns the stream the producer writes to. Closing it calls {@link #closeWrite()}.
+     *
+     * @return the stream the producer writes to
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+
+    //////////////
+    // Producer //
+    //////////////
+
+    /**
+     * Writes as many of the given bytes as there is room for, without blocking.
+     *
+     * @param b the bytes to write
+     * @param off offset of the first byte to write
+     * @param len number of bytes to write
+     * @return the number of bytes written, <code>0</code> if the pipe is full
+     * @throws IOException if the pipe has been closed or cancelled
+     */
+    public int offer(byte b[], int off, int len) throws IOException {
+        checkWritable();
+
+        long w = writePosition;
+        int nbBytes = Math.min(len, buffer.length-(int)(w-readPosition));
+        if(nbBytes<=0)
+            return 0;
+
+        int index = (int)w&mask;
+        int firstPart = Math.min(nbBytes, buffer.length-index);
+        System.arraycopy(b, off, buffer, index, firstPart);
+        System.arraycopy(b, off+firstPart, buffer, 0, nbBytes-firstPart);
+
+        writePosition = w+nbBytes;
+        if(readerWaiting)
+            signal();
+
+        return nbBytes;
+    }
+
+    /**
+     * Writes the given bytes, blocking while the pipe is full.
+     *
+     * @param b the bytes to write
+     * @param off offset of the first byte to write
+     * @param len number of bytes to write
+     * @throws IOException if the pipe has been closed or cancelled
+     * @throws InterruptedIOException if the thread was interrupted while waiting for room
+     */
+    public void write(byte b[], int off, int len) throws IOException {
+        while(len>0) {
+            int nbBytes = offer(b, off, len);
+            off += nbBytes;
+            len -= nbBytes;
+
+            if(nbBytes==0)
+                awaitRoom();
+        }
+    }
+
+    /**
+     * Reads bytes from the given stream into the pipe until the end of the stream is reached, blocking while the pipe
+     * is full. The stream is read directly into the ring. The write end of the pipe is not closed by this method.
+     *
+     * @param in the stream to read
+     * @return the number of bytes transferred
+     * @throws IOException if the stream could not be read, or if the pipe has been closed or cancelled
+     */
+    public long transferFrom(InputStream in) throws IOException {
+        long total = 0;
+        while(true) {
+            checkWritable();
+
+            long w = writePosition;
+            int room = buffer.length-(int)(w-readPosition);
+            if(room==0) {
+                awaitRoom();
+                continue;
+            }
+
+            int index = (int)w&mask;
+            int nbRead = in.read(buffer, index, Math.min(room, buffer.length-index));
+            if(nbRead==-1)
+                return total;
+
+            writePosition = w+nbRead;
+            total += nbRead;
+            if(readerWaiting)
+                signal();
+        }
+    }
+
+    /**
+     * Signals the consumer that all bytes have been written: it reads the remaining bytes, then the end of the stream.
+     */
+    public void closeWrite() {
+        writeClosed = true;
+        signal();
+    }
+
+    private void checkWritable() throws IOException {
+        if(failure!=null)
+            throw failure;
+
+        if(readClosed || writeClosed)
+            throw new IOException("Pipe closed");
+    }
+
+    private void awaitRoom() throws IOException {
+        synchronized(lock) {
+            writerWaiting = true;
+            try {
+                while(writePosition-readPosition==buffer.length && !readClosed && !writeClosed && failure==null)
+                    lock.wait();
+            }
+            catch(InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            finally {
+                writerWaiting = false;
+            }
+        }
+    }
+
+
+    //////////////
+    // Consumer //
+    //////////////
+
+    /**
+     * Reads as many bytes as are available, without blocking.
+     *
+     * @param b the array to read the bytes into
+     * @param off offset in the array of the first byte read
+     * @param len maximum number of bytes to read
+     * @return the number of bytes read, <code>0</code> if the pipe is empty, <code>-1</code> if the end of the
+     * stream has been reached
+     * @throws IOException if the pipe has been closed or cancelled
+     */
+    public int poll(byte b[], int off, int len) throws IOException {
+        checkReadable();
+
+        long r = readPosition;
+        int available = (int)(writePosition-r);
+        if(available==0) {
+            // The write position must be read again after the closed flag, as bytes may have been written in between
+            if(writeClosed && writePosition==r)
+                return -1;
+
+            return 0;
+        }
+
+        int nbBytes = Math.min(len, available);
+        int index = (int)r&mask;
+        int firstPart = Math.min(nbBytes, buffer.length-index);
+        System.arraycopy(buffer, index, b, off, firstPart);
+        System.arraycopy(buffer, 0, b, off+firstPart, nbBytes-firstPart);
+
+        readPosition = r+nbBytes;
+        if(writerWaiting)
+            signal();
+
+        return nbBytes;
+    }
+
+    /**
+     * Reads at least one byte, blocking while the pipe is empty.
+     *
+     * @param b the array to read the bytes into
+     * @param off offset in the array of the first byte read
+     * @param len maximum number of bytes to read
+     * @return the number of bytes read, <code>-1</code> if the end of the stream has been reached
+     * @throws IOException if the pipe has been closed or cancelled
+     * @throws InterruptedIOException if the thread was interrupted while waiting for data
+     */
+    public int read(byte b[], int off, int len) throws IOException {
+        if(len==0)
+            return 0;
+
+        while(true) {
+            int nbBytes = poll(b, off, len);
+            if(nbBytes!=0)
+                return nbBytes;
+
+            awaitData();
+        }
+    }
+
+    /**
+     * Writes the bytes of the pipe to the given stream until the end of the stream is reached, blocking while the pipe
+     * is empty. The bytes are written directly from the ring. The given stream is not closed by this method.
+     *
+     * @param out the stream to write to
+     * @return the number of bytes transferred
+     * @throws IOException if the stream could not be written, or if the pipe has been closed or cancelled
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        long total = 0;
+        while(true) {
+            checkReadable();
+
+            long r = readPosition;
+            int available = (int)(writePosition-r);
+            if(available==0) {
+                if(writeClosed && writePosition==r)
+                    return total;
+
+                awaitData();
+                continue;
+            }
+
+            int index = (int)r&mask;
+            int nbBytes = Math.min(available, buffer.length-index);
+            out.write(buffer, index, nbBytes);
+
+            // The bytes are released once they have been written
+            readPosition = r+nbBytes;
+            total += nbBytes;
+            if(writerWaiting)
+                signal();
+        }
+    }
+
+    /**
+     * Signals the producer that no more bytes will be read: subsequent writes fail.
+     */
+    public void closeRead() {
+        readClosed = true;
+        signal();
+    }
+
+    private void checkReadable() throws IOException {
+        if(failure!=null)
+            throw failure;
+
+        if(readClosed)
+            throw new IOException("Pipe closed");
+    }
+
+    private void awaitData() throws IOException {
+        synchronized(lock) {
+            readerWaiting = true;
+            try {
+                while(writePosition==readPosition && !writeClosed && !readClosed && failure==null)
+                    lock.wait();
+            }
+            catch(InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            finally {
+                readerWaiting = false;
+            }
+        }
+    }
+
+
+    ////////////
+    // Common //
+    ////////////
+
+    /**
+     * Cancels the pipe: the producer and the consumer, including a thread that is blocked waiting for room or data,
+     * fail with the given exception. Bytes that have not been read yet are discarded.
+     *
+     * @param failure the exception thrown by both sides of the pipe, <code>null</code> for a generic one
+     */
+    public void cancel(IOException failure) {
+        this.failure = failure==null?new IOException("Pipe cancelled"):failure;
+        signal();
+    }
+
+    /**
+     * Returns <code>true</code> if the consumer has given up reading, see {@link #closeRead()}.
+     *
+     * @return true if the consumer has given up reading
+     */
+    public boolean isReadClosed() {
+        return readClosed;
+    }
+
+    /**
+     * Wakes up the thread waiting on the other side of the pipe, if any.
+     */
+    private void signal() {
+        synchronized(lock) {
+            lock.notifyAll();
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    private class PipeInputStream extends InputStream {
+
+        private final byte oneByte[] = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            return RingBufferPipe.this.read(oneByte, 0, 1)==-1?-1:oneByte[0]&0xFF;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            return RingBufferPipe.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            checkReadable();
+            return getAvailable();
+        }
+
+        @Override
+        public void close() {
+            closeRead();
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        private final byte oneByte[] = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            oneByte[0] = (byte)b;
+            RingBufferPipe.this.write(oneByte, 0, 1);
+        }
+
+        @Override
+        public void write(byte b[], int off, int len) throws IOException {
+            RingBufferPipe.this.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closeWrite();
+        }
+    }
+}
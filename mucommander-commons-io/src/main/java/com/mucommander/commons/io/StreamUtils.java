@@ -19,6 +19,8 @@
 package com.mucommander.commons.io;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * This class provides convenience static methods that operate on streams. All read/write buffers are allocated using
@@ -129,6 +131,54 @@ public class StreamUtils {
         return totalRead;
     }
 
+    /**
+     * Transfers the InputStream's content to the given channel, until the end of the InputStream has been reached.
+     * This method does *not* close any of the given streams.
+     *
+     * <p>If the InputStream is {@link ChannelTransferable} and supports channel transfers, the data is transferred in
+     * chunks of at most <code>chunkSize</code> bytes using {@link ChannelTransferable#transferTo(WritableByteChannel, long)},
+     * which spares the copy to and from a user-space buffer. Transferring chunk by chunk rather than in one go gives
+     * filter streams (e.g. {@link CounterInputStream} or {@link ThroughputLimitInputStream}) a chance to do their
+     * job between each chunk. Otherwise, the InputStream is copied using a {@link BufferPool#getDefaultBufferSize()
+     * default-sized} buffer.</p>
+     *
+     * @param in the InputStream to read from
+     * @param out the channel to write to
+     * @param chunkSize maximum number of bytes to transfer at once
+     * @return the number of bytes that were transferred
+     * @throws FileTransferException if something went wrong while reading from the InputStream or writing to the channel
+     */
+    public static long transferStream(InputStream in, WritableByteChannel out, long chunkSize) throws FileTransferException {
+        long totalTransferred = 0;
+
+        if(in instanceof ChannelTransferable && ((ChannelTransferable)in).isChannelTransferSupported()) {
+            long nbTransferred;
+
+            while(true) {
+                try {
+                    nbTransferred = ((ChannelTransferable)in).transferTo(out, chunkSize);
+                }
+                catch(IOException e) {
+                    // There is no telling whether the source or the destination failed, running out of space
+                    // on the destination being the most likely cause
+                    throw new FileTransferException(FileTransferError.WRITING_DESTINATION, totalTransferred);
+                }
+
+                if(nbTransferred==-1)
+                    return totalTransferred;
+
+                // The stream could not transfer anything: finish the job with a regular copy
+                if(nbTransferred==0)
+                    break;
+
+                totalTransferred += nbTransferred;
+            }
+        }
+
+        // Note: the stream returned by Channels#newOutputStream is not closed as this would close the channel
+        return totalTransferred + copyStream(in, Channels.newOutputStream(out));
+    }
+
     /**
      * This method is a shorthand for {@link #transcode(java.io.InputStream, String, java.io.OutputStream, String, int)}
      * called with a {@link BufferPool#getDefaultBufferSize() default buffer size}.
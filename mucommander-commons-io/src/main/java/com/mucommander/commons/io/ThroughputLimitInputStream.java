@@ -20,6 +20,7 @@ package com.mucommander.commons.io;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * ThroughputLimitInputStream extends InputStream to provide control over the transfer speed and limit it to a specified
@@ -42,9 +43,13 @@ import java.io.InputStream;
  * current second intact and thus the throughput limit stable. This does not hold true if a new ThroughputLimitInputStream
  * is created for each InputStream, the bytes count for the current second starting at 0.  
  *
+ * <p>This stream supports {@link ChannelTransferable channel transfers} if the underlying stream does. The throughput
+ * limit applies to channel transfers the same way it does to reads: transfers are capped to the number of bytes
+ * allowed for the current second, and block when the quota has been reached.
+ *
  * @author Maxence Bernard
  */
-public class ThroughputLimitInputStream extends InputStream {
+public class ThroughputLimitInputStream extends InputStream implements ChannelTransferable {
 
     /** Underlying InputStream */
     private InputStream in;
@@ -277,4 +282,25 @@ public class ThroughputLimitInputStream extends InputStream {
     public boolean markSupported() {
         return in.markSupported();
     }
+
+
+    ////////////////////////////////////////
+    // ChannelTransferable implementation //
+    ////////////////////////////////////////
+
+    public boolean isChannelTransferSupported() {
+        return in instanceof ChannelTransferable && ((ChannelTransferable)in).isChannelTransferSupported();
+    }
+
+    public long transferTo(WritableByteChannel target, long count) throws IOException {
+        // Wait until at least 1 byte is available if a limit is set and try to transfer as many bytes are available
+        // without exceeding the throughput limit or the number specified
+        long nbTransferred = ((ChannelTransferable)in).transferTo(target, bpsLimit>=0?Math.min(getNbAllowedBytes(),count):count);
+
+        // Increase read counter by the number of bytes that have actually been transferred by the underlying stream
+        if(nbTransferred>0)
+            addToLimitCounter(nbTransferred);
+
+        return nbTransferred;
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import com.mucommander.commons.io.security.MuProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * This class is a TestNG test case for {@link MultiDigestInputStream}.
+ */
+public class MultiDigestInputStreamTest {
+
+    private final static String ALGORITHMS[] = {"MD5", "SHA-1", "SHA-256", "CRC32", "Adler32"};
+
+    static {
+        MuProvider.registerProvider();
+    }
+
+    /**
+     * Asserts that the checksums calculated in a single pass match the ones calculated separately, for lengths
+     * around the chunk size and with a mix of single byte and bulk reads.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testChecksums() throws Exception {
+        int lengths[] = {0, 1, MultiDigestInputStream.CHUNK_SIZE-1, MultiDigestInputStream.CHUNK_SIZE,
+                MultiDigestInputStream.CHUNK_SIZE*MultiDigestInputStream.NB_CHUNKS*3+17};
+
+        for(int length : lengths) {
+            byte data[] = new byte[length];
+            new Random(length).nextBytes(data);
+
+            String expected[] = new String[ALGORITHMS.length];
+            MessageDigest digests[] = new MessageDigest[ALGORITHMS.length];
+            for(int i=0; i<ALGORITHMS.length; i++) {
+                MessageDigest digest = MessageDigest.getInstance(ALGORITHMS[i]);
+                expected[i] = ByteUtils.toHexString(digest.digest(data));
+                digests[i] = MessageDigest.getInstance(ALGORITHMS[i]);
+            }
+
+            MultiDigestInputStream in = new MultiDigestInputStream(new ByteArrayInputStream(data), digests);
+            readMixed(in);
+            assertEquals(in.getChecksumStrings(), expected);
+
+            // A single digest is updated by the reading thread
+            in = new MultiDigestInputStream(new ByteArrayInputStream(data), MessageDigest.getInstance(ALGORITHMS[0]));
+            readMixed(in);
+            assertEquals(in.getChecksumStrings()[0], expected[0]);
+        }
+    }
+
+    private static void readMixed(MultiDigestInputStream in) throws IOException {
+        byte buffer[] = new byte[12345];
+        while(true) {
+            if(in.read()==-1 || in.read(buffer)==-1 || in.skip(777)==0)
+                break;
+        }
+    }
+}
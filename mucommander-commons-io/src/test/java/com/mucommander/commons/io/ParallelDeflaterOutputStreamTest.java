@@ -0,0 +1,154 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * This class is a TestNG test case for {@link ParallelDeflaterOutputStream} and {@link ParallelGZIPOutputStream}.
+ */
+public class ParallelDeflaterOutputStreamTest {
+
+    /** Size of the blocks used by the tests, small enough to get many blocks out of little data */
+    private final static int BLOCK_SIZE = 1000;
+
+    private ExecutorService executor;
+
+    @BeforeClass
+    public void createExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    /**
+     * Returns compressible test data: random words taken from a small vocabulary.
+     */
+    private static byte[] getData(int length) {
+        Random random = new Random(length);
+        byte data[] = new byte[length];
+        for(int i=0; i<length; i++)
+            data[i] = (byte)(i%7==6?' ':'a'+random.nextInt(4));
+
+        return data;
+    }
+
+    /**
+     * Writes the given data with writes of various sizes.
+     */
+    private static void write(byte data[], ParallelDeflaterOutputStream out) throws IOException {
+        int off = 0;
+        for(int len=1; off<data.length; len=len*7%3001+1) {
+            len = Math.min(len, data.length-off);
+            out.write(data, off, len);
+            off += len;
+        }
+        out.close();
+    }
+
+    /**
+     * Reads the given stream until its end.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        StreamUtils.copyStream(in, bout);
+        return bout.toByteArray();
+    }
+
+    /**
+     * Asserts that the raw DEFLATE output inflates back to the original data, whether it spans no block, part of
+     * a block, an exact number of blocks or many blocks.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testDeflate() throws IOException {
+        for(int length : new int[]{0, 1, BLOCK_SIZE-1, BLOCK_SIZE, 3*BLOCK_SIZE, 100*BLOCK_SIZE+17}) {
+            byte data[] = getData(length);
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            ParallelDeflaterOutputStream out = new ParallelDeflaterOutputStream(bout, Deflater.DEFAULT_COMPRESSION, 3, executor, BLOCK_SIZE);
+            write(data, out);
+
+            assertEquals(out.getTotalIn(), length);
+            assertEquals(out.getTotalOut(), bout.size());
+            assertEquals(readFully(new InflaterInputStream(new ByteArrayInputStream(bout.toByteArray()), new Inflater(true))), data);
+        }
+    }
+
+    /**
+     * Asserts that the GZIP output can be read by <code>GZIPInputStream</code>, which verifies the checksum and size.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testGZIP() throws IOException {
+        for(int length : new int[]{0, 5*BLOCK_SIZE+1}) {
+            byte data[] = getData(length);
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            write(data, new ParallelGZIPOutputStream(bout, Deflater.BEST_SPEED, 2, executor));
+
+            assertEquals(readFully(new GZIPInputStream(new ByteArrayInputStream(bout.toByteArray()))), data);
+        }
+    }
+
+    /**
+     * Asserts that priming each block with the end of the previous one keeps the compression ratio close to that
+     * of a sequential deflater.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testDictionary() throws IOException {
+        byte data[] = getData(1000000);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        write(data, new ParallelDeflaterOutputStream(bout, Deflater.DEFAULT_COMPRESSION, 4, executor, 64*1024));
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte buf[] = new byte[data.length];
+        int sequentialSize = deflater.deflate(buf);
+        deflater.end();
+
+        assertTrue(bout.size()<sequentialSize*1.01, bout.size()+" vs "+sequentialSize);
+    }
+}
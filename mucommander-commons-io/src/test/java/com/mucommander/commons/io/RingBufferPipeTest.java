@@ -0,0 +1,196 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * This class is a TestNG test case for {@link RingBufferPipe}.
+ */
+public class RingBufferPipeTest {
+
+    /** Maximum time to wait for the other side of the pipe, in seconds */
+    private final static int TIMEOUT = 10;
+
+    /**
+     * Asserts that the capacity is rounded up to a power of two.
+     */
+    @Test
+    public void testCapacity() {
+        assertEquals(new RingBufferPipe(1).getCapacity(), 1);
+        assertEquals(new RingBufferPipe(1000).getCapacity(), 1024);
+        assertEquals(new RingBufferPipe(1024).getCapacity(), 1024);
+        assertEquals(new RingBufferPipe().getCapacity(), RingBufferPipe.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Asserts that data larger than the pipe goes through it intact, with blocking writes and bulk transfers.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testTransfer() throws Exception {
+        final byte data[] = new byte[100000];
+        new Random(0).nextBytes(data);
+
+        // Blocking writes of various sizes, bulk read
+        final RingBufferPipe pipe = new RingBufferPipe(1000);
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(new Runnable() {
+            public void run() {
+                try {
+                    int off = 0;
+                    for(int len=1; off<data.length; len=len*3%2999+1) {
+                        len = Math.min(len, data.length-off);
+                        pipe.write(data, off, len);
+                        off += len;
+                    }
+                    pipe.closeWrite();
+                }
+                catch(IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(pipe.transferTo(out), data.length);
+        assertEquals(out.toByteArray(), data);
+        producer.get(TIMEOUT, TimeUnit.SECONDS);
+
+        // Bulk write, single byte and blocking reads through the stream
+        final RingBufferPipe pipe2 = new RingBufferPipe(777);
+        producer = CompletableFuture.runAsync(new Runnable() {
+            public void run() {
+                try {
+                    pipe2.transferFrom(new ByteArrayInputStream(data));
+                    pipe2.getOutputStream().close();
+                }
+                catch(IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        out = new ByteArrayOutputStream();
+        byte buffer[] = new byte[500];
+        while(true) {
+            int b = pipe2.getInputStream().read();
+            if(b==-1)
+                break;
+            out.write(b);
+
+            int nbRead = pipe2.getInputStream().read(buffer);
+            if(nbRead==-1)
+                break;
+            out.write(buffer, 0, nbRead);
+        }
+        assertEquals(out.toByteArray(), data);
+        producer.get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Asserts that the non-blocking methods return right away when the pipe is full or empty.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testNonBlocking() throws Exception {
+        RingBufferPipe pipe = new RingBufferPipe(4);
+        byte buffer[] = new byte[8];
+
+        assertEquals(pipe.poll(buffer, 0, 8), 0);
+        assertEquals(pipe.offer(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6), 4);
+        assertEquals(pipe.offer(new byte[]{7}, 0, 1), 0);
+        assertEquals(pipe.poll(buffer, 0, 3), 3);
+        assertEquals(pipe.offer(new byte[]{5, 6}, 0, 2), 2);
+        assertEquals(pipe.poll(buffer, 3, 5), 3);
+        assertEquals(buffer, new byte[]{1, 2, 3, 4, 5, 6, 0, 0});
+
+        pipe.closeWrite();
+        assertEquals(pipe.poll(buffer, 0, 8), -1);
+    }
+
+    /**
+     * Asserts that cancelling the pipe wakes up both sides and makes them fail with the given exception, and that
+     * writes fail once the reader has given up.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCancel() throws Exception {
+        final RingBufferPipe pipe = new RingBufferPipe(16);
+        final IOException failure = new IOException("cancelled");
+
+        // The writer blocks on a full pipe
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(new Runnable() {
+            public void run() {
+                try {
+                    pipe.write(new byte[64], 0, 64);
+                }
+                catch(IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        Thread.sleep(100);
+        pipe.cancel(failure);
+
+        try {
+            producer.get(TIMEOUT, TimeUnit.SECONDS);
+            fail();
+        }
+        catch(ExecutionException e) {
+            assertSame(e.getCause().getCause(), failure);
+        }
+
+        try {
+            pipe.read(new byte[1], 0, 1);
+            fail();
+        }
+        catch(IOException e) {
+            assertSame(e, failure);
+        }
+
+        // Writes fail once the reader has given up
+        RingBufferPipe pipe2 = new RingBufferPipe(16);
+        pipe2.getInputStream().close();
+        assertTrue(pipe2.isReadClosed());
+        try {
+            pipe2.write(new byte[1], 0, 1);
+            fail();
+        }
+        catch(IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,556 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IOScheduler runs the background tasks of the application in a few shared, bounded thread pools, rather than in
+ * threads created for each task. Tasks are assigned to a {@link Pool} depending on their nature:
+ * <dl>
+ *   <dt>{@link Pool#INTERACTIVE}</dt><dd>tasks the user is waiting for, such as loading a folder</dd>
+ *   <dt>{@link Pool#BACKGROUND}</dt><dd>long-running tasks, such as file jobs and archive extractions</dd>
+ *   <dt>{@link Pool#HOUSEKEEPING}</dt><dd>short maintenance tasks, such as refreshing volume information</dd>
+ *   <dt>{@link Pool#SUBTASK}</dt><dd>tasks that other tasks wait for, such as fetching the segments of a download or
+ *   extracting an archive entry</dd>
+ * </dl>
+ *
+ * <p>A task must not wait for a task of its own pool: once the pool's threads are all taken by waiting tasks, the
+ * tasks they wait for could never start. Tasks that are waited for are run in the {@link Pool#SUBTASK} pool, and
+ * must not wait for other tasks themselves.</p>
+ *
+ * <p>Within a pool, tasks waiting for a thread are run by order of {@link Priority}, then of submission.</p>
+ *
+ * <p>A task may belong to a <i>realm</i>, typically the server the task accesses. At most
+ * {@link Pool#getRealmConcurrency()} tasks of the same realm run at once in a pool: the other tasks of the realm wait
+ * without holding a thread, so that a slow server cannot use up all the threads of a pool and starve the tasks that
+ * access other servers or local files.</p>
+ *
+ * <p>The number of tasks waiting in each pool and the time they waited are recorded, see {@link #getStatistics(Pool)}.
+ * Threads are daemon platform threads. On JVMs that support virtual threads, setting the
+ * <code>mucommander.io.virtualThreads</code> system property to <code>true</code> runs tasks in virtual threads
+ * instead; the pool bounds still apply.</p>
+ */
+public final class IOScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IOScheduler.class);
+
+    /**
+     * The pools tasks are run in.
+     */
+    public enum Pool {
+        /** Tasks the user is waiting for */
+        INTERACTIVE(8, 3),
+        /** Long-running tasks */
+        BACKGROUND(64, 8),
+        /** Short maintenance tasks */
+        HOUSEKEEPING(4, 2),
+        /** Tasks that tasks of the other pools wait for, which must not wait for other tasks */
+        SUBTASK(64, 8);
+
+        private final int maxThreads;
+        private final int realmConcurrency;
+
+        Pool(int maxThreads, int realmConcurrency) {
+            this.maxThreads = maxThreads;
+            this.realmConcurrency = realmConcurrency;
+        }
+
+        /**
+         * Returns the maximum number of tasks that run at once in this pool.
+         *
+         * @return the maximum number of tasks that run at once in this pool
+         */
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        /**
+         * Returns the maximum number of tasks of the same realm that run at once in this pool.
+         *
+         * @return the maximum number of tasks of the same realm that run at once in this pool
+         */
+        public int getRealmConcurrency() {
+            return realmConcurrency;
+        }
+    }
+
+    /**
+     * The priorities of tasks, in decreasing order.
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    /** Name of the system property that enables virtual threads */
+    public final static String VIRTUAL_THREADS_PROPERTY = "mucommander.io.virtualThreads";
+
+    /** Tasks that wait longer than this number of milliseconds for a thread are logged */
+    private final static long SLOW_WAIT_THRESHOLD = 1000;
+
+    /** Number of seconds after which idle threads are stopped */
+    private final static long KEEP_ALIVE_TIME = 30;
+
+    /** The executors of the pools */
+    private final static Map<Pool, PoolExecutor> EXECUTORS = new EnumMap<Pool, PoolExecutor>(Pool.class);
+
+    /** Runs delayed tasks */
+    private final static ScheduledThreadPoolExecutor TIMER;
+
+    static {
+        for(Pool pool : Pool.values())
+            EXECUTORS.put(pool, new PoolExecutor(pool));
+
+        TIMER = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("IOScheduler-timer", false));
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private IOScheduler() {
+    }
+
+    /**
+     * Runs the given task in the given pool, with a {@link Priority#NORMAL normal} priority and no realm.
+     *
+     * @param pool the pool to run the task in
+     * @param name the name of the task, given to the thread while it runs the task
+     * @param task the task to run
+     * @return a future that completes when the task has run
+     */
+    public static CompletableFuture<Void> execute(Pool pool, String name, Runnable task) {
+        return execute(pool, Priority.NORMAL, null, name, task);
+    }
+
+    /**
+     * Runs the given task in the given pool.
+     *
+     * @param pool the pool to run the task in
+     * @param priority the priority of the task
+     * @param realm the realm of the task, <code>null</code> for none
+     * @param name the name of the task, given to the thread while it runs the task
+     * @param task the task to run
+     * @return a future that completes when the task has run. Cancelling it before the task has started prevents the
+     * task from running.
+     */
+    public static CompletableFuture<Void> execute(Pool pool, Priority priority, String realm, String name, final Runnable task) {
+        return submit(pool, priority, realm, name, new Callable<Void>() {
+            public Void call() {
+                task.run();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Runs the given task in the given pool, and returns a future that completes with its result.
+     *
+     * @param pool the pool to run the task in
+     * @param priority the priority of the task
+     * @param realm the realm of the task, <code>null</code> for none
+     * @param name the name of the task, given to the thread while it runs the task
+     * @param task the task to run
+     * @param <T> the type of the result of the task
+     * @return a future that completes with the result of the task. Cancelling it before the task has started prevents
+     * the task from running.
+     */
+    public static <T> CompletableFuture<T> submit(Pool pool, Priority priority, String realm, String name, Callable<T> task) {
+        ScheduledTask<T> scheduledTask = new ScheduledTask<T>(EXECUTORS.get(pool), priority, realm, name, task);
+        scheduledTask.executor.submit(scheduledTask);
+
+        return scheduledTask.future;
+    }
+
+    /**
+     * Returns an <code>Executor</code> that runs tasks in the given pool, with the given priority and realm. This
+     * allows the pools to be used with <code>CompletableFuture</code> async methods.
+     *
+     * @param pool the pool to run the tasks in
+     * @param priority the priority of the tasks
+     * @param realm the realm of the tasks, <code>null</code> for none
+     * @return an Executor that runs tasks in the given pool
+     */
+    public static Executor getExecutor(final Pool pool, final Priority priority, final String realm) {
+        return new Executor() {
+            public void execute(Runnable task) {
+                IOScheduler.execute(pool, priority, realm, null, task);
+            }
+        };
+    }
+
+    /**
+     * Runs the given task once after the given delay. The task is run by a timer thread that is shared by all
+     * delayed tasks: it must be short and must not block, and should hand any lengthy work over to a pool.
+     *
+     * @param task the task to run
+     * @param delay the delay after which the task is run
+     * @param unit the unit of the delay
+     * @return a future that allows the task to be cancelled
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return TIMER.schedule(task, delay, unit);
+    }
+
+    /**
+     * Runs the given task periodically, with the given delay between the end of an execution and the start of the
+     * next. See {@link #schedule(Runnable, long, TimeUnit)} for the restrictions that apply to the task.
+     *
+     * @param task the task to run
+     * @param initialDelay the delay after which the task is run the first time
+     * @param delay the delay between the end of an execution and the start of the next
+     * @param unit the unit of the delays
+     * @return a future that allows the task to be cancelled
+     */
+    public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        return TIMER.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the given pool.
+     *
+     * @param pool a pool
+     * @return a snapshot of the statistics of the given pool
+     */
+    public static Statistics getStatistics(Pool pool) {
+        return EXECUTORS.get(pool).getStatistics();
+    }
+
+    /**
+     * Returns the thread factory of the pools: a virtual thread factory if enabled and supported by the JVM, a daemon
+     * platform thread factory otherwise.
+     */
+    private static ThreadFactory createThreadFactory(String name) {
+        if(Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            try {
+                // Thread.ofVirtual().name(name, 1).factory(), available in Java 21 and up. The methods are looked up
+                // on the public Thread.Builder interface, the builder's own class is internal to the JDK.
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name+"-", 1L);
+                return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+            }
+            catch(Exception e) {
+                LOGGER.info("Virtual threads are not supported by this JVM, using platform threads");
+            }
+        }
+
+        return new DaemonThreadFactory(name, true);
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A snapshot of the statistics of a pool.
+     */
+    public static class Statistics {
+        private final int queueDepth;
+        private final int activeCount;
+        private final long completedCount;
+        private final long averageWaitTime;
+        private final long maxWaitTime;
+        private final long averageRunTime;
+
+        private Statistics(int queueDepth, int activeCount, long completedCount, long averageWaitTime, long maxWaitTime, long averageRunTime) {
+            this.queueDepth = queueDepth;
+            this.activeCount = activeCount;
+            this.completedCount = completedCount;
+            this.averageWaitTime = averageWaitTime;
+            this.maxWaitTime = maxWaitTime;
+            this.averageRunTime = averageRunTime;
+        }
+
+        /**
+         * Returns the number of tasks that are waiting for a thread, including the tasks that wait for other tasks
+         * of their realm.
+         *
+         * @return the number of tasks that are waiting for a thread
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * Returns the number of tasks that are running.
+         *
+         * @return the number of tasks that are running
+         */
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        /**
+         * Returns the number of tasks that have run so far.
+         *
+         * @return the number of tasks that have run so far
+         */
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * Returns the average time the tasks that have started so far waited for a thread, in milliseconds.
+         *
+         * @return the average time tasks waited for a thread, in milliseconds
+         */
+        public long getAverageWaitTime() {
+            return averageWaitTime;
+        }
+
+        /**
+         * Returns the longest time a task waited for a thread so far, in milliseconds.
+         *
+         * @return the longest time a task waited for a thread, in milliseconds
+         */
+        public long getMaxWaitTime() {
+            return maxWaitTime;
+        }
+
+        /**
+         * Returns the average time the tasks that have run so far took to run, in milliseconds.
+         *
+         * @return the average time tasks took to run, in milliseconds
+         */
+        public long getAverageRunTime() {
+            return averageRunTime;
+        }
+
+        @Override
+        public String toString() {
+            return "queueDepth="+queueDepth+" active="+activeCount+" completed="+completedCount
+                    +" avgWait="+averageWaitTime+"ms maxWait="+maxWaitTime+"ms avgRun="+averageRunTime+"ms";
+        }
+    }
+
+    /**
+     * The executor of a pool, which enforces the concurrency limit of realms and records statistics.
+     */
+    private static class PoolExecutor {
+        private final Pool pool;
+        private final ThreadPoolExecutor executor;
+
+        /** State of the realms that have tasks running or waiting */
+        private final Map<String, RealmState> realms = new HashMap<String, RealmState>();
+        /** Number of tasks waiting for other tasks of their realm */
+        private final AtomicInteger nbRealmWaiting = new AtomicInteger();
+
+        /** Sequence number of the last task submitted, used to run tasks of equal priority in submission order */
+        private final AtomicLong sequence = new AtomicLong();
+
+        private final LongAdder nbStarted = new LongAdder();
+        private final LongAdder nbCompleted = new LongAdder();
+        private final LongAdder totalWaitTime = new LongAdder();
+        private final LongAdder totalRunTime = new LongAdder();
+        private final AtomicLong maxWaitTime = new AtomicLong();
+
+        private PoolExecutor(Pool pool) {
+            this.pool = pool;
+
+            executor = new ThreadPoolExecutor(pool.maxThreads, pool.maxThreads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), createThreadFactory("IOScheduler-"+pool.name().toLowerCase()));
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        private void submit(ScheduledTask<?> task) {
+            if(task.realm!=null) {
+                synchronized(realms) {
+                    RealmState realm = realms.get(task.realm);
+                    if(realm==null) {
+                        realm = new RealmState();
+                        realms.put(task.realm, realm);
+                    }
+
+                    if(realm.nbRunning>=pool.realmConcurrency) {
+                        realm.waiting.add(task);
+                        nbRealmWaiting.incrementAndGet();
+                        return;
+                    }
+
+                    realm.nbRunning++;
+                }
+            }
+
+            executor.execute(task);
+        }
+
+        /**
+         * Called when a task of the given realm has run, to start the next task of the realm, if any.
+         */
+        private void realmTaskDone(String realm) {
+            ScheduledTask<?> next;
+            synchronized(realms) {
+                RealmState state = realms.get(realm);
+                next = state.waiting.poll();
+                if(next==null) {
+                    if(--state.nbRunning==0)
+                        realms.remove(realm);
+                    return;
+                }
+
+                nbRealmWaiting.decrementAndGet();
+            }
+
+            // The task takes over the slot of the task that is done
+            executor.execute(next);
+        }
+
+        private void taskStarted(ScheduledTask<?> task, long waitTime) {
+            nbStarted.increment();
+            totalWaitTime.add(waitTime);
+            maxWaitTime.accumulateAndGet(waitTime, Math::max);
+
+            if(waitTime>SLOW_WAIT_THRESHOLD)
+                LOGGER.debug("Task {} waited {}ms in pool {}: {}", task.name, waitTime, pool, getStatistics());
+        }
+
+        private void taskCompleted(long runTime) {
+            nbCompleted.increment();
+            totalRunTime.add(runTime);
+        }
+
+        private Statistics getStatistics() {
+            long started = nbStarted.sum();
+            long completed = nbCompleted.sum();
+
+            return new Statistics(executor.getQueue().size()+nbRealmWaiting.get(), executor.getActiveCount(), completed,
+                    started==0?0:totalWaitTime.sum()/started, maxWaitTime.get(), completed==0?0:totalRunTime.sum()/completed);
+        }
+    }
+
+    /**
+     * The tasks of a realm that are waiting for other tasks of the realm.
+     */
+    private static class RealmState {
+        private int nbRunning;
+        private final PriorityQueue<ScheduledTask<?>> waiting = new PriorityQueue<ScheduledTask<?>>();
+    }
+
+    /**
+     * A task submitted to a pool.
+     */
+    private static class ScheduledTask<T> implements Runnable, Comparable<ScheduledTask<?>> {
+        private final PoolExecutor executor;
+        private final Priority priority;
+        private final String realm;
+        private final String name;
+        private final Callable<T> callable;
+        private final long sequence;
+        private final long submitTime = System.currentTimeMillis();
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        private ScheduledTask(PoolExecutor executor, Priority priority, String realm, String name, Callable<T> callable) {
+            this.executor = executor;
+            this.priority = priority;
+            this.realm = realm;
+            this.name = name;
+            this.callable = callable;
+            this.sequence = executor.sequence.incrementAndGet();
+        }
+
+        public void run() {
+            try {
+                // The task may have been cancelled while it was waiting
+                if(future.isDone())
+                    return;
+
+                long startTime = System.currentTimeMillis();
+                executor.taskStarted(this, startTime-submitTime);
+
+                Thread thread = Thread.currentThread();
+                String threadName = thread.getName();
+                if(name!=null)
+                    thread.setName(name);
+
+                T result = null;
+                Throwable failure = null;
+                try {
+                    result = callable.call();
+                }
+                catch(Throwable t) {
+                    LOGGER.debug("Task {} failed", name, t);
+                    failure = t;
+                }
+                finally {
+                    if(name!=null)
+                        thread.setName(threadName);
+                }
+
+                // The statistics are up to date by the time the future completes
+                executor.taskCompleted(System.currentTimeMillis()-startTime);
+                if(failure==null)
+                    future.complete(result);
+                else
+                    future.completeExceptionally(failure);
+            }
+            finally {
+                if(realm!=null)
+                    executor.realmTaskDone(realm);
+            }
+        }
+
+        public int compareTo(ScheduledTask<?> task) {
+            int diff = priority.compareTo(task.priority);
+            if(diff!=0)
+                return diff;
+
+            return Long.compare(sequence, task.sequence);
+        }
+    }
+
+    /**
+     * Creates named daemon threads.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final boolean numbered;
+        private final AtomicInteger nbThreads = new AtomicInteger();
+
+        private DaemonThreadFactory(String name, boolean numbered) {
+            this.name = name;
+            this.numbered = numbered;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, numbered?name+"-"+nbThreads.incrementAndGet():name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * IndexSorter sorts arrays of indexes, typically row or element indexes of data stored in parallel arrays, using a
+ * comparator that compares the elements designated by two indexes. This allows to sort such data without allocating
+ * an object per element.
+ *
+ * <p>The sort is a stable merge sort: indexes of equal elements keep their relative order, and already sorted ranges
+ * are detected and left untouched. Large arrays are sorted in parallel in the common {@link ForkJoinPool}, which
+ * requires the comparator to be safe for use by several threads at once.</p>
+ */
+public class IndexSorter {
+
+    /** Ranges shorter than this are sorted by insertion */
+    private final static int INSERTION_SORT_THRESHOLD = 32;
+
+    /** Ranges shorter than this are sorted sequentially */
+    private final static int PARALLEL_SORT_THRESHOLD = 8192;
+
+    /**
+     * Compares the elements designated by two indexes.
+     */
+    public interface IndexComparator {
+
+        /**
+         * Compares the elements designated by the given indexes, following the contract of
+         * {@link java.util.Comparator#compare(Object, Object)}.
+         *
+         * @param index1 index of the first element
+         * @param index2 index of the second element
+         * @return a negative integer, zero, or a positive integer as the first element is less than, equal to, or
+         * greater than the second
+         */
+        int compare(int index1, int index2);
+    }
+
+    /**
+     * Prevents instances of this class from being created.
+     */
+    private IndexSorter() {
+    }
+
+    /**
+     * Sorts the given array of indexes, in the order of the elements they designate.
+     *
+     * @param indexes the indexes to sort
+     * @param comparator compares the elements designated by two indexes
+     */
+    public static void sort(int[] indexes, IndexComparator comparator) {
+        sort(indexes, 0, indexes.length, comparator);
+    }
+
+    /**
+     * Sorts the given range of an array of indexes, in the order of the elements they designate.
+     *
+     * @param indexes the indexes to sort
+     * @param from index of the first element of the range, inclusive
+     * @param to index of the last element of the range, exclusive
+     * @param comparator compares the elements designated by two indexes
+     */
+    public static void sort(int[] indexes, int from, int to, IndexComparator comparator) {
+        if(to-from<2)
+            return;
+
+        int[] buffer = new int[to-from];
+        if(to-from<PARALLEL_SORT_THRESHOLD || ForkJoinPool.getCommonPoolParallelism()<2)
+            mergeSort(indexes, buffer, from, to, from, comparator);
+        else
+            ForkJoinPool.commonPool().invoke(new SortTask(indexes, buffer, from, to, from, comparator));
+    }
+
+    /**
+     * Sorts the given range, using the buffer (whose first element corresponds to <code>offset</code>) to merge.
+     */
+    private static void mergeSort(int[] indexes, int[] buffer, int from, int to, int offset, IndexComparator comparator) {
+        if(to-from<INSERTION_SORT_THRESHOLD) {
+            insertionSort(indexes, from, to, comparator);
+            return;
+        }
+
+        int middle = (from+to)>>>1;
+        mergeSort(indexes, buffer, from, middle, offset, comparator);
+        mergeSort(indexes, buffer, middle, to, offset, comparator);
+        merge(indexes, buffer, from, middle, to, offset, comparator);
+    }
+
+    private static void insertionSort(int[] indexes, int from, int to, IndexComparator comparator) {
+        for(int i=from+1; i<to; i++) {
+            int index = indexes[i];
+            int j = i;
+            while(j>from && comparator.compare(indexes[j-1], index)>0) {
+                indexes[j] = indexes[j-1];
+                j--;
+            }
+            indexes[j] = index;
+        }
+    }
+
+    /**
+     * Merges the sorted ranges <code>[from, middle)</code> and <code>[middle, to)</code>.
+     */
+    private static void merge(int[] indexes, int[] buffer, int from, int middle, int to, int offset, IndexComparator comparator) {
+        // Nothing to do if the ranges are already in order
+        if(comparator.compare(indexes[middle-1], indexes[middle])<=0)
+            return;
+
+        System.arraycopy(indexes, from, buffer, from-offset, middle-from);
+
+        int i = from-offset;        // Next element of the first range, in the buffer
+        int iEnd = middle-offset;
+        int j = middle;             // Next element of the second range, in place
+        int k = from;
+        while(i<iEnd && j<to) {
+            // Elements of the first range go first when equal, which keeps the sort stable
+            if(comparator.compare(indexes[j], buffer[i])<0)
+                indexes[k++] = indexes[j++];
+            else
+                indexes[k++] = buffer[i++];
+        }
+
+        // Remaining elements of the second range are already in place
+        System.arraycopy(buffer, i, indexes, k, iEnd-i);
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * Sorts the two halves of a range in parallel, then merges them.
+     */
+    private static class SortTask extends RecursiveAction {
+        private final int[] indexes;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+        private final int offset;
+        private final IndexComparator comparator;
+
+        private SortTask(int[] indexes, int[] buffer, int from, int to, int offset, IndexComparator comparator) {
+            this.indexes = indexes;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.offset = offset;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from<PARALLEL_SORT_THRESHOLD) {
+                mergeSort(indexes, buffer, from, to, offset, comparator);
+                return;
+            }
+
+            int middle = (from+to)>>>1;
+            invokeAll(new SortTask(indexes, buffer, from, middle, offset, comparator),
+                      new SortTask(indexes, buffer, middle, to, offset, comparator));
+            merge(indexes, buffer, from, middle, to, offset, comparator);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.util;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests the {@link IOScheduler} class.
+ */
+public class IOSchedulerTest {
+
+    /** Maximum time to wait for a task, in seconds */
+    private final static int TIMEOUT = 10;
+
+    /**
+     * Saturates a pool and checks that waiting tasks are run by order of priority, then of submission.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testPriorities() throws Exception {
+        IOScheduler.Pool pool = IOScheduler.Pool.HOUSEKEEPING;
+        List<CountDownLatch> releases = new ArrayList<CountDownLatch>();
+        CountDownLatch started = new CountDownLatch(pool.getMaxThreads());
+        for(int i=0; i<pool.getMaxThreads(); i++) {
+            CountDownLatch release = new CountDownLatch(1);
+            releases.add(release);
+            IOScheduler.execute(pool, "blocker", () -> {
+                started.countDown();
+                await(release);
+            });
+        }
+        started.await(TIMEOUT, TimeUnit.SECONDS);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<CompletableFuture<Void>> tasks = new ArrayList<CompletableFuture<Void>>();
+        tasks.add(IOScheduler.execute(pool, IOScheduler.Priority.LOW, null, null, () -> order.add("low")));
+        tasks.add(IOScheduler.execute(pool, IOScheduler.Priority.NORMAL, null, null, () -> order.add("normal1")));
+        tasks.add(IOScheduler.execute(pool, IOScheduler.Priority.HIGH, null, null, () -> order.add("high")));
+        tasks.add(IOScheduler.execute(pool, IOScheduler.Priority.NORMAL, null, null, () -> order.add("normal2")));
+
+        assertEquals(IOScheduler.getStatistics(pool).getQueueDepth(), tasks.size());
+
+        // A single thread is freed, it runs the waiting tasks one after the other
+        releases.get(0).countDown();
+        for(CompletableFuture<Void> task : tasks)
+            task.get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(order, Arrays.asList("high", "normal1", "normal2", "low"));
+
+        for(CountDownLatch release : releases)
+            release.countDown();
+    }
+
+    /**
+     * Checks that no more than {@link IOScheduler.Pool#getRealmConcurrency()} tasks of a realm run at once, and that
+     * tasks of other realms are not held up by them.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testRealmConcurrency() throws Exception {
+        IOScheduler.Pool pool = IOScheduler.Pool.INTERACTIVE;
+        int nbTasks = pool.getRealmConcurrency()*2;
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(pool.getRealmConcurrency());
+        AtomicInteger nbRunning = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<CompletableFuture<Void>> tasks = new ArrayList<CompletableFuture<Void>>();
+        for(int i=0; i<nbTasks; i++) {
+            tasks.add(IOScheduler.execute(pool, IOScheduler.Priority.NORMAL, "smb://slow", null, () -> {
+                maxRunning.accumulateAndGet(nbRunning.incrementAndGet(), Math::max);
+                started.countDown();
+                await(release);
+                nbRunning.decrementAndGet();
+            }));
+        }
+
+        // A task of another realm runs while the slow realm's tasks are blocked
+        started.await(TIMEOUT, TimeUnit.SECONDS);
+        IOScheduler.execute(pool, IOScheduler.Priority.NORMAL, "file://localhost", null, () -> {}).get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(maxRunning.get(), pool.getRealmConcurrency());
+
+        release.countDown();
+        for(CompletableFuture<Void> task : tasks)
+            task.get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertEquals(maxRunning.get(), pool.getRealmConcurrency());
+        assertTrue(IOScheduler.getStatistics(pool).getCompletedCount()>=nbTasks+1);
+    }
+
+    /**
+     * Saturates the background pool with tasks that each wait for a subtask, and checks that the subtasks run.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testSubtasks() throws Exception {
+        IOScheduler.Pool pool = IOScheduler.Pool.BACKGROUND;
+        List<CompletableFuture<Integer>> tasks = new ArrayList<CompletableFuture<Integer>>();
+        for(int i=0; i<pool.getMaxThreads()*2; i++) {
+            final int value = i;
+            tasks.add(IOScheduler.submit(pool, IOScheduler.Priority.NORMAL, null, null,
+                    () -> IOScheduler.submit(IOScheduler.Pool.SUBTASK, IOScheduler.Priority.NORMAL, null, null, () -> value).get(TIMEOUT, TimeUnit.SECONDS)));
+        }
+
+        for(int i=0; i<tasks.size(); i++)
+            assertEquals(tasks.get(i).get(TIMEOUT, TimeUnit.SECONDS).intValue(), i);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            // Return right away
+        }
+    }
+}
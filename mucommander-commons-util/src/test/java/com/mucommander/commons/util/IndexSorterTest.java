@@ -0,0 +1,81 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.util;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the {@link IndexSorter} class.
+ */
+public class IndexSorterTest {
+    /**
+     * Sorts arrays of various sizes, which values contain many duplicates, and checks that indexes are sorted and
+     * that equal values keep their original order.
+     */
+    @Test
+    public void testSort() {
+        Random random = new Random(0);
+        int sizes[] = {0, 1, 2, 31, 32, 33, 1000, 20000};
+
+        for(int size : sizes) {
+            final int values[] = new int[size];
+            int indexes[] = new int[size];
+            for(int i=0; i<size; i++) {
+                values[i] = random.nextInt(Math.max(1, size/10));
+                indexes[i] = i;
+            }
+
+            IndexSorter.sort(indexes, new IndexSorter.IndexComparator() {
+                public int compare(int index1, int index2) {
+                    return values[index1]-values[index2];
+                }
+            });
+
+            boolean found[] = new boolean[size];
+            for(int i=0; i<size; i++) {
+                assert !found[indexes[i]];
+                found[indexes[i]] = true;
+
+                if(i>0) {
+                    assert values[indexes[i-1]]<=values[indexes[i]];
+                    if(values[indexes[i-1]]==values[indexes[i]])
+                        assert indexes[i-1]<indexes[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts a range of an array and checks that indexes outside of the range are left untouched.
+     */
+    @Test
+    public void testSortRange() {
+        int indexes[] = {9, 8, 7, 6, 5, 4, 3, 2, 1, 0};
+        IndexSorter.sort(indexes, 2, 8, new IndexSorter.IndexComparator() {
+            public int compare(int index1, int index2) {
+                return index1-index2;
+            }
+        });
+
+        assert Arrays.equals(indexes, new int[] {9, 8, 2, 3, 4, 5, 6, 7, 1, 0});
+    }
+}
@@ -38,6 +38,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.filter.AttributeFileFilter;
 import com.mucommander.commons.file.filter.ChainedFileFilter;
+import com.mucommander.commons.file.filter.CompiledFileFilter;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.RegexpFilenameFilter;
 import com.mucommander.io.backup.BackupInputStream;
@@ -82,6 +83,8 @@ public class CommandManager implements CommandBuilder {
     private static final List<CommandAssociation> systemAssociations;
     /** All known file associations. */
     private static final List<CommandAssociation> associations;
+    /** Filters of all associations followed by those of system associations, <code>null</code> until needed. */
+    private static       CompiledFileFilter       associationFilter;
     /** Path to the custom association file, <code>null</code> if the default one should be used. */
     private static       AbstractFile             associationFile;
     /** Whether the associations were modified since the last time they were saved. */
@@ -162,33 +165,44 @@ public class CommandManager implements CommandBuilder {
      */
     public static Command getCommandForFile(AbstractFile file) {return getCommandForFile(file, true);}
 
-    private static Command getCommandForFile(AbstractFile file, Iterator<CommandAssociation> iterator) {
-        CommandAssociation association;
+    /**
+     * Returns the filter that finds the first association, then system association, that matches a file.
+     * <p>
+     * The filter is compiled the first time it is needed after associations have been registered.
+     * </p>
+     * @return the filter that finds the first association that matches a file.
+     */
+    private static synchronized CompiledFileFilter getAssociationFilter() {
+        if(associationFilter == null) {
+            FileFilter[] filters = new FileFilter[associations.size() + systemAssociations.size()];
+            int          i       = 0;
 
-        while(iterator.hasNext())
-            if((association = iterator.next()).accept(file))
-                return association.getCommand();
-        return null;
+            for(CommandAssociation association : associations)
+                filters[i++] = association.getFilter();
+            for(CommandAssociation association : systemAssociations)
+                filters[i++] = association.getFilter();
+
+            associationFilter = new CompiledFileFilter(filters);
+        }
+        return associationFilter;
     }
 
     /**
-     * Returns the command that must be executed to open the specified file.
-     * @param  file         file for which the opening command must be returned.
-     * @param  allowDefault whether to use the default command if none was found to match the specified file.
-     * @return              the command that must be executed to open the specified file, <code>null</code> if not found.
+     * Returns the command of the association at the specified index of the association filter, or the default command.
+     * @param  index        index of the matching association, <code>-1</code> if none matched.
+     * @param  allowDefault whether to use the default command if none was found to match the file.
+     * @return              the command that must be executed to open the file, <code>null</code> if not found.
      */
-    public static Command getCommandForFile(AbstractFile file, boolean allowDefault) {
-        // Goes through all known associations and checks whether file matches any.
-        Command command = getCommandForFile(file, associations.iterator());
-        if(command != null)
-            return command;
-
-        // Goes through all system associations and checks whether file matches any.
-        command = getCommandForFile(file, systemAssociations.iterator());
-        if(command != null)
-            return command;
+    private static Command getCommandForIndex(int index, boolean allowDefault) {
+        // The file matched one of the known associations or of the system associations.
+        if(index != -1) {
+            int nbAssociations = associations.size();
+            if(index < nbAssociations)
+                return associations.get(index).getCommand();
+            return systemAssociations.get(index - nbAssociations).getCommand();
+        }
 
-        // We haven't found a command explicitly associated with 'file',
+        // We haven't found a command explicitly associated with the file,
         // but we might have a generic file opener.
         if(defaultCommand != null)
             return defaultCommand;
@@ -200,6 +214,36 @@ public class CommandManager implements CommandBuilder {
         return null;
     }
 
+    /**
+     * Returns the command that must be executed to open the specified file.
+     * @param  file         file for which the opening command must be returned.
+     * @param  allowDefault whether to use the default command if none was found to match the specified file.
+     * @return              the command that must be executed to open the specified file, <code>null</code> if not found.
+     */
+    public static Command getCommandForFile(AbstractFile file, boolean allowDefault) {
+        // Known associations take precedence over system associations.
+        return getCommandForIndex(getAssociationFilter().indexOf(file), allowDefault);
+    }
+
+    /**
+     * Returns the commands that must be executed to open the specified files.
+     * <p>
+     * This is equivalent to calling {@link #getCommandForFile(AbstractFile,boolean)} for each file, but all files are
+     * matched against the associations in a single pass.
+     * </p>
+     * @param  files        files for which the opening commands must be returned.
+     * @param  allowDefault whether to use the default command if none was found to match a file.
+     * @return              the command that must be executed to open each file, <code>null</code> where not found.
+     */
+    public static Command[] getCommandsForFiles(AbstractFile[] files, boolean allowDefault) {
+        int[]     indexes  = getAssociationFilter().indexOf(files);
+        Command[] commands = new Command[files.length];
+
+        for(int i = 0; i < files.length; i++)
+            commands[i] = getCommandForIndex(indexes[i], allowDefault);
+        return commands;
+    }
+
     /**
      * Returns a sorted collection of all registered commands.
      * @return a sorted collection of all registered commands.
@@ -267,6 +311,7 @@ public class CommandManager implements CommandBuilder {
      */
     public static void registerAssociation(String command, FileFilter filter) throws CommandException {
         associations.add(createAssociation(command, filter));
+        clearAssociationFilter();
     }
     
     private static CommandAssociation createAssociation(String cmd, FileFilter filter) throws CommandException {
@@ -281,8 +326,14 @@ public class CommandManager implements CommandBuilder {
 
     public static void registerDefaultAssociation(String command, FileFilter filter) throws CommandException {
         systemAssociations.add(createAssociation(command, filter));
+        clearAssociationFilter();
     }
 
+    /**
+     * Discards the association filter, so that it is compiled again with the current associations when next needed.
+     */
+    private static synchronized void clearAssociationFilter() {associationFilter = null;}
+
 
 
     // - Command builder code --------------------------------------------------
@@ -69,6 +69,9 @@ public enum MuPreference {
 	WAIT_AFTER_REFRESH(MuPreferences.WAIT_AFTER_REFRESH),
 	PROGRESS_DIALOG_EXPANDED(MuPreferences.PROGRESS_DIALOG_EXPANDED),
 	PROGRESS_DIALOG_CLOSE_WHEN_FINISHED(MuPreferences.PROGRESS_DIALOG_CLOSE_WHEN_FINISHED),
+	TRANSFER_THREADS(MuPreferences.TRANSFER_THREADS),
+	LISTING_CACHE_TTL(MuPreferences.LISTING_CACHE_TTL),
+	LISTING_CACHE_MAX_FILES(MuPreferences.LISTING_CACHE_MAX_FILES),
 	THEME_TYPE(MuPreferences.THEME_TYPE),
 	THEME_NAME(MuPreferences.THEME_NAME),
 	ENABLE_BONJOUR_DISCOVERY(MuPreferences.ENABLE_BONJOUR_DISCOVERY),
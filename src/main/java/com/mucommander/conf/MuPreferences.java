@@ -311,6 +311,32 @@ public class MuPreferences implements MuPreferencesAPI {
 
 
 
+	// - File transfer variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the behavior of file transfers. */
+	public static final String  FILE_TRANSFER_SECTION             = "file_transfer";
+	/** Number of files copied or moved concurrently, 0 to use the default value of the destination's protocol. */
+	public static final String  TRANSFER_THREADS                  = FILE_TRANSFER_SECTION + '.' + "threads";
+	/** Default number of files copied or moved concurrently. */
+	public static final int     DEFAULT_TRANSFER_THREADS          = 0;
+
+
+
+	// - Listing cache variables ---------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section describing the cache of remote folder listings. */
+	public static final String  LISTING_CACHE_SECTION             = "listing_cache";
+	/** Milliseconds during which a cached listing is used instead of listing the folder again, 0 to always list it again. */
+	public static final String  LISTING_CACHE_TTL                 = LISTING_CACHE_SECTION + '.' + "ttl";
+	/** Default amount of time during which a cached listing is used. */
+	public static final long    DEFAULT_LISTING_CACHE_TTL         = 30000;
+	/** Maximum number of files held by the cached listings, 0 to disable the cache. */
+	public static final String  LISTING_CACHE_MAX_FILES           = LISTING_CACHE_SECTION + '.' + "max_files";
+	/** Default maximum number of files held by the cached listings. */
+	public static final int     DEFAULT_LISTING_CACHE_MAX_FILES   = 100000;
+
+
+
 	// - Variables used for themes -------------------------------------------
 	// -----------------------------------------------------------------------
 	/** Section controlling which theme should be applied to muCommander. */
@@ -20,7 +20,16 @@ package com.mucommander.core;
 
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import org.slf4j.Logger;
@@ -28,9 +37,10 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.filter.AbstractFileFilter;
+import com.mucommander.commons.file.filter.CompiledFileFilter;
 import com.mucommander.commons.file.filter.FileFilter;
-import com.mucommander.commons.file.filter.OrFileFilter;
 import com.mucommander.commons.file.protocol.FileProtocols;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
@@ -38,11 +48,20 @@ import com.mucommander.job.JobsManager;
 import com.mucommander.ui.event.LocationEvent;
 import com.mucommander.ui.event.LocationListener;
 import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.table.FileTable;
 
 
 /**
- * This file monitors changes in the current folder of a FolderPanel, checking periodically if the current folder's
- * date has changed. If a change has been detected, the FolderPanel will be asked to refresh its current folder.
+ * This file monitors changes in the current folder of a FolderPanel.
+ *
+ * <p>Local folders are watched using {@link LocalFolderWatcher}: the names of the files that have been created,
+ * deleted or modified are collected as they are reported, and only those files are updated in the folder's
+ * {@link com.mucommander.ui.main.table.FileTable}, without listing the folder again. If some changes could not
+ * be tracked, the whole folder is refreshed.
+ *
+ * <p>Other folders (remote folders, archives, or local folders when changes cannot be watched) are polled: the
+ * current folder's date is checked periodically, and if it has changed, the FolderPanel will be asked to refresh its
+ * current folder.
  * 
  * <p>If the MainFrame which contains the monitored FolderPanel becomes inactive (lies in the background), monitoring
  * on will be not happen until the MainFrame becomes active again.
@@ -53,7 +72,7 @@ import com.mucommander.ui.main.FolderPanel;
  * @author Maxence Bernard
  * @see <a href="http://trac.mucommander.com/wiki/FolderAutoRefresh">FolderAutoRefresh wiki entry</a>
  */
-public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener {
+public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener, LocalFolderWatcher.Listener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FolderChangeMonitor.class);
 	
     /** Folder panel we are monitoring */
@@ -80,6 +99,18 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Number of checks in current folder */
     private int nbSamples = 0;
 
+    /** Key of the current folder in the LocalFolderWatcher, null if the current folder is not watched */
+    private WatchKey watchKey;
+
+    /** Names of the files that have changed in the watched folder and that have yet to be updated */
+    private Set<String> pendingChanges = new HashSet<String>();
+
+    /** True if some changes in the watched folder could not be tracked, and the folder must be refreshed */
+    private boolean changesLost;
+
+    /** Timestamp of the last time pending changes were applied */
+    private long lastUpdateTimestamp;
+
 	
     //////////////////////
     // Static variables //
@@ -91,7 +122,11 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** FolderChangeMonitor instances */
     private static List<FolderChangeMonitor> instances;
 
-    private static OrFileFilter disableAutoRefreshFilter = new OrFileFilter();
+    /** Filters that match folders for which auto-refresh is disabled */
+    private static List<FileFilter> disableAutoRefreshFilters = new Vector<FileFilter>();
+
+    /** Matches folders that are matched by any of the disableAutoRefreshFilters, compiled when a filter is added */
+    private static volatile CompiledFileFilter disableAutoRefreshFilter;
 		
     /** Milliseconds period between checks to current folder's date */
     private static long checkPeriod;
@@ -105,6 +140,12 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Granularity of the thread check (number of milliseconds to sleep before next loop) */
     private final static int TICK = 300;
 
+    /** Maximum number of pending changes in a watched folder, above which the folder is refreshed as a whole */
+    private final static int MAX_PENDING_CHANGES = 1000;
+
+    /** Lock the monitor thread waits on between two loops, notified when a watched folder has changed */
+    private final static Object LOCK = new Object();
+
     static {
         instances = new Vector<FolderChangeMonitor>();
 
@@ -114,7 +155,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         waitAfterRefresh = MuConfigurations.getPreferences().getVariable(MuPreference.WAIT_AFTER_REFRESH,
                                                             MuPreferences.DEFAULT_WAIT_AFTER_REFRESH);
 
-        disableAutoRefreshFilter.addFileFilter(new AbstractFileFilter() {
+        addDisableAutoRefreshFilter(new AbstractFileFilter() {
             public boolean accept(AbstractFile file) {
                 return file.getURL().getScheme().equals(FileProtocols.S3);
             }
@@ -129,8 +170,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      *
      * @param filter matches folders for which auto-refresh will be disabled
      */
-    public static void addDisableAutoRefreshFilter(FileFilter filter) {
-        disableAutoRefreshFilter.addFileFilter(filter);
+    public static synchronized void addDisableAutoRefreshFilter(FileFilter filter) {
+        disableAutoRefreshFilters.add(filter);
+        disableAutoRefreshFilter = new CompiledFileFilter(disableAutoRefreshFilters.toArray(new FileFilter[disableAutoRefreshFilters.size()]));
     }
 
     public FolderChangeMonitor(FolderPanel folderPanel) {
@@ -142,6 +184,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
         this.currentFolder = folderPanel.getCurrentFolder();
         this.currentFolderDate = currentFolder.getDate();
+        watch(currentFolder);
 
         // Folder contents is up-to-date let's wait before checking it for changes
         this.lastCheckTimestamp = System.currentTimeMillis();
@@ -161,12 +204,12 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
 	
     public void run() {
-        // TODO: it would be more efficient to use a wait/notify scheme rather than sleeping. 
-        // It would also allow folders to be checked immediately upon certain conditions such as a window becoming activated.
         while (monitorThread!=null) {
-            // Sleep for a while
-            try { Thread.sleep(TICK);}
-            catch(InterruptedException e) {}
+            // Wait for a while, or until changes are reported in a watched folder
+            synchronized(LOCK) {
+                try { LOCK.wait(TICK); }
+                catch(InterruptedException e) {}
+            }
 			
             // Loop on instances
             int nbInstances = instances.size();
@@ -184,6 +227,13 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
                         monitor.waitBeforeCheckTime = checkPeriod;
                         continue;
                     }
+                    // Watched folders are not polled, their changes are applied at most once per tick so that
+                    // bursts of changes are grouped together
+                    if (monitor.isWatched() || monitor.hasPendingChanges()) {
+                        if (System.currentTimeMillis()-monitor.lastUpdateTimestamp>=TICK)
+                            monitor.applyPendingChanges();
+                        continue;
+                    }
                     // By checking FolderPanel.getLastFolderChangeTime(), we ensure that we don't check right after
                     // the folder has been refreshed.
                     if (System.currentTimeMillis()-Math.max(monitor.lastCheckTimestamp, monitor.folderPanel.getLastFolderChangeTime())>monitor.waitBeforeCheckTime) {
@@ -202,6 +252,16 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      */
     public void stop() {
         monitorThread = null;
+        wakeUp();
+    }
+
+    /**
+     * Wakes the monitor thread up, so that folders are checked without waiting for the end of the current tick.
+     */
+    private static void wakeUp() {
+        synchronized(LOCK) {
+            LOCK.notify();
+        }
     }
 
 
@@ -212,6 +272,11 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      * @param folder the new current folder
      */
     private void updateFolderInfo(AbstractFile folder) {
+        // Pending changes are kept when the current folder has merely been refreshed, as they may have happened
+        // after the folder was listed
+        if (!folder.equals(currentFolder) || !isWatched())
+            watch(folder);
+
         this.currentFolder = folder;
         this.currentFolderDate = currentFolder.getDate();
 
@@ -230,6 +295,9 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
      */
     private synchronized long checkAndRefresh() {
         if (!mayFolderChangeByFileJob() && isFolderDateChanged()) {
+            // The folder was modified by someone else, its cached contents (if any) are outdated
+            ListingCache.removeListing(currentFolder.getURL());
+
             // Try and refresh current folder in a separate thread as to not lock monitor thread
             folderPanel.tryRefreshCurrentFolder();
             return nbSamples==0 ?
@@ -268,6 +336,155 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
         return true;
     }
 
+    /**
+     * Returns the <code>java.io.File</code> corresponding to the given folder if it is a local directory,
+     * <code>null</code> otherwise.
+     */
+    private static File getLocalDirectory(AbstractFile folder) {
+        if (folder.getParentArchive()!=null)
+            return null;
+
+        Object fileObject = folder.getUnderlyingFileObject();
+        if (fileObject instanceof File && ((File)fileObject).isDirectory())
+            return (File)fileObject;
+
+        return null;
+    }
+
+    /**
+     * Starts watching the given folder for changes if it is a local directory and if changes can be watched on this
+     * platform, stops watching the previous folder otherwise. Changes reported for the previous folder are discarded.
+     *
+     * @param folder the new current folder
+     */
+    private synchronized void watch(AbstractFile folder) {
+        unwatch();
+
+        pendingChanges.clear();
+        changesLost = false;
+
+        // Auto-refresh is disabled
+        if (checkPeriod<0)
+            return;
+
+        File directory = getLocalDirectory(folder);
+        if (directory==null)
+            return;
+
+        LocalFolderWatcher watcher = LocalFolderWatcher.getInstance();
+        if (watcher!=null)
+            watchKey = watcher.watch(directory, this);
+    }
+
+    /**
+     * Stops watching the current folder, if it is watched.
+     */
+    private synchronized void unwatch() {
+        if (watchKey!=null) {
+            LocalFolderWatcher.getInstance().unwatch(watchKey, this);
+            watchKey = null;
+        }
+    }
+
+    private synchronized boolean isWatched() {
+        return watchKey!=null;
+    }
+
+    private synchronized boolean hasPendingChanges() {
+        return changesLost || !pendingChanges.isEmpty();
+    }
+
+    /**
+     * Updates the files that have changed in the watched folder, or refreshes the whole folder if some changes
+     * could not be tracked. Nothing is done while running file jobs may change the folder, while a filename
+     * is being edited or while the folder is still being loaded: changes are kept pending until then.
+     */
+    private void applyPendingChanges() {
+        FileTable fileTable = folderPanel.getFileTable();
+        if (mayFolderChangeByFileJob() || fileTable.isEditing() || fileTable.isLoadingFolder())
+            return;
+
+        AbstractFile folder;
+        Set<String> filenames;
+        boolean refresh;
+        synchronized(this) {
+            folder = currentFolder;
+            filenames = pendingChanges;
+            refresh = changesLost;
+
+            pendingChanges = new HashSet<String>();
+            changesLost = false;
+        }
+
+        lastUpdateTimestamp = System.currentTimeMillis();
+
+        if (refresh) {
+            LOGGER.debug(this+" ("+folder.getName()+") Changes could not be tracked, refreshing table!");
+            folderPanel.tryRefreshCurrentFolder();
+            return;
+        }
+
+        if (filenames.isEmpty())
+            return;
+
+        // Files that still exist and are not filtered out are added or replaced, others are removed
+        FileFilter filter = folderPanel.getLocationManager().getFolderFilter();
+        List<AbstractFile> updatedFiles = new ArrayList<AbstractFile>();
+        Set<String> removedFilenames = new HashSet<String>();
+        for (String filename : filenames) {
+            AbstractFile file;
+            try {
+                file = folder.getDirectChild(filename);
+            }
+            catch(IOException e) {
+                file = null;
+            }
+
+            if (file!=null && file.exists() && filter.match(file))
+                updatedFiles.add(file);
+            else
+                removedFilenames.add(filename);
+        }
+
+        LOGGER.trace(this+" ("+folder.getName()+") Updating "+updatedFiles.size()+" files, removing "+removedFilenames.size());
+        fileTable.updateFiles(folder, updatedFiles, removedFilenames);
+    }
+
+
+    /////////////////////////////////////////////////
+    // LocalFolderWatcher.Listener implementation //
+    /////////////////////////////////////////////////
+
+    public void filesChanged(List<WatchEvent<?>> events) {
+        synchronized(this) {
+            for (WatchEvent<?> event : events) {
+                if (event.kind()==StandardWatchEventKinds.OVERFLOW)
+                    changesLost = true;
+                else
+                    pendingChanges.add(((Path)event.context()).toString());
+            }
+
+            // Refreshing the folder is cheaper than updating that many files one by one
+            if (pendingChanges.size()>MAX_PENDING_CHANGES) {
+                pendingChanges.clear();
+                changesLost = true;
+            }
+        }
+
+        wakeUp();
+    }
+
+    public void watchCancelled() {
+        synchronized(this) {
+            watchKey = null;
+            // The folder may not exist anymore, refreshing it will change the current folder to an existing one
+            changesLost = true;
+        }
+
+        wakeUp();
+    }
+
+
     /////////////////////////////////////
     // LocationListener implementation //
     /////////////////////////////////////
@@ -296,7 +513,11 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     // WindowListener implementation //
     ///////////////////////////////////
 
-    public void windowActivated(WindowEvent e) {}
+    public void windowActivated(WindowEvent e) {
+        // Apply the changes that happened while the window was in the background right away
+        if (hasPendingChanges())
+            wakeUp();
+    }
 
     public void windowDeactivated(WindowEvent e) {}
 
@@ -311,6 +532,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     public void windowClosed(WindowEvent e) {
         // Remove the MainFrame from the list of monitored instances
         instances.remove(this);
+        unwatch();
         LOGGER.debug("nbInstances="+instances.size());
     }	
 	
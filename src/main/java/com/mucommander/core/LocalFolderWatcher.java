@@ -0,0 +1,227 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * LocalFolderWatcher notifies listeners of the changes made to the contents of local folders, using the platform's
+ * {@link WatchService}. All folders are watched by one single thread, which dispatches the events received for a
+ * folder to the listeners registered for it.
+ *
+ * <p>Watching a folder is only worth it if the platform notifies changes natively: when the only available
+ * <code>WatchService</code> implementation polls the filesystem, {@link #getInstance()} returns <code>null</code>
+ * and folders are expected to be polled by the caller instead.</p>
+ *
+ * @see FolderChangeMonitor
+ */
+class LocalFolderWatcher implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalFolderWatcher.class);
+
+    /** Singleton instance, null if changes cannot be watched */
+    private static LocalFolderWatcher instance;
+
+    /** True once an instance creation has been attempted */
+    private static boolean initialized;
+
+    /** The WatchService that folders are registered with */
+    private final WatchService watchService;
+
+    /** Listeners of the folders that are currently watched */
+    private final Map<WatchKey, List<Listener>> listeners = new HashMap<WatchKey, List<Listener>>();
+
+    /**
+     * Listener of the changes made to the contents of a watched folder.
+     */
+    interface Listener {
+
+        /**
+         * Called by the watcher thread when files have been created, deleted or modified in the watched folder.
+         * The context of the events is the name of the file, relative to the folder. Events of kind
+         * {@link StandardWatchEventKinds#OVERFLOW} mean that some changes may have been lost.
+         *
+         * @param events the events received for the watched folder
+         */
+        void filesChanged(List<WatchEvent<?>> events);
+
+        /**
+         * Called by the watcher thread when the folder cannot be watched anymore, typically because it has been
+         * deleted or its filesystem unmounted.
+         */
+        void watchCancelled();
+    }
+
+    private LocalFolderWatcher(WatchService watchService) {
+        this.watchService = watchService;
+
+        Thread thread = new Thread(this, getClass().getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the shared LocalFolderWatcher instance, <code>null</code> if changes made to local folders cannot be
+     * watched natively on this platform.
+     *
+     * @return the shared LocalFolderWatcher instance, null if changes cannot be watched
+     */
+    static synchronized LocalFolderWatcher getInstance() {
+        if(!initialized) {
+            initialized = true;
+
+            try {
+                WatchService watchService = FileSystems.getDefault().newWatchService();
+                // The JDK falls back to an implementation that polls folders every few seconds on platforms it has no
+                // native support for, FolderChangeMonitor does a better job at polling
+                if(watchService.getClass().getName().endsWith("PollingWatchService")) {
+                    LOGGER.debug("Native WatchService not available, local folders will be polled");
+                    watchService.close();
+                }
+                else {
+                    instance = new LocalFolderWatcher(watchService);
+                }
+            }
+            catch(IOException | UnsupportedOperationException e) {
+                LOGGER.debug("WatchService not available, local folders will be polled", e);
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Starts watching the given folder and notifies the given listener of the changes made to its contents.
+     * The same folder may be watched by several listeners at once, in which case the same key is returned to them.
+     *
+     * @param folder the local folder to watch
+     * @param listener the listener to notify
+     * @return the key to pass to {@link #unwatch(WatchKey, Listener)}, <code>null</code> if the folder cannot be watched
+     */
+    WatchKey watch(File folder, Listener listener) {
+        WatchKey key;
+        try {
+            key = folder.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch(IOException | RuntimeException e) {
+            LOGGER.debug("Could not watch "+folder, e);
+            return null;
+        }
+
+        synchronized(listeners) {
+            List<Listener> keyListeners = listeners.get(key);
+            if(keyListeners==null) {
+                keyListeners = new ArrayList<Listener>(2);
+                listeners.put(key, keyListeners);
+            }
+            keyListeners.add(listener);
+        }
+
+        return key;
+    }
+
+    /**
+     * Stops notifying the given listener of the changes made to the folder corresponding to the given key.
+     * The folder stops being watched when it has no more listeners.
+     *
+     * @param key the key returned by {@link #watch(File, Listener)}
+     * @param listener the listener to remove
+     */
+    void unwatch(WatchKey key, Listener listener) {
+        synchronized(listeners) {
+            List<Listener> keyListeners = listeners.get(key);
+            if(keyListeners==null)
+                return;
+
+            keyListeners.remove(listener);
+            if(keyListeners.isEmpty()) {
+                listeners.remove(key);
+                key.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the listeners registered for the given key.
+     */
+    private List<Listener> getListeners(WatchKey key) {
+        synchronized(listeners) {
+            List<Listener> keyListeners = listeners.get(key);
+            return keyListeners==null?new ArrayList<Listener>():new ArrayList<Listener>(keyListeners);
+        }
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    public void run() {
+        while(true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            }
+            catch(InterruptedException e) {
+                continue;
+            }
+            catch(ClosedWatchServiceException e) {
+                return;
+            }
+
+            List<WatchEvent<?>> events = key.pollEvents();
+            List<Listener> keyListeners = getListeners(key);
+
+            if(!events.isEmpty()) {
+                for(Listener listener : keyListeners)
+                    listener.filesChanged(events);
+            }
+
+            // The key can no longer be reset if the folder has been deleted or its key cancelled
+            if(!key.reset()) {
+                // Listeners are only told about keys that have not been cancelled by unwatch()
+                List<Listener> cancelledListeners;
+                synchronized(listeners) {
+                    cancelledListeners = listeners.remove(key);
+                }
+
+                if(cancelledListeners!=null) {
+                    for(Listener listener : cancelledListeners)
+                        listener.watchCancelled();
+                }
+            }
+        }
+    }
+}
@@ -38,6 +38,8 @@ import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.protocol.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.IORealms;
+import com.mucommander.commons.util.IOScheduler;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
@@ -98,8 +100,7 @@ public class LocationChanger {
 		// Set cursor to hourglass/wait
 		mainFrame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
 		
-    	Thread setLocationThread = new Thread() {
-    		@Override
+    	Runnable setLocationTask = new Runnable() {
     		public void run() {
     			AbstractFile folder = getWorkableLocation(folderURL);
     			try {
@@ -114,10 +115,12 @@ public class LocationChanger {
     		}
     	};
 
+    	// The folder is loaded by the interactive pool, where a server or local volume that is slow to respond can
+    	// only hold up a limited number of threads
     	if (EventQueue.isDispatchThread())
-    		setLocationThread.start();
+    		IOScheduler.execute(IOScheduler.Pool.INTERACTIVE, IOScheduler.Priority.HIGH, IORealms.getRealm(folderURL), "LocationChanger-set-location", setLocationTask);
     	else
-    		setLocationThread.run();
+    		setLocationTask.run();
 	}
 
 	/**
@@ -0,0 +1,666 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.desktop;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.protocol.local.LocalFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.job.impl.DeleteJob;
+import com.mucommander.process.ProcessRunner;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.WindowManager;
+
+/**
+ * This class implements the trash as defined by the freedesktop.org specification
+ * (see http://freedesktop.org/wiki/Specifications/trash-spec), which is used by desktop environments such as GNOME
+ * and Xfce.
+ *
+ * <p>
+ * <b>Implementation notes:</b><br>
+ * <br>
+ * Files that reside on the same filesystem as the user's home trash are moved to it. Files that reside on other
+ * filesystems are moved to the <code>$topdir/.Trash-$uid</code> trash of their filesystem, which is created if
+ * necessary, so that moving a file to the trash is always a mere rename and never a copy.<br>
+ * <br>
+ * Files are queued and moved to the trash in batches (see {@link QueuedTrash}). The files of a batch are moved by
+ * several threads concurrently: each file's <code>.trashinfo</code> file is created exclusively, which reserves its
+ * name in the trash, before the file itself is renamed into the trash.<br>
+ * <br>
+ * The number of items in each trash is cached along with the date of its "info" folder, and updated as files are
+ * moved to the trash, so that the trash needs only be listed again when it is modified by another application.
+ * </p>
+ */
+public abstract class FreedesktopTrash extends QueuedTrash {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FreedesktopTrash.class);
+
+    /** Maximum number of threads that move the files of a batch to the trash */
+    private final static int MAX_THREADS = 4;
+
+    /** Formats dates in trash info files */
+    private final static SimpleDateFormat INFO_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+    /** User ID of the current user, <code>null</code> if it couldn't be retrieved */
+    private final static Integer UID;
+
+    /** User trash folder, <code>null</code> if there is no usable trash folder */
+    private final static TrashDirectory HOME_TRASH;
+
+    /** Volume on which the user trash folder resides, used when the filesystem of files cannot be determined */
+    private final static AbstractFile HOME_TRASH_VOLUME;
+
+    /** Trash directories of the filesystems seen so far, keyed by filesystem (device) ID. Filesystems that have no
+     * usable trash directory are mapped to {@link #NO_TRASH}. */
+    private final static ConcurrentMap<Object, TrashDirectory> TRASH_DIRECTORIES = new ConcurrentHashMap<Object, TrashDirectory>();
+
+    /** Placeholder for filesystems that have no usable trash directory */
+    private final static TrashDirectory NO_TRASH = new TrashDirectory(null, false);
+
+    /** Command that reveals the trash in the desktop's file manager */
+    private final String revealTrashCommand;
+
+    /**
+     * Resolves the user Trash folder and its "info" and "files" subfolders once and for all.
+     * The trash folder is created if it doesn't already exist.
+     */
+    static {
+        UID = getUid();
+
+        AbstractFile trashFolder = getHomeTrashFolder();
+        if(trashFolder!=null) {
+            HOME_TRASH = new TrashDirectory(Paths.get(trashFolder.getAbsolutePath()), false);
+            HOME_TRASH_VOLUME = trashFolder.getVolume();
+
+            Object device = getDevice(HOME_TRASH.folder);
+            if(device!=null)
+                TRASH_DIRECTORIES.put(device, HOME_TRASH);
+        }
+        else {
+            HOME_TRASH = null;
+            HOME_TRASH_VOLUME = null;
+        }
+    }
+
+    /**
+     * Creates a new <code>FreedesktopTrash</code> that uses the specified command to reveal the trash.
+     *
+     * @param revealTrashCommand command that reveals the trash in the desktop's file manager
+     */
+    protected FreedesktopTrash(String revealTrashCommand) {
+        this.revealTrashCommand = revealTrashCommand;
+    }
+
+    /**
+     * Tries to find an existing user Trash folder in one of the two common locations and returns it. If no existing
+     * Trash folder was found, creates the standard user Trash folder and returns it.
+     *
+     * @return the user Trash folder, <code>null</code> if no user trash folder could be found or created
+     */
+    private static AbstractFile getHomeTrashFolder() {
+        AbstractFile userHome = LocalFile.getUserHome();
+
+        AbstractFile primaryTrashDir = userHome.getChildSilently(".local/share/Trash/");   // new distro's trash path
+        AbstractFile secondaryTrashDir;                                                    // standard path defined in specification
+        if(isTrashFolder(primaryTrashDir)) {
+            return primaryTrashDir;
+        }
+        else if(isTrashFolder(secondaryTrashDir=userHome.getChildSilently("Trash/"))) {
+            return secondaryTrashDir;
+        }
+
+        // No existing user trash was found: create the folder, only if it doesn't already exist.
+        if(!primaryTrashDir.exists()) {
+            try {
+                primaryTrashDir.mkdirs();
+                primaryTrashDir.getChild("info").mkdir();
+                primaryTrashDir.getChild("files").mkdir();
+
+                return primaryTrashDir;
+            }
+            catch(IOException e) {
+                // Will return null
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Return <code>true</code> if the specified file is a Trash folder, i.e. is a directory and has two
+     * subdirectories named "info" and "files".
+     *
+     * @param file the file to test
+     * @return <code>true</code> if the specified file is a Trash folder
+     */
+    private static boolean isTrashFolder(AbstractFile file) {
+        try {
+            return file.isDirectory() && file.getChild("info").isDirectory() && file.getChild("files").isDirectory();
+        }
+        catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the ID of the current user, <code>null</code> if it couldn't be retrieved.
+     */
+    private static Integer getUid() {
+        try {
+            return (Integer)Files.getAttribute(Paths.get(System.getProperty("user.home")), "unix:uid");
+        }
+        catch(Exception e) {    // IOException, UnsupportedOperationException, IllegalArgumentException
+            LOGGER.debug("Could not retrieve the user ID", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the ID of the filesystem (device) on which the given file resides, <code>null</code> if it couldn't be
+     * retrieved.
+     */
+    private static Object getDevice(Path path) {
+        try {
+            return Files.getAttribute(path, "unix:dev", LinkOption.NOFOLLOW_LINKS);
+        }
+        catch(Exception e) {    // IOException, UnsupportedOperationException, IllegalArgumentException
+            return null;
+        }
+    }
+
+    /**
+     * Returns the trash directory that the given file should be moved to, <code>null</code> if the file can't be
+     * moved to the trash.
+     */
+    private static TrashDirectory getTrashDirectory(AbstractFile file) {
+        if(HOME_TRASH==null || !(file.getTopAncestor() instanceof LocalFile))
+            return null;
+
+        Path path = Paths.get(file.getAbsolutePath());
+        Object device = getDevice(path);
+        if(device==null) {
+            // Fall back to comparing volumes
+            return file.getVolume().equals(HOME_TRASH_VOLUME)?HOME_TRASH:null;
+        }
+
+        TrashDirectory trash = TRASH_DIRECTORIES.get(device);
+        if(trash==null) {
+            trash = getTopdirTrash(path, device);
+            TrashDirectory previousTrash = TRASH_DIRECTORIES.putIfAbsent(device, trash);
+            if(previousTrash!=null)
+                trash = previousTrash;
+        }
+
+        return trash==NO_TRASH?null:trash;
+    }
+
+    /**
+     * Returns the <code>$topdir/.Trash-$uid</code> trash directory of the filesystem on which the given file resides,
+     * {@link #NO_TRASH} if it doesn't exist and can't be created.
+     */
+    private static TrashDirectory getTopdirTrash(Path path, Object device) {
+        if(UID==null)
+            return NO_TRASH;
+
+        // The top directory is the highest ancestor that resides on the same filesystem
+        Path topdir = path;
+        Path parent;
+        while((parent=topdir.getParent())!=null && device.equals(getDevice(parent)))
+            topdir = parent;
+
+        Path trashFolder = topdir.resolve(".Trash-"+UID);
+        if(Files.isSymbolicLink(trashFolder))
+            return NO_TRASH;
+
+        if(Files.isDirectory(trashFolder) || Files.isWritable(topdir))
+            return new TrashDirectory(trashFolder, true);
+
+        return NO_TRASH;
+    }
+
+    /**
+     * Returns the trash directories that have been used so far, the user trash folder being the first one.
+     */
+    private static List<TrashDirectory> getTrashDirectories() {
+        List<TrashDirectory> trashes = new ArrayList<TrashDirectory>();
+        if(HOME_TRASH!=null)
+            trashes.add(HOME_TRASH);
+
+        for(TrashDirectory trash : TRASH_DIRECTORIES.values()) {
+            if(trash!=HOME_TRASH && trash!=NO_TRASH && Files.isDirectory(trash.infoFolder))
+                trashes.add(trash);
+        }
+
+        return trashes;
+    }
+
+    /**
+     * Moves the given file to the given trash directory.
+     *
+     * @param file the file to move
+     * @param trash the trash directory to move the file to
+     * @param suffixes next suffix to try for each filename, shared by the files of the batch
+     * @param deletionDate the deletion date to write in the info file
+     * @return <code>true</code> if the file was moved to the trash
+     */
+    private static boolean moveToTrash(AbstractFile file, TrashDirectory trash, ConcurrentMap<String, AtomicInteger> suffixes, String deletionDate) {
+        Path infoFile;
+        String trashFileName;
+        try {
+            trash.create();
+
+            String filePath = file.getAbsolutePath();
+            // Paths are relative to the top directory in topdir trashes
+            if(trash.isTopdir)
+                filePath = trash.folder.getParent().relativize(Paths.get(filePath)).toString();
+
+            byte infoContent[] = ("[Trash Info]\n" +
+                    "Path=" + filePath + "\n" +
+                    "DeletionDate=" + deletionDate + "\n").getBytes(StandardCharsets.UTF_8);
+
+            // Reserve a filename in the trash by creating the info file exclusively
+            AtomicInteger suffix = suffixes.get(file.getName());
+            if(suffix==null) {
+                AtomicInteger newSuffix = new AtomicInteger();
+                suffix = suffixes.putIfAbsent(file.getName(), newSuffix);
+                if(suffix==null)
+                    suffix = newSuffix;
+            }
+
+            while(true) {
+                trashFileName = getTrashFileName(file, suffix.getAndIncrement());
+                if(Files.exists(trash.filesFolder.resolve(trashFileName), LinkOption.NOFOLLOW_LINKS))
+                    continue;
+
+                infoFile = trash.infoFolder.resolve(trashFileName+".trashinfo");
+                try {
+                    Files.write(infoFile, infoContent, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    break;
+                }
+                catch(FileAlreadyExistsException e) {
+                    // Try the next name
+                }
+            }
+        }
+        catch(IOException e) {
+            LOGGER.debug("Failed to create trash info file for " + file.getAbsolutePath(), e);
+            return false;
+        }
+
+        try {
+            try {
+                Files.move(Paths.get(file.getAbsolutePath()), trash.filesFolder.resolve(trashFileName), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException e) {
+                // The file is not on the trash's filesystem after all, let the file copy and delete it
+                file.renameTo(FileFactory.getFile(trash.filesFolder.resolve(trashFileName).toString()));
+            }
+
+            return true;
+        }
+        catch(IOException e) {
+            try {
+                Files.delete(infoFile);
+            }
+            catch(IOException e1) {
+                // simply ignore
+            }
+
+            LOGGER.debug("Failed to move file to trash: " + trashFileName, e);
+            return false;
+        }
+    }
+
+    /**
+     * It is possible to add several files with same name to the Trash. These files are distinguished
+     * by _N appended to the name, where _N is rising int number.
+     *
+     * @param file File to be deleted
+     * @param suffix the number to append to the filename, <code>0</code> for none
+     * @return filename in trash (without .trashinfo extension)
+     */
+    private static String getTrashFileName(AbstractFile file, int suffix) {
+        if(suffix==0)
+            return file.getName();
+
+        String filename = file.getNameWithoutExtension() + "_" + suffix;
+        String extension = file.getExtension();
+        if(extension!=null)
+            filename += "." + extension;
+
+        return filename;
+    }
+
+
+    ////////////////////////////////
+    // QueuedTrash implementation //
+    ////////////////////////////////
+
+    /**
+     * Implementation of {@link com.mucommander.desktop.QueuedTrash} moveToTrash method.
+     * <p>
+     * Moves the files to the trash of their filesystem using several threads.
+     * </p>
+     * @param queuedFiles Collection of files to the trash
+     * @return <code>true</code> if movement has been successful or <code>false</code> otherwise
+     */
+    @Override
+    protected boolean moveToTrash(List<AbstractFile> queuedFiles) {
+        final String deletionDate;
+        synchronized(INFO_DATE_FORMAT) {        // SimpleDateFormat is not thread safe
+            deletionDate = INFO_DATE_FORMAT.format(new Date());
+        }
+
+        // Validate cached item counts before the trashes are modified
+        List<TrashDirectory> trashes = getTrashDirectories();
+        for(TrashDirectory trash : trashes)
+            trash.getItemCount();
+
+        final ConcurrentMap<TrashDirectory, ConcurrentMap<String, AtomicInteger>> suffixes = new ConcurrentHashMap<TrashDirectory, ConcurrentMap<String, AtomicInteger>>();
+        final ConcurrentMap<TrashDirectory, AtomicInteger> nbMovedFiles = new ConcurrentHashMap<TrashDirectory, AtomicInteger>();
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(queuedFiles.size());
+        for(final AbstractFile file : queuedFiles) {
+            tasks.add(new Callable<Boolean>() {
+                public Boolean call() {
+                    TrashDirectory trash = getTrashDirectory(file);
+                    if(trash==null) {
+                        LOGGER.debug("No trash found for " + file.getAbsolutePath());
+                        return false;
+                    }
+
+                    suffixes.putIfAbsent(trash, new ConcurrentHashMap<String, AtomicInteger>());
+                    nbMovedFiles.putIfAbsent(trash, new AtomicInteger());
+
+                    if(!moveToTrash(file, trash, suffixes.get(trash), deletionDate))
+                        return false;
+
+                    nbMovedFiles.get(trash).incrementAndGet();
+                    return true;
+                }
+            });
+        }
+
+        boolean retVal = true;     // overall return value (if everything went OK or at least one file wasn't moved properly
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_THREADS, tasks.size())));
+        try {
+            for(Future<Boolean> result : executor.invokeAll(tasks)) {
+                if(!result.get())
+                    retVal = false;
+            }
+        }
+        catch(InterruptedException e) {
+            retVal = false;
+        }
+        catch(ExecutionException e) {
+            LOGGER.debug("Caught exception while moving files to the trash", e);
+            retVal = false;
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        for(TrashDirectory trash : nbMovedFiles.keySet())
+            trash.itemsAdded(nbMovedFiles.get(trash).get());
+
+        return retVal;
+    }
+
+
+    //////////////////////////////////
+    // AbstractTrash implementation //
+    //////////////////////////////////
+
+    /**
+     * Implementation notes: returns <code>true</code> only for local files that are not archive entries and that
+     * reside either on the same filesystem as the user trash folder, or on a filesystem which has or can be given a
+     * <code>$topdir/.Trash-$uid</code> trash directory.
+     */
+    @Override
+    public boolean canMoveToTrash(AbstractFile file) {
+        return getTrashDirectory(file)!=null;
+    }
+
+    /**
+     * <b>Implementation notes:</b> always returns <code>true</code>.
+     *
+     * @return True if trash can be emptied, otherwise false
+     */
+    @Override
+    public boolean canEmpty() {
+        return HOME_TRASH!=null;
+    }
+
+    /**
+     * Empty the trash
+     * <p>
+     * <b>Implementation notes:</b><br>
+     * Simply free the "files" and "info" folders of the user trash folder and of the topdir trash directories
+     * used so far.
+     * </p>
+     *
+     * @return True if everything went well
+     */
+    @Override
+    public boolean empty() {
+        // Abort if there is no usable trash folder
+        if(HOME_TRASH==null)
+            return false;
+
+        for(TrashDirectory trash : getTrashDirectories()) {
+            AbstractFile trashFolder = FileFactory.getFile(trash.folder.toString());
+            FileSet filesToDelete = new FileSet(trashFolder);
+
+            try {
+                // delete real files
+                filesToDelete.addAll(trashFolder.getChild("files").ls());
+                // delete spec files
+                filesToDelete.addAll(trashFolder.getChild("info").ls());
+            } catch (IOException ex) {
+                LOGGER.debug("Failed to list files", ex);
+                return false;
+            }
+
+            if (filesToDelete.size() > 0) {
+                // Starts deleting files
+                MainFrame mainFrame = WindowManager.getCurrentMainFrame();
+                ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("delete_dialog.deleting"));
+                DeleteJob deleteJob = new DeleteJob(progressDialog, mainFrame, filesToDelete, false);
+                progressDialog.start(deleteJob);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean isTrashFile(AbstractFile file) {
+        if(HOME_TRASH==null || !(file.getTopAncestor() instanceof LocalFile))
+            return false;
+
+        String path = file.getAbsolutePath(false);
+        for(TrashDirectory trash : getTrashDirectories()) {
+            String trashPath = trash.folder.toString();
+            if(path.equals(trashPath) || path.startsWith(trashPath+File.separator))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Return trash files count
+     * <p>
+     * We assume the count of items in trash equals the count of files in the "info" folder of the user trash
+     * folder and of the topdir trash directories used so far.
+     *
+     * @return Count of files in trash
+     */
+    @Override
+    public int getItemCount() {
+        // Abort if there is no usable trash folder
+        if(HOME_TRASH==null)
+            return -1;
+
+        int count = 0;
+        for(TrashDirectory trash : getTrashDirectories()) {
+            int trashCount = trash.getItemCount();
+            if(trashCount==-1)
+                return -1;
+
+            count += trashCount;
+        }
+
+        return count;
+    }
+
+    /**
+     * Opens the trash in the desktop's file manager.
+     */
+    @Override
+    public void open() {
+        try {
+            ProcessRunner.execute(revealTrashCommand).waitFor();
+        }
+        catch(Exception e) {    // IOException, InterruptedException
+            LOGGER.debug("Caught an exception running command \"" + revealTrashCommand + "\"", e);
+        }
+    }
+
+    @Override
+    public boolean canOpen() {
+        return HOME_TRASH!=null;
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A trash directory, with its "info" and "files" subfolders and its cached number of items.
+     */
+    private static class TrashDirectory {
+        private final Path folder;
+        private final Path infoFolder;
+        private final Path filesFolder;
+
+        /** True for <code>$topdir/.Trash-$uid</code> directories, false for the user trash folder */
+        private final boolean isTopdir;
+
+        /** Number of items in the trash, valid as long as the "info" folder's date equals {@link #infoDate} */
+        private int itemCount = -1;
+
+        /** Date of the "info" folder when the number of items was last known */
+        private FileTime infoDate;
+
+        private TrashDirectory(Path folder, boolean isTopdir) {
+            this.folder = folder;
+            this.infoFolder = folder==null?null:folder.resolve("info");
+            this.filesFolder = folder==null?null:folder.resolve("files");
+            this.isTopdir = isTopdir;
+        }
+
+        /**
+         * Creates this trash directory and its subfolders if they don't exist yet.
+         */
+        private void create() throws IOException {
+            if(!isTopdir || Files.isDirectory(infoFolder))
+                return;
+
+            synchronized(this) {
+                // Topdir trash directories must only be accessible to their owner
+                if(!Files.isDirectory(folder))
+                    Files.createDirectory(folder, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                Files.createDirectories(infoFolder);
+                Files.createDirectories(filesFolder);
+            }
+        }
+
+        /**
+         * Returns the number of items in this trash, listing the "info" folder only if it was modified since the
+         * number of items was last known.
+         */
+        private synchronized int getItemCount() {
+            try {
+                FileTime date = Files.getLastModifiedTime(infoFolder);
+                if(!date.equals(infoDate)) {
+                    String infoFiles[] = infoFolder.toFile().list();
+                    if(infoFiles==null)
+                        return -1;
+
+                    itemCount = infoFiles.length;
+                    infoDate = date;
+                }
+
+                return itemCount;
+            }
+            catch(IOException e) {
+                // can't access trash folder
+                return -1;
+            }
+        }
+
+        /**
+         * Updates the number of items after the given number of items were added to this trash. The number is updated
+         * only if it was valid before the items were added.
+         */
+        private synchronized void itemsAdded(int nbItems) {
+            if(infoDate==null)
+                return;
+
+            try {
+                itemCount += nbItems;
+                infoDate = Files.getLastModifiedTime(infoFolder);
+            }
+            catch(IOException e) {
+                infoDate = null;
+            }
+        }
+    }
+}
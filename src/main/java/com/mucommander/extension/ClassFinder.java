@@ -24,6 +24,7 @@ import java.util.Vector;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractFileClassLoader;
+import com.mucommander.commons.file.DirectoryIterator;
 import com.mucommander.commons.file.filter.AttributeFileFilter;
 import com.mucommander.commons.file.filter.AttributeFileFilter.FileAttribute;
 import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
@@ -80,28 +81,36 @@ public class ClassFinder {
      * @throws IOException    if an error occurs while exploring <code>currentFile</code>.
      */
     private List<Class<?>> find(String currentPackage, AbstractFile currentFile) throws IOException {
-        AbstractFile[]   files;        // All subfolders or child class files of currentFile.
-        Class<?>         currentClass; // Buffer for the current class.
-        List<Class<?>>   result = new Vector<Class<?>>();
+        DirectoryIterator files;        // All subfolders or child class files of currentFile.
+        AbstractFile      file;         // Buffer for the current file.
+        Class<?>          currentClass; // Buffer for the current class.
+        List<Class<?>>    result = new Vector<Class<?>>();
         
         // Analyses all subdirectories and class files.
-        files = currentFile.ls(filter);
-        for (AbstractFile file : files) {
-            // Explores subdirectories recursively.
-            if (file.isDirectory())
-                result.addAll(find(currentPackage + file.getName() + '.', file));
-
-                // Passes each class through the class filter.
-                // Errors are treated as 'this class is not wanted'.
-            else {
-                try {
-                    if (classFilter.accept(currentClass = Class.forName(currentPackage + file.getNameWithoutExtension(), false, loader)))
-                        result.add(currentClass);
-                }
-                catch (Throwable e) {
+        files = currentFile.iterateChildren(filter);
+        try {
+            while (files.hasNext()) {
+                file = files.next();
+
+                // Explores subdirectories recursively.
+                if (file.isDirectory())
+                    result.addAll(find(currentPackage + file.getName() + '.', file));
+
+                    // Passes each class through the class filter.
+                    // Errors are treated as 'this class is not wanted'.
+                else {
+                    try {
+                        if (classFilter.accept(currentClass = Class.forName(currentPackage + file.getNameWithoutExtension(), false, loader)))
+                            result.add(currentClass);
+                    }
+                    catch (Throwable e) {
+                    }
                 }
             }
         }
+        finally {
+            files.close();
+        }
         return result;
     }
 
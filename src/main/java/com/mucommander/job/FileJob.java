@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.CachedFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.util.IOScheduler;
 import com.mucommander.job.ui.DialogResult;
 import com.mucommander.job.ui.UserInputHelper;
 import com.mucommander.text.Translator;
@@ -64,12 +65,15 @@ import com.mucommander.ui.notifier.NotificationType;
 public abstract class FileJob implements Runnable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileJob.class);
 
-    /** Thread in which the file job is performed */
-    private Thread jobThread;
+    /** True from the time the job is started until it is stopped */
+    private volatile boolean jobRunning;
 
     /** Lock used when job is being paused */
     private final Object pauseLock = new Object();
 
+    /** Lock used to show only one dialog at a time when files are processed by several threads */
+    private final Object userInputLock = new Object();
+
     /** Timestamp in milliseconds when job started */
     private long startDate;
 
@@ -204,7 +208,7 @@ public abstract class FileJob implements Runnable {
 	
 	
     /**
-     * Starts file job in a separate thread.
+     * Starts file job in a thread of the {@link IOScheduler}'s background pool.
      */
     public void start() {
         // Return if job has already been started
@@ -214,8 +218,8 @@ public abstract class FileJob implements Runnable {
         setState(FileJobState.RUNNING);
         startDate = System.currentTimeMillis();
 
-        jobThread = new Thread(this, getClass().getName());
-        jobThread.start();
+        jobRunning = true;
+        IOScheduler.execute(IOScheduler.Pool.BACKGROUND, getClass().getName(), this);
     }
 
 
@@ -396,18 +400,18 @@ public abstract class FileJob implements Runnable {
 
 
     /**
-     * Release reference to thread and store job's end date.
+     * Mark the job as stopped and store job's end date.
      */
     private void stop() {
         // Return if job has already been stopped
-        if(jobThread==null)
+        if(!jobRunning)
             return;
 
 //        // Start by calling interrupt to have the thread return from any blocking I/O occurring in an interruptible
 //        // channel or selector.
 //        jobThread.interrupt();
 
-        jobThread = null;
+        jobRunning = false;
         endDate = System.currentTimeMillis();
 
         // Notify that the job has been stopped
@@ -428,8 +432,8 @@ public abstract class FileJob implements Runnable {
                 // Call the jobResumed method to notify of the new job's state
                 jobResumed();
 
-                // Wake up the job's thread that is potentially waiting for pause to be over 
-                pauseLock.notify();
+                // Wake up the job's threads that are potentially waiting for pause to be over
+                pauseLock.notifyAll();
 
                 // Switch to RUNNING state and notify listeners
                 setState(FileJobState.RUNNING);
@@ -460,7 +464,17 @@ public abstract class FileJob implements Runnable {
 //        // Notify ProgressDialog (if any) that a new file is being processed
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
-        
+
+        waitWhilePaused();
+    }
+
+
+    /**
+     * Blocks the calling thread for as long as this job is paused. This method is called by
+     * {@link #nextFile(AbstractFile)} and can be called by threads other than the job's thread that process files
+     * on behalf of this job.
+     */
+    protected void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
@@ -497,6 +511,18 @@ public abstract class FileJob implements Runnable {
     }
 	
 
+    /**
+     * This method is called by {@link #run()} after the last call to {@link #processFile(AbstractFile,Object)} is made,
+     * and before {@link #jobCompleted()}. This method implementation does nothing but it must be overridden by
+     * subclasses that hand files over to other threads, to wait for those files to be processed.
+     *
+     * <p>Note that this method will NOT be called if a call to {@link #interrupt()} was made before all files were
+     * passed to {@link #processFile(AbstractFile,Object)}.</p>
+     */
+    protected void waitForPendingFiles() {
+    }
+
+
     /**
      * This method is called when this job has completed normal execution : all files have been processed without any interruption
      * (without any call to {@link #interrupt()}).
@@ -572,6 +598,14 @@ public abstract class FileJob implements Runnable {
      * Displays an error dialog with the specified title and message and returns the selection action's value.
      */
     protected int showErrorDialog(String title, String message, String actionTexts[], int actionValues[]) {
+        // Errors may be reported by several threads at once: show one dialog at a time so that a 'skip all'
+        // choice applies to the errors that are waiting for their turn
+        synchronized(userInputLock) {
+            return showErrorDialogInternal(title, message, actionTexts, actionValues);
+        }
+    }
+
+    private int showErrorDialogInternal(String title, String message, String actionTexts[], int actionValues[]) {
         // Return SKIP_ACTION if 'skip all' has previously been selected and 'skip' is in the list of actions.
         if(autoSkipErrors) {
             for (int actionValue : actionValues)
@@ -625,15 +659,17 @@ public abstract class FileJob implements Runnable {
     }
     
     protected Object waitForUserResponseObject(DialogResult dialog) {
-        // Put this job in pause mode while waiting for user response
-        setPaused(true);
-        
-        UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
-        Object userInput = jobUserInput.getUserInput();
-        
-        // Back to work
-        setPaused(false);
-        return userInput;
+        synchronized(userInputLock) {
+            // Put this job in pause mode while waiting for user response
+            setPaused(true);
+
+            UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
+            Object userInput = jobUserInput.getUserInput();
+
+            // Back to work
+            setPaused(false);
+            return userInput;
+        }
     }
     
 	
@@ -779,6 +815,10 @@ public abstract class FileJob implements Runnable {
             }
         }
 
+        // Wait for the files that are still being processed by other threads (if any)
+        if (currentFileIndex == nbFiles && getState() != FileJobState.INTERRUPTED)
+            waitForPendingFiles();
+
         // If last file was reached without any user interruption, all files have been processed with or
         // without errors, switch to FINISHED state and notify listeners
         if (currentFileIndex == nbFiles && getState() != FileJobState.INTERRUPTED) {
@@ -19,8 +19,14 @@
 package com.mucommander.job.impl;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.archive.AbstractRWArchiveFile;
+import com.mucommander.commons.file.connection.ConnectionPool;
+import com.mucommander.commons.file.protocol.FileProtocols;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.job.FileCollisionChecker;
 import com.mucommander.job.FileJobAction;
 import com.mucommander.text.Translator;
@@ -30,6 +36,11 @@ import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is the parent class of {@link com.mucommander.job.impl.CopyJob} and {@link com.mucommander.job.impl.MoveJob} and
@@ -61,6 +72,29 @@ public abstract class AbstractCopyJob extends TransferFileJob {
     /** True when an archive is being optimized */
     protected boolean isOptimizingArchive;
 
+    /** Number of files transferred concurrently to destinations whose protocol is not listed in
+     * {@link #PROTOCOL_TRANSFER_THREADS} */
+    private final static int DEFAULT_PROTOCOL_TRANSFER_THREADS = 1;
+
+    /** Number of files transferred concurrently by default, per destination protocol. Remote protocols that pool
+     * their connections are given no more threads than the pool allows connections per server, see also
+     * {@link #POOLED_PROTOCOLS}. */
+    private final static Map<String, Integer> PROTOCOL_TRANSFER_THREADS = new HashMap<String, Integer>();
+
+    static {
+        PROTOCOL_TRANSFER_THREADS.put(FileProtocols.FILE, 4);
+        PROTOCOL_TRANSFER_THREADS.put(FileProtocols.SMB, 4);
+        PROTOCOL_TRANSFER_THREADS.put(FileProtocols.NFS, 4);
+        PROTOCOL_TRANSFER_THREADS.put(FileProtocols.SFTP, 4);
+        PROTOCOL_TRANSFER_THREADS.put(FileProtocols.S3, 4);
+        PROTOCOL_TRANSFER_THREADS.put(FileProtocols.HDFS, 4);
+        PROTOCOL_TRANSFER_THREADS.put(FileProtocols.FTP, 2);
+    }
+
+    /** Protocols whose connections are shared through a {@link ConnectionPool}. A transfer within a server of one of
+     * these protocols holds two connections per file until it completes, one to read and one to write. */
+    private final static Set<String> POOLED_PROTOCOLS = new HashSet<String>(Arrays.asList(FileProtocols.FTP, FileProtocols.SFTP));
+
     /**
      * Creates a new <code>AbstractCopyJob</code>.
      *
@@ -80,6 +114,46 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         this.defaultFileExistsAction = fileExistsAction;
     }
 
+    /**
+     * Returns the number of files that should be transferred concurrently from the given source folder to the given
+     * destination folder: the value of the {@link MuPreference#TRANSFER_THREADS} preference if it is set, the default
+     * value of the destination's protocol otherwise. Transfers from or to archives are always sequential.
+     * Transfers within a same server whose connections are pooled are given at most half as many threads as the pool
+     * allows connections per server, so that each file can get both its connections: otherwise, every thread could
+     * hold a connection to read and wait forever for one to write.
+     *
+     * @param sourceFolder the base source folder, may be <code>null</code>
+     * @param destFolder the base destination folder
+     * @return the number of files that should be transferred concurrently
+     */
+    public static int getDefaultNbTransferThreads(AbstractFile sourceFolder, AbstractFile destFolder) {
+        // Archive entries are read and written sequentially by their archive file
+        if(destFolder.getParentArchive()!=null || (sourceFolder!=null && sourceFolder.getParentArchive()!=null))
+            return 1;
+
+        FileURL destURL = destFolder.getURL();
+        int nbThreads = MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_THREADS, MuPreferences.DEFAULT_TRANSFER_THREADS);
+        if(nbThreads<=0) {
+            Integer protocolThreads = PROTOCOL_TRANSFER_THREADS.get(destURL.getScheme());
+            nbThreads = protocolThreads==null?DEFAULT_PROTOCOL_TRANSFER_THREADS:protocolThreads;
+        }
+
+        if(sourceFolder!=null && POOLED_PROTOCOLS.contains(destURL.getScheme())
+                && sourceFolder.getURL().getRealm().equals(destURL.getRealm()))
+            nbThreads = Math.min(nbThreads, Math.max(1, ConnectionPool.MAX_CONNECTIONS_PER_REALM/2));
+
+        return nbThreads;
+    }
+
+    /**
+     * Enables parallel transfers, using the number of transfer threads returned by
+     * {@link #getDefaultNbTransferThreads(AbstractFile, AbstractFile)} for this job's source and destination folders.
+     * This method must be called before the job is started.
+     */
+    public void enableParallelTransfers() {
+        setNbTransferThreads(getDefaultNbTransferThreads(getBaseSourceFolder(), baseDestFolder));
+    }
+
     /**
      * Creates a destination file given a destination folder and a new file name.
      * @param destFolder a destination folder
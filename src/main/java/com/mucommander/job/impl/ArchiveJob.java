@@ -21,6 +21,7 @@ package com.mucommander.job.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.Deflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,17 +61,34 @@ public class ArchiveJob extends TransferFileJob {
 	
     /** Optional archive comment */
     private String archiveComment;
+
+    /** Compression level, for the formats that support it */
+    private int compressionLevel;
+
+    /** Number of threads to compress data on, for the formats that support it */
+    private int nbCompressionThreads;
 	
     /** Lock to avoid Archiver.close() to be called while data is being written */
     private final Object ioLock = new Object();
 
 
     public ArchiveJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFile, int archiveFormat, String archiveComment) {
+        this(progressDialog, mainFrame, files, destFile, archiveFormat, archiveComment, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Creates a new ArchiveJob that compresses data with the given level, on the given number of threads.
+     * Both are ignored by the formats that do not support them, see {@link Archiver#formatSupportsCompressionLevel(int)}.
+     */
+    public ArchiveJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile destFile, int archiveFormat, String archiveComment,
+                      int compressionLevel, int nbCompressionThreads) {
         super(progressDialog, mainFrame, files);
 		
         this.destFile = destFile;
         this.archiveFormat = archiveFormat;
         this.archiveComment = archiveComment;
+        this.compressionLevel = compressionLevel;
+        this.nbCompressionThreads = nbCompressionThreads;
 
         this.baseFolderPath = getBaseSourceFolder().getAbsolutePath(false);
     }
@@ -183,7 +201,7 @@ public class ArchiveJob extends TransferFileJob {
         do {
             try {
                 // Tries to get an Archiver instance.
-                this.archiver = Archiver.getArchiver(destFile, archiveFormat);
+                this.archiver = Archiver.getArchiver(destFile, archiveFormat, compressionLevel, nbCompressionThreads);
                 this.archiver.setComment(archiveComment);
 
                 break;
@@ -22,12 +22,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.MultiDigestInputStream;
 import com.mucommander.job.FileCollisionChecker;
 import com.mucommander.job.FileJobAction;
 import com.mucommander.job.FileJobState;
@@ -39,7 +44,9 @@ import com.mucommander.ui.main.MainFrame;
 import com.mucommander.ui.viewer.ViewerRegistrar;
 
 /**
- * This job calculates a checksum for a list of files and stores the results in a checksum file.
+ * This job calculates a checksum for a list of files and stores the results in a checksum file. Several checksum
+ * algorithms can be used at once, in which case each file is read only once and a checksum file is created for each
+ * algorithm.
  *
  * <p>The format of this file is a de facto standard ; a line is created for each file and goes like this:
  * <pre>
@@ -62,34 +69,177 @@ import com.mucommander.ui.viewer.ViewerRegistrar;
  * </pre>
  * </p>
  *
+ * <p>Files are read by the transfer threads of the job (see {@link #setNbTransferThreads(int)}), so that several files
+ * can be hashed concurrently. The lines of the checksum files are written in the order the files were traversed.</p>
+ *
  * @author Maxence Bernard
  */
 public class CalculateChecksumJob extends TransferFileJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CalculateChecksumJob.class);
 	
-    /** The checksum file where the checksum of each file is written */
-    private AbstractFile checksumFile;
-    /** The OutputStream of the checksum file */
-    private OutputStream checksumFileOut;
+    /** The checksum files where the checksum of each file is written, one per digest */
+    private AbstractFile checksumFiles[];
+    /** The OutputStreams of the checksum files */
+    private OutputStream checksumFileOuts[];
 
     /** The path to the base source folder, i.e. the folder which contains all the files this job operates on */
     private String baseSourcePath;
 
-    /** True if the SFV format is used rather than the default 'SUMS' format */
-    private boolean useSfvFormat;
+    /** True for the digests whose checksum file uses the SFV format rather than the default 'SUMS' format */
+    private boolean useSfvFormat[];
+
+    /** The algorithms of the checksums to calculate */
+    private String algorithms[];
 
-    /** The MessageDigest that serves to calculate the checksum */
-    private MessageDigest digest;
+    /** Checksums that are being calculated or that have not been written yet, in the order the files were traversed */
+    private final Deque<PendingChecksum> pendingChecksums = new ArrayDeque<PendingChecksum>();
 
 
     public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile checksumFile, MessageDigest digest) {
+        this(progressDialog, mainFrame, files, new AbstractFile[]{checksumFile}, new MessageDigest[]{digest});
+    }
+
+    /**
+     * Creates a new CalculateChecksumJob that calculates several checksums of each file in a single pass.
+     *
+     * @param progressDialog dialog which shows this job's progress
+     * @param mainFrame mainFrame this job has been triggered by
+     * @param files files whose checksum is calculated
+     * @param checksumFiles the checksum files to create, one for each digest
+     * @param digests the digests that serve to calculate the checksums
+     */
+    public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile checksumFiles[], MessageDigest digests[]) {
         super(progressDialog, mainFrame, files);
 
-        this.checksumFile = checksumFile;
-        this.digest = digest;
-        this.useSfvFormat = digest.getAlgorithm().equalsIgnoreCase("CRC32");
+        this.checksumFiles = checksumFiles;
+        this.checksumFileOuts = new OutputStream[checksumFiles.length];
+        this.algorithms = new String[digests.length];
+        this.useSfvFormat = new boolean[digests.length];
+        for(int i=0; i<digests.length; i++) {
+            algorithms[i] = digests[i].getAlgorithm();
+            useSfvFormat[i] = algorithms[i].equalsIgnoreCase("CRC32");
+        }
 
         this.baseSourcePath = getBaseSourceFolder().getAbsolutePath(true);
+
+        // The files are read from the base source folder's protocol
+        setNbTransferThreads(AbstractCopyJob.getDefaultNbTransferThreads(null, getBaseSourceFolder()));
+    }
+
+    /**
+     * Calculates the checksums of the given file, registering its stream in the given transfer slot. The user is
+     * offered to retry if the file can't be read.
+     *
+     * @return the checksums of the file, in the order of {@link #algorithms}, <code>null</code> if the file was skipped
+     * or the job interrupted
+     */
+    private String[] calculateChecksums(TransferSlot slot, AbstractFile file) {
+        do {		// Loop for retry
+            try {
+                // Digests are not thread-safe, each file gets digests of its own
+                MessageDigest digests[] = new MessageDigest[algorithms.length];
+                for(int i=0; i<algorithms.length; i++)
+                    digests[i] = MessageDigest.getInstance(algorithms[i]);
+
+                // A single pass updates all the digests
+                MultiDigestInputStream in = new MultiDigestInputStream(setCurrentInputStream(slot, file.getInputStream()), digests);
+                try {
+                    byte buffer[] = new byte[MultiDigestInputStream.CHUNK_SIZE];
+                    while(in.read(buffer)!=-1);
+
+                    return in.getChecksumStrings();
+                }
+                finally {
+                    // Close the InputStream, a new one will be created when retrying
+                    closeCurrentInputStream(slot);
+                }
+            }
+            catch(NoSuchAlgorithmException e) {
+                // Should never happen, the algorithms come from existing digests
+                LOGGER.info("Unsupported checksum algorithm", e);
+                return null;
+            }
+            catch(IOException e) {
+                // If the job was interrupted by the user at the time the exception occurred, it most likely means that
+                // the IOException was caused by the stream being closed as a result of the user interruption.
+                // If that is the case, the exception should not be interpreted as an error.
+                // Same goes if the current file was skipped.
+                if (getState() == FileJobState.INTERRUPTED || slot.isFileSkipped())
+                    return null;
+
+                LOGGER.debug("Caught IOException", e);
+                
+                int ret = showErrorDialog(Translator.get("error"), Translator.get("error_while_transferring", file.getAbsolutePath()));
+                // Retry loops
+                if(ret==FileJobAction.RETRY) {
+                    // Reset processed bytes currentFileByteCounter
+                    slot.resetFileByteCounters();
+
+                    continue;
+                }
+
+                // Cancel, skip or close dialog return null
+                return null;
+            }
+        } while(true);
+    }
+
+    /**
+     * Writes the checksums of the files whose checksums have been calculated to the checksum files, stopping at the
+     * first file that is still being processed, so that lines are written in the order the files were traversed.
+     *
+     * @param wait if <code>true</code>, waits for all pending files to be processed
+     * @return false if a checksum file could not be written to, in which case the job has been interrupted
+     */
+    private boolean writePendingChecksums(boolean wait) {
+        while(!pendingChecksums.isEmpty()) {
+            PendingChecksum pending = pendingChecksums.peek();
+            if(!wait && !pending.transfer.isDone())
+                return true;
+
+            pendingChecksums.poll();
+
+            // The file was skipped or could not be read
+            if(!waitForTransfer(pending.transfer) || pending.checksums==null)
+                continue;
+
+            // Determine the path relative to the base source folder
+            String relativePath = pending.file.getAbsolutePath();
+            relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
+
+            for(int i=0; i<checksumFileOuts.length; i++) {
+                // Write a new line in the checksum file, in the appropriate format
+                String line;
+                if(useSfvFormat[i]) {
+                    // SFV format for CRC32 checksums
+                    line = relativePath + " " + pending.checksums[i];     // 1 space character
+                }
+                else {
+                    // 'SUMS' format for other checksum algorithms
+                    line = pending.checksums[i] + "  " + relativePath;    // 2 space characters, that's how the format is
+                }
+
+                line += '\n';
+
+                try {
+                    checksumFileOuts[i].write(line.getBytes("utf-8"));
+                }
+                catch(IOException e) {
+                    LOGGER.debug("Caught IOException", e);
+
+                    showErrorDialog(Translator.get("error"),
+                                    Translator.get("cannot_write_file", checksumFiles[i].getName()),
+                                    new String[] {FileJobAction.CANCEL_TEXT},
+                                    new int[]  {FileJobAction.CANCEL}
+                                    );
+
+                    interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return true;
     }
 
 
@@ -125,77 +275,29 @@ public class CalculateChecksumJob extends TransferFileJob {
             } while(true);
         }
 
-        // Calculate the file's checksum
-        do {		// Loop for retry
-            InputStream in = null;
-            String line;
-            String checksum;
-            try {
-                // Resets the digest before use
-                digest.reset();
-
-                in = null;
-                in = setCurrentInputStream(file.getInputStream());
+        // Calculate the file's checksums, in a transfer thread if parallel transfers are enabled
+        final PendingChecksum pending = new PendingChecksum(file);
+        pending.transfer = submitTransfer(file, slot -> {
+            pending.checksums = calculateChecksums(slot, file);
+            return pending.checksums!=null;
+        });
+        pendingChecksums.add(pending);
 
-                // Determine the path relative to the base source folder
-                String relativePath = file.getAbsolutePath();
-                relativePath = relativePath.substring(baseSourcePath.length(), relativePath.length());
+        if(getNbTransferThreads()<=1)
+            return writePendingChecksums(true) && pending.checksums!=null;
 
-                // Write a new line in the checksum file, in the appropriate format
-                checksum = AbstractFile.calculateChecksum(in, digest);
-                if(useSfvFormat) {
-                    // SFV format for CRC32 checksums
-                    line = relativePath + " " + checksum;     // 1 space character
-                }
-                else {
-                    // 'SUMS' format for other checksum algorithms
-                    line = checksum + "  " + relativePath;    // 2 space characters, that's how the format is
-                }
-
-                line += '\n';
-
-                // Close the InputStream, we're done with it
-                in.close();
-
-                checksumFileOut.write(line.getBytes("utf-8"));
-
-                return true;
-            }
-            catch(IOException e) {
-                // Close the InputStream, a new one will be created when retrying
-                if(in!=null) {
-                    try { in.close(); }
-                    catch(IOException e2){}
-                }
-
-                // If the job was interrupted by the user at the time the exception occurred, it most likely means that
-                // the IOException was caused by the stream being closed as a result of the user interruption.
-                // If that is the case, the exception should not be interpreted as an error.
-                // Same goes if the current file was skipped.
-                if (getState() == FileJobState.INTERRUPTED || wasCurrentFileSkipped())
-                    return false;
-
-                LOGGER.debug("Caught IOException", e);
-                
-                int ret = showErrorDialog(Translator.get("error"), Translator.get("error_while_transferring", file.getAbsolutePath()));
-                // Retry loops
-                if(ret==FileJobAction.RETRY) {
-                    // Reset processed bytes currentFileByteCounter
-                    resetCurrentFileByteCounter();
-
-                    continue;
-                }
-
-                // Cancel, skip or close dialog return false
-                return false;
-            }
-        } while(true);
+        return writePendingChecksums(false);
     }
 
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
-        // This job modifies the folder where the checksum file is
-        return folder.equalsCanonical(checksumFile.getParent());     // Note: parent may be null
+        // This job modifies the folder where the checksum files are
+        for(AbstractFile checksumFile : checksumFiles) {
+            if(folder.equalsCanonical(checksumFile.getParent()))     // Note: parent may be null
+                return true;
+        }
+
+        return false;
     }
 
 
@@ -207,69 +309,105 @@ public class CalculateChecksumJob extends TransferFileJob {
     protected void jobStarted() {
         super.jobStarted();
 
-        // Check for file collisions, i.e. if the file already exists in the destination
-        int collision = FileCollisionChecker.checkForCollision(null, checksumFile);
-        if(collision!=FileCollisionChecker.NO_COLLOSION) {
-            // File already exists in destination, ask the user what to do (cancel, overwrite,...) but
-            // do not offer the multiple files mode options such as 'skip' and 'apply to all'.
-            int choice = waitForUserResponse(new FileCollisionDialog(getProgressDialog(), getMainFrame(), collision, null, checksumFile, false, false));
+        for(int i=0; i<checksumFiles.length; i++) {
+            AbstractFile checksumFile = checksumFiles[i];
 
-            // Overwrite file
-            if (choice== FileCollisionDialog.OVERWRITE_ACTION) {
-                // Do nothing, simply continue and file will be overwritten
-            }
-            // 'Cancel' or close dialog interrupts the job
-            else {
-                interrupt();
-                return;
+            // Check for file collisions, i.e. if the file already exists in the destination
+            int collision = FileCollisionChecker.checkForCollision(null, checksumFile);
+            if(collision!=FileCollisionChecker.NO_COLLOSION) {
+                // File already exists in destination, ask the user what to do (cancel, overwrite,...) but
+                // do not offer the multiple files mode options such as 'skip' and 'apply to all'.
+                int choice = waitForUserResponse(new FileCollisionDialog(getProgressDialog(), getMainFrame(), collision, null, checksumFile, false, false));
+
+                // Overwrite file
+                if (choice== FileCollisionDialog.OVERWRITE_ACTION) {
+                    // Do nothing, simply continue and file will be overwritten
+                }
+                // 'Cancel' or close dialog interrupts the job
+                else {
+                    interrupt();
+                    return;
+                }
             }
-        }
 
-        // Loop for retry
-        do {
-            try {
-                // Tries to get an OutputStream on the destination file
-                this.checksumFileOut = checksumFile.getOutputStream();
+            // Loop for retry
+            do {
+                try {
+                    // Tries to get an OutputStream on the destination file
+                    this.checksumFileOuts[i] = checksumFile.getOutputStream();
 
-                break;
+                    break;
 
-            }
-            catch(Exception e) {
-                int choice = showErrorDialog(Translator.get("error"),
-                                             Translator.get("cannot_write_file", checksumFile.getName()),
-                                             new String[] {FileJobAction.CANCEL_TEXT, FileJobAction.RETRY_TEXT},
-                                             new int[]  {FileJobAction.CANCEL, FileJobAction.RETRY}
-                                             );
+                }
+                catch(Exception e) {
+                    int choice = showErrorDialog(Translator.get("error"),
+                                                 Translator.get("cannot_write_file", checksumFile.getName()),
+                                                 new String[] {FileJobAction.CANCEL_TEXT, FileJobAction.RETRY_TEXT},
+                                                 new int[]  {FileJobAction.CANCEL, FileJobAction.RETRY}
+                                                 );
 
-                // Retry loops
-                if(choice == FileJobAction.RETRY)
-                    continue;
+                    // Retry loops
+                    if(choice == FileJobAction.RETRY)
+                        continue;
 
-                // 'Cancel' or close dialog interrupts the job
-                interrupt();
-                return;
-            }
-        } while(true);
+                    // 'Cancel' or close dialog interrupts the job
+                    interrupt();
+                    return;
+                }
+            } while(true);
+        }
+    }
+
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+
+        // All files have been processed, write the remaining checksums
+        writePendingChecksums(true);
     }
 
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
 
-        // Open the checksum file in a viewer
-        ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
+        // Open the checksum files in a viewer
+        for(AbstractFile checksumFile : checksumFiles)
+            ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
     }
 
     @Override
     protected void jobStopped() {
         super.jobStopped();
         
-        // Close the checksum file's OutputStream
-        if(checksumFileOut !=null) {
-            try { checksumFileOut.close(); }
-            catch(IOException e2){
-                // No need to inform the user
+        // Close the checksum files' OutputStreams
+        for(OutputStream checksumFileOut : checksumFileOuts) {
+            if(checksumFileOut !=null) {
+                try { checksumFileOut.close(); }
+                catch(IOException e2){
+                    // No need to inform the user
+                }
             }
         }
     }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * The checksums of a file, which may still be being calculated by a transfer thread.
+     */
+    private static class PendingChecksum {
+        /** The file whose checksums are calculated */
+        private final AbstractFile file;
+        /** Completes when the checksums have been calculated */
+        private Future<Boolean> transfer;
+        /** The checksums of the file, null until they have been calculated or if the file was skipped */
+        private volatile String checksums[];
+
+        private PendingChecksum(AbstractFile file) {
+            this.file = file;
+        }
+    }
 }
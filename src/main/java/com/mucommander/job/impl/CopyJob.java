@@ -20,11 +20,14 @@
 package com.mucommander.job.impl;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.archive.AbstractArchiveFile;
@@ -53,6 +56,10 @@ public class CopyJob extends AbstractCopyJob {
     /** Operating mode : COPY_MODE or DOWNLOAD_MODE */
     private TransferMode mode;
 
+    /** Destination folders whose date is to be set once the files they contain have been transferred, mapped to
+     * their source folder. Used when files are transferred concurrently, in the order folders are completed. */
+    private Map<AbstractFile, AbstractFile> foldersToDate = new LinkedHashMap<AbstractFile, AbstractFile>();
+
     public enum TransferMode {
         COPY,
         DOWNLOAD
@@ -155,35 +162,37 @@ public class CopyJob extends AbstractCopyJob {
             // and copy each file in this folder recursively
             do {		// Loop for retry
                 try {
-                    // for each file in folder...
-                    for (AbstractFile subFile : file.ls()) {
-                        if (getState() == FileJobState.INTERRUPTED)
-                            break;
-
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(subFile);
-                        processFile(subFile, destFile);
+                    // for each file in folder, as the folder is being listed...
+                    DirectoryIterator subFiles = file.iterateChildren();
+                    try {
+                        AbstractFile subFile;
+                        while (getState() != FileJobState.INTERRUPTED && subFiles.hasNext()) {
+                            subFile = subFiles.next();
+
+                            // Notify job that we're starting to process this file (needed for recursive calls to processFile)
+                            nextFile(subFile);
+                            processFile(subFile, destFile);
+                        }
+                    }
+                    finally {
+                        subFiles.close();
                     }
 
                     // Set currentDestFile back to the enclosing folder in case an overridden processFile method
                     // needs to work with the folder after calling super.processFile.
                     currentDestFile = destFile;
 
-                    // Only when finished with folder, set destination folder's date to match the original folder one
-                    if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.changeDate(file.getDate());
-                        }
-                        catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
-                    }
+                    // Only when finished with folder, set destination folder's date to match the original folder one.
+                    // Files that are still being transferred would change the folder's date: wait for them.
+                    if (getNbTransferThreads()>1)
+                        foldersToDate.put(destFile, file);
+                    else
+                        copyFolderDate(file, destFile);
 
                     return true;
                 }
                 catch(IOException e) {
-                    // file.ls() failed
+                    // Listing the folder failed
                     int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_folder", file.getName()));
                     // Retry loops
                     if (ret==FileJobAction.RETRY)
@@ -195,11 +204,34 @@ public class CopyJob extends AbstractCopyJob {
         }
         // File is a regular file, copy it
         else  {
-            // Copy the file
+            // Copy the file, in a transfer thread if parallel transfers are enabled
+            if (getNbTransferThreads()>1) {
+                final AbstractFile finalDestFile = destFile;
+                final boolean finalAppend = append;
+                submitTransfer(file, slot -> tryCopyFile(slot, file, finalDestFile, finalAppend, errorDialogTitle));
+                return true;
+            }
+
             return tryCopyFile(file, destFile, append, errorDialogTitle);
         }
     }
 
+    /**
+     * Sets the date of the given destination folder to match the one of the given source folder, if the destination
+     * supports it.
+     */
+    private void copyFolderDate(AbstractFile sourceFolder, AbstractFile destFolder) {
+        if (destFolder.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+            try {
+                destFolder.changeDate(sourceFolder.getDate());
+            }
+            catch (IOException e) {
+                LOGGER.debug("failed to change the date of "+destFolder, e);
+                // Fail silently
+            }
+        }
+    }
+
 
 
     // This job modifies baseDestFolder and its subfolders
@@ -213,6 +245,16 @@ public class CopyJob extends AbstractCopyJob {
     // Overridden methods //
     ////////////////////////
 
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+
+        // All files have been transferred, folders' dates will not change anymore
+        for (Map.Entry<AbstractFile, AbstractFile> entry : foldersToDate.entrySet())
+            copyFolderDate(entry.getValue(), entry.getKey());
+        foldersToDate.clear();
+    }
+
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.DirectoryIterator;
 import com.mucommander.commons.file.archive.AbstractArchiveFile;
 import com.mucommander.commons.file.archive.AbstractRWArchiveFile;
 import com.mucommander.commons.file.util.FileSet;
@@ -129,11 +130,19 @@ public class DeleteJob extends FileJob {
                 do {		// Loop for retry
                     // Delete each file in this folder
                     try {
-                        AbstractFile subFiles[] = file.ls();
-                        for(int i=0; i<subFiles.length && getState() != FileJobState.INTERRUPTED; i++) {
-                            // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                            nextFile(subFiles[i]);
-                            processFile(subFiles[i], null);
+                        // Files are deleted as the folder is being listed
+                        DirectoryIterator subFiles = file.iterateChildren();
+                        try {
+                            AbstractFile subFile;
+                            while(getState() != FileJobState.INTERRUPTED && subFiles.hasNext()) {
+                                subFile = subFiles.next();
+                                // Notify job that we're starting to process this file (needed for recursive calls to processFile)
+                                nextFile(subFile);
+                                processFile(subFile, null);
+                            }
+                        }
+                        finally {
+                            subFiles.close();
                         }
                         break;
                     }
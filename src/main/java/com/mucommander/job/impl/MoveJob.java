@@ -20,6 +20,9 @@
 package com.mucommander.job.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +51,10 @@ public class MoveJob extends AbstractCopyJob {
     /** True if this job corresponds to a single file renaming */
     protected boolean renameMode;
 
+    /** Transfers of the files contained by the folder being moved, that need to complete before the folder can
+     * be deleted. <code>null</code> for top level files. */
+    private List<Future<Boolean>> folderTransfers;
+
     
     /**
      * Creates a new MoveJob without starting it.
@@ -178,15 +185,28 @@ public class MoveJob extends AbstractCopyJob {
                 try {
                     AbstractFile subFiles[] = file.ls();
                     boolean isFolderEmpty = true;
-                    for (AbstractFile subFile : subFiles) {
-                        // Return now if the job was interrupted, so that we do not attempt to delete this folder
-                        if (getState() == FileJobState.INTERRUPTED)
-                            return false;
-
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(subFile);
-                        if (!processFile(subFile, destFile))
-                            isFolderEmpty = false;
+                    List<Future<Boolean>> parentFolderTransfers = folderTransfers;
+                    folderTransfers = new ArrayList<Future<Boolean>>();
+                    try {
+                        for (AbstractFile subFile : subFiles) {
+                            // Return now if the job was interrupted, so that we do not attempt to delete this folder
+                            if (getState() == FileJobState.INTERRUPTED)
+                                return false;
+
+                            // Notify job that we're starting to process this file (needed for recursive calls to processFile)
+                            nextFile(subFile);
+                            if (!processFile(subFile, destFile))
+                                isFolderEmpty = false;
+                        }
+
+                        // Wait for the files that are being moved by transfer threads
+                        for (Future<Boolean> transfer : folderTransfers) {
+                            if (!waitForTransfer(transfer))
+                                isFolderEmpty = false;
+                        }
+                    }
+                    finally {
+                        folderTransfers = parentFolderTransfers;
                     }
 
                     // Only when finished with folder, set destination folder's date to match the original folder one
@@ -241,31 +261,52 @@ public class MoveJob extends AbstractCopyJob {
 
             // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
             // try the hard way by copying the file first, and then deleting the source file.
-            if(tryCopyFile(file, destFile, append, errorDialogTitle) && getState() != FileJobState.INTERRUPTED) {
-                // Delete the source file
-                do {		// Loop for retry
-                    try  {
-                        file.delete();
-                        // All OK
-                        return true;
-                    }
-                    catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
+            // The file is moved by a transfer thread if parallel transfers are enabled.
+            final AbstractFile finalDestFile = destFile;
+            final boolean finalAppend = append;
+            Future<Boolean> transfer = submitTransfer(file, slot -> copyAndDeleteFile(slot, file, finalDestFile, finalAppend));
 
-                        int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                        // Retry loops
-                        if(ret==FileJobAction.RETRY)
-                            continue;
-                        // Cancel, skip or close dialog returns false
-                        return false;
-                    }
-                } while(true);
-            }
+            if (getNbTransferThreads()<=1)
+                return waitForTransfer(transfer);
 
-            return false;
+            // The enclosing folder will be deleted once the transfer is complete
+            if (folderTransfers!=null)
+                folderTransfers.add(transfer);
+
+            return true;
         }
     }
 
+    /**
+     * Copies the given regular file to the destination and deletes it if the copy succeeded.
+     *
+     * @return <code>true</code> if the file has been moved completely (copied + deleted).
+     */
+    private boolean copyAndDeleteFile(TransferSlot slot, AbstractFile file, AbstractFile destFile, boolean append) {
+        if(tryCopyFile(slot, file, destFile, append, errorDialogTitle) && getState() != FileJobState.INTERRUPTED) {
+            // Delete the source file
+            do {		// Loop for retry
+                try  {
+                    file.delete();
+                    // All OK
+                    return true;
+                }
+                catch(IOException e) {
+                    LOGGER.debug("IOException caught", e);
+
+                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
+                    // Retry loops
+                    if(ret==FileJobAction.RETRY)
+                        continue;
+                    // Cancel, skip or close dialog returns false
+                    return false;
+                }
+            } while(true);
+        }
+
+        return false;
+    }
+
     // This job modifies baseDestFolder and its subfolders
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
@@ -21,12 +21,11 @@ package com.mucommander.job.impl;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.FolderSizeCalculator;
 import com.mucommander.job.FileJob;
 import com.mucommander.job.FileJobState;
 import com.mucommander.ui.main.MainFrame;
 
-import java.io.IOException;
-
 
 /**
  * This FileJob calculates the number of files contained in a list of file and folders and
@@ -35,15 +34,9 @@ import java.io.IOException;
  * @author Maxence Bernard
  */
 public class PropertiesJob extends FileJob {
-    
-    /** Number of folders encountered so far */
-    private int nbFolders;
 
-    /** Number of regular files (not folders) encountered so far */
-    private int nbFilesRecurse;
-	
-    /** Combined size of all files encountered so far */
-    private long totalBytes;
+    /** Number of files and folders, and combined size of the files encountered so far */
+    private final FolderSizeCalculator.Totals totals = new FolderSizeCalculator.Totals();
 	
 	
     public PropertiesJob(FileSet files, MainFrame mainFrame) {
@@ -55,21 +48,21 @@ public class PropertiesJob extends FileJob {
      * Returns the size in bytes of all the files seen so far.
      */
     public long getTotalBytes() {
-        return totalBytes;
+        return totals.getTotalBytes();
     }
 
     /**
      * Returns the number of folders counted so far.
      */
     public int getNbFolders() {
-        return nbFolders;
+        return totals.getNbFolders();
     }
  
     /**
      * Returns the number of files (folders excluded) counted so far.
      */
     public int getNbFilesRecurse() {
-        return nbFilesRecurse;
+        return totals.getNbFiles();
     }
  
 
@@ -79,7 +72,7 @@ public class PropertiesJob extends FileJob {
 
     /**
      * Adds the given file to the total of files or folders and the total size,
-     * and recurses if it is a folder.
+     * and recurses if it is a folder. Folders are traversed in parallel by {@link FolderSizeCalculator}.
      */
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
@@ -87,33 +80,19 @@ public class PropertiesJob extends FileJob {
         if (getState() == FileJobState.INTERRUPTED)
             return false;
 
-        // If file is a directory, increase folder counter and recurse
-        if (file.isDirectory() && !file.isSymlink()) {
-            nbFolders++;
-
-            try {
-                AbstractFile subFiles[] = file.ls();
-                for(int i=0; i<subFiles.length && getState() != FileJobState.INTERRUPTED; i++) {
-                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                    nextFile(subFiles[i]);
-                    processFile(subFiles[i], null);
-                }
-            }
-            catch(IOException e) {
-                // Should we tell the user?
-            }
-        }
-        // If not, increase file counter and bytes total
-        else {
-            nbFilesRecurse++;
-            long fileSize = file.getSize();
-            if(fileSize>0)		// Can be equal to -1 if size not available
-                totalBytes += fileSize;
-        }
+        FolderSizeCalculator.calculate(file, totals);
 	
         return true;
     }
 
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        // Stop traversing folders if the job was interrupted
+        totals.cancel();
+    }
+
     // This job does not modify anything
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
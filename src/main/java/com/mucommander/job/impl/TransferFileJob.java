@@ -26,6 +26,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +39,7 @@ import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.protocol.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.SegmentedInputStream;
 import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
@@ -63,33 +67,31 @@ import com.mucommander.ui.main.MainFrame;
 public abstract class TransferFileJob extends FileJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TransferFileJob.class);
 	
-    /** Contains the number of bytes processed in the current file so far, see {@link #getCurrentFileByteCounter()} ()} */
-    private ByteCounter currentFileByteCounter;
+    /** Transfer slot used by the job's thread */
+    private final TransferSlot jobSlot;
 
-    /** Contains the number of bytes skipped in the current file so far, see {@link #getCurrentFileSkippedByteCounter()} ()} */
-    private ByteCounter currentFileSkippedByteCounter;
+    /** Transfer slot of the file currently being processed: the job's slot, or the slot of the transfer thread that
+     * most recently started a file */
+    private volatile TransferSlot currentSlot;
 
-    /** Contains the number of bytes processed so far, see {@link #getTotalByteCounter()} */
+    /** Contains the number of bytes processed so far, see {@link #getTotalByteCount()} */
     private ByteCounter totalByteCounter;
 
-    /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCounter()} */
+    /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCount()} */
     private ByteCounter totalSkippedByteCounter;
 
-    /** InputStream currently being processed, may be null */
-    private ThroughputLimitInputStream tlin;
-
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
 
-    /** Has the file currently being processed been skipped ? */
-    private boolean currentFileSkipped;
-
     /** If true, all transfers will be checked for integrity: the checksum of the source and destination file will
      *  be calculated and compared to verify they match. */
     private boolean integrityCheckEnabled;
 
-    /** True when the checksum of the source or destination file is being calculated. */
-    private boolean isCheckingIntegrity;
+    /** Number of threads that transfer files concurrently, 1 (the default) to transfer files in the job's thread */
+    private int nbTransferThreads = 1;
+
+    /** Transfer threads, created when the first transfer is submitted in parallel mode */
+    private TransferThreadPool transferThreadPool;
 
     /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
@@ -107,12 +109,12 @@ public abstract class TransferFileJob extends FileJob {
     public TransferFileJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files) {
         super(progressDialog, mainFrame, files);
 
-        this.currentFileByteCounter = new ByteCounter();
-        this.currentFileSkippedByteCounter = new ByteCounter();
+        this.jobSlot = new TransferSlot();
+        this.currentSlot = jobSlot;
 
         // Account the current file's byte counter in the total byte counter
-        this.totalByteCounter = new ByteCounter(currentFileByteCounter);
-        this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter);
+        this.totalByteCounter = new ByteCounter(jobSlot.fileByteCounter);
+        this.totalSkippedByteCounter = new ByteCounter(jobSlot.fileSkippedByteCounter);
     }
 
 	
@@ -121,8 +123,16 @@ public abstract class TransferFileJob extends FileJob {
      * As much as the source and destination protocols allow, the source file's date and permissions will be preserved.
      */
     protected void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        copyFile(jobSlot, sourceFile, destFile, append);
+    }
+
+    /**
+     * Copies the given source file to the specified destination file, registering streams and counting bytes
+     * in the given transfer slot. See {@link #copyFile(AbstractFile, AbstractFile, boolean)}.
+     */
+    private void copyFile(TransferSlot slot, AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
         // Reset this field in case it was set to true for the previous file
-        isCheckingIntegrity = false;
+        slot.checkingIntegrity = false;
 
         // Throw a specific FileTransferException if source and destination files are identical
         if(sourceFile.equalsCanonical(destFile))
@@ -154,22 +164,22 @@ public abstract class TransferFileJob extends FileJob {
                 try  {
                     long destFileSize = destFile.getSize();
                     if(append && destFileSize!=-1) {
-                        in = sourceFile.getInputStream(destFileSize);
+                        in = openSourceStream(sourceFile, destFileSize, inLength-destFileSize);
                         // Do not calculate checksum, as it needs to be calculated on the whole file
 
                         inLength -= destFileSize;
                         // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
+                        slot.fileByteCounter.add(destFileSize);
                         // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                        slot.fileSkippedByteCounter.add(destFileSize);
                     }
                     else {
-                        in = sourceFile.getInputStream();
+                        in = openSourceStream(sourceFile, 0, inLength);
                         if(integrityCheckEnabled)
                             in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
                     }
 
-                    setCurrentInputStream(in);
+                    setCurrentInputStream(slot, in);
                 }
                 catch(Exception e) {
                     LOGGER.debug("IOException caught, throwing FileTransferException", e);
@@ -177,14 +187,14 @@ public abstract class TransferFileJob extends FileJob {
                 }
 
                 // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                destFile.copyStream(slot.tlin, append, inLength);
             }
             finally {
                 // This block will always be executed, even if an exception
                 // was thrown in the catch block
 
                 // Tries to close the streams no matter what happened before
-                closeCurrentInputStream();
+                closeCurrentInputStream(slot);
             }
         }
 
@@ -204,7 +214,7 @@ public abstract class TransferFileJob extends FileJob {
             String destinationChecksum;
 
             // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+            slot.checkingIntegrity = true;
 
             if(in!=null && (in instanceof ChecksumInputStream)) {
                 // The file was copied with a ChecksumInputStream, the checksum is already calculated, simply
@@ -215,7 +225,7 @@ public abstract class TransferFileJob extends FileJob {
                 // The file was copied using AbstractFile#copyRemotelyTo(), or the transfer was resumed:
                 // we have to calculate the source file's checksum from scratch.
                 try {
-                    sourceChecksum = calculateChecksum(sourceFile);
+                    sourceChecksum = calculateChecksum(slot, sourceFile);
                 }
                 catch(Exception e) {
                     throw new FileTransferException(FileTransferError.READING_SOURCE);
@@ -226,7 +236,7 @@ public abstract class TransferFileJob extends FileJob {
 
             // Calculate the destination file's checksum
             try {
-                destinationChecksum = calculateChecksum(destFile);
+                destinationChecksum = calculateChecksum(slot, destFile);
             }
             catch(Exception e) {
                 throw new FileTransferException(FileTransferError.READING_DESTINATION);
@@ -271,6 +281,20 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
+    /**
+     * Opens the source file at the given offset. Large files served by a protocol that supports ranged requests are
+     * read with a {@link SegmentedInputStream}, which fetches several segments of the file concurrently.
+     *
+     * @param sourceFile the file to read
+     * @param offset the offset of the first byte to read
+     * @param length the number of bytes to read, <code>-1</code> if the size of the file is unknown
+     */
+    private InputStream openSourceStream(AbstractFile sourceFile, long offset, long length) throws IOException {
+        if(SegmentedInputStream.isWorthSegmenting(sourceFile, length))
+            return new SegmentedInputStream(sourceFile, offset, length);
+
+        return offset==0?sourceFile.getInputStream():sourceFile.getInputStream(offset);
+    }
 
     private void tryCopyFileDate(AbstractFile sourceFile, AbstractFile destFile) {
         if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
@@ -284,14 +308,14 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
-    private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
-        currentFileByteCounter.reset();
-        InputStream in = setCurrentInputStream(file.getInputStream());
+    private String calculateChecksum(TransferSlot slot, AbstractFile file) throws IOException, NoSuchAlgorithmException {
+        slot.fileByteCounter.reset();
+        InputStream in = setCurrentInputStream(slot, file.getInputStream());
         try {
             return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
         }
         finally {
-            closeCurrentInputStream();
+            closeCurrentInputStream(slot);
         }
     }
 
@@ -328,10 +352,21 @@ public abstract class TransferFileJob extends FileJob {
      *
      */
     protected boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+        return tryCopyFile(jobSlot, sourceFile, destFile, append, errorDialogTitle);
+    }
+
+    /**
+     * Same as {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)}, registering streams and counting
+     * bytes in the given transfer slot. This method is used by {@link Transfer transfers} that have been handed over
+     * to a transfer thread.
+     *
+     * @return true if the file was properly copied, false if the transfer was interrupted / aborted by the user
+     */
+    protected boolean tryCopyFile(TransferSlot slot, AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
         // Copy file to destination
         do {  // Loop for retry
             try {
-                copyFile(sourceFile, destFile, append);
+                copyFile(slot, sourceFile, destFile, append);
                 return true;
             }
             catch(FileTransferException e) {
@@ -339,7 +374,7 @@ public abstract class TransferFileJob extends FileJob {
                 // the IOException was caused by the stream being closed as a result of the user interruption.
                 // If that is the case, the exception should not be interpreted as an error.
                 // Same goes if the current file was skipped.
-                if (getState() == FileJobState.INTERRUPTED || wasCurrentFileSkipped())
+                if (getState() == FileJobState.INTERRUPTED || slot.isFileSkipped())
                     return false;
 
                 // Print the exception's stack trace
@@ -375,8 +410,7 @@ public abstract class TransferFileJob extends FileJob {
                 // Retry action (append or retry)
                 if(choice==FileJobAction.RETRY || choice==FileJobAction.APPEND) {
                     // Reset current file byte counters
-                    currentFileByteCounter.reset();
-                    currentFileSkippedByteCounter.reset();
+                    slot.resetFileByteCounters();
                     // Append resumes transfer
                     append = choice==FileJobAction.APPEND;
                     continue;
@@ -403,27 +437,176 @@ public abstract class TransferFileJob extends FileJob {
      * @param in the InputStream to be used
      * @return the 'augmented' InputStream using the given stream as the underlying InputStream
      */
-    protected synchronized InputStream setCurrentInputStream(InputStream in) {
-        if(tlin==null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
+    protected InputStream setCurrentInputStream(InputStream in) {
+        return setCurrentInputStream(jobSlot, in);
+    }
+
+    /**
+     * Registers the given InputStream as currently in use by the given transfer slot.
+     * See {@link #setCurrentInputStream(InputStream)}.
+     */
+    protected synchronized InputStream setCurrentInputStream(TransferSlot slot, InputStream in) {
+        if(slot.tlin==null) {
+            slot.tlin = new ThroughputLimitInputStream(new CounterInputStream(in, slot.fileByteCounter), getSlotThroughputLimit());
         }
         else {
-            tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
+            slot.tlin.setUnderlyingInputStream(new CounterInputStream(in, slot.fileByteCounter));
         }
 
-        return tlin;
+        // The job may have been paused before the stream was registered
+        if(getState() == FileJobState.PAUSED)
+            slot.tlin.setThroughputLimit(0);
+
+        return slot.tlin;
     }
 
     /**
      * Closes the currently registered source InputStream.
      */
-    protected synchronized void closeCurrentInputStream() {
-        if(tlin !=null) {
-            try { tlin.close(); }
+    protected void closeCurrentInputStream() {
+        closeCurrentInputStream(jobSlot);
+    }
+
+    /**
+     * Closes the source InputStream currently registered by the given transfer slot.
+     */
+    protected synchronized void closeCurrentInputStream(TransferSlot slot) {
+        if(slot.tlin !=null) {
+            try { slot.tlin.close(); }
             catch(IOException e) {}
         }
     }
 
+    /**
+     * Returns the throughput limit of a single transfer slot: the job's throughput limit is shared evenly by the
+     * transfer threads, so that the total throughput of the job does not exceed the limit.
+     */
+    private long getSlotThroughputLimit() {
+        if(throughputLimit<=0 || nbTransferThreads<=1)
+            return throughputLimit;
+
+        return Math.max(1, throughputLimit/nbTransferThreads);
+    }
+
+
+    /**
+     * Sets the number of files that can be transferred concurrently by {@link #submitTransfer(AbstractFile, Transfer)}.
+     * <code>1</code>, the default value, transfers files sequentially in the job's thread.
+     * This method must be called before the job is started.
+     *
+     * @param nbTransferThreads number of transfer threads, values lower than 1 are interpreted as 1
+     */
+    public void setNbTransferThreads(int nbTransferThreads) {
+        this.nbTransferThreads = Math.max(1, nbTransferThreads);
+    }
+
+    /**
+     * Returns the number of files that can be transferred concurrently by {@link #submitTransfer(AbstractFile, Transfer)},
+     * <code>1</code> if files are transferred sequentially in the job's thread.
+     *
+     * @return the number of files that can be transferred concurrently
+     */
+    public int getNbTransferThreads() {
+        return nbTransferThreads;
+    }
+
+    /**
+     * Hands the given transfer over to a transfer thread, or performs it right away in the job's thread if
+     * parallel transfers are disabled (see {@link #setNbTransferThreads(int)}).
+     *
+     * <p>This method blocks while all transfer threads are busy and enough transfers are waiting for them, so that
+     * the traversal of the files does not get too far ahead of the transfers. Transfers that have been submitted
+     * are waited for in {@link #waitForPendingFiles()}.</p>
+     *
+     * @param file the file to be transferred, used to report the progress of the current file
+     * @param transfer the transfer to perform
+     * @return a Future that holds the value returned by {@link Transfer#transfer(TransferSlot)}
+     */
+    protected Future<Boolean> submitTransfer(AbstractFile file, Transfer transfer) {
+        if(nbTransferThreads<=1)
+            return CompletableFuture.completedFuture(transfer.transfer(jobSlot));
+
+        synchronized(this) {
+            if(transferThreadPool==null)
+                transferThreadPool = new TransferThreadPool(this, nbTransferThreads);
+        }
+
+        return transferThreadPool.submit(file, transfer);
+    }
+
+    /**
+     * Waits for the given transfer, returned by {@link #submitTransfer(AbstractFile, Transfer)}, to be complete and
+     * returns its result.
+     *
+     * @param transfer the transfer to wait for
+     * @return the value returned by {@link Transfer#transfer(TransferSlot)}, false if the transfer was discarded
+     */
+    protected boolean waitForTransfer(Future<Boolean> transfer) {
+        while(true) {
+            try {
+                return transfer.get();
+            }
+            catch(InterruptedException e) {
+                // Loop one more time
+            }
+            catch(ExecutionException e) {
+                LOGGER.debug("Transfer failed", e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Performs the given transfer in the calling transfer thread. This method is called by {@link TransferThreadPool}.
+     *
+     * @param slot the transfer slot owned by the calling thread
+     * @param file the file to be transferred
+     * @param transfer the transfer to perform
+     * @return the value returned by {@link Transfer#transfer(TransferSlot)}, false if the job was interrupted
+     */
+    boolean performTransfer(TransferSlot slot, AbstractFile file, Transfer transfer) {
+        waitWhilePaused();
+
+        if(getState() == FileJobState.INTERRUPTED)
+            return false;
+
+        slot.fileSkipped = false;
+        slot.file = file;
+        currentSlot = slot;
+        try {
+            return transfer.transfer(slot);
+        }
+        finally {
+            totalByteCounter.add(slot.fileByteCounter, true);
+            totalSkippedByteCounter.add(slot.fileSkippedByteCounter, true);
+            slot.file = null;
+        }
+    }
+
+    /**
+     * Creates a new transfer slot, for use by a transfer thread.
+     */
+    TransferSlot createTransferSlot() {
+        return new TransferSlot();
+    }
+
+    /**
+     * Waits for all transfers submitted to transfer threads to be complete. Transfers may show dialogs and
+     * interrupt the job while this method waits for them.
+     */
+    @Override
+    protected void waitForPendingFiles() {
+        super.waitForPendingFiles();
+
+        TransferThreadPool pool;
+        synchronized(this) {
+            pool = transferThreadPool;
+        }
+
+        if(pool!=null)
+            pool.awaitCompletion();
+    }
+
 
     /**
      * Returns <code>true</code> if file transfers need to be checked for data integrity. In this case, the checksum of
@@ -451,7 +634,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the integrity of the current file is being verified
      */
     protected boolean isCheckingIntegrity() {
-        return isCheckingIntegrity;
+        return currentSlot.checkingIntegrity;
     }
 
 
@@ -459,14 +642,15 @@ public abstract class TransferFileJob extends FileJob {
      * Interrupts the current file transfer and advance to the next one.
      */
     public synchronized void skipCurrentFile() {
-        if(tlin !=null) {
-            LOGGER.debug("skipping current file, closing "+ tlin);
+        TransferSlot slot = currentSlot;
+        if(slot.tlin !=null) {
+            LOGGER.debug("skipping current file, closing "+ slot.tlin);
 
             // Prevents an error from being reported when the current InputStream is closed
-            currentFileSkipped = true;
+            slot.fileSkipped = true;
 
             // Close the current input stream to interrupt the transfer
-            closeCurrentInputStream();
+            closeCurrentInputStream(slot);
         }
 
         // Resume job if currently paused 
@@ -480,7 +664,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the file that is currently being processed has been skipped
      */
     public synchronized boolean wasCurrentFileSkipped() {
-        return currentFileSkipped;
+        return jobSlot.fileSkipped;
     }
 
     /**
@@ -503,14 +687,14 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been processed in the current file
      */
     public long getCurrentFileByteCount() {
-        return currentFileByteCounter.getByteCount();
+        return currentSlot.fileByteCounter.getByteCount();
     }
 
     /**
      * Resets the number of bytes that have been processed in the current file.
      */
     public void resetCurrentFileByteCounter() {
-        currentFileByteCounter.reset();
+        jobSlot.fileByteCounter.reset();
     }
 
     /**
@@ -520,7 +704,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been skipped in the current file
      */
     public long getCurrentFileSkippedByteCount() {
-        return currentFileSkippedByteCounter.getByteCount();
+        return currentSlot.fileSkippedByteCounter.getByteCount();
     }
 
     /**
@@ -529,7 +713,11 @@ public abstract class TransferFileJob extends FileJob {
      * @return the size of the file currently being processed, -1 if this information is not available.
      */
     public long getCurrentFileSize() {
-        return getCurrentFile()==null?-1:getCurrentFile().getSize();
+        AbstractFile file = currentSlot.file;
+        if(file==null)
+            file = getCurrentFile();
+
+        return file==null?-1:file.getSize();
     }
 
 
@@ -539,6 +727,10 @@ public abstract class TransferFileJob extends FileJob {
      * @return the total number of bytes that have been processed by this job so far
      */
     public long getTotalByteCount() {
+        TransferThreadPool pool = transferThreadPool;
+        if(pool!=null)
+            return totalByteCounter.getByteCount() + pool.getInProgressByteCount();
+
         return totalByteCounter.getByteCount();
     }
 
@@ -549,6 +741,10 @@ public abstract class TransferFileJob extends FileJob {
      * @return the total number of bytes that have been skipped by this job so far
      */
     public long getTotalSkippedByteCount() {
+        TransferThreadPool pool = transferThreadPool;
+        if(pool!=null)
+            return totalSkippedByteCounter.getByteCount() + pool.getInProgressSkippedByteCount();
+
         return totalSkippedByteCounter.getByteCount();
     }
 
@@ -570,8 +766,22 @@ public abstract class TransferFileJob extends FileJob {
         this.throughputLimit = bytesPerSecond<=0?-1:bytesPerSecond;
 
         synchronized(this) {
-            if(getState() != FileJobState.PAUSED && tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+            if(getState() != FileJobState.PAUSED)
+                setSlotsThroughputLimit(getSlotThroughputLimit());
+        }
+    }
+
+    /**
+     * Applies the given throughput limit to the streams registered by the job's thread and the transfer threads.
+     */
+    private synchronized void setSlotsThroughputLimit(long bytesPerSecond) {
+        if(jobSlot.tlin !=null)
+            jobSlot.tlin.setThroughputLimit(bytesPerSecond);
+
+        if(transferThreadPool!=null) {
+            for(TransferSlot slot : transferThreadPool.getSlots())
+                if(slot.tlin !=null)
+                    slot.tlin.setThroughputLimit(bytesPerSecond);
         }
     }
 
@@ -598,10 +808,17 @@ public abstract class TransferFileJob extends FileJob {
         super.jobStopped();
 
         synchronized(this) {
-            if(tlin !=null) {
-                LOGGER.debug("closing current InputStream "+ tlin);
+            if(jobSlot.tlin !=null) {
+                LOGGER.debug("closing current InputStream "+ jobSlot.tlin);
+
+                closeCurrentInputStream(jobSlot);
+            }
 
-                closeCurrentInputStream();
+            // Discard the transfers that have not started yet and interrupt the ones in progress
+            if(transferThreadPool!=null) {
+                transferThreadPool.cancel();
+                for(TransferSlot slot : transferThreadPool.getSlots())
+                    closeCurrentInputStream(slot);
             }
         }
     }
@@ -615,10 +832,7 @@ public abstract class TransferFileJob extends FileJob {
     protected void jobPaused() {
         super.jobPaused();
 
-        synchronized(this) {
-            if(tlin !=null)
-                tlin.setThroughputLimit(0);
-        }
+        setSlotsThroughputLimit(0);
     }
 
 
@@ -630,11 +844,8 @@ public abstract class TransferFileJob extends FileJob {
     protected void jobResumed() {
         super.jobResumed();
 
-        synchronized(this) {
-            // Restore previous throughput limit (if any, -1 by default)
-            if(tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
-        }
+        // Restore previous throughput limit (if any, -1 by default)
+        setSlotsThroughputLimit(getSlotThroughputLimit());
     }
 
 
@@ -644,11 +855,11 @@ public abstract class TransferFileJob extends FileJob {
      */
     @Override
     protected void nextFile(AbstractFile file) {
-        totalByteCounter.add(currentFileByteCounter, true);
-        totalSkippedByteCounter.add(currentFileSkippedByteCounter, true);
+        totalByteCounter.add(jobSlot.fileByteCounter, true);
+        totalSkippedByteCounter.add(jobSlot.fileSkippedByteCounter, true);
 
         // Reset some fields that need it
-        currentFileSkipped = false;
+        jobSlot.fileSkipped = false;
 
         super.nextFile(file);
     }
@@ -670,7 +881,14 @@ public abstract class TransferFileJob extends FileJob {
                 nbFilesProcessed += getCurrentFileByteCount() / (float)currentFileSize;
         }
 
-        return nbFilesProcessed/(float)nbFiles;
+        float percentDone = nbFilesProcessed/(float)nbFiles;
+
+        // Files that have been traversed may still be waiting for a transfer thread
+        TransferThreadPool pool = transferThreadPool;
+        if(pool!=null && pool.getNbSubmittedTransfers()>0)
+            percentDone *= pool.getNbCompletedTransfers()/(float)pool.getNbSubmittedTransfers();
+
+        return percentDone;
     }
 
     /**
@@ -685,6 +903,79 @@ public abstract class TransferFileJob extends FileJob {
         return super.getStatusString();
     }
 
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A file transfer that can be handed over to a transfer thread using {@link TransferFileJob#submitTransfer(AbstractFile, Transfer)}.
+     */
+    protected interface Transfer {
+
+        /**
+         * Performs the transfer, registering streams and counting bytes in the given transfer slot, typically by
+         * calling {@link TransferFileJob#tryCopyFile(TransferSlot, AbstractFile, AbstractFile, boolean, String)}.
+         *
+         * @param slot the transfer slot owned by the thread that performs the transfer
+         * @return true if the transfer succeeded
+         */
+        boolean transfer(TransferSlot slot);
+    }
+
+    /**
+     * Holds the state of the file being transferred by a thread: the registered InputStream and the byte counters
+     * of the file. The job's thread and each transfer thread own a slot of their own.
+     */
+    protected final class TransferSlot {
+
+        /** Number of bytes processed in the current file so far */
+        private final ByteCounter fileByteCounter = new ByteCounter();
+
+        /** Number of bytes skipped in the current file so far */
+        private final ByteCounter fileSkippedByteCounter = new ByteCounter();
+
+        /** InputStream currently being processed, may be null */
+        private ThroughputLimitInputStream tlin;
+
+        /** File being transferred by a transfer thread, null for the job's slot */
+        private volatile AbstractFile file;
+
+        /** Has the file currently being processed been skipped ? */
+        private volatile boolean fileSkipped;
+
+        /** True when the checksum of the source or destination file is being calculated. */
+        private volatile boolean checkingIntegrity;
+
+        private TransferSlot() {
+        }
+
+        /**
+         * Returns <code>true</code> if the file currently transferred in this slot has been skipped by the user.
+         *
+         * @return true if the file currently transferred in this slot has been skipped
+         */
+        public boolean isFileSkipped() {
+            return fileSkipped;
+        }
+
+        /**
+         * Resets the byte counters of the file currently transferred in this slot, before the transfer is retried.
+         */
+        public void resetFileByteCounters() {
+            fileByteCounter.reset();
+            fileSkippedByteCounter.reset();
+        }
+
+        long getFileByteCount() {
+            return fileByteCounter.getByteCount();
+        }
+
+        long getFileSkippedByteCount() {
+            return fileSkippedByteCounter.getByteCount();
+        }
+    }
+
 //    /**
 //     * Method overridden to return a more accurate percentage of job processed so far by taking
 //     * into account the current file's processed percentage.
@@ -0,0 +1,320 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.job.impl.TransferFileJob.Transfer;
+import com.mucommander.job.impl.TransferFileJob.TransferSlot;
+
+/**
+ * TransferThreadPool performs the transfers submitted by a {@link TransferFileJob} in a fixed number of transfer
+ * threads, each of which owns a {@link TransferSlot}.
+ *
+ * <p>Submitted transfers wait for a thread in a bounded queue: {@link #submit(AbstractFile, Transfer)} blocks when
+ * the queue is full, which keeps the job's thread from traversing files much faster than they can be transferred.</p>
+ */
+class TransferThreadPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferThreadPool.class);
+
+    /** Number of transfers that can wait in the queue, per transfer thread */
+    private final static int QUEUED_TRANSFERS_PER_THREAD = 2;
+
+    /** The job the transfers are performed for */
+    private final TransferFileJob job;
+
+    /** Transfers waiting for a thread */
+    private final BlockingQueue<PendingTransfer> queue;
+
+    /** Transfer slots, one per transfer thread */
+    private final List<TransferSlot> slots;
+
+    /** Transfer threads */
+    private final List<Thread> threads;
+
+    /** Number of transfers that have been submitted so far */
+    private int nbSubmitted;
+
+    /** Number of transfers that have been completed (or discarded) so far */
+    private int nbCompleted;
+
+    /** True when the pending transfers have been discarded */
+    private boolean cancelled;
+
+    /** True when the transfer threads have been asked to stop */
+    private boolean terminated;
+
+    /**
+     * Creates a new TransferThreadPool and starts its transfer threads.
+     *
+     * @param job the job the transfers are performed for
+     * @param nbThreads number of transfer threads
+     */
+    TransferThreadPool(TransferFileJob job, int nbThreads) {
+        this.job = job;
+        this.queue = new ArrayBlockingQueue<PendingTransfer>(nbThreads*QUEUED_TRANSFERS_PER_THREAD);
+
+        List<TransferSlot> slots = new ArrayList<TransferSlot>(nbThreads);
+        threads = new ArrayList<Thread>(nbThreads);
+        for(int i=0; i<nbThreads; i++) {
+            TransferSlot slot = job.createTransferSlot();
+            slots.add(slot);
+
+            Thread thread = new Thread(new TransferThread(slot), job.getClass().getName()+"-transfer-"+i);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        this.slots = Collections.unmodifiableList(slots);
+
+        for(Thread thread : threads)
+            thread.start();
+    }
+
+    /**
+     * Queues the given transfer, blocking while the queue is full.
+     *
+     * @param file the file to be transferred
+     * @param transfer the transfer to perform
+     * @return a Future that holds the result of the transfer, <code>false</code> if the transfer was discarded
+     */
+    Future<Boolean> submit(AbstractFile file, Transfer transfer) {
+        PendingTransfer pendingTransfer = new PendingTransfer(file, transfer);
+
+        synchronized(this) {
+            if(cancelled) {
+                pendingTransfer.result.complete(false);
+                return pendingTransfer.result;
+            }
+
+            nbSubmitted++;
+        }
+
+        while(true) {
+            try {
+                queue.put(pendingTransfer);
+                break;
+            }
+            catch(InterruptedException e) {
+                // Try again
+            }
+        }
+
+        // The pool may have been cancelled while waiting for room in the queue
+        if(isCancelled())
+            discardQueuedTransfers();
+
+        return pendingTransfer.result;
+    }
+
+    /**
+     * Blocks until all submitted transfers have been completed or discarded, and stops the transfer threads.
+     */
+    void awaitCompletion() {
+        synchronized(this) {
+            while(nbCompleted<nbSubmitted && !cancelled) {
+                try {
+                    wait();
+                }
+                catch(InterruptedException e) {
+                    // Loop one more time
+                }
+            }
+        }
+
+        terminate();
+    }
+
+    /**
+     * Discards the transfers that are waiting for a thread and stops the transfer threads. Transfers in progress
+     * are not waited for, they are expected to be interrupted by the closing of their streams.
+     */
+    void cancel() {
+        synchronized(this) {
+            cancelled = true;
+        }
+
+        discardQueuedTransfers();
+        terminate();
+    }
+
+    /**
+     * Removes the transfers that are waiting for a thread and completes them with a <code>false</code> result.
+     */
+    private void discardQueuedTransfers() {
+        List<PendingTransfer> discardedTransfers = new ArrayList<PendingTransfer>();
+
+        synchronized(this) {
+            queue.drainTo(discardedTransfers);
+            nbCompleted += discardedTransfers.size();
+            notifyAll();
+        }
+
+        for(PendingTransfer pendingTransfer : discardedTransfers)
+            pendingTransfer.result.complete(false);
+    }
+
+    /**
+     * Asks the transfer threads to stop.
+     */
+    private void terminate() {
+        synchronized(this) {
+            if(terminated)
+                return;
+
+            terminated = true;
+        }
+
+        for(Thread thread : threads)
+            thread.interrupt();
+    }
+
+    private synchronized boolean isTerminated() {
+        return terminated;
+    }
+
+    private synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private synchronized void transferCompleted() {
+        nbCompleted++;
+        notifyAll();
+    }
+
+    /**
+     * Returns the transfer slots of the transfer threads.
+     *
+     * @return the transfer slots of the transfer threads
+     */
+    List<TransferSlot> getSlots() {
+        return slots;
+    }
+
+    /**
+     * Returns the number of bytes processed so far in the files that are being transferred.
+     *
+     * @return the number of bytes processed so far in the files that are being transferred
+     */
+    long getInProgressByteCount() {
+        long count = 0;
+        for(TransferSlot slot : slots)
+            count += slot.getFileByteCount();
+
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes skipped so far in the files that are being transferred.
+     *
+     * @return the number of bytes skipped so far in the files that are being transferred
+     */
+    long getInProgressSkippedByteCount() {
+        long count = 0;
+        for(TransferSlot slot : slots)
+            count += slot.getFileSkippedByteCount();
+
+        return count;
+    }
+
+    /**
+     * Returns the number of transfers that have been submitted so far.
+     *
+     * @return the number of transfers that have been submitted so far
+     */
+    synchronized int getNbSubmittedTransfers() {
+        return nbSubmitted;
+    }
+
+    /**
+     * Returns the number of transfers that have been completed or discarded so far.
+     *
+     * @return the number of transfers that have been completed or discarded so far
+     */
+    synchronized int getNbCompletedTransfers() {
+        return nbCompleted;
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A transfer waiting for a thread, along with the Future that receives its result.
+     */
+    private static class PendingTransfer {
+        private final AbstractFile file;
+        private final Transfer transfer;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+        private PendingTransfer(AbstractFile file, Transfer transfer) {
+            this.file = file;
+            this.transfer = transfer;
+        }
+    }
+
+    /**
+     * Takes transfers from the queue and performs them using its own transfer slot, until the pool is terminated.
+     */
+    private class TransferThread implements Runnable {
+        private final TransferSlot slot;
+
+        private TransferThread(TransferSlot slot) {
+            this.slot = slot;
+        }
+
+        public void run() {
+            while(true) {
+                PendingTransfer pendingTransfer;
+                try {
+                    pendingTransfer = queue.take();
+                }
+                catch(InterruptedException e) {
+                    if(isTerminated())
+                        return;
+
+                    continue;
+                }
+
+                boolean result = false;
+                try {
+                    if(!isCancelled())
+                        result = job.performTransfer(slot, pendingTransfer.file, pendingTransfer.transfer);
+                }
+                catch(RuntimeException e) {
+                    LOGGER.info("Caught exception while transferring "+pendingTransfer.file, e);
+                }
+                finally {
+                    pendingTransfer.result.complete(result);
+                    transferCompleted();
+                }
+            }
+        }
+    }
+}
@@ -39,11 +39,13 @@ import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.icon.impl.SwingFileIconProvider;
 import com.mucommander.commons.file.protocol.ftp.FTPProtocolProvider;
 import com.mucommander.commons.file.protocol.smb.SMBProtocolProvider;
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
 import com.mucommander.extension.ExtensionManager;
+import com.mucommander.search.file.SearchProtocolProvider;
 import com.mucommander.shell.ShellHistoryManager;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.action.ActionManager;
@@ -565,11 +567,18 @@ public class muCommander {
         // Use the FTP configuration option that controls whether to force the display of hidden files, or leave it for
         // the servers to decide whether to show them.
         FTPProtocolProvider.setForceHiddenFilesListing(MuConfigurations.getPreferences().getVariable(MuPreference.LIST_HIDDEN_FILES, MuPreferences.DEFAULT_LIST_HIDDEN_FILES));        
+
+        // Configure how long and how many remote folder listings are cached
+        ListingCache.setTtl(MuConfigurations.getPreferences().getVariable(MuPreference.LISTING_CACHE_TTL, MuPreferences.DEFAULT_LISTING_CACHE_TTL));
+        ListingCache.setMaxFiles(MuConfigurations.getPreferences().getVariable(MuPreference.LISTING_CACHE_MAX_FILES, MuPreferences.DEFAULT_LISTING_CACHE_MAX_FILES));
         
         // Use CredentialsManager for file URL authentication
         FileFactory.setDefaultAuthenticator(CredentialsManager.getAuthenticator());
 
         // Register the application-specific 'bookmark' protocol.
         FileFactory.registerProtocol(BookmarkProtocolProvider.BOOKMARK, new com.mucommander.bookmark.file.BookmarkProtocolProvider());
+
+        // Register the application-specific 'search' protocol.
+        FileFactory.registerProtocol(SearchProtocolProvider.SEARCH, new SearchProtocolProvider());
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search.file;
+
+import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.protocol.ProtocolFile;
+import com.mucommander.commons.file.search.ContentMatcher;
+import com.mucommander.commons.file.search.FileSearch;
+import com.mucommander.commons.file.search.FileSearchListener;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a <code>search://</code> folder, whose children are the files found by a {@link FileSearch}.
+ * Files are added to the folder as they are found, and the date of the folder changes each time, so that a folder
+ * panel presenting it can tell when it needs refreshing.
+ *
+ * <p>Instances are created by {@link SearchProtocolProvider#createSearch(AbstractFile[], FileFilter, ContentMatcher, boolean)}.</p>
+ *
+ * @see SearchProtocolProvider
+ */
+public class SearchFile extends ProtocolFile implements FileSearchListener {
+    // - Class fields ----------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /** Permissions of search folders: read and execute for the owner. */
+    private final static FilePermissions PERMISSIONS = new SimpleFilePermissions(320, 448);
+
+
+
+    // - Instance fields -------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /** The search whose results this folder holds. */
+    private final FileSearch search;
+    /** Files found so far, in the order they were found. */
+    private final List<AbstractFile> results = new ArrayList<AbstractFile>();
+    /** Time at which a file was last found, or the search finished. */
+    private volatile long lastModified;
+
+
+
+    // - Initialisation --------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Creates a new search folder. The search is not started until {@link FileSearch#start()} is called on
+     * {@link #getSearch()}.
+     *
+     * @param url            URL of the folder.
+     * @param roots          folders to search.
+     * @param filter         filter that the names of the files must match, <code>null</code> to match all files.
+     * @param matcher        matcher that the contents of the files must match, <code>null</code> to ignore contents.
+     * @param searchArchives whether to search the contents of archives.
+     */
+    SearchFile(FileURL url, AbstractFile roots[], FileFilter filter, ContentMatcher matcher, boolean searchArchives) {
+        super(url);
+        lastModified = System.currentTimeMillis();
+        search = new FileSearch(roots, filter, matcher, searchArchives, this);
+    }
+
+
+
+    // - Search access ---------------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the search whose results this folder holds.
+     * @return the search whose results this folder holds.
+     */
+    public FileSearch getSearch() {return search;}
+
+    /**
+     * Returns the number of files found so far.
+     * @return the number of files found so far.
+     */
+    public int getResultCount() {
+        synchronized(results) {
+            return results.size();
+        }
+    }
+
+    public void fileFound(FileSearch search, AbstractFile file) {
+        synchronized(results) {
+            results.add(file);
+        }
+        lastModified = System.currentTimeMillis();
+    }
+
+    public void searchFinished(FileSearch search) {lastModified = System.currentTimeMillis();}
+
+
+
+    // - AbstractFile methods --------------------------------------------------
+    // -------------------------------------------------------------------------
+    /**
+     * Returns the files found so far.
+     * @return the files found so far.
+     */
+    @Override
+    public AbstractFile[] ls() {
+        synchronized(results) {
+            return results.toArray(new AbstractFile[results.size()]);
+        }
+    }
+
+    @Override
+    public String getName() {return "";}
+
+    @Override
+    public boolean isDirectory() {return true;}
+
+    /**
+     * Returns the date at which a file was last found.
+     * @return the date at which a file was last found.
+     */
+    @Override
+    public long getDate() {return lastModified;}
+
+
+
+    // - Unused methods --------------------------------------------------------
+    // -------------------------------------------------------------------------
+    // The following methods are not used by SearchFile. They will throw an exception,
+    // return an 'operation non supported' value or return a default value.
+
+    @Override
+    public AbstractFile getParent() {return null;}
+    @Override
+    @UnsupportedFileOperation
+    public void delete() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.DELETE);}
+    @Override
+    @UnsupportedFileOperation
+    public void copyRemotelyTo(AbstractFile destFile) throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.COPY_REMOTELY);}
+    @Override
+    @UnsupportedFileOperation
+    public void renameTo(AbstractFile destFile) throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.RENAME);}
+    @Override
+    @UnsupportedFileOperation
+    public void changeDate(long lastModified) throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.CHANGE_DATE);}
+    @Override
+    public long getSize() {return -1;}
+    @Override
+    public void setParent(AbstractFile parent) {}
+    @Override
+    public boolean exists() {return true;}
+    @Override
+    public FilePermissions getPermissions() {return PERMISSIONS;}
+    @Override
+    @UnsupportedFileOperation
+    public void changePermission(PermissionAccess access, PermissionType permission, boolean enabled) throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.CHANGE_PERMISSION);}
+    @Override
+    public PermissionBits getChangeablePermissions() {return PermissionBits.EMPTY_PERMISSION_BITS;}
+    @Override
+    public boolean isSymlink() {return false;}
+    @Override
+    public boolean isSystem() {return false;}
+    @Override
+    @UnsupportedFileOperation
+    public void mkdir() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.CREATE_DIRECTORY);}
+    @Override
+    @UnsupportedFileOperation
+    public InputStream getInputStream() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.READ_FILE);}
+    @Override
+    @UnsupportedFileOperation
+    public OutputStream getOutputStream() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.WRITE_FILE);}
+    @Override
+    @UnsupportedFileOperation
+    public OutputStream getAppendOutputStream() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.APPEND_FILE);}
+    @Override
+    @UnsupportedFileOperation
+    public RandomAccessInputStream getRandomAccessInputStream() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.RANDOM_READ_FILE);}
+    @Override
+    @UnsupportedFileOperation
+    public RandomAccessOutputStream getRandomAccessOutputStream() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.RANDOM_WRITE_FILE);}
+    @Override
+    @UnsupportedFileOperation
+    public long getFreeSpace() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.GET_FREE_SPACE);}
+    @Override
+    @UnsupportedFileOperation
+    public long getTotalSpace() throws UnsupportedFileOperationException {throw new UnsupportedFileOperationException(FileOperation.GET_TOTAL_SPACE);}
+    @Override
+    public Object getUnderlyingFileObject() {return null;}
+    @Override
+    public String getOwner() {return null;}
+    @Override
+    public boolean canGetOwner() {return false;}
+    @Override
+    public String getGroup() {return null;}
+    @Override
+    public boolean canGetGroup() {return false;}
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.search.file;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.protocol.ProtocolProvider;
+import com.mucommander.commons.file.search.ContentMatcher;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class is the provider for the search filesystem implemented by {@link com.mucommander.search.file.SearchFile}.
+ *
+ * <p>Each search is given a <code>search://&lt;id&gt;/</code> URL, under which its results can be browsed for as long
+ * as it is one of the {@link #MAX_SEARCHES} most recent searches. Older searches are cancelled and forgotten.</p>
+ *
+ * @see com.mucommander.search.file.SearchFile
+ */
+public class SearchProtocolProvider implements ProtocolProvider {
+
+    /** Protocol for the virtual search file system. */
+    public static final String SEARCH = "search";
+
+    /** Maximum number of searches whose results are kept. */
+    public static final int MAX_SEARCHES = 10;
+
+    /** Searches whose results are kept, by id, from the oldest to the most recent. */
+    private static final Map<String, SearchFile> searches = new LinkedHashMap<String, SearchFile>();
+
+    /** Id of the next search. */
+    private static int nextId = 1;
+
+    /**
+     * Creates a search folder with a new <code>search://</code> URL. The search must be started by calling
+     * {@link com.mucommander.commons.file.search.FileSearch#start()} on {@link SearchFile#getSearch()}.
+     *
+     * @param roots          folders to search.
+     * @param filter         filter that the names of the files must match, <code>null</code> to match all files.
+     * @param matcher        matcher that the contents of the files must match, <code>null</code> to ignore contents.
+     * @param searchArchives whether to search the contents of archives.
+     * @return the folder holding the results of the search.
+     * @throws IOException if the URL of the folder could not be created.
+     */
+    public static synchronized SearchFile createSearch(AbstractFile roots[], FileFilter filter, ContentMatcher matcher, boolean searchArchives) throws IOException {
+        String id = Integer.toString(nextId++);
+        SearchFile file = new SearchFile(FileURL.getFileURL(SEARCH + "://" + id + "/"), roots, filter, matcher, searchArchives);
+
+        searches.put(id, file);
+        if(searches.size() > MAX_SEARCHES) {
+            Iterator<SearchFile> iterator = searches.values().iterator();
+            iterator.next().getSearch().cancel();
+            iterator.remove();
+        }
+
+        return file;
+    }
+
+    public AbstractFile getFile(FileURL url, Object... instantiationParams) throws IOException {
+        SearchFile file;
+        synchronized(SearchProtocolProvider.class) {
+            file = url.getHost() == null ? null : searches.get(url.getHost());
+        }
+
+        // Only the root of known searches can be browsed, the results themselves have their own URL.
+        if(file == null || !url.getPath().equals("/"))
+            throw new IOException("Unknown search: " + url);
+
+        return file;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.action.impl;
+
+import java.awt.event.KeyEvent;
+import java.util.Map;
+
+import javax.swing.KeyStroke;
+
+import com.mucommander.ui.action.AbstractActionDescriptor;
+import com.mucommander.ui.action.ActionCategory;
+import com.mucommander.ui.action.ActionDescriptor;
+import com.mucommander.ui.action.ActionFactory;
+import com.mucommander.ui.action.InvokesDialog;
+import com.mucommander.ui.action.MuAction;
+import com.mucommander.ui.dialog.file.FindFilesDialog;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * This action brings up the 'Find files' dialog which allows to search the current folder for files by name and
+ * contents.
+ */
+@InvokesDialog
+public class FindFilesAction extends MuAction {
+
+    public FindFilesAction(MainFrame mainFrame, Map<String,Object> properties) {
+        super(mainFrame, properties);
+    }
+
+    @Override
+    public void performAction() {
+        new FindFilesDialog(mainFrame).showDialog();
+    }
+
+	@Override
+	public ActionDescriptor getDescriptor() {
+		return new Descriptor();
+	}
+
+    public static class Factory implements ActionFactory {
+
+		public MuAction createAction(MainFrame mainFrame, Map<String,Object> properties) {
+			return new FindFilesAction(mainFrame, properties);
+		}
+    }
+
+    public static class Descriptor extends AbstractActionDescriptor {
+    	public static final String ACTION_ID = "FindFiles";
+
+		public String getId() { return ACTION_ID; }
+
+		public ActionCategory getCategory() { return ActionCategory.FILES; }
+
+		public KeyStroke getDefaultAltKeyStroke() { return null; }
+
+		public KeyStroke getDefaultKeyStroke() { return KeyStroke.getKeyStroke(KeyEvent.VK_F7, KeyEvent.ALT_DOWN_MASK); }
+    }
+}
@@ -72,6 +72,7 @@ public class PasteClipboardFilesAction extends MuAction {
         ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("copy_dialog.copying"));
         AbstractFile destFolder = mainFrame.getActivePanel().getCurrentFolder();
         CopyJob job = new CopyJob(progressDialog, mainFrame, clipboardFiles, destFolder, null, TransferMode.COPY, FileCollisionDialog.ASK_ACTION);
+        job.enableParallelTransfers();
         progressDialog.start(job);
     }
 
@@ -23,12 +23,14 @@ import java.util.Map;
 
 import javax.swing.KeyStroke;
 
+import com.mucommander.commons.file.util.ListingCache;
 import com.mucommander.ui.action.AbstractActionDescriptor;
 import com.mucommander.ui.action.ActionCategory;
 import com.mucommander.ui.action.ActionCategory;
 import com.mucommander.ui.action.ActionDescriptor;
 import com.mucommander.ui.action.ActionFactory;
 import com.mucommander.ui.action.MuAction;
+import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
 
 /**
@@ -44,8 +46,13 @@ public class RefreshAction extends MuAction {
 
     @Override
     public void performAction() {
+        FolderPanel folderPanel = mainFrame.getActivePanel();
+
+        // Explicit refreshes always fetch the folder's contents anew
+        ListingCache.removeListing(folderPanel.getCurrentFolder().getURL());
+
         // Refresh current folder in a separate thread
-        mainFrame.getActivePanel().tryRefreshCurrentFolder();
+        folderPanel.tryRefreshCurrentFolder();
     }
 
 	@Override
@@ -0,0 +1,157 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.autocomplete.completers.services;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * A <code>FileNamesIndex</code> holds the names of the files contained in a directory, sorted so that the names
+ * starting with a given prefix can be found with a binary search. Names are matched regardless of their case, and
+ * the names of directories end with a separator.
+ *
+ * <p>Instances are immutable and can be shared between threads.</p>
+ */
+class FileNamesIndex {
+
+	/** An index that contains no names */
+	static final FileNamesIndex EMPTY = new FileNamesIndex("", new String[0], -1);
+
+	/** Path of the directory, with a trailing separator */
+	private final String directoryPath;
+	/** Date of the directory when it was listed */
+	private final long date;
+	/** File names, sorted by key */
+	private final String[] names;
+	/** Lower-case file names, sorted */
+	private final String[] keys;
+
+	/**
+	 * Creates an index of the given files' names.
+	 *
+	 * @param directory - the directory that contains the files.
+	 * @param files - the files to index.
+	 * @param date - the date of the directory when it was listed.
+	 */
+	FileNamesIndex(AbstractFile directory, AbstractFile[] files, long date) {
+		this(directory.getAbsolutePath(true), getNames(files), date);
+	}
+
+	private FileNamesIndex(String directoryPath, String[] names, long date) {
+		this.directoryPath = directoryPath;
+		this.date = date;
+
+		int nbNames = names.length;
+		final String[] keys = new String[nbNames];
+		Integer[] order = new Integer[nbNames];
+		for (int i=0; i<nbNames; i++) {
+			keys[i] = names[i].toLowerCase();
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return keys[i1].compareTo(keys[i2]);
+			}
+		});
+
+		this.names = new String[nbNames];
+		this.keys = new String[nbNames];
+		for (int i=0; i<nbNames; i++) {
+			this.names[i] = names[order[i]];
+			this.keys[i] = keys[order[i]];
+		}
+	}
+
+	private static String[] getNames(AbstractFile[] files) {
+		int nbFiles = files.length;
+		String[] names = new String[nbFiles];
+		for (int i=0; i<nbFiles; i++) {
+			AbstractFile file = files[i];
+			names[i] = file.getName() + (file.isDirectory() ? file.getSeparator() : "");
+		}
+		return names;
+	}
+
+	/**
+	 * @return the path of the indexed directory, with a trailing separator.
+	 */
+	String getDirectoryPath() {
+		return directoryPath;
+	}
+
+	/**
+	 * @return the date of the directory when it was listed.
+	 */
+	long getDate() {
+		return date;
+	}
+
+	/**
+	 * Returns the names that start with the given prefix, regardless of case.
+	 *
+	 * @param prefix - the prefix the names should start with, <code>null</code> to return all names.
+	 * @return Vector of the names which start with the given prefix.
+	 */
+	Vector<String> getNamesStartingWith(String prefix) {
+		Vector<String> result = new Vector<String>();
+		if (prefix == null) {
+			result.addAll(Arrays.asList(names));
+			return result;
+		}
+
+		String key = prefix.toLowerCase();
+		for (int i=lowerBound(key); i<keys.length && keys[i].startsWith(key); i++)
+			result.add(names[i]);
+		return result;
+	}
+
+	/**
+	 * Returns the indexed name that is equal to the given one, regardless of case.
+	 *
+	 * @param name - a file name.
+	 * @return the indexed name equal to the given one, <code>null</code> if there is none.
+	 */
+	String find(String name) {
+		String key = name.toLowerCase();
+		for (int i=lowerBound(key); i<keys.length && keys[i].equals(key); i++)
+			if (names[i].equalsIgnoreCase(name))
+				return names[i];
+		return null;
+	}
+
+	/**
+	 * Returns the position of the first key that is greater than or equal to the given one.
+	 */
+	private int lowerBound(String key) {
+		int low = 0;
+		int high = keys.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (keys[middle].compareTo(key) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+}
@@ -19,32 +19,59 @@
 package com.mucommander.ui.autocomplete.completers.services;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.util.IORealms;
+import com.mucommander.commons.util.IOScheduler;
 
 /**
  * This <code>CompletionService</code> handles file paths completion.
+ *
+ * <p>The names of the files contained in the most recently completed directories are cached in
+ * {@link FileNamesIndex indexes} that find the names starting with the typed prefix with a binary search.
+ * Directories are listed in the background: cached directories are checked for changes without delaying the
+ * completion, and the subdirectories matching the typed prefix are prefetched so that their contents are ready when
+ * the user types the next path level.</p>
  * 
  * @author Arik Hadas
  */
 
 public abstract class FilesService implements CompletionService {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FilesService.class);
-	
-	private String cachedDirectoryName;
-	private String[] cachedDirectoryFileNames;
-	private long cachedDirectoryDate;
-	
-	public FilesService() {
-		cachedDirectoryFileNames = new String[0];
-		cachedDirectoryDate = -1;
-	}
+
+	/** Maximum number of directories whose file names are cached */
+	private static final int MAX_CACHED_DIRECTORIES = 32;
+
+	/** Number of milliseconds after which a cached directory is checked for changes */
+	private static final int REFRESH_PERIOD = 2000;
+
+	/** Maximum number of milliseconds to wait for a directory that is not cached yet to be listed */
+	private static final int LISTING_TIMEOUT = 5000;
+
+	/** Subdirectories are prefetched when at most this number of them match the typed prefix */
+	private static final int MAX_PREFETCHED_DIRECTORIES = 3;
+
+	/** Cached directories, keyed by path, in access order */
+	private final Map<String, CachedDirectory> cachedDirectories = new LinkedHashMap<String, CachedDirectory>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedDirectory> eldest) {
+			return size() > MAX_CACHED_DIRECTORIES;
+		}
+	};
+
+	/** Index of the directory the last suggested completions were taken from */
+	private volatile FileNamesIndex lastIndex = FileNamesIndex.EMPTY;
 
 	/**
 	 * This abstract function gets a directory and should return it's children
@@ -63,46 +90,144 @@ public abstract class FilesService implements CompletionService {
 	        String currentDirectoryName = path.substring(0, index+1);
 	        
 	        AbstractFile currentDirectory = FileFactory.getFile(currentDirectoryName);
-	        if (currentDirectory != null && currentDirectory.exists()) {	        
-		        long currentDirectoryDate = currentDirectory.getDate();
-		        if (cachedDirectoryName == null || !cachedDirectoryName.equals(currentDirectoryName) || currentDirectoryDate != cachedDirectoryDate) {
-		        	AbstractFile[] currentDirectoryFiles;
-					try {
-						currentDirectoryFiles = getFiles(currentDirectory);
-					} catch (IOException e) {
-                        LOGGER.debug("Caught exception", e);
-						return new Vector<String>();
-					}
-		
-		        	int nbCurrentDirectoryFiles = currentDirectoryFiles.length;
-		        	cachedDirectoryFileNames = new String[nbCurrentDirectoryFiles];
-		        	
-		        	for (int i=0; i<nbCurrentDirectoryFiles; i++) {
-		        		AbstractFile abstractFileI = currentDirectoryFiles[i];
-						cachedDirectoryFileNames[i] = abstractFileI.getName() + (abstractFileI.isDirectory() ? abstractFileI.getSeparator() : "");
-		        	}
-		        	
-		        	Arrays.sort(cachedDirectoryFileNames, String.CASE_INSENSITIVE_ORDER);
-		        	
-		        	cachedDirectoryName = currentDirectory.getAbsolutePath() + (currentDirectory.isDirectory() ? "" : currentDirectory.getSeparator());
-		        	cachedDirectoryDate = currentDirectoryDate;
-		        }
-				
-		        final String prefix = index==path.length()-1 ? null : path.substring(index + 1).toLowerCase();
-		        result = PrefixFilter.createPrefixFilter(prefix).filter(cachedDirectoryFileNames);
+	        if (currentDirectory != null) {
+	        	FileNamesIndex currentDirectoryIndex = waitForIndex(getIndex(currentDirectory));
+	        	if (currentDirectoryIndex != null) {
+	        		lastIndex = currentDirectoryIndex;
+
+	        		final String prefix = index==path.length()-1 ? null : path.substring(index + 1);
+	        		result = currentDirectoryIndex.getNamesStartingWith(prefix);
+	        		prefetchDirectories(currentDirectoryIndex, result);
+	        	}
 	        }
 		}
 		return result;
 	}
 	
 	public String complete(String selectedCompletion) {
-		String result = null;
-       	int nbCachedFileNames = cachedDirectoryFileNames.length;
-        for (int i=0; i < nbCachedFileNames; i++)
-        	if (cachedDirectoryFileNames[i].equalsIgnoreCase(selectedCompletion)) {
-        		result = cachedDirectoryName + cachedDirectoryFileNames[i];
-        		break;
-        	}
-        return result;
+		FileNamesIndex index = lastIndex;
+		String fileName = index.find(selectedCompletion);
+		return fileName == null ? null : index.getDirectoryPath() + fileName;
+	}
+
+	/**
+	 * Returns the index of the given directory's files. If the directory is not cached, it is listed in the
+	 * background. If it is cached and has not been checked for a while, it is checked for changes in the background
+	 * and the cached index is returned meanwhile.
+	 * 
+	 * @param directory - a directory.
+	 * @return a future that completes with the index, or with <code>null</code> if the directory could not be listed.
+	 */
+	private CompletableFuture<FileNamesIndex> getIndex(AbstractFile directory) {
+		String key = directory.getAbsolutePath(true);
+		synchronized (cachedDirectories) {
+			CachedDirectory cachedDirectory = cachedDirectories.get(key);
+			if (cachedDirectory == null) {
+				cachedDirectory = new CachedDirectory();
+				cachedDirectories.put(key, cachedDirectory);
+				refresh(key, directory, cachedDirectory);
+			}
+			else if (!cachedDirectory.refreshing && System.currentTimeMillis()-cachedDirectory.lastRefresh > REFRESH_PERIOD) {
+				refresh(key, directory, cachedDirectory);
+			}
+			return cachedDirectory.index;
+		}
+	}
+
+	/**
+	 * Lists the given directory in the background, unless its date hasn't changed since it was last listed.
+	 * This method must be called while holding the lock on {@link #cachedDirectories}.
+	 */
+	private void refresh(final String key, final AbstractFile directory, final CachedDirectory cachedDirectory) {
+		cachedDirectory.refreshing = true;
+		// Directories are listed by the interactive pool, where a slow server or local volume can only hold up a few
+		// threads
+		IOScheduler.execute(IOScheduler.Pool.INTERACTIVE, IOScheduler.Priority.NORMAL, IORealms.getRealm(directory.getURL()),
+				"FilesService-listing", new Runnable() {
+			public void run() {
+				FileNamesIndex index = null;
+				try {
+					FileNamesIndex cachedIndex = cachedDirectory.index.getNow(null);
+					long date = directory.getDate();
+					if (cachedIndex != null && cachedIndex.getDate() == date)
+						index = cachedIndex;
+					else
+						index = new FileNamesIndex(directory, getFiles(directory), date);
+				} catch (IOException e) {
+					LOGGER.debug("Caught exception", e);
+				} finally {
+					CompletableFuture<FileNamesIndex> pendingIndex = null;
+					synchronized (cachedDirectories) {
+						cachedDirectory.refreshing = false;
+						cachedDirectory.lastRefresh = System.currentTimeMillis();
+
+						if (!cachedDirectory.index.isDone())
+							pendingIndex = cachedDirectory.index;
+						else if (index != null)
+							cachedDirectory.index = CompletableFuture.completedFuture(index);
+
+						// Directories that cannot be listed are not cached, so that they are listed again next time
+						if (index == null && cachedDirectories.get(key) == cachedDirectory)
+							cachedDirectories.remove(key);
+					}
+
+					if (pendingIndex != null)
+						pendingIndex.complete(index);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Lists in the background the subdirectories that match the typed prefix, if there are few enough of them for
+	 * the user to be likely to complete one of them next.
+	 */
+	private void prefetchDirectories(FileNamesIndex index, Vector<String> completions) {
+		Vector<String> directoryNames = new Vector<String>();
+		for (String completion : completions) {
+			char lastChar = completion.charAt(completion.length()-1);
+			if (lastChar == '/' || lastChar == '\\') {
+				if (directoryNames.size() == MAX_PREFETCHED_DIRECTORIES)
+					return;
+				directoryNames.add(completion);
+			}
+		}
+
+		for (String directoryName : directoryNames) {
+			AbstractFile directory = FileFactory.getFile(index.getDirectoryPath() + directoryName);
+			if (directory != null)
+				getIndex(directory);
+		}
+	}
+
+	/**
+	 * Waits for the given index to be available, for at most {@link #LISTING_TIMEOUT} milliseconds.
+	 *
+	 * @return the index, <code>null</code> if the directory could not be listed in time.
+	 */
+	private static FileNamesIndex waitForIndex(CompletableFuture<FileNamesIndex> index) {
+		try {
+			return index.get(LISTING_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			return null;
+		} catch (ExecutionException e) {
+			LOGGER.debug("Caught exception", e);
+			return null;
+		} catch (TimeoutException e) {
+			LOGGER.debug("Timed out while listing directory");
+			return null;
+		}
+	}
+
+	/**
+	 * The cached index of a directory, and the state of its refresh.
+	 */
+	private static class CachedDirectory {
+		/** Index of the directory's files, replaced when the directory changes */
+		private CompletableFuture<FileNamesIndex> index = new CompletableFuture<FileNamesIndex>();
+		/** Time at which the directory was last listed or checked for changes */
+		private long lastRefresh;
+		/** True while the directory is being listed or checked for changes */
+		private boolean refreshing;
 	}
 }
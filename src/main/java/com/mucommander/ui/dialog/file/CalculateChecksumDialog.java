@@ -33,6 +33,8 @@ import com.mucommander.ui.main.MainFrame;
 import com.mucommander.ui.text.FilePathField;
 
 import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -42,19 +44,22 @@ import java.io.IOException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
- * This dialog prepares a {@link com.mucommander.job.impl.CalculateChecksumJob} and lets the user choose a checksum
- * algorithm, and a destination for the checksum file.
+ * This dialog prepares a {@link com.mucommander.job.impl.CalculateChecksumJob} and lets the user choose one or several
+ * checksum algorithms, and a destination for the checksum files.
  *
  * @author Maxence Bernard
  */
-public class CalculateChecksumDialog extends JobDialog implements ActionListener, ItemListener {
+public class CalculateChecksumDialog extends JobDialog implements ActionListener, ItemListener, ListSelectionListener {
 
-    private JComboBox algorithmComboBox;
+    private JList<String> algorithmList;
     private JRadioButton specificLocationRadioButton;
     private JTextField specificLocationTextField;
     private JButton okButton;
@@ -65,8 +70,11 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
     /** Default checksum algorithm (most commonly used) */
     private final static String DEFAULT_ALGORITHM = "MD5";
 
-    /** Last algorithm used, saved after validation of this dialog */
-    private static String lastUsedAlgorithm = DEFAULT_ALGORITHM;
+    /** Last algorithms used, saved after validation of this dialog */
+    private static List<String> lastUsedAlgorithms = Arrays.asList(DEFAULT_ALGORITHM);
+
+    /** Number of algorithms visible in the list without scrolling */
+    private final static int VISIBLE_ALGORITHMS = 5;
 
     /** Dialog size constraints */
     private final static Dimension MINIMUM_DIALOG_DIMENSION = new Dimension(320,0);
@@ -106,19 +114,30 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         messageDigests = new MessageDigest[algorithmSortedSet.size()];
         algorithmSortedSet.toArray(messageDigests);
 
-        // Add the sorted list of algorithms to a combo box to let the user choose one
-        algorithmComboBox = new JComboBox();
-        for (MessageDigest messageDigest : messageDigests) 
-            algorithmComboBox.addItem(messageDigest.getAlgorithm());
+        // Add the sorted list of algorithms to a list to let the user choose one or several of them: all the
+        // checksums are calculated in a single pass
+        String algorithms[] = new String[messageDigests.length];
+        for(int i=0; i<messageDigests.length; i++)
+            algorithms[i] = messageDigests[i].getAlgorithm();
+
+        algorithmList = new JList<String>(algorithms);
+        algorithmList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        algorithmList.setVisibleRowCount(VISIBLE_ALGORITHMS);
 
-        // Select the last used algorithm (if any), or the default algorithm
-        algorithmComboBox.setSelectedItem(lastUsedAlgorithm);
-        algorithmComboBox.addItemListener(this);
+        // Select the last used algorithms (if any), or the default algorithm
+        for(int i=0; i<algorithms.length; i++) {
+            if(lastUsedAlgorithms.contains(algorithms[i]))
+                algorithmList.addSelectionInterval(i, i);
+        }
+        if(algorithmList.isSelectionEmpty() && algorithms.length>0)
+            algorithmList.setSelectedIndex(0);
+        algorithmList.ensureIndexIsVisible(Math.max(0, algorithmList.getMinSelectionIndex()));
+        algorithmList.addListSelectionListener(this);
 
         FlowLayout flowLayout = new FlowLayout(FlowLayout.LEADING, 0, 0);
         JPanel tempPanel = new JPanel(flowLayout);
         tempPanel.add(new JLabel(Translator.get("calculate_checksum_dialog.checksum_algorithm")+" : "));
-        tempPanel.add(algorithmComboBox);
+        tempPanel.add(new JScrollPane(algorithmList));
 
         mainPanel.add(tempPanel);
         mainPanel.addSpace(10);
@@ -137,7 +156,7 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         specificLocationRadioButton.addItemListener(this);
         
         // Create a path field with auto-completion capabilities
-        specificLocationTextField = new FilePathField(getChecksumFilename(lastUsedAlgorithm));
+        specificLocationTextField = new FilePathField(getChecksumFilename(lastUsedAlgorithms.get(0)));
         specificLocationTextField.setEnabled(false);
         tempPanel.add(specificLocationTextField, BorderLayout.CENTER);
 
@@ -168,7 +187,7 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         getContentPane().add(mainPanel);
 
         // Give initial keyboard focus to the 'Delete' button
-        setInitialFocusComponent(algorithmComboBox);
+        setInitialFocusComponent(algorithmList);
 
         // Call dispose() when dialog is closed
         setDefaultCloseOperation(DISPOSE_ON_CLOSE);
@@ -179,12 +198,17 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
     }
 
     /**
-     * Returns the MessageDigest instance corresponding to the currently selected algorithm.
+     * Returns the MessageDigest instances corresponding to the currently selected algorithms.
      *
-     * @return the MessageDigest instance corresponding to the currently selected algorithm.
+     * @return the MessageDigest instances corresponding to the currently selected algorithms.
      */
-    private MessageDigest getSelectedMessageDigest() {
-        return messageDigests[algorithmComboBox.getSelectedIndex()];
+    private MessageDigest[] getSelectedMessageDigests() {
+        int indices[] = algorithmList.getSelectedIndices();
+        MessageDigest digests[] = new MessageDigest[indices.length];
+        for(int i=0; i<indices.length; i++)
+            digests[i] = messageDigests[indices[i]];
+
+        return digests;
     }
 
     /**
@@ -227,39 +251,51 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
 
         if(e.getSource()==okButton) {
             try {
-                MessageDigest digest = getSelectedMessageDigest();
-                String algorithm = digest.getAlgorithm();
-                AbstractFile checksumFile;
+                MessageDigest digests[] = getSelectedMessageDigests();
+                List<String> algorithms = new ArrayList<String>();
+                AbstractFile checksumFiles[] = new AbstractFile[digests.length];
 
-                // Resolve the destination checksum file
+                // Resolve the destination checksum files
 
+                PathUtils.ResolvedDestination resolvedDest = null;
                 if(specificLocationRadioButton.isSelected()) {
                     // User-defined checksum file
                     String enteredPath = specificLocationTextField.getText();
 
-                    PathUtils.ResolvedDestination resolvedDest = PathUtils.resolveDestination(enteredPath, mainFrame.getActivePanel().getCurrentFolder());
+                    resolvedDest = PathUtils.resolveDestination(enteredPath, mainFrame.getActivePanel().getCurrentFolder());
                     // The path entered doesn't correspond to any existing folder
                     if (resolvedDest==null) {
                         showErrorDialog(Translator.get("invalid_path", enteredPath));
                         return;
                     }
-
-                    if(resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER)
-                        checksumFile = resolvedDest.getDestinationFile().getDirectChild(getChecksumFilename(algorithm));
-                    else
-                        checksumFile = resolvedDest.getDestinationFile();
                 }
-                else {
-                    // Temporary file
-                    checksumFile = FileFactory.getTemporaryFile(getChecksumFilename(algorithm), true);
+
+                for(int i=0; i<digests.length; i++) {
+                    String algorithm = digests[i].getAlgorithm();
+                    algorithms.add(algorithm);
+
+                    if(resolvedDest==null) {
+                        // Temporary file
+                        checksumFiles[i] = FileFactory.getTemporaryFile(getChecksumFilename(algorithm), true);
+                    }
+                    else if(resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER) {
+                        checksumFiles[i] = resolvedDest.getDestinationFile().getDirectChild(getChecksumFilename(algorithm));
+                    }
+                    else if(digests.length==1) {
+                        checksumFiles[i] = resolvedDest.getDestinationFile();
+                    }
+                    else {
+                        // Several checksum files are created in the folder of the path that was entered
+                        checksumFiles[i] = resolvedDest.getDestinationFolder().getDirectChild(getChecksumFilename(algorithm));
+                    }
                 }
 
-                // Save the algorithm that was used for the next time this dialog is invoked
-                lastUsedAlgorithm = algorithm; 
+                // Save the algorithms that were used for the next time this dialog is invoked
+                lastUsedAlgorithms = algorithms;
 
                 // Start processing files
                 ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("properties_dialog.calculating"));
-                CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFile, digest);
+                CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFiles, digests);
                 progressDialog.start(job);
             }
             catch(IOException ex) {
@@ -283,8 +319,22 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
             specificLocationTextField.setEnabled(specificLocationRadioButton.isSelected());
             specificLocationTextField.requestFocus();
         }
-        else if(source==algorithmComboBox) {
-            specificLocationTextField.setText(getChecksumFilename(getSelectedMessageDigest().getAlgorithm()));
-        }
+    }
+
+
+    //////////////////////////////////////////
+    // ListSelectionListener implementation //
+    //////////////////////////////////////////
+
+    public void valueChanged(ListSelectionEvent e) {
+        int selectedIndices[] = algorithmList.getSelectedIndices();
+
+        // At least one algorithm must be selected
+        okButton.setEnabled(selectedIndices.length>0);
+
+        // The standard filename of the checksum file is proposed when a single algorithm is selected, several checksum
+        // files are created in the folder of the entered path otherwise
+        if(selectedIndices.length==1)
+            specificLocationTextField.setText(getChecksumFilename(messageDigests[selectedIndices[0]].getAlgorithm()));
     }
 }
@@ -0,0 +1,370 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.dialog.file;
+
+import java.awt.BorderLayout;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JTextField;
+import javax.swing.Timer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.filter.ContainsFilenameFilter;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.filter.RegexpFilenameFilter;
+import com.mucommander.commons.file.search.ContentMatcher;
+import com.mucommander.commons.file.search.FileSearch;
+import com.mucommander.commons.file.search.LiteralContentMatcher;
+import com.mucommander.commons.file.search.RegexpContentMatcher;
+import com.mucommander.search.file.SearchFile;
+import com.mucommander.search.file.SearchProtocolProvider;
+import com.mucommander.text.SizeFormat;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.action.ActionProperties;
+import com.mucommander.ui.action.impl.FindFilesAction;
+import com.mucommander.ui.dialog.DialogToolkit;
+import com.mucommander.ui.dialog.FocusDialog;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.layout.XAlignedComponentPanel;
+import com.mucommander.ui.layout.YBoxPanel;
+import com.mucommander.ui.main.FolderPanel;
+import com.mucommander.ui.main.MainFrame;
+
+/**
+ * This dialog allows the user to search a folder for files whose name matches a wildcard pattern and, optionally,
+ * whose contents contain a string or match a regular expression.
+ *
+ * <p>The results are presented in the active panel, in a <code>search://</code> folder which fills up as files are
+ * found. The dialog is not modal, so that the results can be browsed while the search is running; it reports the
+ * progress and throughput of the search. Closing the dialog stops the search, the files found so far can still be
+ * browsed.</p>
+ *
+ * @see SearchProtocolProvider
+ */
+public class FindFilesDialog extends FocusDialog implements ActionListener {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FindFilesDialog.class);
+
+    /** Charset that the contents of files are matched in */
+    private final static Charset CHARSET = StandardCharsets.UTF_8;
+
+    /** Milliseconds period between updates of the progress and of the results */
+    private final static int UPDATE_PERIOD = 1000;
+
+    private JTextField searchInField;
+    private JTextField fileNameField;
+    private JTextField containingField;
+
+    private JCheckBox caseSensitiveCheckBox;
+    private JCheckBox regexpCheckBox;
+    private JCheckBox searchArchivesCheckBox;
+
+    private JLabel statusLabel;
+
+    private JButton searchButton;
+    private JButton stopButton;
+    private JButton closeButton;
+
+    /** Updates the progress and the results while the search is running */
+    private Timer updateTimer;
+
+    private MainFrame mainFrame;
+
+    /** Folder holding the results of the current search, null until a search has been started */
+    private SearchFile searchFile;
+
+    /** Number of results presented the last time the results were refreshed */
+    private int nbResultsShown;
+
+    /**
+     * Filename pattern which has last been searched for.
+     * <br>Note: this field is static so the value is kept after the dialog is closed.
+     */
+    private static String fileName = "*";
+
+    /**
+     * Contents which have last been searched for.
+     * <br>Note: this field is static so the value is kept after the dialog is closed.
+     */
+    private static String containing = "";
+
+    /**
+     * Is the search case sensitive? (initially false)
+     * <br>Note: this field is static so the value is kept after the dialog is closed.
+     */
+    private static boolean caseSensitive = false;
+
+    /**
+     * Are contents matched against a regular expression? (initially false)
+     * <br>Note: this field is static so the value is kept after the dialog is closed.
+     */
+    private static boolean regexp = false;
+
+    /**
+     * Are archives searched like folders? (initially false)
+     * <br>Note: this field is static so the value is kept after the dialog is closed.
+     */
+    private static boolean searchArchives = false;
+
+
+    private final static Dimension MINIMUM_DIALOG_DIMENSION = new Dimension(450,0);
+    private final static Dimension MAXIMUM_DIALOG_DIMENSION = new Dimension(600,10000);
+
+
+    /**
+     * Creates a new 'find files' dialog, searching the active panel's current folder by default.
+     *
+     * @param mainFrame the main frame this dialog is attached to
+     */
+    public FindFilesDialog(MainFrame mainFrame) {
+        super(mainFrame, ActionProperties.getActionLabel(FindFilesAction.Descriptor.ACTION_ID), mainFrame);
+
+        this.mainFrame = mainFrame;
+
+        // Let the results be browsed while the search is running
+        setModal(false);
+
+        Container contentPane = getContentPane();
+        contentPane.setLayout(new BorderLayout());
+
+        YBoxPanel northPanel = new YBoxPanel(5);
+
+        XAlignedComponentPanel fieldsPanel = new XAlignedComponentPanel(5);
+        searchInField = new JTextField(mainFrame.getActivePanel().getCurrentFolder().getAbsolutePath());
+        fieldsPanel.addRow(Translator.get("find_files_dialog.search_in")+":", searchInField, 5);
+
+        fileNameField = new JTextField(fileName);
+        fileNameField.addActionListener(this);
+        fileNameField.setSelectionStart(0);
+        fileNameField.setSelectionEnd(fileName.length());
+        fieldsPanel.addRow(Translator.get("find_files_dialog.file_name")+":", fileNameField, 5);
+
+        containingField = new JTextField(containing);
+        containingField.addActionListener(this);
+        fieldsPanel.addRow(Translator.get("find_files_dialog.containing")+":", containingField, 0);
+        northPanel.add(fieldsPanel);
+
+        // Add some vertical space
+        northPanel.addSpace(10);
+
+        caseSensitiveCheckBox = new JCheckBox(Translator.get("find_files_dialog.case_sensitive"), caseSensitive);
+        northPanel.add(caseSensitiveCheckBox);
+
+        regexpCheckBox = new JCheckBox(Translator.get("find_files_dialog.regexp"), regexp);
+        northPanel.add(regexpCheckBox);
+
+        searchArchivesCheckBox = new JCheckBox(Translator.get("find_files_dialog.search_archives"), searchArchives);
+        northPanel.add(searchArchivesCheckBox);
+
+        northPanel.addSpace(10);
+
+        statusLabel = new JLabel(" ");
+        northPanel.add(statusLabel);
+
+        northPanel.addSpace(10);
+
+        contentPane.add(northPanel, BorderLayout.NORTH);
+
+        searchButton = new JButton(Translator.get("find_files_dialog.search"));
+        stopButton = new JButton(Translator.get("stop"));
+        stopButton.setEnabled(false);
+        closeButton = new JButton(Translator.get("close"));
+        contentPane.add(DialogToolkit.createButtonPanel(new JButton[]{searchButton, stopButton, closeButton}, getRootPane(), this), BorderLayout.SOUTH);
+
+        updateTimer = new Timer(UPDATE_PERIOD, this);
+
+        // Filename field receives initial keyboard focus
+        setInitialFocusComponent(fileNameField);
+
+        setMinimumSize(MINIMUM_DIALOG_DIMENSION);
+        setMaximumSize(MAXIMUM_DIALOG_DIMENSION);
+    }
+
+    /**
+     * Starts a new search with the criteria entered in the dialog, stopping the current one if any, and presents its
+     * results in the active panel.
+     */
+    private void startSearch() {
+        // Save values for next time this dialog is invoked
+        fileName = fileNameField.getText();
+        containing = containingField.getText();
+        caseSensitive = caseSensitiveCheckBox.isSelected();
+        regexp = regexpCheckBox.isSelected();
+        searchArchives = searchArchivesCheckBox.isSelected();
+
+        String path = searchInField.getText();
+        AbstractFile folder = FileFactory.getFile(path);
+        if(folder==null || !folder.isBrowsable()) {
+            InformationDialog.showErrorDialog(this, Translator.get("this_folder_does_not_exist", path));
+            return;
+        }
+
+        ContentMatcher matcher = null;
+        if(!containing.isEmpty()) {
+            try {
+                matcher = regexp?new RegexpContentMatcher(containing, CHARSET, caseSensitive):new LiteralContentMatcher(containing, CHARSET, caseSensitive);
+            }
+            catch(PatternSyntaxException e) {
+                InformationDialog.showErrorDialog(this, Translator.get("find_files_dialog.invalid_regexp", e.getDescription()));
+                return;
+            }
+        }
+
+        stopSearch();
+
+        try {
+            searchFile = SearchProtocolProvider.createSearch(new AbstractFile[]{folder}, getFilenameFilter(fileName, caseSensitive), matcher, searchArchives);
+        }
+        catch(IOException e) {
+            LOGGER.debug("Couldn't create search folder", e);
+            InformationDialog.showErrorDialog(this);
+            return;
+        }
+
+        searchFile.getSearch().start();
+        nbResultsShown = 0;
+        stopButton.setEnabled(true);
+        updateTimer.start();
+        updateStatus();
+
+        mainFrame.getActivePanel().tryChangeCurrentFolder(searchFile);
+    }
+
+    /**
+     * Stops the current search, if any. The files found so far remain in the search folder.
+     */
+    private void stopSearch() {
+        if(searchFile!=null)
+            searchFile.getSearch().cancel();
+    }
+
+    /**
+     * Updates the progress of the search and refreshes the panels that present its results if new files have been
+     * found. Once the search has finished, the update timer is stopped.
+     */
+    private void updateStatus() {
+        FileSearch search = searchFile.getSearch();
+        boolean finished = search.isFinished();
+
+        statusLabel.setText(Translator.get(finished?(search.isCancelled()?"find_files_dialog.stopped":"find_files_dialog.finished"):"find_files_dialog.searching",
+                Long.toString(search.getNbFiles()),
+                Long.toString(search.getNbResults()),
+                Long.toString(Math.round(search.getFilesPerSecond())),
+                SizeFormat.format(search.getBytesPerSecond(), SizeFormat.UNIT_SPEED| SizeFormat.DIGITS_MEDIUM| SizeFormat.UNIT_SHORT)));
+
+        int nbResults = searchFile.getResultCount();
+        if(nbResults!=nbResultsShown) {
+            nbResultsShown = nbResults;
+            refreshResults(mainFrame.getLeftPanel());
+            refreshResults(mainFrame.getRightPanel());
+        }
+
+        if(finished) {
+            updateTimer.stop();
+            stopButton.setEnabled(false);
+        }
+    }
+
+    /**
+     * Refreshes the given panel if it presents the results of the current search.
+     */
+    private void refreshResults(FolderPanel folderPanel) {
+        if(folderPanel.getCurrentFolder().getURL().equals(searchFile.getURL()))
+            folderPanel.tryRefreshCurrentFolder();
+    }
+
+    /**
+     * Returns a filter matching the file names that match the given wildcard pattern, in which <code>*</code> stands
+     * for any sequence of characters and <code>?</code> for any single character. A pattern without wildcards matches
+     * the names that contain it. Returns <code>null</code> if the pattern matches any name.
+     *
+     * @param pattern the wildcard pattern
+     * @param caseSensitive whether the match is case sensitive
+     * @return a filter matching the file names that match the pattern, null if any name matches
+     */
+    private static FileFilter getFilenameFilter(String pattern, boolean caseSensitive) {
+        if(pattern.isEmpty() || pattern.equals("*"))
+            return null;
+
+        if(pattern.indexOf('*')==-1 && pattern.indexOf('?')==-1)
+            return new ContainsFilenameFilter(pattern, caseSensitive);
+
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if(c=='*')
+                sb.append(".*");
+            else if(c=='?')
+                sb.append('.');
+            else if(Character.isLetterOrDigit(c))
+                sb.append(c);
+            else
+                sb.append('\\').append(c);
+        }
+
+        return new RegexpFilenameFilter(sb.toString(), caseSensitive);
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    /**
+     * Stops the search and the update timer before disposing of the dialog.
+     */
+    @Override
+    public void dispose() {
+        updateTimer.stop();
+        stopSearch();
+
+        super.dispose();
+    }
+
+
+    ////////////////////////////
+    // ActionListener methods //
+    ////////////////////////////
+
+    public void actionPerformed(ActionEvent e) {
+        Object source = e.getSource();
+
+        if(source==updateTimer)
+            updateStatus();
+        else if(source==searchButton || source==fileNameField || source==containingField)
+            startSearch();
+        else if(source==stopButton)
+            stopSearch();
+        else if(source==closeButton)
+            dispose();
+    }
+}
@@ -22,11 +22,14 @@ package com.mucommander.ui.dialog.file;
 import java.awt.FlowLayout;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.util.zip.Deflater;
 
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
+import javax.swing.SpinnerNumberModel;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.archiver.Archiver;
@@ -45,7 +48,8 @@ import com.mucommander.ui.text.FilePathField;
 
 /**
  * This dialog allows the user to pack marked files to an archive file of a selected format (Zip, TAR, ...)
- * and add an optional comment to the archive (for the formats that support it).
+ * and add an optional comment to the archive (for the formats that support it). For the Deflate-based formats,
+ * the compression level and the number of threads to compress data on can be chosen as well.
  *
  * @author Maxence Bernard
  */
@@ -56,12 +60,21 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
 	
     private JTextArea commentArea;
 
+    private JComboBox<String> compressionLevelComboBox;
+    private JSpinner nbThreadsSpinner;
+
     /** Used to keep track of the last selected archive format. */
     private int lastFormatIndex;
 
     /** Last archive format used (Zip initially), selected by default when this dialog is created */
     private static int lastFormat = Archiver.ZIP_FORMAT;
 
+    /** Last compression level used (default level initially) */
+    private static int lastCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** Last number of compression threads used (one per processor initially) */
+    private static int lastNbCompressionThreads = Runtime.getRuntime().availableProcessors();
+
 
     public PackDialog(MainFrame mainFrame, FileSet files) {
         super(mainFrame, files, ActionProperties.getActionLabel(PackAction.Descriptor.ACTION_ID), Translator.get("pack_dialog_description"), Translator.get("pack"), Translator.get("pack_dialog.error_title"), false);
@@ -97,7 +110,25 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
         tempPanel.add(formatsComboBox);
 
         YBoxPanel mainPanel = getMainPanel();
-        mainPanel.add(tempPanel);		
+        mainPanel.add(tempPanel);
+
+        // Compression level and threads, enabled only if selected archive format is Deflate-based
+
+        tempPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        tempPanel.add(new JLabel(Translator.get("pack_dialog.compression_level")));
+        compressionLevelComboBox = new JComboBox<String>();
+        // Item 0 is the default level, item n is level n
+        compressionLevelComboBox.addItem(Translator.get("pack_dialog.default_compression_level"));
+        for(int level=Deflater.BEST_SPEED; level<=Deflater.BEST_COMPRESSION; level++)
+            compressionLevelComboBox.addItem(Integer.toString(level));
+        compressionLevelComboBox.setSelectedIndex(lastCompressionLevel==Deflater.DEFAULT_COMPRESSION?0:lastCompressionLevel);
+        tempPanel.add(compressionLevelComboBox);
+
+        tempPanel.add(new JLabel(Translator.get("pack_dialog.compression_threads")));
+        int maxNbThreads = Math.max(Runtime.getRuntime().availableProcessors(), lastNbCompressionThreads);
+        nbThreadsSpinner = new JSpinner(new SpinnerNumberModel(lastNbCompressionThreads, 1, maxNbThreads, 1));
+        tempPanel.add(nbThreadsSpinner);
+        mainPanel.add(tempPanel);
         mainPanel.addSpace(10);
 		
         // Comment area, enabled only if selected archive format has comment support
@@ -106,6 +137,17 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
         commentArea = new JTextArea();
         commentArea.setRows(4);
         mainPanel.add(commentArea);
+
+        updateCompressionComponents();
+    }
+
+    /**
+     * Enables the compression level and threads components only if the selected archive format supports them.
+     */
+    private void updateCompressionComponents() {
+        boolean enabled = Archiver.formatSupportsCompressionLevel(formats[formatsComboBox.getSelectedIndex()]);
+        compressionLevelComboBox.setEnabled(enabled);
+        nbThreadsSpinner.setEnabled(enabled);
     }
 	
 
@@ -139,8 +181,12 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
     protected TransferFileJob createTransferFileJob(ProgressDialog progressDialog, PathUtils.ResolvedDestination resolvedDest, int defaultFileExistsAction) {
         // Remember last format used, for next time this dialog is invoked
         lastFormat = formats[formatsComboBox.getSelectedIndex()];
+        int levelIndex = compressionLevelComboBox.getSelectedIndex();
+        lastCompressionLevel = levelIndex==0?Deflater.DEFAULT_COMPRESSION:levelIndex;
+        lastNbCompressionThreads = (Integer)nbThreadsSpinner.getValue();
 
-        return new ArchiveJob(progressDialog, mainFrame, files, resolvedDest.getDestinationFile(), lastFormat, Archiver.formatSupportsComment(lastFormat)?commentArea.getText():null);
+        return new ArchiveJob(progressDialog, mainFrame, files, resolvedDest.getDestinationFile(), lastFormat, Archiver.formatSupportsComment(lastFormat)?commentArea.getText():null,
+                lastCompressionLevel, lastNbCompressionThreads);
     }
 
     @Override
@@ -200,6 +246,7 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
             }
 
             commentArea.setEnabled(Archiver.formatSupportsComment(formats[formatsComboBox.getSelectedIndex()]));
+            updateCompressionComponents();
             lastFormatIndex = newFormatIndex;
         }
 
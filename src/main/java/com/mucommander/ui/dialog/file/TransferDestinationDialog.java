@@ -41,6 +41,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.file.util.PathUtils;
+import com.mucommander.job.impl.AbstractCopyJob;
 import com.mucommander.job.impl.TransferFileJob;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.DialogToolkit;
@@ -296,6 +297,8 @@ public abstract class TransferDestinationDialog extends JobDialog implements Act
             job.setAutoSkipErrors(skipErrors);
             job.setIntegrityCheckEnabled(verifyIntegrity);
             job.setRunInBackground(runInBackground);
+            if(job instanceof AbstractCopyJob)
+                ((AbstractCopyJob)job).enableParallelTransfers();
             progressDialog.start(job);
         }
     }
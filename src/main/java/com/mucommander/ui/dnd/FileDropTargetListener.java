@@ -283,12 +283,14 @@ public class FileDropTargetListener implements DropTargetListener {
                 // Start moving files
                 ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("move_dialog.moving"));
                 MoveJob moveJob = new MoveJob(progressDialog, mainFrame, droppedFiles, destFolder, null, FileCollisionDialog.ASK_ACTION, false);
+                moveJob.enableParallelTransfers();
                 progressDialog.start(moveJob);
             }
             else {
                 // Start copying files
                 ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("copy_dialog.copying"));
                 CopyJob job = new CopyJob(progressDialog, mainFrame, droppedFiles, destFolder, null, TransferMode.COPY, FileCollisionDialog.ASK_ACTION);
+                job.enableParallelTransfers();
                 progressDialog.start(job);
             }
         }
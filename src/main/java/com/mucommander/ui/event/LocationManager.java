@@ -21,12 +21,18 @@ package com.mucommander.ui.event;
 import java.io.IOException;
 import java.util.WeakHashMap;
 
+import javax.swing.SwingUtilities;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.util.IORealms;
+import com.mucommander.commons.file.util.ListingCache;
+import com.mucommander.commons.util.IOScheduler;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
@@ -74,7 +80,7 @@ public class LocationManager {
     	LOGGER.trace("calling ls()");
     	AbstractFile[] children;
 		try {
-			children = folder.ls(configurableFolderFilter);
+			children = ls(folder);
 		} catch (Exception e) {
 			LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
 			children = new AbstractFile[0];
@@ -92,6 +98,45 @@ public class LocationManager {
     		folderChangeMonitor = new FolderChangeMonitor(folderPanel);
     }
 
+    /**
+     * Lists the children of the given folder, filtered by the configurable folder filter.
+     * If {@link ListingCache} holds an expired listing of the folder, that listing is returned right away and the
+     * folder is listed again by the {@link IOScheduler.Pool#INTERACTIVE interactive pool}, after which the folder panel
+     * is refreshed if it still presents it.
+     *
+     * @param folder the folder to list
+     * @return the filtered children of the folder
+     * @throws IOException if the folder could not be listed
+     */
+    private AbstractFile[] ls(final AbstractFile folder) throws IOException {
+        ListingCache.Listing listing = ListingCache.getListing(folder.getURL());
+        if (listing == null || !listing.isExpired())
+            return folder.ls(configurableFolderFilter);
+
+        // The cached listing is already presented, the refresh gives way to the locations being changed
+        IOScheduler.execute(IOScheduler.Pool.INTERACTIVE, IOScheduler.Priority.LOW, IORealms.getRealm(folder.getURL()),
+                "LocationManager-refresh", new Runnable() {
+            public void run() {
+                try {
+                    // Listing the folder updates the cache, the refresh below will pick it up
+                    folder.ls();
+                } catch (Exception e) {
+                    LOGGER.debug("Couldn't refresh the contents of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+                    return;
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (folder.equals(currentFolder))
+                            folderPanel.tryRefreshCurrentFolder();
+                    }
+                });
+            }
+        });
+
+        return configurableFolderFilter.filter(listing.getFiles());
+    }
+
     /**
      * Return the folder presented in the {@link FolderPanel}
      * 
@@ -105,6 +150,16 @@ public class LocationManager {
         return folderChangeMonitor;
     }
 
+    /**
+     * Returns the filter that folder contents are listed with, files it doesn't match are not presented in the
+     * {@link FolderPanel}.
+     *
+     * @return the filter that folder contents are listed with
+     */
+    public FileFilter getFolderFilter() {
+        return configurableFolderFilter;
+    }
+
     /**
      * Registers a LocationListener to receive notifications whenever the current folder of the associated FolderPanel
      * has or is being changed.
@@ -0,0 +1,39 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.icon;
+
+import javax.swing.Icon;
+
+import com.mucommander.commons.file.AbstractFile;
+
+/**
+ * Implementations of this interface are notified by {@link FileIconResolver} when the icon of a file, which was not
+ * available when it was requested, has been resolved.
+ */
+public interface FileIconListener {
+
+    /**
+     * Notifies the listener that the icon of the given file has been resolved. This method is called on the
+     * event dispatch thread.
+     *
+     * @param file the file whose icon was requested
+     * @param icon the file's icon
+     */
+    public void fileIconResolved(AbstractFile file, Icon icon);
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2016 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.icon;
+
+import java.awt.Dimension;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.protocol.local.LocalFile;
+import com.mucommander.commons.util.IOScheduler;
+
+/**
+ * <code>FileIconResolver</code> returns file icons without blocking the event dispatch thread.
+ *
+ * <p>Custom icons are cheap to retrieve and returned right away. System icons, on the other hand, may require I/O:
+ * the underlying OS is queried for local files, and a temporary local file is created for non-local ones.
+ * They are resolved on the {@link IOScheduler.Pool#INTERACTIVE interactive} pool: until a system icon is resolved,
+ * the corresponding custom icon is returned as a placeholder, and the {@link FileIconListener} that requested it is
+ * notified once it is available.</p>
+ *
+ * <p>Resolved icons are kept in a bounded LRU cache. Icons of non-local files are keyed by the file's extension and
+ * kind (directory, symlink) and the icon dimension, as these are all the system icon depends on; icons of local files
+ * are keyed by the file's path, as some of them are specific to the file (applications for instance).</p>
+ *
+ * <p>This class must only be used from the event dispatch thread.</p>
+ *
+ * @see FileIcons
+ */
+public class FileIconResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileIconResolver.class);
+
+    /** Maximum number of resolved icons kept in the cache */
+    private final static int CACHE_CAPACITY = 1000;
+
+    /** Realm of the resolution tasks, which caps the number of interactive threads they occupy */
+    private final static String REALM = "file-icons";
+
+    /** Resolved icons, the least recently used first */
+    private final static Map<IconKey, Icon> cache = new LinkedHashMap<IconKey, Icon>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IconKey, Icon> eldest) {
+            return size()>CACHE_CAPACITY;
+        }
+    };
+
+    /** Files waiting for an icon being resolved, and their listeners */
+    private final static Map<IconKey, Set<PendingRequest>> pendingRequests = new HashMap<IconKey, Set<PendingRequest>>();
+
+
+    /**
+     * Shorthand for {@link #getFileIcon(AbstractFile, Dimension, FileIconListener)} called with the icon dimension
+     * returned by {@link FileIcons#getIconDimension()}.
+     *
+     * @param file the file for which an icon will be returned
+     * @param listener notified when the icon has been resolved, if it had not been already
+     * @return an icon for the given file, or a placeholder if the icon has yet to be resolved
+     */
+    public static Icon getFileIcon(AbstractFile file, FileIconListener listener) {
+        return getFileIcon(file, FileIcons.getIconDimension(), listener);
+    }
+
+    /**
+     * Returns the icon that {@link FileIcons#getFileIcon(AbstractFile, Dimension)} would return for the given file,
+     * if it is readily available. If not, a placeholder icon is returned and the icon is resolved in the background;
+     * the given listener is notified once it is available, after which this method returns it.
+     * This method never returns <code>null</code>.
+     *
+     * @param file the file for which an icon will be returned
+     * @param iconDimension the icon's dimension
+     * @param listener notified when the icon has been resolved, if it had not been already
+     * @return an icon for the given file, or a placeholder if the icon has yet to be resolved
+     */
+    public static Icon getFileIcon(AbstractFile file, Dimension iconDimension, FileIconListener listener) {
+        if(!FileIcons.isSystemIconUsed(file))
+            return FileIcons.getCustomFileIcon(file, iconDimension);
+
+        IconKey key = new IconKey(file, iconDimension);
+        Icon icon = cache.get(key);
+        if(icon!=null)
+            return icon;
+
+        Set<PendingRequest> requests = pendingRequests.get(key);
+        if(requests==null) {
+            requests = new LinkedHashSet<PendingRequest>();
+            pendingRequests.put(key, requests);
+            resolve(key, file, iconDimension);
+        }
+
+        // Cells are painted several times while the icon is being resolved, the set registers them only once
+        requests.add(new PendingRequest(file, listener));
+
+        return FileIcons.getCustomFileIcon(file, iconDimension);
+    }
+
+    /**
+     * Resolves the system icon of the given file in the background, and then caches it and notifies the files waiting
+     * for it on the event dispatch thread.
+     */
+    private static void resolve(final IconKey key, final AbstractFile file, final Dimension iconDimension) {
+        IOScheduler.execute(IOScheduler.Pool.INTERACTIVE, IOScheduler.Priority.NORMAL, REALM, "FileIconResolver", () -> {
+            Icon icon = null;
+            try {
+                icon = FileIcons.getSystemFileIcon(file, iconDimension);
+            }
+            catch(Exception e) {
+                LOGGER.debug("Caught exception while resolving the system icon of {}", file, e);
+            }
+
+            // If the system icon could not be resolved, use a custom file icon
+            final Icon resolvedIcon = icon==null?FileIcons.getCustomFileIcon(file, iconDimension):icon;
+            SwingUtilities.invokeLater(() -> iconResolved(key, resolvedIcon));
+        });
+    }
+
+    /**
+     * Caches the given icon and notifies the files that were waiting for it.
+     */
+    private static void iconResolved(IconKey key, Icon icon) {
+        cache.put(key, icon);
+
+        Set<PendingRequest> requests = pendingRequests.remove(key);
+        if(requests==null)
+            return;
+
+        for(PendingRequest request : requests)
+            request.listener.fileIconResolved(request.file, icon);
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * The attributes a file's system icon depends on.
+     */
+    private static class IconKey {
+
+        /** Path of a local file, null for non-local files */
+        private final String path;
+        private final String extension;
+        private final boolean directory;
+        private final boolean symlink;
+        private final boolean root;
+        private final int width;
+        private final int height;
+
+        private IconKey(AbstractFile file, Dimension iconDimension) {
+            path = file.getTopAncestor() instanceof LocalFile?file.getAbsolutePath():null;
+            extension = file.getExtension();
+            directory = file.isDirectory();
+            symlink = file.isSymlink();
+            root = file.isRoot();
+            width = iconDimension.width;
+            height = iconDimension.height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof IconKey))
+                return false;
+
+            IconKey key = (IconKey)o;
+            return directory==key.directory && symlink==key.symlink && root==key.root
+                && width==key.width && height==key.height
+                && (path==null?key.path==null:path.equals(key.path))
+                && (extension==null?key.extension==null:extension.equals(key.extension));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = path==null?0:path.hashCode();
+            hash = 31*hash + (extension==null?0:extension.hashCode());
+            hash = 31*hash + (directory?1:0) + (symlink?2:0) + (root?4:0);
+            return 31*(31*hash + width) + height;
+        }
+    }
+
+    /**
+     * A file waiting for its icon, and the listener to notify once it is resolved. Two requests are equal if they have
+     * the same listener and equal files.
+     */
+    private static class PendingRequest {
+
+        private final AbstractFile file;
+        private final FileIconListener listener;
+
+        private PendingRequest(AbstractFile file, FileIconListener listener) {
+            this.file = file;
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof PendingRequest))
+                return false;
+
+            PendingRequest request = (PendingRequest)o;
+            return listener==request.listener && file.equals(request.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*System.identityHashCode(listener) + file.hashCode();
+        }
+    }
+}
@@ -119,15 +119,7 @@ public class FileIcons {
      * @see #getSystemIconsPolicy()
      */
     public static Icon getFileIcon(AbstractFile file, Dimension iconDimension) {
-        boolean systemIcon = false;
-
-        if(USE_SYSTEM_ICONS_ALWAYS.equals(systemIconsPolicy))
-            systemIcon = true;
-
-        if(USE_SYSTEM_ICONS_APPLICATIONS.equals(systemIconsPolicy))
-            systemIcon = com.mucommander.desktop.DesktopManager.isApplication(file);
-
-        if(systemIcon) {
+        if(isSystemIconUsed(file)) {
             Icon icon = getSystemFileIcon(file, iconDimension);
             if(icon!=null)
                 return icon;
@@ -137,6 +129,24 @@ public class FileIcons {
         return getCustomFileIcon(file, iconDimension);
     }
 
+    /**
+     * Returns <code>true</code> if the current {@link #getSystemIconsPolicy() system icons policy} calls for a system
+     * icon to be used for the given file, rather than a custom one.
+     *
+     * @param file the AbstractFile instance to test
+     * @return true if a system icon should be used for the given file
+     * @see FileIconResolver
+     */
+    public static boolean isSystemIconUsed(AbstractFile file) {
+        if(USE_SYSTEM_ICONS_ALWAYS.equals(systemIconsPolicy))
+            return true;
+
+        if(USE_SYSTEM_ICONS_APPLICATIONS.equals(systemIconsPolicy))
+            return com.mucommander.desktop.DesktopManager.isApplication(file);
+
+        return false;
+    }
+
 
     /**
      * Shorthand for {@link #getCustomFileIcon(com.mucommander.commons.file.AbstractFile, java.awt.Dimension)} called with the
@@ -26,7 +26,7 @@ import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.image.BufferedImage;
-import java.io.IOException;
+import java.util.function.Consumer;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
@@ -36,17 +36,15 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.mucommander.cache.FastLRUCache;
-import com.mucommander.cache.LRUCache;
 import com.mucommander.commons.conf.ConfigurationEvent;
 import com.mucommander.commons.conf.ConfigurationListener;
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.file.protocol.local.LocalFile;
-import com.mucommander.commons.runtime.JavaVersion;
+import com.mucommander.commons.file.util.VolumeInfoRefresher;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
@@ -104,19 +102,9 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
     /** Thread which auto updates volume info */
     private Thread autoUpdateThread;
 
-    /** Number of volume info strings that can be temporarily cached */
-    private final static int VOLUME_INFO_CACHE_CAPACITY = 50;
-
-    /** Number of milliseconds before cached volume info strings expire */
-    private final static int VOLUME_INFO_TIME_TO_LIVE = 60000;
-
     /** Number of milliseconds between each volume info update by auto-update thread */
     private final static int AUTO_UPDATE_PERIOD = 6000;
 
-    /** Caches volume info strings (free/total space) for a while, since this information is expensive to retrieve
-     * (I/O bound). This map uses folders' volume path as its key. */
-    private static LRUCache<String, Long[]> volumeInfoCache = new FastLRUCache<String, Long[]>(VOLUME_INFO_CACHE_CAPACITY);
-	
     /** Icon that is displayed when folder is changing */
     public final static String WAITING_ICON = "waiting.png";
 
@@ -306,60 +294,18 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
         if(!isVisible())
             return;
 
-        final AbstractFile currentFolder = mainFrame.getActivePanel().getCurrentFolder();
-        // Resolve the current folder's volume and use its path as a key for the volume info cache
-        final String volumePath = currentFolder.exists() ?
-        		currentFolder.getVolume().getAbsolutePath(true) : "";
-
-        Long cachedVolumeInfo[] = volumeInfoCache.get(volumePath);
-        if(cachedVolumeInfo!=null) {
-            LOGGER.debug("Cache hit!");
-            volumeSpaceLabel.setVolumeSpace(cachedVolumeInfo[0], cachedVolumeInfo[1]);
-        }
-        else {
-            // Retrieves free and total volume space.
-            // Perform volume info retrieval in a separate thread as this method may be called
-            // by the event thread and it can take a while, we want to return as soon as possible
-            new Thread("StatusBar.updateVolumeInfo") {
-                @Override
-                public void run() {
-                    // Free space on current volume, -1 if this information is not available 
-                    long volumeFree;
-                    // Total space on current volume, -1 if this information is not available 
-                    long volumeTotal;
-
-                    // Folder is a local file and Java version is 1.5: call getVolumeInfo() instead of
-                    // separate calls to getFreeSpace() and getTotalSpace() as it is twice as fast.
-                    if(currentFolder instanceof LocalFile && JavaVersion.JAVA_1_5.isCurrentOrLower()) {
-                        try {
-                            long volumeInfo[] = ((LocalFile)currentFolder).getVolumeInfo();
-                            volumeTotal = volumeInfo[0];
-                            volumeFree = volumeInfo[1];
-                        }
-                        catch(IOException e) {
-                            volumeTotal = -1;
-                            volumeFree = -1;
-                        }
+        // Retrieves free and total volume space in the background, as it can take a while and this method may be
+        // called by the event thread. Requests for the same volume are coalesced and the result cached for a while.
+        AbstractFile volume = mainFrame.getActivePanel().getCurrentFolder().getVolume();
+        VolumeInfoRefresher.getVolumeInfo(volume).thenAccept(new Consumer<long[]>() {
+            public void accept(final long[] volumeInfo) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        volumeSpaceLabel.setVolumeSpace(volumeInfo[0], volumeInfo[1]);
                     }
-                    // Java 1.6 and up or any other file type
-                    else {
-                        try { volumeFree = currentFolder.getFreeSpace(); }
-                        catch(IOException e) { volumeFree = -1; }
-
-                        try { volumeTotal = currentFolder.getTotalSpace(); }
-                        catch(IOException e) { volumeTotal = -1; }
-                    }
-
-// For testing the free space indicator 
-//volumeFree = (long)(volumeTotal * Math.random());
-                    
-                    volumeSpaceLabel.setVolumeSpace(volumeTotal, volumeFree);
-
-                    LOGGER.debug("Adding to cache");
-                    volumeInfoCache.add(volumePath, new Long[]{volumeTotal, volumeFree}, VOLUME_INFO_TIME_TO_LIVE);
-                }
-            }.start();
-        }
+                });
+            }
+        });
     }
 
 
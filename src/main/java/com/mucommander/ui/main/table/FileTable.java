@@ -35,6 +35,8 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 import javax.swing.DefaultCellEditor;
@@ -47,6 +49,7 @@ import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableColumn;
@@ -111,6 +114,16 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     private final static int RESERVED_NAME_COLUMN_WIDTH = 40;
     /** Miniumn column width when in automatic column sizing mode */
     private final static int MIN_COLUMN_AUTO_WIDTH = 20;
+    /** Maximum number of rows whose values are measured when in automatic column sizing mode */
+    private final static int MAX_AUTO_SIZED_ROWS = 1000;
+
+
+    // - Folder loading ------------------------------------------------------------------
+    // -----------------------------------------------------------------------------------
+    /** Number of files displayed when a folder is changed, the other files are added as they are loaded */
+    private final static int INITIAL_LOADED_FILES = 10000;
+    /** Maximum number of files added at once while a folder is being loaded */
+    private final static int MAX_LOADED_FILES = 50000;
 
 
     // - Containers ----------------------------------------------------------------------
@@ -188,6 +201,9 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     /** Table that shows the user to refresh if the location doesn't exist */
     private DefaultOverlayable overlayTable;
 
+    /** Loads the files of the current folder that are not displayed yet, null if all files are displayed */
+    private volatile FolderLoader folderLoader;
+
     public FileTable(MainFrame mainFrame, FolderPanel folderPanel, FileTableConfiguration conf) {
         super(new FileTableModel(), new FileTableColumnModel(conf));
 
@@ -530,6 +546,13 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         // Stop quick search in case it was being used before folder change
         quickSearch.stop();
 
+        // Stop loading the previous folder's files
+        FolderLoader loader = folderLoader;
+        if(loader!=null) {
+            loader.cancel();
+            folderLoader = null;
+        }
+
         AbstractFile currentFolder = folderPanel.getCurrentFolder();
 
         // If we're refreshing the current folder, save the current selection and marked files
@@ -547,10 +570,16 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 fileToSelect = currentFolder;
         }
 
+        // Retrieve the attributes of the files to display in this thread rather than in the swing thread. Only the
+        // first files of large folders are displayed at first, the others are added as they are loaded, except when
+        // refreshing the current folder as all files are needed to restore marked files.
+        int nbLoadedFiles = markedFiles==null?Math.min(children.length, INITIAL_LOADED_FILES):children.length;
+        FileTableModel.FileBatch loadedFiles = new FileTableModel.FileBatch(children, 0, nbLoadedFiles);
+
         // Changes the current folder in the swing thread to make sure that repaints cannot
         // happen in the middle of the operation - this is used to prevent flickering, badly
         // refreshed frames and such unpleasant graphical artifacts.
-        Runnable folderChangeThread = new FolderChangeThread(folder, children, markedFiles, fileToSelect);
+        Runnable folderChangeThread = new FolderChangeThread(folder, loadedFiles, markedFiles, fileToSelect);
 
         // Wait for the task to complete, so that we return only when the folder has actually been changed and the
         // table updated to reflect the new folder.
@@ -569,6 +598,110 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 }
             }
         }
+
+        if(nbLoadedFiles<children.length) {
+            // The file to select may not have been loaded yet
+            if(fileToSelect!=null && tableModel.getFileRow(fileToSelect)!=-1)
+                fileToSelect = null;
+
+            folderLoader = new FolderLoader(children, nbLoadedFiles, fileToSelect, getSelectedFile(true));
+            folderLoader.start();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if some files of the current folder are not displayed yet, because they are being
+     * loaded in the background.
+     *
+     * @return true if the current folder is still being loaded
+     */
+    public boolean isLoadingFolder() {
+        return folderLoader!=null;
+    }
+
+    /**
+     * Adds files loaded by the given loader to the table, keeping the selected file selected. This method must be
+     * called from the event dispatch thread.
+     *
+     * @param loader the loader the files were loaded by
+     * @param loadedFiles the files to add
+     */
+    private void addLoadedFiles(FolderLoader loader, FileTableModel.FileBatch loadedFiles) {
+        AbstractFile selectedFile = tableModel.getFileAtRow(currentRow);
+
+        tableModel.addFiles(loadedFiles);
+
+        int rowToSelect = -1;
+        // Select the file that was requested when the folder was changed if it has been loaded, unless another file has
+        // been selected in the meantime
+        if(loader.fileToSelect!=null && selectedFile!=null && selectedFile.equals(loader.initiallySelectedFile)) {
+            rowToSelect = tableModel.getFileRow(loader.fileToSelect);
+            if(rowToSelect!=-1)
+                loader.fileToSelect = null;
+        }
+        if(rowToSelect==-1 && selectedFile!=null)
+            rowToSelect = tableModel.getFileRow(selectedFile);
+        if(rowToSelect!=-1)
+            selectRow(currentRow = rowToSelect);
+
+        fireSelectedFileChangedEvent();
+        resizeAndRepaint();
+
+        loader.nbRemainingFiles -= loadedFiles.size();
+        if(loader.nbRemainingFiles==0 && folderLoader==loader)
+            folderLoader = null;
+    }
+
+    /**
+     * Updates the given files in the current folder, without listing the folder again: this is used to reflect changes
+     * made to the current folder when only the files that have changed are known. The selected file and marked files
+     * remain the same, provided they still exist.
+     *
+     * <p>The update is performed asynchronously in the event dispatch thread, and is discarded if the current folder
+     * has changed in the meantime.</p>
+     *
+     * @param folder the folder the changes were made to
+     * @param updatedFiles files that have been added to the folder or that have been modified
+     * @param removedFilenames names of the files that have been removed from the folder
+     */
+    public void updateFiles(final AbstractFile folder, final List<AbstractFile> updatedFiles, final Set<String> removedFilenames) {
+        // Retrieve the attributes of the updated files in this thread rather than in the swing thread
+        final FileTableModel.FileBatch updatedFilesBatch = new FileTableModel.FileBatch(updatedFiles.toArray(new AbstractFile[updatedFiles.size()]));
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                if(!folder.equals(folderPanel.getCurrentFolder()))
+                    return;
+
+                // The selected file is looked up after the update, if it has been modified it is replaced by the new instance
+                AbstractFile selectedFile = tableModel.getFileAtRow(currentRow);
+                if(selectedFile!=null) {
+                    for(AbstractFile file : updatedFiles) {
+                        if(file.getName().equals(selectedFile.getName())) {
+                            selectedFile = file;
+                            break;
+                        }
+                    }
+                }
+
+                boolean markedFilesChanged = tableModel.updateFiles(updatedFilesBatch, removedFilenames);
+
+                // If the selected file has been removed, use the closest possible row
+                int rowToSelect;
+                if(selectedFile==null || (rowToSelect = tableModel.getFileRow(selectedFile)) == -1) {
+                    int rowCount = tableModel.getRowCount();
+                    rowToSelect = currentRow < rowCount ? currentRow : rowCount - 1;
+                }
+
+                selectRow(currentRow = rowToSelect);
+                fireSelectedFileChangedEvent();
+
+                if(markedFilesChanged)
+                    fireMarkedFilesChangedEvent();
+
+                resizeAndRepaint();
+            }
+        });
     }
 
     /**
@@ -1128,7 +1261,8 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
                 else {
                     columnWidth = MIN_COLUMN_AUTO_WIDTH;
 
-                    rowCount = getModel().getRowCount();
+                    // Only the first rows of large folders are measured
+                    rowCount = Math.min(getModel().getRowCount(), MAX_AUTO_SIZED_ROWS);
                     for(int rowNum = 0; rowNum < rowCount; rowNum++) {
                         val = (String)getModel().getValueAt(rowNum, column.getModelIndex());
                         stringWidth = val==null?0
@@ -1137,6 +1271,13 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
                         columnWidth = Math.max(columnWidth, stringWidth);
                     }
+
+                    // The largest file has the longest value of the size column
+                    if(c == Column.SIZE && getModel().getRowCount() > MAX_AUTO_SIZED_ROWS) {
+                        int largestFileRow = tableModel.getLargestFileRow();
+                        if(largestFileRow >= MAX_AUTO_SIZED_ROWS)
+                            columnWidth = Math.max(columnWidth, fm.stringWidth((String)getModel().getValueAt(largestFileRow, column.getModelIndex())));
+                    }
                 }
                 if(respectSize)
                     columnWidth = Math.min(columnWidth, remainingWidth);
@@ -1860,11 +2001,11 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
      */
     private class FolderChangeThread implements Runnable {
         private AbstractFile   folder;
-        private AbstractFile[] children;
+        private FileTableModel.FileBatch children;
         private FileSet        markedFiles;
         private AbstractFile   selectedFile;
 
-        private FolderChangeThread(AbstractFile folder, AbstractFile[] children, FileSet markedFiles, AbstractFile selectedFile) {
+        private FolderChangeThread(AbstractFile folder, FileTableModel.FileBatch children, FileSet markedFiles, AbstractFile selectedFile) {
             this.folder       = folder;
             this.children     = children;
             this.markedFiles  = markedFiles;
@@ -1944,4 +2085,71 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             }
         }
     }
+
+    /**
+     * This thread retrieves the attributes of the current folder's files that are not displayed yet, and adds them to
+     * the table batch after batch, in the swing thread. Batches grow larger as the folder gets loaded, so that rows do
+     * not get merged too many times.
+     */
+    private class FolderLoader extends Thread {
+        private final AbstractFile[] children;
+        private int                  nbLoadedFiles;
+        /** File to select once it has been loaded, null if it has already been selected */
+        private AbstractFile         fileToSelect;
+        /** File that was selected when the folder was changed */
+        private final AbstractFile   initiallySelectedFile;
+        /** Number of files that have not been added to the table yet, accessed from the swing thread only */
+        private int                  nbRemainingFiles;
+        private volatile boolean     cancelled;
+
+        private FolderLoader(AbstractFile[] children, int nbLoadedFiles, AbstractFile fileToSelect, AbstractFile initiallySelectedFile) {
+            super(FolderLoader.class.getName());
+            setDaemon(true);
+
+            this.children              = children;
+            this.nbLoadedFiles         = nbLoadedFiles;
+            this.fileToSelect          = fileToSelect;
+            this.initiallySelectedFile = initiallySelectedFile;
+            this.nbRemainingFiles      = children.length-nbLoadedFiles;
+        }
+
+        /**
+         * Stops loading files. Files that have been loaded but not added to the table yet are discarded.
+         */
+        private void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void run() {
+            int batchSize = nbLoadedFiles;
+            while(!cancelled && nbLoadedFiles<children.length) {
+                batchSize = Math.min(2*batchSize, MAX_LOADED_FILES);
+                int end = Math.min(children.length, nbLoadedFiles+batchSize);
+                final FileTableModel.FileBatch loadedFiles = new FileTableModel.FileBatch(children, nbLoadedFiles, end);
+                nbLoadedFiles = end;
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if(cancelled)
+                            return;
+
+                        // Rows must not move while a filename is being edited, try again later
+                        if(isEditing()) {
+                            Timer timer = new Timer(EDIT_NAME_CLICK_DELAY, new ActionListener() {
+                                public void actionPerformed(ActionEvent e) {
+                                    run();
+                                }
+                            });
+                            timer.setRepeats(false);
+                            timer.start();
+                            return;
+                        }
+
+                        addLoadedFiles(FolderLoader.this, loadedFiles);
+                    }
+                });
+            }
+        }
+    }
 }
@@ -22,6 +22,7 @@ package com.mucommander.ui.main.table;
 import java.awt.Component;
 import java.awt.Font;
 
+import javax.swing.Icon;
 import javax.swing.JTable;
 import javax.swing.table.TableCellRenderer;
 
@@ -30,6 +31,8 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.ui.icon.CustomFileIconProvider;
+import com.mucommander.ui.icon.FileIconListener;
+import com.mucommander.ui.icon.FileIconResolver;
 import com.mucommander.ui.icon.FileIcons;
 import com.mucommander.ui.icon.IconManager;
 import com.mucommander.ui.quicksearch.QuickSearch;
@@ -58,9 +61,12 @@ import com.mucommander.ui.theme.ThemeListener;
  * instead the dedicated {@link CellLabel} class is used to render cells, making the implementation
  * less confusing IMO.
  *
+ * <p>File icons are retrieved with {@link FileIconResolver}, so that system icons are resolved without blocking the
+ * event dispatch thread; the icon cell of a row is repainted once its icon has been resolved.</p>
+ *
  * @author Maxence Bernard, Nicolas Rinaudo
  */
-public class FileTableCellRenderer implements TableCellRenderer, ThemeListener {
+public class FileTableCellRenderer implements TableCellRenderer, ThemeListener, FileIconListener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileTableCellRenderer.class);
 	
     private FileTable table;
@@ -198,7 +204,7 @@ public class FileTableCellRenderer implements TableCellRenderer, ThemeListener {
             // Set file icon (parent folder icon if '..' file)
             label.setIcon(rowIndex ==0 && tableModel.hasParentFolder()
                     ?IconManager.getIcon(IconManager.FILE_ICON_SET, CustomFileIconProvider.PARENT_FOLDER_ICON_NAME, FileIcons.getScaleFactor())
-                    :FileIcons.getFileIcon(file));
+                    :FileIconResolver.getFileIcon(file, this));
         }
         // Any other column (name, date or size)
         else {
@@ -261,6 +267,20 @@ public class FileTableCellRenderer implements TableCellRenderer, ThemeListener {
 
 
 
+    // - File icon listening ---------------------------------------------------------
+    // -------------------------------------------------------------------------------
+    /**
+     * Repaints the icon cell of the given file's row, if the file is still displayed.
+     */
+    public void fileIconResolved(AbstractFile file, Icon icon) {
+        int row = tableModel.getFileRow(file);
+        int column = table.convertColumnIndexToView(Column.EXTENSION.ordinal());
+        if(row!=-1 && column!=-1)
+            table.repaint(table.getCellRect(row, column, false));
+    }
+
+
+
     // - Theme listening -------------------------------------------------------------
     // -------------------------------------------------------------------------------
     /**
@@ -18,25 +18,44 @@
 
 package com.mucommander.ui.main.table;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.table.AbstractTableModel;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.CachedFile;
+import com.mucommander.commons.file.filter.CompiledFileFilter;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.util.FileComparator;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.file.util.FilenameCollationKey;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
 import com.mucommander.text.CustomDateFormat;
+import com.mucommander.commons.util.IndexSorter;
 import com.mucommander.text.SizeFormat;
 
 
 /**
  * This class maps table cells onto file attributes.
  *
+ * <p>To cope with folders that contain a very large number of files, the attributes that files are sorted and
+ * displayed by are stored in primitive arrays indexed by file index, {@link CachedFile} instances are only created
+ * for the files that are actually accessed, and cell values are only formatted for the rows that are displayed,
+ * the most recently used of which are cached. Files can also be added to the model as they are listed, see
+ * {@link #addFiles(FileBatch)}.</p>
+ *
+ * <p>The collation key of each filename is computed once, when files are listed, and kept for as long as the folder
+ * is displayed, so that sorting by name, size, date or extension neither reads files nor allocates. Rows are sorted
+ * with a stable merge sort that is performed in parallel for large folders, see {@link IndexSorter}.</p>
+ *
  * @author Maxence Bernard
  */
 public class FileTableModel extends AbstractTableModel {
@@ -50,17 +69,32 @@ public class FileTableModel extends AbstractTableModel {
     /** The current folder's parent folder, may be null */
     private AbstractFile parent;
 
-    /** Cached file instances */
+    /** File instances */
+    private AbstractFile files[];
+
+    /** Cached file instances, created as files are accessed */
     private AbstractFile cachedFiles[];
 
+    /** Collation keys of the filenames */
+    private FilenameCollationKey nameKeys[];
+
+    /** File sizes */
+    private long fileSizes[];
+
+    /** File dates */
+    private long fileDates[];
+
+    /** File flags, a combination of DIRECTORY_FLAG and MARKED_FLAG */
+    private byte fileFlags[];
+
     /** Index array */
     private int fileArrayIndex[];
 
-    /** Cell values cache */
-    private Object cellValuesCache[][];
+    /** Cell values of the most recently displayed files, by file index */
+    private Map<Integer, Object[]> cellValuesCache;
 
-    /** Marked rows array */
-    private boolean rowMarked[];
+    /** Cell values of the parent folder */
+    private Object parentCellValues[];
 	
     /** Combined size of files currently marked */
     private long markedTotalSize;
@@ -80,6 +114,15 @@ public class FileTableModel extends AbstractTableModel {
     /** String used as size information for directories */
     public final static String DIRECTORY_SIZE_STRING = "<DIR>";
 
+    /** Maximum number of files which cell values are cached */
+    private final static int MAX_CACHED_CELL_VALUES = 2000;
+
+    /** Flag set for files that are directories */
+    private final static byte DIRECTORY_FLAG = 1;
+
+    /** Flag set for files that are marked */
+    private final static byte MARKED_FLAG = 2;
+
 
     static {
         // Initialize the size column format based on the configuration
@@ -108,10 +151,13 @@ public class FileTableModel extends AbstractTableModel {
      */
     public FileTableModel() {
         // Init arrays to avoid NullPointerExceptions until setCurrentFolder() gets called for the first time
-        cachedFiles = new AbstractFile[0];
-        fileArrayIndex = new int[0];
-        cellValuesCache = new Object[0][Column.values().length-1];
-        rowMarked = new boolean[0];
+        setFiles(new FileBatch(new AbstractFile[0]));
+        cellValuesCache = new LinkedHashMap<Integer, Object[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+                return size()>MAX_CACHED_CELL_VALUES;
+            }
+        };
     }
 
     /**
@@ -125,7 +171,7 @@ public class FileTableModel extends AbstractTableModel {
     }
 
     /**
-     * Returns the current folder, i.e. the last folder set using {@link #setCurrentFolder(com.mucommander.commons.file.AbstractFile, com.mucommander.commons.file.AbstractFile[])}.
+     * Returns the current folder, i.e. the last folder set using {@link #setCurrentFolder(AbstractFile, FileBatch)}.
      *
      * @return the current folder
      */
@@ -134,10 +180,10 @@ public class FileTableModel extends AbstractTableModel {
     }
 
     /**
-     * Returns the date of the current folder, when it was set using {@link #setCurrentFolder(com.mucommander.commons.file.AbstractFile, com.mucommander.commons.file.AbstractFile[])}.
+     * Returns the date of the current folder, when it was set using {@link #setCurrentFolder(AbstractFile, FileBatch)}.
      * In other words, the returned date is a snapshot of the current folder's date which is never updated.
      *
-     * @return Returns the date of the current folder, when it was set using #setCurrentFolder(Abstract, Abstract[])
+     * @return Returns the date of the current folder, when it was set using #setCurrentFolder(AbstractFile, FileBatch)
      */
     public synchronized long getCurrentFolderDateSnapshot() {
         return currentFolderDateSnapshot;
@@ -172,14 +218,13 @@ public class FileTableModel extends AbstractTableModel {
     }
 
     /**
-     * Sets the current folder and its children.
+     * Sets the current folder and its children. The given batch may only hold the first children of the folder,
+     * the others can then be added using {@link #addFiles(FileBatch)}.
      *
      * @param folder the current folder
      * @param children the current folder's children
      */
-    synchronized void setCurrentFolder(AbstractFile folder, AbstractFile children[]) {
-        int nbFiles = children.length;
-
+    synchronized void setCurrentFolder(AbstractFile folder, FileBatch children) {
         this.currentFolder = (folder instanceof CachedFile)?folder:new CachedFile(folder, true);
 
         this.parent = currentFolder.getParent();    // Note: the returned parent is a CachedFile instance
@@ -188,30 +233,155 @@ public class FileTableModel extends AbstractTableModel {
             prefetchCachedFileAttributes(parent);
         }
 
-        // Initialize file indexes and create CachedFile instances to speed up table display and navigation
-        this.cachedFiles = children;
-        this.fileArrayIndex = new int[nbFiles];
-        AbstractFile file;
-        for(int i=0; i<nbFiles; i++) {
-            file = new CachedFile(children[i], true);
+        setFiles(children);
 
-            // Pre-fetch the attributes that are used by the table renderer and some actions.
-            prefetchCachedFileAttributes(file);
+        // Reset marked files
+        this.markedTotalSize = 0;
+        this.nbRowsMarked = 0;
 
-            cachedFiles[i] = file;
+        fillCellCache();
+    }
+
+    /**
+     * Replaces the files of this model by the ones of the given batch, in the batch's order.
+     */
+    private void setFiles(FileBatch batch) {
+        int nbFiles = batch.files.length;
+
+        this.files = batch.files;
+        this.cachedFiles = new AbstractFile[nbFiles];
+        this.nameKeys = batch.nameKeys;
+        this.fileSizes = batch.sizes;
+        this.fileDates = batch.dates;
+        this.fileFlags = batch.flags;
+        this.fileArrayIndex = new int[nbFiles];
+        for(int i=0; i<nbFiles; i++)
             fileArrayIndex[i] = i;
+    }
+
+    /**
+     * Adds the given files to the current folder's children, keeping rows sorted. This method must only be called once
+     * rows have been sorted.
+     *
+     * @param batch the files to add
+     */
+    synchronized void addFiles(FileBatch batch) {
+        addFiles(batch, null);
+    }
+
+    /**
+     * Adds the given files to the current folder's children, marking those whose name is contained in the given set.
+     */
+    private void addFiles(FileBatch batch, Set<String> markedFilenames) {
+        int nbFiles = files.length;
+        int nbNewFiles = batch.files.length;
+        if(nbNewFiles==0)
+            return;
+
+        // New files are appended to the file arrays, existing file indexes remain valid
+        files = Arrays.copyOf(files, nbFiles+nbNewFiles);
+        cachedFiles = Arrays.copyOf(cachedFiles, nbFiles+nbNewFiles);
+        nameKeys = Arrays.copyOf(nameKeys, nbFiles+nbNewFiles);
+        fileSizes = Arrays.copyOf(fileSizes, nbFiles+nbNewFiles);
+        fileDates = Arrays.copyOf(fileDates, nbFiles+nbNewFiles);
+        fileFlags = Arrays.copyOf(fileFlags, nbFiles+nbNewFiles);
+        System.arraycopy(batch.files, 0, files, nbFiles, nbNewFiles);
+        System.arraycopy(batch.nameKeys, 0, nameKeys, nbFiles, nbNewFiles);
+        System.arraycopy(batch.sizes, 0, fileSizes, nbFiles, nbNewFiles);
+        System.arraycopy(batch.dates, 0, fileDates, nbFiles, nbNewFiles);
+        System.arraycopy(batch.flags, 0, fileFlags, nbFiles, nbNewFiles);
+
+        int newFileArrayIndex[] = new int[nbNewFiles];
+        for(int i=0; i<nbNewFiles; i++) {
+            int fileIndex = nbFiles+i;
+            newFileArrayIndex[i] = fileIndex;
+
+            if(markedFilenames!=null && markedFilenames.contains(files[fileIndex].getName())) {
+                fileFlags[fileIndex] |= MARKED_FLAG;
+                updateMarkedTotals(fileIndex, true);
+            }
         }
 
-        // Reset marked files
-        int nbRows = getRowCount();
-        this.rowMarked = new boolean[nbRows];
-        this.markedTotalSize = 0;
-        this.nbRowsMarked = 0;
+        // Sort the new files and merge them into the sorted rows
+        FileComparator fc = getFileComparator(sortInfo);
+        sort(fc, newFileArrayIndex);
 
-        // Init and fill cell cache to speed up table even more
-        this.cellValuesCache = new Object[nbRows][Column.values().length-1];
+        int rowIndex[] = new int[fileArrayIndex.length+nbNewFiles];
+        int i = 0, j = 0, k = 0;
+        while(i<fileArrayIndex.length && j<nbNewFiles) {
+            if(compareFiles(fc, newFileArrayIndex[j], fileArrayIndex[i])<0)
+                rowIndex[k++] = newFileArrayIndex[j++];
+            else
+                rowIndex[k++] = fileArrayIndex[i++];
+        }
+        while(i<fileArrayIndex.length)
+            rowIndex[k++] = fileArrayIndex[i++];
+        while(j<nbNewFiles)
+            rowIndex[k++] = newFileArrayIndex[j++];
 
-        fillCellCache();
+        fileArrayIndex = rowIndex;
+    }
+
+    /**
+     * Updates the current folder's children with the given changes, without listing the folder again. Rows are kept
+     * sorted: the rows of the removed and updated files are dropped and the updated files are merged into the
+     * remaining rows, so this method must only be called once rows have been sorted.
+     *
+     * <p>Updated files that replace a marked file are marked.</p>
+     *
+     * @param updatedFiles files that have been added to the current folder or that have been modified
+     * @param removedFilenames names of the files that have been removed from the current folder
+     * @return <code>true</code> if marked files have been removed or replaced
+     */
+    synchronized boolean updateFiles(FileBatch updatedFiles, Set<String> removedFilenames) {
+        // Names of the rows to drop
+        Set<String> replacedFilenames = new HashSet<String>(removedFilenames);
+        for(AbstractFile file : updatedFiles.files)
+            replacedFilenames.add(file.getName());
+
+        // Keep the remaining files, in row order
+        int nbFiles = fileArrayIndex.length;
+        AbstractFile keptFiles[] = new AbstractFile[nbFiles];
+        AbstractFile keptCachedFiles[] = new AbstractFile[nbFiles];
+        FilenameCollationKey keptNameKeys[] = new FilenameCollationKey[nbFiles];
+        long keptSizes[] = new long[nbFiles];
+        long keptDates[] = new long[nbFiles];
+        byte keptFlags[] = new byte[nbFiles];
+        Set<String> markedFilenames = new HashSet<String>();
+        boolean markedFilesChanged = false;
+        int nbKeptFiles = 0;
+        for(int row=0; row<nbFiles; row++) {
+            int fileIndex = fileArrayIndex[row];
+            String name = files[fileIndex].getName();
+
+            if(replacedFilenames.contains(name)) {
+                if((fileFlags[fileIndex]&MARKED_FLAG)!=0) {
+                    updateMarkedTotals(fileIndex, false);
+                    markedFilenames.add(name);
+                    markedFilesChanged = true;
+                }
+                continue;
+            }
+
+            keptFiles[nbKeptFiles] = files[fileIndex];
+            keptCachedFiles[nbKeptFiles] = cachedFiles[fileIndex];
+            keptNameKeys[nbKeptFiles] = nameKeys[fileIndex];
+            keptSizes[nbKeptFiles] = fileSizes[fileIndex];
+            keptDates[nbKeptFiles] = fileDates[fileIndex];
+            keptFlags[nbKeptFiles] = fileFlags[fileIndex];
+            nbKeptFiles++;
+        }
+
+        setFiles(new FileBatch(Arrays.copyOf(keptFiles, nbKeptFiles), Arrays.copyOf(keptNameKeys, nbKeptFiles), Arrays.copyOf(keptSizes, nbKeptFiles),
+                Arrays.copyOf(keptDates, nbKeptFiles), Arrays.copyOf(keptFlags, nbKeptFiles)));
+        System.arraycopy(keptCachedFiles, 0, cachedFiles, 0, nbKeptFiles);
+
+        addFiles(updatedFiles, markedFilenames);
+
+        // File indexes have changed
+        cellValuesCache.clear();
+
+        return markedFilesChanged;
     }
 
     /**
@@ -235,41 +405,64 @@ public class FileTableModel extends AbstractTableModel {
 
 	
     /**
-     * Retrieves all cell values and stores them in an array for fast access.
+     * Discards the cell values that have been retrieved so far, so that they are retrieved again the next time they
+     * are displayed. This method should be called when the format of cell values has changed.
      */
     synchronized void fillCellCache() {
-        int len = cellValuesCache.length;
-        if(len==0)
-            return;
-		
+        cellValuesCache.clear();
+
         // Special '..' file
         if(parent!=null) {
-            cellValuesCache[0][Column.NAME.ordinal()-1] = "..";
-            cellValuesCache[0][Column.SIZE.ordinal()-1] = DIRECTORY_SIZE_STRING;
+            parentCellValues = new Object[Column.values().length-1];
+            parentCellValues[Column.NAME.ordinal()-1] = "..";
+            parentCellValues[Column.SIZE.ordinal()-1] = DIRECTORY_SIZE_STRING;
             currentFolderDateSnapshot = currentFolder.getDate();
-            cellValuesCache[0][Column.DATE.ordinal()-1] =	CustomDateFormat.format(new Date(currentFolderDateSnapshot));
+            parentCellValues[Column.DATE.ordinal()-1] =	CustomDateFormat.format(new Date(currentFolderDateSnapshot));
             // Don't display parent's permissions as they can have a different format from the folder contents
             // (e.g. for archives) and this looks weird
-            cellValuesCache[0][Column.PERMISSIONS.ordinal()-1] = "";
-            cellValuesCache[0][Column.OWNER.ordinal()-1] = "";
-            cellValuesCache[0][Column.GROUP.ordinal()-1] = "";
+            parentCellValues[Column.PERMISSIONS.ordinal()-1] = "";
+            parentCellValues[Column.OWNER.ordinal()-1] = "";
+            parentCellValues[Column.GROUP.ordinal()-1] = "";
         }
-		
-        AbstractFile file;
-        int fileIndex = 0;
-
-        for(int i=parent==null?0:1; i<len; i++) {
-            file = getCachedFileAtRow(i);
-            int cellIndex = fileArrayIndex[fileIndex]+(parent==null?0:1);
-            cellValuesCache[cellIndex][Column.NAME.ordinal()-1] = file.getName();
-            cellValuesCache[cellIndex][Column.SIZE.ordinal()-1] = file.isDirectory()?DIRECTORY_SIZE_STRING:SizeFormat.format(file.getSize(), sizeFormat);
-            cellValuesCache[cellIndex][Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(file.getDate()));
-            cellValuesCache[cellIndex][Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
-            cellValuesCache[cellIndex][Column.OWNER.ordinal()-1] = file.getOwner();
-            cellValuesCache[cellIndex][Column.GROUP.ordinal()-1] = file.getGroup();
-
-            fileIndex++;
+    }
+
+    /**
+     * Returns the cell values of the file at the given index, retrieving them if they are not cached.
+     */
+    private Object[] getCellValues(int fileIndex) {
+        Object cellValues[] = cellValuesCache.get(fileIndex);
+        if(cellValues!=null)
+            return cellValues;
+
+        AbstractFile file = getCachedFile(fileIndex);
+        cellValues = new Object[Column.values().length-1];
+        cellValues[Column.NAME.ordinal()-1] = file.getName();
+        cellValues[Column.SIZE.ordinal()-1] = (fileFlags[fileIndex]&DIRECTORY_FLAG)!=0?DIRECTORY_SIZE_STRING:SizeFormat.format(fileSizes[fileIndex], sizeFormat);
+        cellValues[Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(fileDates[fileIndex]));
+        cellValues[Column.PERMISSIONS.ordinal()-1] = file.getPermissionsString();
+        cellValues[Column.OWNER.ordinal()-1] = file.getOwner();
+        cellValues[Column.GROUP.ordinal()-1] = file.getGroup();
+
+        cellValuesCache.put(fileIndex, cellValues);
+
+        return cellValues;
+    }
+
+    /**
+     * Returns a CachedFile instance of the file at the given index, creating it if it hasn't been accessed yet.
+     */
+    private AbstractFile getCachedFile(int fileIndex) {
+        AbstractFile file = cachedFiles[fileIndex];
+        if(file==null) {
+            file = new CachedFile(files[fileIndex], true);
+
+            // Pre-fetch the attributes that are used by the table renderer and some actions.
+            prefetchCachedFileAttributes(file);
+
+            cachedFiles[fileIndex] = file;
         }
+
+        return file;
     }
 	
 	
@@ -294,7 +487,7 @@ public class FileTableModel extends AbstractTableModel {
         // because if table has just been changed (rows have been removed),
         // JTable may have an old row count value and may try to repaint rows that are out of bounds.
         if(rowIndex>=0 && rowIndex<fileArrayIndex.length)
-            return cachedFiles[fileArrayIndex[rowIndex]];
+            return getCachedFile(fileArrayIndex[rowIndex]);
         return null;
     }
 
@@ -306,9 +499,11 @@ public class FileTableModel extends AbstractTableModel {
      * @see #getFiles()
      */
     public synchronized AbstractFile[] getCachedFiles() {
-        // Clone the array to make sure it can't be modified outside of this class
-        AbstractFile[] cachedFilesCopy = new AbstractFile[cachedFiles.length];
-        System.arraycopy(cachedFiles, 0, cachedFilesCopy, 0, cachedFiles.length);
+        // Create a new array to make sure it can't be modified outside of this class
+        int nbFiles = files.length;
+        AbstractFile[] cachedFilesCopy = new AbstractFile[nbFiles];
+        for(int i=0; i<nbFiles; i++)
+            cachedFilesCopy[i] = getCachedFile(i);
 
         return cachedFilesCopy;
     }
@@ -325,14 +520,15 @@ public class FileTableModel extends AbstractTableModel {
      * @return the file located at the given row index
      */
     public synchronized AbstractFile getFileAtRow(int rowIndex) {
-        AbstractFile file = getCachedFileAtRow(rowIndex);
-	
-        if(file==null)
-            return null;
-        else if(file instanceof CachedFile)
-            return ((CachedFile)file).getProxiedFile();
-        else
-            return file;
+        if(rowIndex==0 && parent!=null)
+            return ((CachedFile)parent).getProxiedFile();
+
+        if(parent!=null)
+            rowIndex--;
+
+        if(rowIndex>=0 && rowIndex<fileArrayIndex.length)
+            return files[fileArrayIndex[rowIndex]];
+        return null;
     }
 	
     /**
@@ -343,12 +539,7 @@ public class FileTableModel extends AbstractTableModel {
      * @see #getCachedFiles()
      */
     public synchronized AbstractFile[] getFiles() {
-        int nbFiles = cachedFiles.length;
-        AbstractFile[] files = new AbstractFile[nbFiles];
-        for(int i=0; i<nbFiles; i++)
-            files[i] = cachedFiles[i]==null?null:((CachedFile)cachedFiles[i]).getProxiedFile();
-
-        return files;
+        return Arrays.copyOf(files, files.length);
     }
 
     /**
@@ -366,18 +557,33 @@ public class FileTableModel extends AbstractTableModel {
 
         // Use dichotomic binary search rather than a dumb linear search since file array is sorted,
         // complexity is reduced to O(log n) instead of O(n^2)
-        int left = parent==null?0:1;
-        int right = getRowCount()-1;
+        int left = 0;
+        int right = fileArrayIndex.length-1;
         int mid;
-        AbstractFile midFile;
         FileComparator fc = getFileComparator(sortInfo);
 
+        // Retrieve the attributes of the file only once
+        FilenameCollationKey nameKey = null;
+        boolean isDirectory = false;
+        long size = 0;
+        long date = 0;
+        if(fc.isAttributeCriterion()) {
+            nameKey = new FilenameCollationKey(file.getName());
+            isDirectory = file.isDirectory();
+            size = isDirectory?0:file.getSize();
+            date = file.getDate();
+        }
+
         while(left<=right) {
             mid = (right-left)/2 + left;
-            midFile = getCachedFileAtRow(mid);
-            if(midFile.equals(file))
-                return mid;
-            if(fc.compare(file, midFile)<0)
+            int fileIndex = fileArrayIndex[mid];
+            if(files[fileIndex].equals(file))
+                return mid+(parent==null?0:1);
+
+            int diff = fc.isAttributeCriterion()
+                ?fc.compare(nameKey, isDirectory, size, date, nameKeys[fileIndex], (fileFlags[fileIndex]&DIRECTORY_FLAG)!=0, fileSizes[fileIndex], fileDates[fileIndex])
+                :fc.compare(file, getCachedFile(fileIndex));
+            if(diff<0)
                 right = mid-1;
             else
                 left = mid+1;
@@ -386,6 +592,27 @@ public class FileTableModel extends AbstractTableModel {
         return -1;
     }
 
+    /**
+     * Returns the index of the row where the largest file is located, <code>-1</code> if the current folder
+     * has no regular file. This allows to find out how large the size column needs to be without retrieving the
+     * cell values of all rows.
+     *
+     * @return the index of the row where the largest file is located
+     */
+    public synchronized int getLargestFileRow() {
+        int largestRow = -1;
+        long largestSize = -1;
+        for(int row=0; row<fileArrayIndex.length; row++) {
+            int fileIndex = fileArrayIndex[row];
+            if((fileFlags[fileIndex]&DIRECTORY_FLAG)==0 && fileSizes[fileIndex]>largestSize) {
+                largestSize = fileSizes[fileIndex];
+                largestRow = row;
+            }
+        }
+
+        return largestRow==-1?-1:largestRow+(parent==null?0:1);
+    }
+
 	
     /**
      * Returns the file located at the given index, not including the parent file.
@@ -399,7 +626,7 @@ public class FileTableModel extends AbstractTableModel {
         // because if table has just been changed (rows have been removed),
         // JTable may have an old row count value and may try to repaint rows that are out of bounds.
         if(fileIndex>=0 && fileIndex<fileArrayIndex.length) {
-            return ((CachedFile)cachedFiles[fileArrayIndex[fileIndex]]).getProxiedFile();
+            return files[fileArrayIndex[fileIndex]];
         }
     	return null;
     }
@@ -411,7 +638,7 @@ public class FileTableModel extends AbstractTableModel {
      * @return the actual number of files the current folder contains, excluding the parent '..' file (if any)
      */
     public synchronized int getFileCount() {
-        return cachedFiles.length;
+        return files.length;
     }
 
 	
@@ -426,7 +653,7 @@ public class FileTableModel extends AbstractTableModel {
         if(row==0 && parent!=null)
             return false;
 
-        return row<getRowCount() && rowMarked[fileArrayIndex[parent==null?row:row-1]];
+        return row<getRowCount() && (fileFlags[fileArrayIndex[parent==null?row:row-1]]&MARKED_FLAG)!=0;
     }
 
 
@@ -441,16 +668,30 @@ public class FileTableModel extends AbstractTableModel {
         if(row==0 && parent!=null)
             return;
 			
-        int rowIndex = parent==null?row:row-1;
+        int fileIndex = fileArrayIndex[parent==null?row:row-1];
 
         // Return if the row is already marked/unmarked
-        if((marked && rowMarked[fileArrayIndex[rowIndex]]) || (!marked && !rowMarked[fileArrayIndex[rowIndex]]))
+        if(marked==((fileFlags[fileIndex]&MARKED_FLAG)!=0))
             return;
 
-        AbstractFile file = getCachedFileAtRow(row);
+        updateMarkedTotals(fileIndex, marked);
+
+        if(marked)
+            fileFlags[fileIndex] |= MARKED_FLAG;
+        else
+            fileFlags[fileIndex] &= ~MARKED_FLAG;
+    }
 
-        // Do not call getSize() on directories, it's unnecessary and the value is most likely not cached by CachedFile yet
-        long fileSize = file.isDirectory()?0:file.getSize();
+    /**
+     * Updates the number and combined size of marked files after the file at the given index has been marked or
+     * unmarked.
+     *
+     * @param fileIndex index of the file that has been marked/unmarked
+     * @param marked <code>true</code> if the file has been marked, <code>false</code> if it has been unmarked
+     */
+    private void updateMarkedTotals(int fileIndex, boolean marked) {
+        // Directories do not count in the total size
+        long fileSize = (fileFlags[fileIndex]&DIRECTORY_FLAG)!=0?0:fileSizes[fileIndex];
 
         // Update :
         // - Combined size of marked files
@@ -469,8 +710,6 @@ public class FileTableModel extends AbstractTableModel {
 
             nbRowsMarked--;
         }
-
-        rowMarked[fileArrayIndex[rowIndex]] = marked;
     }
 
 
@@ -509,16 +748,22 @@ public class FileTableModel extends AbstractTableModel {
 
 
     /**
-     * Marks/unmarks the files that match the given {@link FileFilter}.
+     * Marks/unmarks the files that match the given {@link FileFilter}. The filter is compiled into a
+     * {@link CompiledFileFilter} and the whole listing is matched in a single pass.
      *
      * @param filter the FileFilter to match the files against
      * @param marked if true, matching files will be marked, if false, they will be unmarked
      */
     public synchronized void setFilesMarked(FileFilter filter, boolean marked) {
-        int nbFiles = getRowCount();
-        for(int i=parent==null?0:1; i<nbFiles; i++) {
-            if(filter.match(getCachedFileAtRow(i)))
-                setRowMarked(i, marked);
+        int firstRow = parent==null?0:1;
+        AbstractFile rowFiles[] = new AbstractFile[Math.max(getRowCount()-firstRow, 0)];
+        for(int i=0; i<rowFiles.length; i++)
+            rowFiles[i] = getCachedFileAtRow(firstRow+i);
+
+        int indexes[] = new CompiledFileFilter(filter).indexOf(rowFiles);
+        for(int i=0; i<indexes.length; i++) {
+            if(indexes[i]!=-1)
+                setRowMarked(firstRow+i, marked);
         }
     }
 
@@ -536,21 +781,12 @@ public class FileTableModel extends AbstractTableModel {
      */
     public synchronized FileSet getMarkedFiles() {
         FileSet markedFiles = new FileSet(currentFolder, nbRowsMarked);
-        int nbRows = getRowCount();
+        int nbFiles = fileArrayIndex.length;
 
-        if(parent==null) {
-            for(int i=0; i<nbRows; i++) {
-                if(rowMarked[fileArrayIndex[i]])
-                    markedFiles.add(getFileAtRow(i));
-            }
-        }
-        else {
-            for(int i=1, iMinusOne=0; i<nbRows; i++) {
-                if(rowMarked[fileArrayIndex[iMinusOne]])
-                    markedFiles.add(getFileAtRow(i));
-
-                iMinusOne = i;
-            }
+        for(int i=0; i<nbFiles; i++) {
+            int fileIndex = fileArrayIndex[i];
+            if((fileFlags[fileIndex]&MARKED_FLAG)!=0)
+                markedFiles.add(files[fileIndex]);
         }
 
         return markedFiles;
@@ -595,73 +831,42 @@ public class FileTableModel extends AbstractTableModel {
         return new FileComparator(sortInfo.getCriterion().getFileComparatorCriterion(), sortInfo.getAscendingOrder(), sortInfo.getFoldersFirst());
     }
 
+    /**
+     * Compares the files at the given indexes, using their stored attributes if the comparator's criterion allows it.
+     */
+    private int compareFiles(FileComparator fc, int fileIndex1, int fileIndex2) {
+        if(fc.isAttributeCriterion())
+            return fc.compare(nameKeys[fileIndex1], (fileFlags[fileIndex1]&DIRECTORY_FLAG)!=0, fileSizes[fileIndex1], fileDates[fileIndex1],
+                              nameKeys[fileIndex2], (fileFlags[fileIndex2]&DIRECTORY_FLAG)!=0, fileSizes[fileIndex2], fileDates[fileIndex2]);
+
+        return fc.compare(getCachedFile(fileIndex1), getCachedFile(fileIndex2));
+    }
+
 
     /**
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
      */
     synchronized void sortRows()  {
-        sort(getFileComparator(sortInfo), 0, fileArrayIndex.length-1);
+        sort(getFileComparator(sortInfo), fileArrayIndex);
     }
 
 
     /**
-     * Quick sort implementation, based on James Gosling's implementation.
+     * Sorts the given array of file indexes. The sort is stable, so that files that compare equally keep their
+     * relative order, and may be performed in several threads for large arrays.
      */
-    private void sort(FileComparator fc, int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-
-        int temp;
-
-        if (lo >= hi) {
-            return;
+    private void sort(final FileComparator fc, int index[]) {
+        if(!fc.isAttributeCriterion()) {
+            // Create the CachedFile instances beforehand, the sort may access them from several threads
+            for(int fileIndex : index)
+                getCachedFile(fileIndex);
         }
-        else if( lo == hi - 1 ) {
-            // sort a two element list by swapping if necessary
-            if (fc.compare(cachedFiles[fileArrayIndex[lo]],cachedFiles[fileArrayIndex[hi]])>0) {
-                temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-            return;
-        }
-
-        // Pick a pivot and move it out of the way
-        int pivotIndex = fileArrayIndex[(lo + hi) / 2];
-        fileArrayIndex[(lo + hi) / 2] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-        AbstractFile pivot = cachedFiles[pivotIndex];
-
-        while( lo < hi ) {
-            // Search forward from files[lo] until an element is found that
-            // is greater than the pivot or lo >= hi
-            while (fc.compare(cachedFiles[fileArrayIndex[lo]], pivot)<=0 && lo < hi) {
-                lo++;
-            }
-
-            // Search backward from files[hi] until element is found that
-            // is less than the pivot, or lo >= hi
-            while (fc.compare(pivot, cachedFiles[fileArrayIndex[hi]])<=0 && lo < hi ) {
-                hi--;
-            }
 
-            // Swap elements files[lo] and files[hi]
-            if( lo < hi ) {
-                temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
+        IndexSorter.sort(index, new IndexSorter.IndexComparator() {
+            public int compare(int fileIndex1, int fileIndex2) {
+                return compareFiles(fc, fileIndex1, fileIndex2);
             }
-        }
-
-        // Put the median in the "center" of the list
-        fileArrayIndex[hi0] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        // Recursive calls, elements files[lo0] to files[lo-1] are less than or
-        // equal to pivot, elements files[hi+1] to files[hi0] are greater than
-        // pivot.
-        sort(fc, lo0, lo-1);
-        sort(fc, hi+1, hi0);
+        });
     }
 
 
@@ -701,13 +906,13 @@ public class FileTableModel extends AbstractTableModel {
         if(column==Column.EXTENSION)
             return null;
 		
-        // Decrement column index for cellValuesCache array
+        // Decrement column index for cell values array
         columnIndex--;
         // Handle special '..' file
         if(rowIndex==0 && parent!=null)
-            return cellValuesCache[0][columnIndex];
+            return parentCellValues[columnIndex];
         int fileIndex = parent==null?rowIndex:rowIndex-1;
-        return cellValuesCache[fileArrayIndex[fileIndex]+(parent==null?0:1)][columnIndex];
+        return getCellValues(fileArrayIndex[fileIndex])[columnIndex];
     }
 
 	
@@ -724,4 +929,69 @@ public class FileTableModel extends AbstractTableModel {
 	
         return false;
     }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A batch of files along with the attributes that the model sorts and displays them by. Attributes are retrieved
+     * when the batch is created, so that files can be added to the model without performing any I/O in the event
+     * dispatch thread or while the model is locked.
+     */
+    static class FileBatch {
+        private final AbstractFile files[];
+        private final FilenameCollationKey nameKeys[];
+        private final long sizes[];
+        private final long dates[];
+        private final byte flags[];
+
+        /**
+         * Creates a batch holding the given files, retrieving their attributes.
+         *
+         * @param files the files to hold
+         */
+        FileBatch(AbstractFile files[]) {
+            this(files, 0, files.length);
+        }
+
+        /**
+         * Creates a batch holding a range of the given files, retrieving their attributes.
+         *
+         * @param files the files which range to hold
+         * @param from index of the first file to hold, inclusive
+         * @param to index of the last file to hold, exclusive
+         */
+        FileBatch(AbstractFile files[], int from, int to) {
+            this(Arrays.copyOfRange(files, from, to), new FilenameCollationKey[to-from], new long[to-from], new long[to-from], new byte[to-from]);
+
+            for(int i=0; i<this.files.length; i++) {
+                AbstractFile file = this.files[i];
+                nameKeys[i] = new FilenameCollationKey(file.getName());
+                if(file.isDirectory())
+                    flags[i] = DIRECTORY_FLAG;
+                else
+                    sizes[i] = file.getSize();
+                dates[i] = file.getDate();
+            }
+        }
+
+        private FileBatch(AbstractFile files[], FilenameCollationKey nameKeys[], long sizes[], long dates[], byte flags[]) {
+            this.files = files;
+            this.nameKeys = nameKeys;
+            this.sizes = sizes;
+            this.dates = dates;
+            this.flags = flags;
+        }
+
+        /**
+         * Returns the number of files in this batch.
+         *
+         * @return the number of files in this batch
+         */
+        int size() {
+            return files.length;
+        }
+    }
 }
@@ -20,12 +20,16 @@ package com.mucommander.ui.quicksearch;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JComponent;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mucommander.commons.util.IOScheduler;
+
 /**
  * This class contains 'quick search' common functionality - selection of rows that match
  * the user's keyboard input.
@@ -43,9 +47,12 @@ public abstract class QuickSearch<T> extends KeyAdapter implements Runnable {
 	/** Timestamp of the last search string change, used when quick search is active */
     private long lastSearchStringChange;
 
-    /** Thread that's responsible for canceling the quick search on timeout,
+    /** Periodic task that's responsible for canceling the quick search on timeout,
      * has a null value when quick search is not active */
-    private Thread timeoutThread;
+    private ScheduledFuture<?> timeoutTask;
+
+    /** Number of milliseconds between two checks of the quick search timeout */
+    private final static int TIMEOUT_CHECK_PERIOD = 100;
 
 	/** Quick search timeout in ms */
     private final static int QUICK_SEARCH_TIMEOUT = 2000;
@@ -74,9 +81,8 @@ public abstract class QuickSearch<T> extends KeyAdapter implements Runnable {
         if(!isActive()) {
             // Reset search string
             searchString = "";
-            // Start the thread that's responsible for canceling the quick search on timeout
-            timeoutThread = new Thread(this, "QuickSearch timeout thread");
-            timeoutThread.start();
+            // Start the task that's responsible for canceling the quick search on timeout
+            timeoutTask = IOScheduler.scheduleWithFixedDelay(this, TIMEOUT_CHECK_PERIOD, TIMEOUT_CHECK_PERIOD, TimeUnit.MILLISECONDS);
             lastSearchStringChange = System.currentTimeMillis();
 
             searchStarted();
@@ -88,7 +94,8 @@ public abstract class QuickSearch<T> extends KeyAdapter implements Runnable {
      */
     public synchronized void stop() {
         if(isActive()) {
-            timeoutThread = null;
+            timeoutTask.cancel(false);
+            timeoutTask = null;
 
             searchStopped();
         }
@@ -100,7 +107,7 @@ public abstract class QuickSearch<T> extends KeyAdapter implements Runnable {
      * @return true if a quick search is being performed
      */
     public synchronized boolean isActive() {
-        return timeoutThread != null;
+        return timeoutTask != null;
     }
 
 
@@ -333,20 +340,14 @@ public abstract class QuickSearch<T> extends KeyAdapter implements Runnable {
     // Runnable methods //
     //////////////////////
 
-    public void run() {
-        do {
-            try { Thread.sleep(100); }
-            catch(InterruptedException e) {
-                // No problemo
-            }
-
-            synchronized(this) {
-                if(timeoutThread!=null && System.currentTimeMillis()-lastSearchStringChange >= QUICK_SEARCH_TIMEOUT) {
-                    stop();
-                }
-            }
+    /**
+     * Cancels the quick search if it has timed out. This method is called periodically while the quick search is
+     * active.
+     */
+    public synchronized void run() {
+        if(timeoutTask!=null && System.currentTimeMillis()-lastSearchStringChange >= QUICK_SEARCH_TIMEOUT) {
+            stop();
         }
-        while(timeoutThread!=null);
     }
 
     ///////////////////////////////
@@ -36,6 +36,7 @@ import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultEditorKit;
 import javax.swing.text.Document;
 
+import com.mucommander.commons.util.IOScheduler;
 import com.mucommander.ui.theme.ColorChangedEvent;
 import com.mucommander.ui.theme.FontChangedEvent;
 import com.mucommander.ui.theme.Theme;
@@ -158,17 +159,16 @@ class TextEditorImpl implements ThemeListener {
 			textArea.select(pos, pos + searchString.length());
 		} else {
 			// Beep when no match has been found.
-			// The beep method is called from a separate thread because this method seems to lock until the beep has
+			// The beep method is called from a housekeeping thread because this method seems to lock until the beep has
 			// been played entirely. If the 'Find next' shortcut is left pressed, a series of beeps will be played when
 			// the end of the file is reached, and we don't want those beeps to played one after the other as to:
 			// 1/ not lock the event thread
 			// 2/ have those beeps to end rather sooner than later
-			new Thread() {
-				@Override
+			IOScheduler.execute(IOScheduler.Pool.HOUSEKEEPING, "TextEditorImpl-beep", new Runnable() {
 				public void run() {
 					Toolkit.getDefaultToolkit().beep();
 				}
-			}.start();
+			});
 		}
 	}
 